@@ -31,8 +31,19 @@ public class ConfigDefaults {
 
     public static final int NETWORK_IDLE_TIMEOUT = 30;  // seconds
 
+    public static final long DATA_CACHE_MEMORY_LIMIT = 0;  // bytes, caching disabled by default
+    public static final long DATA_CACHE_ENTRY_LIMIT = 64 * 1024 * 1024;  // bytes
+    public static final int DATA_CACHE_METADATA_LIMIT = 10000;  // objects
+    public static final int DATA_FLIGHT_PORT = 0;  // Flight endpoint disabled by default
+    public static final int DATA_COPY_DOWNLOAD_THRESHOLD = 0;  // downloads, format copies disabled by default
+    public static final long DATA_BUFFER_SERVICE_LIMIT = 512 * 1024 * 1024;  // bytes
+    public static final long DATA_BUFFER_REQUEST_LIMIT = 32 * 1024 * 1024;  // bytes
+    public static final int DATA_AGGREGATION_GROUP_LIMIT = 100000;  // groups
+    public static final int DATA_WORKER_THREADS = -1;  // -1 = no worker pool (offload disabled), 0 = one worker per service thread
+
     public static final String STORAGE_DEFAULT_FORMAT = "ARROW_FILE";
     public static final StorageLayout STORAGE_DEFAULT_LAYOUT = StorageLayout.DATE_SNAP_LAYOUT;
+    public static final int STORAGE_LS_PAGE_SIZE_MAX = 10000;  // entries per page, shared by API validation and storage
 
     public static final String RESULT_STORAGE_LOCATION = "trac_results";
 }
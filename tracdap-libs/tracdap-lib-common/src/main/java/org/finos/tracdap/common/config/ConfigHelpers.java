@@ -133,6 +133,21 @@ public class ConfigHelpers {
         }
     }
 
+    public static long readLong(String context, Properties properties, String key, long defaultValue) {
+
+        var rawValue = properties.getProperty(key);
+
+        if (rawValue == null || rawValue.isBlank())
+            return defaultValue;
+
+        try {
+            return Long.parseLong(rawValue.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new EStartup(String.format("Invalid property [%s] for [%s]: Not an integer", key, context));
+        }
+    }
+
     public static boolean optionalBoolean(String context, Properties properties, String key, boolean defaultValue) {
 
         var rawValue = properties.getProperty(key);
@@ -44,10 +44,32 @@ public class ConfigKeys {
     public static final String GATEWAY_ROUTE_PREFIX = "gateway.route.prefix";
     public static final String NETWORK_IDLE_TIMEOUT = "network.idleTimeout";
 
+    // Data service cache
+    public static final String DATA_CACHE_MEMORY_LIMIT = "data.cache.memoryLimit";
+    public static final String DATA_CACHE_ENTRY_LIMIT = "data.cache.entryLimit";
+    public static final String DATA_CACHE_METADATA_LIMIT = "data.cache.metadataLimit";
+
+    // Data service Arrow Flight endpoint
+    public static final String DATA_FLIGHT_PORT = "data.flight.port";
+
+    // Data service copies in secondary formats, created after repeated downloads
+    public static final String DATA_COPY_DOWNLOAD_THRESHOLD = "data.copy.downloadThreshold";
+
+    // Data service byte budgets for data held in pipeline buffers
+    public static final String DATA_BUFFER_SERVICE_LIMIT = "data.buffer.serviceLimit";
+    public static final String DATA_BUFFER_REQUEST_LIMIT = "data.buffer.requestLimit";
+
+    // Data service limit on groups held in memory for aggregated reads
+    public static final String DATA_AGGREGATION_GROUP_LIMIT = "data.aggregation.groupLimit";
+
+    // Data service worker pool, for CPU-heavy pipeline stages
+    public static final String DATA_WORKER_THREADS = "data.worker.threads";
+
     // Storage defaults
     public static final String STORAGE_DEFAULT_LOCATION = "storage.default.location";
     public static final String STORAGE_DEFAULT_FORMAT = "storage.default.format";
     public static final String STORAGE_DEFAULT_LAYOUT = "storage.default.layout";
+    public static final String STORAGE_COPY_FORMATS = "storage.copy.formats";
 
     // Runtime results
     public static final String RESULT_ENABLED = "result.enabled";
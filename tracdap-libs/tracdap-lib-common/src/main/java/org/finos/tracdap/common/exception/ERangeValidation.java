@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.exception;
+
+import org.finos.tracdap.api.TracErrorDetails;
+
+/**
+ * A requested range is outside the bounds of the object being read
+ *
+ * Range errors are reported as OUT_OF_RANGE, which allows HTTP clients
+ * to receive 416 Range Not Satisfiable for ranged downloads.
+ */
+public class ERangeValidation extends EValidation {
+
+    public ERangeValidation(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ERangeValidation(String message, TracErrorDetails details) {
+        super(message, details);
+    }
+
+    public ERangeValidation(String message) {
+        super(message);
+    }
+}
@@ -189,6 +189,7 @@ public class GrpcErrorMapping {
             Map.entry(EInputValidation.class, Status.Code.INVALID_ARGUMENT),
             Map.entry(EVersionValidation.class, Status.Code.FAILED_PRECONDITION),
             Map.entry(EConsistencyValidation.class, Status.Code.FAILED_PRECONDITION),
+            Map.entry(ERangeValidation.class, Status.Code.OUT_OF_RANGE),
 
             Map.entry(ETenantNotFound.class, Status.Code.NOT_FOUND),
             Map.entry(EResourceNotFound.class, Status.Code.NOT_FOUND),
@@ -17,6 +17,8 @@
 
 package org.finos.tracdap.common.codec;
 
+import org.finos.tracdap.common.codec.compression.GzipCompression;
+import org.finos.tracdap.common.codec.compression.ICompression;
 import org.finos.tracdap.common.config.ConfigManager;
 import org.finos.tracdap.common.exception.EPluginNotAvailable;
 import org.finos.tracdap.common.plugin.IPluginManager;
@@ -32,6 +34,9 @@ public class CodecManager implements ICodecManager {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private static final Map<String, ICompression> COMPRESSION = Map.of(
+            GzipCompression.COMPRESSION_TYPE, new GzipCompression());
+
     private final Map<String, ICodec> codecs;
 
     public CodecManager(IPluginManager plugins, ConfigManager configManager) {
@@ -50,19 +55,41 @@ public class CodecManager implements ICodecManager {
     @Override
     public String getDefaultFileExtension(String format) {
 
-        return getCodec(format).defaultFileExtension();
+        var extension = getCodec(format).defaultFileExtension();
+        var compression = getCompression(format);
+
+        return compression != null
+                ? extension + "." + compression.defaultFileExtension()
+                : extension;
     }
 
     @Override
     public String getDefaultMimeType(String format) {
 
-        return getCodec(format).defaultMimeType();
+        var mimeType = getCodec(format).defaultMimeType();
+        var compression = getCompression(format);
+
+        return compression != null
+                ? mimeType + "+" + compression.compressionType()
+                : mimeType;
+    }
+
+    @Override
+    public ICompression getCompression(String format) {
+
+        var suffix = compressionSuffix(format.toLowerCase());
+
+        return suffix != null ? COMPRESSION.get(suffix) : null;
     }
 
     @Override
     public ICodec getCodec(String format) {
 
         var protocol = format.toLowerCase();
+        var suffix = compressionSuffix(protocol);
+
+        if (suffix != null)
+            protocol = protocol.substring(0, protocol.length() - suffix.length() - 1);
 
         if (codecs.containsKey(protocol)) {
 
@@ -77,4 +104,18 @@ public class CodecManager implements ICodecManager {
             throw new EPluginNotAvailable(message);
         }
     }
+
+    private String compressionSuffix(String protocol) {
+
+        // MIME types use a structured suffix (text/csv+gzip), format codes use an underscore (CSV_GZIP)
+
+        var separator = Math.max(protocol.lastIndexOf('+'), protocol.lastIndexOf('_'));
+
+        if (separator < 0)
+            return null;
+
+        var suffix = protocol.substring(separator + 1);
+
+        return COMPRESSION.containsKey(suffix) ? suffix : null;
+    }
 }
@@ -17,11 +17,17 @@
 
 package org.finos.tracdap.common.codec;
 
+import org.finos.tracdap.common.codec.compression.ICompression;
+
 
 public interface ICodecManager {
 
     ICodec getCodec(String format);
 
+    // Compression is selected with a suffix on the format, e.g. text/csv+gzip or CSV_GZIP
+    // Returns null if the format is not compressed
+    ICompression getCompression(String format);
+
     String getDefaultFileExtension(String format);
     String getDefaultMimeType(String format);
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.codec.compression;
+
+import org.finos.tracdap.common.data.DataPipeline;
+
+import org.apache.arrow.memory.BufferAllocator;
+
+import java.util.zip.Deflater;
+
+
+public class GzipCompression implements ICompression {
+
+    public static final String COMPRESSION_TYPE = "gzip";
+
+    private static final String DEFAULT_FILE_EXTENSION = "gz";
+
+    // Favour speed over size, text data still compresses well at lower levels
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED + 2;
+
+    @Override
+    public String compressionType() {
+        return COMPRESSION_TYPE;
+    }
+
+    @Override
+    public String defaultFileExtension() {
+        return DEFAULT_FILE_EXTENSION;
+    }
+
+    @Override
+    public DataPipeline.DataStage getCompressor(BufferAllocator allocator) {
+        return new GzipCompressor(allocator, COMPRESSION_LEVEL);
+    }
+
+    @Override
+    public DataPipeline.DataStage getDecompressor(BufferAllocator allocator) {
+        return new GzipDecompressor(allocator);
+    }
+}
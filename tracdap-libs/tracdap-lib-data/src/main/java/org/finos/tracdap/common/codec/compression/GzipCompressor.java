@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.codec.compression;
+
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.pipeline.BaseDataProducer;
+import org.finos.tracdap.common.data.util.Bytes;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+public class GzipCompressor
+    extends
+        BaseDataProducer<DataPipeline.StreamApi>
+    implements
+        DataPipeline.DataConsumer<DataPipeline.StreamApi>,
+        DataPipeline.StreamApi {
+
+    // Gzip is a deflate stream with a fixed header and a trailer holding CRC32 and size (RFC 1952)
+    // Input chunks are passed to the deflater as NIO views, so there is no copy on the way in
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b,  // Magic number
+            Deflater.DEFLATED,  // Compression method
+            0,                  // Flags
+            0, 0, 0, 0,         // Modification time (not set)
+            0,                  // Extra flags
+            (byte) 0xff         // OS (unknown)
+    };
+
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final BufferAllocator allocator;
+    private final Deflater deflater;
+    private final CRC32 crc;
+
+    private ArrowBuf outputChunk;
+
+    public GzipCompressor(BufferAllocator allocator, int compressionLevel) {
+
+        super(DataPipeline.StreamApi.class);
+
+        this.allocator = allocator;
+        this.deflater = new Deflater(compressionLevel, /* nowrap = */ true);
+        this.crc = new CRC32();
+    }
+
+    @Override
+    public DataPipeline.StreamApi dataInterface() {
+        return this;
+    }
+
+    @Override
+    public boolean isReady() {
+        return consumerReady();
+    }
+
+    @Override
+    public void pump() {
+        // No-op, compression is immediate
+    }
+
+    @Override
+    public void onStart() {
+
+        consumer().onStart();
+
+        outputChunk = Bytes.writeToStream(
+                GZIP_HEADER, 0, GZIP_HEADER.length,
+                outputChunk, allocator, CHUNK_SIZE,
+                consumer()::onNext);
+    }
+
+    @Override
+    public void onNext(ArrowBuf chunk) {
+
+        try (chunk) {
+
+            if (isDone()) {
+                log.warn("Data stage is already done, incoming data will be dropped");
+                return;
+            }
+
+            var input = chunk.nioBuffer(chunk.readerIndex(), (int) chunk.readableBytes());
+
+            crc.update(input.duplicate());
+            deflater.setInput(input);
+
+            // Deflater holds a reference to the input, it must be fully consumed before the chunk is released
+            while (!deflater.needsInput())
+                deflate();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+
+        try {
+
+            deflater.finish();
+
+            while (!deflater.finished())
+                deflate();
+
+            var trailer = new byte[GZIP_TRAILER_SIZE];
+            writeIntLE(trailer, 0, (int) crc.getValue());
+            writeIntLE(trailer, 4, (int) deflater.getBytesRead());
+
+            outputChunk = Bytes.writeToStream(
+                    trailer, 0, trailer.length,
+                    outputChunk, allocator, CHUNK_SIZE,
+                    consumer()::onNext);
+
+            outputChunk = Bytes.flushStream(outputChunk, consumer()::onNext);
+
+            markAsDone();
+            consumer().onComplete();
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+
+        try {
+            markAsDone();
+            consumer().onError(error);
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+
+        outputChunk = Bytes.closeStream(outputChunk);
+        deflater.end();
+    }
+
+    private void deflate() {
+
+        if (outputChunk == null)
+            outputChunk = allocator.buffer(CHUNK_SIZE);
+
+        var output = outputChunk.nioBuffer(outputChunk.writerIndex(), (int) outputChunk.writableBytes());
+        var nBytes = deflater.deflate(output);
+
+        outputChunk.writerIndex(outputChunk.writerIndex() + nBytes);
+
+        if (outputChunk.writableBytes() == 0) {
+            consumer().onNext(outputChunk);
+            outputChunk = null;
+        }
+    }
+
+    private static void writeIntLE(byte[] target, int offset, int value) {
+
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+}
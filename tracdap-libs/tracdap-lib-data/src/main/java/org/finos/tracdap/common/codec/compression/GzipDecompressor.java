@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.codec.compression;
+
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.pipeline.BaseDataProducer;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EDataCorruption;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+public class GzipDecompressor
+    extends
+        BaseDataProducer<DataPipeline.StreamApi>
+    implements
+        DataPipeline.DataConsumer<DataPipeline.StreamApi>,
+        DataPipeline.StreamApi {
+
+    // Gzip header and trailer are parsed here, the deflate stream in between goes to the inflater (RFC 1952)
+    // Header and trailer can be split across chunks, so they are collected one byte at a time
+    // Multi-member streams (i.e. concatenated gzip files) are supported, as required by the spec
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int GZIP_MIN_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int FLAG_HCRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+
+    private enum State { HEADER, BODY, TRAILER }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final BufferAllocator allocator;
+    private final Inflater inflater;
+    private final CRC32 crc;
+
+    private State state;
+    private byte[] pending;
+    private int pendingSize;
+    private int members;
+
+    private ArrowBuf outputChunk;
+
+    public GzipDecompressor(BufferAllocator allocator) {
+
+        super(DataPipeline.StreamApi.class);
+
+        this.allocator = allocator;
+        this.inflater = new Inflater(/* nowrap = */ true);
+        this.crc = new CRC32();
+
+        this.state = State.HEADER;
+        this.pending = new byte[GZIP_MIN_HEADER_SIZE];
+        this.pendingSize = 0;
+        this.members = 0;
+    }
+
+    @Override
+    public DataPipeline.StreamApi dataInterface() {
+        return this;
+    }
+
+    @Override
+    public boolean isReady() {
+        return consumerReady();
+    }
+
+    @Override
+    public void pump() {
+        // No-op, decompression is immediate
+    }
+
+    @Override
+    public void onStart() {
+
+        consumer().onStart();
+    }
+
+    @Override
+    public void onNext(ArrowBuf chunk) {
+
+        try (chunk) {
+
+            if (isDone()) {
+                log.warn("Data stage is already done, incoming data will be dropped");
+                return;
+            }
+
+            var input = chunk.nioBuffer(chunk.readerIndex(), (int) chunk.readableBytes());
+
+            while (input.hasRemaining()) {
+
+                switch (state) {
+                    case HEADER: readHeader(input); break;
+                    case BODY: readBody(input); break;
+                    case TRAILER: readTrailer(input); break;
+                }
+            }
+        }
+        catch (DataFormatException e) {
+
+            var error = new EDataCorruption("Compressed data is corrupt: " + e.getMessage(), e);
+            log.error(error.getMessage(), error);
+            throw error;
+        }
+    }
+
+    @Override
+    public void onComplete() {
+
+        try {
+
+            // Stream must end on a member boundary
+            if (members == 0 || state != State.HEADER || pendingSize > 0) {
+                var error = new EDataCorruption("Compressed data is incomplete");
+                log.error(error.getMessage(), error);
+                throw error;
+            }
+
+            outputChunk = Bytes.flushStream(outputChunk, consumer()::onNext);
+
+            markAsDone();
+            consumer().onComplete();
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+
+        try {
+            markAsDone();
+            consumer().onError(error);
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+
+        outputChunk = Bytes.closeStream(outputChunk);
+        inflater.end();
+    }
+
+    private void readHeader(ByteBuffer input) {
+
+        while (input.hasRemaining()) {
+
+            appendPending(input.get());
+
+            var headerSize = headerSize();
+
+            if (headerSize == pendingSize) {
+
+                pendingSize = 0;
+                state = State.BODY;
+
+                inflater.reset();
+                crc.reset();
+
+                return;
+            }
+        }
+    }
+
+    private void readBody(ByteBuffer input) throws DataFormatException {
+
+        inflater.setInput(input);
+
+        // Keep going while there is input, or while output is still being produced from input already taken
+        int nBytes;
+
+        do {
+
+            if (inflater.needsDictionary())
+                throw new DataFormatException("Preset dictionary is not supported");
+
+            nBytes = inflate();
+        }
+        while (!inflater.finished() && (!inflater.needsInput() || nBytes > 0));
+
+        // Skip over the input that was consumed, the rest belongs to the trailer
+        input.position(input.limit() - inflater.getRemaining());
+
+        if (inflater.finished())
+            state = State.TRAILER;
+    }
+
+    private void readTrailer(ByteBuffer input) {
+
+        while (input.hasRemaining() && pendingSize < GZIP_TRAILER_SIZE)
+            appendPending(input.get());
+
+        if (pendingSize < GZIP_TRAILER_SIZE)
+            return;
+
+        var expectedCrc = readIntLE(pending, 0) & 0xffffffffL;
+        var expectedSize = readIntLE(pending, 4) & 0xffffffffL;
+
+        if (expectedCrc != crc.getValue())
+            throw new EDataCorruption("Compressed data is corrupt: CRC check failed");
+
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL))
+            throw new EDataCorruption("Compressed data is corrupt: Size check failed");
+
+        pendingSize = 0;
+        state = State.HEADER;
+        members++;
+    }
+
+    private int inflate() throws DataFormatException {
+
+        if (outputChunk == null)
+            outputChunk = allocator.buffer(GzipCompressor.CHUNK_SIZE);
+
+        var output = outputChunk.nioBuffer(outputChunk.writerIndex(), (int) outputChunk.writableBytes());
+        var nBytes = inflater.inflate(output);
+
+        output.flip();
+        crc.update(output);
+
+        outputChunk.writerIndex(outputChunk.writerIndex() + nBytes);
+
+        if (outputChunk.writableBytes() == 0) {
+            consumer().onNext(outputChunk);
+            outputChunk = null;
+        }
+
+        return nBytes;
+    }
+
+    private int headerSize() {
+
+        // Returns the full header size once enough has been read to know it, otherwise -1
+
+        if (pendingSize < GZIP_MIN_HEADER_SIZE)
+            return -1;
+
+        if ((pending[0] & 0xff) != GZIP_MAGIC_1 || (pending[1] & 0xff) != GZIP_MAGIC_2)
+            throw new EDataCorruption("Compressed data is corrupt: Not in gzip format");
+
+        if (pending[2] != 8)
+            throw new EDataCorruption("Compressed data is corrupt: Unsupported compression method");
+
+        var flags = pending[3] & 0xff;
+        var size = GZIP_MIN_HEADER_SIZE;
+
+        if ((flags & FLAG_EXTRA) != 0) {
+
+            if (pendingSize < size + 2)
+                return -1;
+
+            var extraSize = (pending[size] & 0xff) | ((pending[size + 1] & 0xff) << 8);
+            size += 2 + extraSize;
+        }
+
+        if ((flags & FLAG_NAME) != 0) {
+            size = skipZeroTerminated(size);
+            if (size < 0) return -1;
+        }
+
+        if ((flags & FLAG_COMMENT) != 0) {
+            size = skipZeroTerminated(size);
+            if (size < 0) return -1;
+        }
+
+        if ((flags & FLAG_HCRC) != 0)
+            size += 2;
+
+        return pendingSize >= size ? size : -1;
+    }
+
+    private int skipZeroTerminated(int offset) {
+
+        for (var i = offset; i < pendingSize; i++) {
+            if (pending[i] == 0)
+                return i + 1;
+        }
+
+        return -1;
+    }
+
+    private void appendPending(byte b) {
+
+        if (pendingSize == pending.length)
+            pending = Arrays.copyOf(pending, pending.length * 2);
+
+        pending[pendingSize++] = b;
+    }
+
+    private static int readIntLE(byte[] source, int offset) {
+
+        return (source[offset] & 0xff) |
+                ((source[offset + 1] & 0xff) << 8) |
+                ((source[offset + 2] & 0xff) << 16) |
+                ((source[offset + 3] & 0xff) << 24);
+    }
+}
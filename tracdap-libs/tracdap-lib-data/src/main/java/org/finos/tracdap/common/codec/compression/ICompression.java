@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.codec.compression;
+
+import org.finos.tracdap.common.data.DataPipeline;
+
+import org.apache.arrow.memory.BufferAllocator;
+
+
+/**
+ * Stream compression that can be layered on top of a codec.
+ *
+ * <p>Compressors and decompressors are pipeline stages that consume and produce a byte stream.
+ * A compressor goes after a codec encoder and a decompressor goes before a codec decoder.
+ * They can also be used on their own for raw content.</p>
+ */
+public interface ICompression {
+
+    String compressionType();
+    String defaultFileExtension();
+
+    DataPipeline.DataStage getCompressor(BufferAllocator allocator);
+
+    DataPipeline.DataStage getDecompressor(BufferAllocator allocator);
+}
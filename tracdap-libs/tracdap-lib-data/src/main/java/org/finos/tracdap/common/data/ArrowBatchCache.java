@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+
+/// An LRU cache of decoded Arrow batches, held off-heap in a dedicated allocator
+///
+/// Entries are keyed by the storage copy they were decoded from. Cached batches are
+/// shared with readers zero-copy, by loading them into a request-scoped VSR.
+/// Entries that are evicted while readers are still attached are released
+/// when the last reader detaches.
+public class ArrowBatchCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ArrowBatchCache.class);
+
+    private final BufferAllocator allocator;
+    private final long memoryLimit;
+    private final long entryLimit;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    public ArrowBatchCache(BufferAllocator parentAllocator, long memoryLimit, long entryLimit) {
+
+        this.memoryLimit = memoryLimit;
+        this.entryLimit = Math.min(entryLimit, memoryLimit);
+
+        // Access-ordered map gives LRU iteration order
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        this.allocator = memoryLimit > 0
+                ? parentAllocator.newChildAllocator("data-cache", 0, memoryLimit)
+                : null;
+    }
+
+    public boolean isEnabled() {
+        return allocator != null;
+    }
+
+    public BufferAllocator allocator() {
+        return allocator;
+    }
+
+    public long entryLimit() {
+        return entryLimit;
+    }
+
+    public synchronized Entry acquire(String key) {
+
+        if (allocator == null)
+            return null;
+
+        var entry = entries.get(key);
+
+        if (entry != null)
+            entry.readers++;
+
+        return entry;
+    }
+
+    public synchronized void release(Entry entry) {
+
+        entry.readers--;
+
+        if (entry.evicted && entry.readers == 0)
+            entry.close();
+    }
+
+    public synchronized boolean reserve(long bytes) {
+
+        if (allocator == null)
+            return false;
+
+        var iterator = entries.values().iterator();
+
+        while (allocator.getAllocatedMemory() + bytes > memoryLimit && iterator.hasNext()) {
+
+            var entry = iterator.next();
+            iterator.remove();
+            evict(entry);
+        }
+
+        return allocator.getAllocatedMemory() + bytes <= memoryLimit;
+    }
+
+    public synchronized void put(String key, Schema schema, List<ArrowRecordBatch> batches, long bytes) {
+
+        var newEntry = new Entry(schema, batches, bytes);
+
+        // Another request may have populated the same key concurrently, keep the existing entry
+        if (allocator == null || entries.containsKey(key)) {
+            newEntry.close();
+            return;
+        }
+
+        entries.put(key, newEntry);
+
+        log.info("DATA CACHE: Added entry, batches = {}, bytes = {}, total bytes = {} [{}]",
+                batches.size(), bytes, allocator.getAllocatedMemory(), key);
+    }
+
+    @Override
+    public synchronized void close() {
+
+        for (var entry : entries.values())
+            evict(entry);
+
+        entries.clear();
+
+        if (allocator != null) {
+            try {
+                allocator.close();
+            }
+            catch (IllegalStateException e) {
+                // Entries still attached to readers are not released during shutdown
+                log.warn("DATA CACHE: Memory still in use at shutdown: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void evict(Entry entry) {
+
+        entry.evicted = true;
+
+        if (entry.readers == 0)
+            entry.close();
+    }
+
+    public static final class Entry {
+
+        private final Schema schema;
+        private final List<ArrowRecordBatch> batches;
+        private final long bytes;
+
+        private int readers;
+        private boolean evicted;
+
+        private Entry(Schema schema, List<ArrowRecordBatch> batches, long bytes) {
+            this.schema = schema;
+            this.batches = batches;
+            this.bytes = bytes;
+        }
+
+        public Schema schema() {
+            return schema;
+        }
+
+        public List<ArrowRecordBatch> batches() {
+            return batches;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        private void close() {
+            batches.forEach(ArrowRecordBatch::close);
+        }
+    }
+}
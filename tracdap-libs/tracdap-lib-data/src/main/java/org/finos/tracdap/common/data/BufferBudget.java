@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.common.data;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class BufferBudget {
+
+    // Limit the bytes a data pipeline can hold in its buffers, rather than the number of chunks
+    // A service level budget is shared by all requests, each request gets its own budget inside that
+    // Acquiring bytes always succeeds, buffers are elastic and never reject data that has already been produced
+    // Instead, hasCapacity() goes false when a budget is used up, which stops pipelines pulling from their sources
+    // Pipelines waiting on the shared budget are woken up when another request releases enough to go below the limit
+
+    public static final long DEFAULT_SERVICE_LIMIT = 512 * 1024 * 1024;
+    public static final long DEFAULT_REQUEST_LIMIT = 32 * 1024 * 1024;
+
+    private final BufferBudget parent;
+    private final long limit;
+    private final long requestLimit;
+    private final AtomicLong used;
+    private final Queue<Runnable> waiters;
+
+    public BufferBudget(long serviceLimit, long requestLimit) {
+        this(null, serviceLimit, requestLimit);
+    }
+
+    private BufferBudget(BufferBudget parent, long limit, long requestLimit) {
+        this.parent = parent;
+        this.limit = limit;
+        this.requestLimit = requestLimit;
+        this.used = new AtomicLong(0);
+        this.waiters = new ConcurrentLinkedQueue<>();
+    }
+
+    public static BufferBudget forRequest() {
+
+        // Standalone budget, for pipelines that are not running under a service budget
+        return new BufferBudget(null, DEFAULT_REQUEST_LIMIT, DEFAULT_REQUEST_LIMIT);
+    }
+
+    public BufferBudget newRequestBudget() {
+
+        return new BufferBudget(this, requestLimit, requestLimit);
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    public long used() {
+        return used.get();
+    }
+
+    public boolean hasCapacity() {
+
+        return used.get() < limit && (parent == null || parent.hasCapacity());
+    }
+
+    public void acquire(long bytes) {
+
+        used.addAndGet(bytes);
+
+        if (parent != null)
+            parent.acquire(bytes);
+    }
+
+    public void release(long bytes) {
+
+        var after = used.addAndGet(-bytes);
+
+        if (after < limit && after + bytes >= limit)
+            notifyWaiters();
+
+        if (parent != null)
+            parent.release(bytes);
+    }
+
+    public void onCapacity(Runnable waiter) {
+
+        // Call the waiter once, when this budget and its parent both have capacity
+        // If there is capacity already, the waiter runs immediately
+
+        if (used.get() >= limit) {
+
+            waiters.add(() -> onCapacity(waiter));
+
+            // Guard against a release that happened before the waiter was queued
+            if (used.get() < limit)
+                notifyWaiters();
+
+            return;
+        }
+
+        if (parent != null)
+            parent.onCapacity(waiter);
+        else
+            waiter.run();
+    }
+
+    private void notifyWaiters() {
+
+        Runnable waiter;
+
+        while ((waiter = waiters.poll()) != null)
+            waiter.run();
+    }
+}
@@ -29,6 +29,7 @@ import org.finos.tracdap.common.plugin.TracPlugin;
 import org.finos.tracdap.common.storage.IFileStorage;
 import org.finos.tracdap.common.storage.IStorageManager;
 import org.finos.tracdap.common.storage.local.LocalFileStorage;
+import org.finos.tracdap.common.storage.memory.MemoryFileStorage;
 
 import java.util.List;
 import java.util.Properties;
@@ -43,9 +44,11 @@ public class CoreDataPlugin extends TracPlugin {
     private static final String ARROW_STREAM_CODEC_NAME = "ARROW_STREAM";
     private static final String ARROW_FILE_CODEC_NAME = "ARROW_FILE";
     private static final String LOCAL_FILE_STORAGE_NAME = "LOCAL_STORAGE";
+    private static final String MEMORY_FILE_STORAGE_NAME = "MEMORY_STORAGE";
 
     private static final List<PluginServiceInfo> psi = List.of(
             new PluginServiceInfo(IFileStorage.class, LOCAL_FILE_STORAGE_NAME, List.of("LOCAL", "file")),
+            new PluginServiceInfo(IFileStorage.class, MEMORY_FILE_STORAGE_NAME, List.of("MEMORY")),
             new PluginServiceInfo(ICodec.class, ARROW_STREAM_CODEC_NAME, List.of("ARROW_STREAM", "application/vnd.apache.arrow.stream", "application/x-apache-arrow-stream")),
             new PluginServiceInfo(ICodec.class, ARROW_FILE_CODEC_NAME, List.of("ARROW_FILE", "application/vnd.apache.arrow.file", "application/x-apache-arrow-file")),
             new PluginServiceInfo(ICodec.class, CSV_CODEC_NAME, List.of("CSV", "text/csv")),
@@ -71,6 +74,10 @@ public class CoreDataPlugin extends TracPlugin {
                 var instance = properties.getProperty(IStorageManager.PROP_STORAGE_KEY);
                 return (T) new LocalFileStorage(instance, properties);
 
+            case MEMORY_FILE_STORAGE_NAME:
+                var memoryInstance = properties.getProperty(IStorageManager.PROP_STORAGE_KEY);
+                return (T) new MemoryFileStorage(memoryInstance, properties);
+
             case ARROW_STREAM_CODEC_NAME: return (T) new ArrowStreamCodec();
             case ARROW_FILE_CODEC_NAME: return (T) new ArrowFileCodec();
             case CSV_CODEC_NAME: return (T) new CsvCodec();
@@ -24,11 +24,26 @@ import org.apache.arrow.memory.BufferAllocator;
 public class DataContext implements IDataContext {
 
     private final OrderedEventExecutor eventLoop;
+    private final OrderedEventExecutor workerExecutor;
     private final BufferAllocator allocator;
+    private final BufferBudget bufferBudget;
 
     public DataContext(OrderedEventExecutor eventLoop, BufferAllocator allocator) {
+        this(eventLoop, eventLoop, allocator);
+    }
+
+    public DataContext(OrderedEventExecutor eventLoop, OrderedEventExecutor workerExecutor, BufferAllocator allocator) {
+        this(eventLoop, workerExecutor, allocator, null);
+    }
+
+    public DataContext(
+            OrderedEventExecutor eventLoop, OrderedEventExecutor workerExecutor,
+            BufferAllocator allocator, BufferBudget bufferBudget) {
+
         this.eventLoop = eventLoop;
+        this.workerExecutor = workerExecutor;
         this.allocator = allocator;
+        this.bufferBudget = bufferBudget;
     }
 
     @Override
@@ -36,8 +51,18 @@ public class DataContext implements IDataContext {
         return eventLoop;
     }
 
+    @Override
+    public OrderedEventExecutor workerExecutor() {
+        return workerExecutor;
+    }
+
     @Override
     public BufferAllocator arrowAllocator() {
         return allocator;
     }
+
+    @Override
+    public BufferBudget bufferBudget() {
+        return bufferBudget;
+    }
 }
@@ -18,6 +18,7 @@
 package org.finos.tracdap.common.data;
 
 import org.finos.tracdap.common.data.pipeline.DataPipelineImpl;
+import org.finos.tracdap.common.data.pipeline.StageMetrics;
 
 import org.apache.arrow.memory.ArrowBuf;
 
@@ -81,6 +82,9 @@ public interface DataPipeline {
 
     CompletionStage<Void> execute();
 
+    // Metrics for each stage, in pipeline order, available once the pipeline has been executed
+    List<StageMetrics> metrics();
+
 
 
     // -----------------------------------------------------------------------------------------------------------------
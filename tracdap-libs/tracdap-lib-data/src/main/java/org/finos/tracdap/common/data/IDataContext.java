@@ -17,9 +17,24 @@
 
 package org.finos.tracdap.common.data;
 
+import io.netty.util.concurrent.OrderedEventExecutor;
 import org.apache.arrow.memory.BufferAllocator;
 
 public interface IDataContext extends IExecutionContext {
 
     BufferAllocator arrowAllocator();
+
+    // Executor for CPU-heavy pipeline stages (i.e. codecs), so the event loop is only used for I/O
+    // If no worker is available, everything runs on the event loop
+
+    default OrderedEventExecutor workerExecutor() {
+        return eventLoopExecutor();
+    }
+
+    // Shared byte budget for data held in pipeline buffers, across all requests in the service
+    // If there is no shared budget, each pipeline is limited by its own request budget only
+
+    default BufferBudget bufferBudget() {
+        return null;
+    }
 }
@@ -0,0 +1,813 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.api.AggregateFunction;
+import org.finos.tracdap.api.DataAggregate;
+import org.finos.tracdap.api.DataAggregation;
+import org.finos.tracdap.common.config.ConfigDefaults;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.SchemaMapping;
+import org.finos.tracdap.common.exception.EConsistencyValidation;
+import org.finos.tracdap.common.exception.EDataConstraint;
+import org.finos.tracdap.common.exception.EDataTypeNotSupported;
+import org.finos.tracdap.common.exception.EUnexpected;
+import org.finos.tracdap.metadata.BasicType;
+import org.finos.tracdap.metadata.FieldSchema;
+import org.finos.tracdap.metadata.SchemaDefinition;
+import org.finos.tracdap.metadata.SchemaType;
+import org.finos.tracdap.metadata.TableSchema;
+
+import org.apache.arrow.vector.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+
+public class AggregationStage
+        extends
+        BaseDataProducer<DataPipeline.ArrowApi>
+        implements
+        DataPipeline.ArrowApi,
+        DataPipeline.DataConsumer<DataPipeline.ArrowApi>,
+        DataPipeline.DataProducer<DataPipeline.ArrowApi> {
+
+    // Hash aggregation over incoming record batches
+    // Groups are accumulated directly into the output vectors, one row per group
+    // The aggregated result is sent as a single batch when the incoming stream completes
+    // If the consumer is not ready at that point, the result is held until the next pump
+    // Groups are held in memory, so the number of groups is limited and exceeding the limit fails the stage
+
+    private static final Logger log = LoggerFactory.getLogger(AggregationStage.class);
+
+    private static final Set<BasicType> SUM_TYPES = Set.of(
+            BasicType.INTEGER, BasicType.FLOAT, BasicType.DECIMAL);
+
+    private static final Set<BasicType> MIN_MAX_TYPES = Set.of(
+            BasicType.INTEGER, BasicType.FLOAT, BasicType.DECIMAL, BasicType.DATE, BasicType.DATETIME);
+
+    private final DataAggregation aggregation;
+    private final SchemaDefinition outputSchema;
+    private final int maxGroups;
+
+    private final Map<List<Object>, Integer> groups;
+    private final Object[] keyBuffer;
+
+    private ArrowVsrContext incomingRoot;
+    private ArrowVsrContext outputRoot;
+
+    private GroupKey[] groupKeys;
+    private Accumulator[] accumulators;
+    private boolean resultPending;
+
+    public AggregationStage(SchemaDefinition sourceSchema, DataAggregation aggregation) {
+
+        this(sourceSchema, aggregation, ConfigDefaults.DATA_AGGREGATION_GROUP_LIMIT);
+    }
+
+    public AggregationStage(SchemaDefinition sourceSchema, DataAggregation aggregation, int maxGroups) {
+
+        super(DataPipeline.ArrowApi.class);
+
+        this.aggregation = aggregation;
+        this.outputSchema = aggregateSchema(sourceSchema, aggregation);
+        this.maxGroups = maxGroups;
+
+        this.groups = new HashMap<>();
+        this.keyBuffer = new Object[aggregation.getGroupByCount()];
+    }
+
+    public static SchemaDefinition aggregateSchema(SchemaDefinition sourceSchema, DataAggregation aggregation) {
+
+        if (sourceSchema.getSchemaType() != SchemaType.TABLE_SCHEMA)
+            throw new EConsistencyValidation("Aggregation is only available for datasets with a table schema");
+
+        var sourceFields = new HashMap<String, FieldSchema>();
+
+        for (var field : sourceSchema.getTable().getFieldsList())
+            sourceFields.put(field.getFieldName().toLowerCase(), field);
+
+        var outputFields = new ArrayList<FieldSchema>();
+        var outputNames = new HashSet<String>();
+
+        for (var groupBy : aggregation.getGroupByList()) {
+
+            var sourceField = lookupField(sourceFields, groupBy);
+
+            // Group keys are sent as plain values, the result is too small to benefit from dictionary encoding
+            var groupField = sourceField.toBuilder()
+                    .setFieldOrder(outputFields.size())
+                    .setCategorical(false)
+                    .clearNamedEnum()
+                    .build();
+
+            addOutputField(outputFields, outputNames, groupField);
+        }
+
+        for (var aggregate : aggregation.getAggregatesList()) {
+
+            var function = aggregate.getFunction();
+            var sourceField = aggregate.hasFieldName() ? lookupField(sourceFields, aggregate.getFieldName()) : null;
+
+            BasicType resultType;
+
+            switch (function) {
+
+                case COUNT:
+                    resultType = BasicType.INTEGER;
+                    break;
+
+                case SUM:
+                    resultType = checkFieldType(function, sourceField, SUM_TYPES);
+                    break;
+
+                case MIN:
+                case MAX:
+                    resultType = checkFieldType(function, sourceField, MIN_MAX_TYPES);
+                    break;
+
+                default:
+                    throw new EUnexpected();
+            }
+
+            var functionName = function.name().toLowerCase();
+
+            var resultName = aggregate.hasResultName() ? aggregate.getResultName()
+                    : sourceField != null ? functionName + "_" + sourceField.getFieldName()
+                    : functionName;
+
+            var resultLabel = sourceField != null
+                    ? String.format("%s(%s)", function.name(), sourceField.getFieldName())
+                    : String.format("%s(*)", function.name());
+
+            var resultField = FieldSchema.newBuilder()
+                    .setFieldName(resultName)
+                    .setFieldOrder(outputFields.size())
+                    .setFieldType(resultType)
+                    .setLabel(resultLabel)
+                    .setNotNull(function == AggregateFunction.COUNT)
+                    .build();
+
+            addOutputField(outputFields, outputNames, resultField);
+        }
+
+        return SchemaDefinition.newBuilder()
+                .setSchemaType(SchemaType.TABLE_SCHEMA)
+                .setPartType(sourceSchema.getPartType())
+                .setTable(TableSchema.newBuilder().addAllFields(outputFields))
+                .build();
+    }
+
+    private static FieldSchema lookupField(Map<String, FieldSchema> sourceFields, String fieldName) {
+
+        var field = sourceFields.get(fieldName.toLowerCase());
+
+        if (field == null) {
+            var message = String.format("Aggregation field [%s] is not in the dataset schema", fieldName);
+            throw new EConsistencyValidation(message);
+        }
+
+        return field;
+    }
+
+    private static BasicType checkFieldType(AggregateFunction function, FieldSchema field, Set<BasicType> allowedTypes) {
+
+        if (field == null)
+            throw new EUnexpected();  // Field is required for everything except COUNT, enforced by validation
+
+        if (!allowedTypes.contains(field.getFieldType())) {
+
+            var message = String.format("Aggregate function [%s] is not available for field [%s] of type [%s]",
+                    function.name(), field.getFieldName(), field.getFieldType().name());
+
+            throw new EConsistencyValidation(message);
+        }
+
+        return field.getFieldType();
+    }
+
+    private static void addOutputField(List<FieldSchema> outputFields, Set<String> outputNames, FieldSchema field) {
+
+        if (!outputNames.add(field.getFieldName().toLowerCase())) {
+            var message = String.format("Aggregation result contains field [%s] more than once", field.getFieldName());
+            throw new EConsistencyValidation(message);
+        }
+
+        outputFields.add(field);
+    }
+
+    public SchemaDefinition outputSchema() {
+        return outputSchema;
+    }
+
+    @Override
+    public boolean isReady() {
+
+        // Incoming batches are always consumed immediately, output is not sent until the end of the stream
+        // Once the stage has failed, there is no point accepting more input
+        return !isDone();
+    }
+
+    @Override
+    public void pump() {
+
+        // Incoming batches are processed immediately in onBatch()
+        // The only thing to pump is a result that was held back because the consumer was not ready
+
+        if (resultPending)
+            sendResult();
+    }
+
+    @Override
+    public DataPipeline.ArrowApi dataInterface() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+
+        releaseResources();
+    }
+
+    @Override
+    public void onStart(ArrowVsrContext context) {
+
+        if (incomingRoot != null)
+            throw new EUnexpected();
+
+        incomingRoot = context;
+
+        var arrowSchema = SchemaMapping.tracToArrow(outputSchema);
+        outputRoot = ArrowVsrContext.forSchema(arrowSchema, context.getAllocator());
+
+        var incomingVsr = context.getVsr();
+        var outputVsr = outputRoot.getVsr();
+
+        groupKeys = new GroupKey[aggregation.getGroupByCount()];
+        accumulators = new Accumulator[aggregation.getAggregatesCount()];
+
+        for (var i = 0; i < groupKeys.length; i++) {
+
+            var sourceVector = lookupVector(incomingVsr, aggregation.getGroupBy(i));
+            var outputVector = outputVsr.getVector(i);
+
+            groupKeys[i] = groupKey(sourceVector, outputVector, context);
+        }
+
+        for (var i = 0; i < accumulators.length; i++) {
+
+            var aggregate = aggregation.getAggregates(i);
+
+            var sourceVector = aggregate.hasFieldName()
+                    ? lookupVector(incomingVsr, aggregate.getFieldName())
+                    : null;
+
+            var outputVector = outputVsr.getVector(groupKeys.length + i);
+
+            accumulators[i] = accumulator(aggregate, sourceVector, outputVector);
+        }
+
+        // With no group-by fields there is always exactly one group, even if there is no data
+        if (groupKeys.length == 0)
+            newGroup(List.of());
+
+        consumer().onStart(outputRoot);
+    }
+
+    @Override
+    public void onBatch() {
+
+        if (isDone()) {
+            log.warn("Aggregation has already failed, incoming batch will be dropped");
+            return;
+        }
+
+        if (incomingRoot == null)
+            throw new EUnexpected();
+
+        var batchSize = incomingRoot.getVsr().getRowCount();
+
+        try {
+
+            for (var row = 0; row < batchSize; row++) {
+
+                for (var k = 0; k < groupKeys.length; k++)
+                    keyBuffer[k] = groupKeys[k].value(row);
+
+                var groupIndex = groups.get(Arrays.asList(keyBuffer));
+
+                if (groupIndex == null)
+                    groupIndex = newGroup(row);
+
+                for (var accumulator : accumulators)
+                    accumulator.accumulate(row, groupIndex);
+            }
+        }
+        catch (EDataConstraint e) {
+
+            // A data error (e.g. overflow, too many groups) fails the whole aggregation
+            // Report it straight away, rather than reading and discarding the rest of the input
+
+            incomingRoot.setUnloaded();
+            markAsDone();
+
+            try {
+                consumer().onError(e);
+            }
+            finally {
+                releaseResources();
+            }
+
+            return;
+        }
+
+        // Always consume the incoming data
+        incomingRoot.setUnloaded();
+    }
+
+    @Override
+    public void onComplete() {
+
+        if (isDone()) {
+            log.warn("Aggregation has already failed, incoming EOS will be dropped");
+            return;
+        }
+
+        if (incomingRoot == null)
+            throw new EUnexpected();
+
+        try {
+
+            log.info("Aggregation complete: [{}] groups", groups.size());
+
+            for (var accumulator : accumulators)
+                accumulator.finish(groups.size());
+
+            outputRoot.setRowCount(groups.size());
+            outputRoot.setLoaded();
+        }
+        catch (Throwable e) {
+
+            // E.g. overflow in the result, the output is incomplete and must not be sent
+
+            try {
+                consumer().onError(e);
+            }
+            finally {
+                releaseResources();
+            }
+
+            return;
+        }
+
+        resultPending = true;
+        sendResult();
+    }
+
+    private void sendResult() {
+
+        if (!consumerReady())
+            return;
+
+        resultPending = false;
+
+        try {
+            consumer().onBatch();
+            consumer().onComplete();
+        }
+        finally {
+            releaseResources();
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+
+        if (isDone()) {
+            log.warn("Aggregation has already failed, then another error occurred: {}", error.getMessage());
+            return;
+        }
+
+        if (incomingRoot == null)
+            throw new EUnexpected();
+
+        try {
+            consumer().onError(error);
+        }
+        finally {
+            releaseResources();
+        }
+    }
+
+    private int newGroup(int row) {
+
+        // Copy the key buffer, it is reused for every row
+        var groupIndex = newGroup(Arrays.asList(keyBuffer.clone()));
+
+        for (var groupKey : groupKeys)
+            groupKey.copyTo(row, groupIndex);
+
+        return groupIndex;
+    }
+
+    private int newGroup(List<Object> key) {
+
+        if (groups.size() >= maxGroups) {
+            var message = String.format("Aggregation result has more than the limit of [%d] groups", maxGroups);
+            throw new EDataConstraint(message);
+        }
+
+        var groupIndex = groups.size();
+        groups.put(key, groupIndex);
+
+        for (var accumulator : accumulators)
+            accumulator.newGroup(groupIndex);
+
+        return groupIndex;
+    }
+
+    private void releaseResources() {
+
+        // Incoming root is owned by the source, do not close
+        incomingRoot = null;
+
+        if (outputRoot != null) {
+            outputRoot.close();
+            outputRoot = null;
+        }
+
+        groups.clear();
+        groupKeys = null;
+        accumulators = null;
+        resultPending = false;
+    }
+
+    private static FieldVector lookupVector(VectorSchemaRoot vsr, String fieldName) {
+
+        var vector = vsr.getVector(fieldName);
+
+        if (vector != null)
+            return vector;
+
+        // TRAC field names are not case-sensitive
+        for (var candidate : vsr.getFieldVectors())
+            if (candidate.getName().equalsIgnoreCase(fieldName))
+                return candidate;
+
+        var message = String.format("Aggregation field [%s] is not present in the data", fieldName);
+        throw new EConsistencyValidation(message);
+    }
+
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Group keys
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static GroupKey groupKey(FieldVector sourceVector, FieldVector outputVector, ArrowVsrContext context) {
+
+        var encoding = sourceVector.getField().getDictionary();
+
+        if (encoding == null)
+            return new PlainKey(sourceVector, outputVector);
+
+        var dictionary = context.getDictionaries().lookup(encoding.getId());
+
+        if (dictionary == null)
+            throw new EUnexpected();
+
+        return new EncodedKey((BaseIntVector) sourceVector, dictionary.getVector(), outputVector);
+    }
+
+    private interface GroupKey {
+
+        Object value(int row);
+
+        void copyTo(int row, int groupIndex);
+    }
+
+    private static class PlainKey implements GroupKey {
+
+        private final FieldVector source;
+        private final FieldVector output;
+
+        PlainKey(FieldVector source, FieldVector output) {
+            this.source = source;
+            this.output = output;
+        }
+
+        @Override
+        public Object value(int row) {
+            return source.getObject(row);
+        }
+
+        @Override
+        public void copyTo(int row, int groupIndex) {
+            output.copyFromSafe(row, groupIndex, source);
+        }
+    }
+
+    private static class EncodedKey implements GroupKey {
+
+        // For dictionary encoded keys, the index is enough to identify the group
+        // Output vectors hold decoded values, copied from the dictionary
+
+        private final BaseIntVector indices;
+        private final FieldVector dictionary;
+        private final FieldVector output;
+
+        EncodedKey(BaseIntVector indices, FieldVector dictionary, FieldVector output) {
+            this.indices = indices;
+            this.dictionary = dictionary;
+            this.output = output;
+        }
+
+        @Override
+        public Object value(int row) {
+            return indices.isNull(row) ? null : indices.getValueAsLong(row);
+        }
+
+        @Override
+        public void copyTo(int row, int groupIndex) {
+
+            // Output vectors are allocated with all values null, null keys do not need to be copied
+            if (!indices.isNull(row))
+                output.copyFromSafe((int) indices.getValueAsLong(row), groupIndex, dictionary);
+        }
+    }
+
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Accumulators
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static Accumulator accumulator(DataAggregate aggregate, FieldVector source, FieldVector output) {
+
+        switch (aggregate.getFunction()) {
+
+            case COUNT:
+                return source != null
+                        ? new CountValues(source, (BigIntVector) output)
+                        : new CountRows((BigIntVector) output);
+
+            case SUM:
+                if (source instanceof BigIntVector)
+                    return new SumLong((BigIntVector) source, (BigIntVector) output);
+                if (source instanceof Float8Vector)
+                    return new SumDouble((Float8Vector) source, (Float8Vector) output);
+                if (source instanceof DecimalVector)
+                    return new SumDecimal((DecimalVector) source, (DecimalVector) output);
+                break;
+
+            case MIN:
+            case MAX:
+                if (source.getField().getDictionary() == null && output instanceof BaseFixedWidthVector)
+                    return new MinMax(source, (BaseFixedWidthVector) output, aggregate.getFunction() == AggregateFunction.MIN);
+                break;
+
+            default:
+                throw new EUnexpected();
+        }
+
+        var message = String.format("Aggregate function [%s] is not available for vector type [%s]",
+                aggregate.getFunction().name(), source.getMinorType().name());
+
+        throw new EDataTypeNotSupported(message);
+    }
+
+    private interface Accumulator {
+
+        void newGroup(int groupIndex);
+
+        void accumulate(int row, int groupIndex);
+
+        default void finish(int nGroups) {
+            // No-op for accumulators that work directly in the output vector
+        }
+    }
+
+    private static class CountRows implements Accumulator {
+
+        private final BigIntVector output;
+
+        CountRows(BigIntVector output) {
+            this.output = output;
+        }
+
+        @Override
+        public void newGroup(int groupIndex) {
+            output.setSafe(groupIndex, 0L);
+        }
+
+        @Override
+        public void accumulate(int row, int groupIndex) {
+            output.set(groupIndex, output.get(groupIndex) + 1);
+        }
+    }
+
+    private static class CountValues implements Accumulator {
+
+        private final FieldVector source;
+        private final BigIntVector output;
+
+        CountValues(FieldVector source, BigIntVector output) {
+            this.source = source;
+            this.output = output;
+        }
+
+        @Override
+        public void newGroup(int groupIndex) {
+            output.setSafe(groupIndex, 0L);
+        }
+
+        @Override
+        public void accumulate(int row, int groupIndex) {
+            if (!source.isNull(row))
+                output.set(groupIndex, output.get(groupIndex) + 1);
+        }
+    }
+
+    private static class SumLong implements Accumulator {
+
+        private final BigIntVector source;
+        private final BigIntVector output;
+
+        SumLong(BigIntVector source, BigIntVector output) {
+            this.source = source;
+            this.output = output;
+        }
+
+        @Override
+        public void newGroup(int groupIndex) {
+            // Result is null until the first non-null value
+            output.setNull(groupIndex);
+        }
+
+        @Override
+        public void accumulate(int row, int groupIndex) {
+
+            if (source.isNull(row))
+                return;
+
+            if (output.isNull(groupIndex)) {
+                output.setSafe(groupIndex, source.get(row));
+                return;
+            }
+
+            try {
+                output.set(groupIndex, Math.addExact(output.get(groupIndex), source.get(row)));
+            }
+            catch (ArithmeticException e) {
+                var message = String.format("Integer overflow in SUM(%s), the result is too large for an INTEGER field", source.getName());
+                throw new EDataConstraint(message, e);
+            }
+        }
+    }
+
+    private static class SumDouble implements Accumulator {
+
+        private final Float8Vector source;
+        private final Float8Vector output;
+
+        SumDouble(Float8Vector source, Float8Vector output) {
+            this.source = source;
+            this.output = output;
+        }
+
+        @Override
+        public void newGroup(int groupIndex) {
+            // Result is null until the first non-null value
+            output.setNull(groupIndex);
+        }
+
+        @Override
+        public void accumulate(int row, int groupIndex) {
+
+            if (source.isNull(row))
+                return;
+
+            if (output.isNull(groupIndex))
+                output.setSafe(groupIndex, source.get(row));
+            else
+                output.set(groupIndex, output.get(groupIndex) + source.get(row));
+        }
+    }
+
+    private static class SumDecimal implements Accumulator {
+
+        // Sums are held as BigDecimal with unlimited precision, so intermediate totals cannot overflow
+        // The output field is the widest TRAC decimal, the final result is checked against it once at the end
+
+        private final DecimalVector source;
+        private final DecimalVector output;
+        private final List<BigDecimal> sums;
+
+        SumDecimal(DecimalVector source, DecimalVector output) {
+            this.source = source;
+            this.output = output;
+            this.sums = new ArrayList<>();
+        }
+
+        @Override
+        public void newGroup(int groupIndex) {
+            // Result is null until the first non-null value
+            sums.add(null);
+        }
+
+        @Override
+        public void accumulate(int row, int groupIndex) {
+
+            if (source.isNull(row))
+                return;
+
+            var sum = sums.get(groupIndex);
+            var value = source.getObject(row);
+
+            sums.set(groupIndex, sum == null ? value : sum.add(value));
+        }
+
+        @Override
+        public void finish(int nGroups) {
+
+            for (var groupIndex = 0; groupIndex < nGroups; groupIndex++) {
+
+                var sum = sums.get(groupIndex);
+
+                if (sum == null) {
+                    output.setNull(groupIndex);
+                    continue;
+                }
+
+                var result = sum.setScale(output.getScale(), RoundingMode.HALF_UP);
+
+                if (result.precision() > output.getPrecision()) {
+                    var message = String.format(
+                            "Decimal overflow in SUM(%s), the result needs precision %d but the maximum is %d",
+                            source.getName(), result.precision(), output.getPrecision());
+                    throw new EDataConstraint(message);
+                }
+
+                output.setSafe(groupIndex, result);
+            }
+        }
+    }
+
+    private static class MinMax implements Accumulator {
+
+        // Generic comparison on boxed values, works for all the types allowed for MIN / MAX
+
+        private final FieldVector source;
+        private final BaseFixedWidthVector output;
+        private final boolean min;
+
+        MinMax(FieldVector source, BaseFixedWidthVector output, boolean min) {
+            this.source = source;
+            this.output = output;
+            this.min = min;
+        }
+
+        @Override
+        public void newGroup(int groupIndex) {
+            // Result is null until the first non-null value
+            output.setNull(groupIndex);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accumulate(int row, int groupIndex) {
+
+            if (source.isNull(row))
+                return;
+
+            if (output.isNull(groupIndex)) {
+                output.copyFromSafe(row, groupIndex, source);
+                return;
+            }
+
+            var current = (Comparable<Object>) output.getObject(groupIndex);
+            var value = source.getObject(row);
+            var compare = current.compareTo(value);
+
+            if (min ? compare > 0 : compare < 0)
+                output.copyFromSafe(row, groupIndex, source);
+        }
+    }
+}
@@ -28,6 +28,7 @@ public abstract class BaseDataProducer
 
     private final Class<API_T> consumerType;
     private DataPipeline.DataConsumer<API_T> consumer;
+    private API_T consumerApi;
 
     protected BaseDataProducer(Class<API_T> consumerType) {
         this.consumerType = consumerType;
@@ -40,6 +41,15 @@ public abstract class BaseDataProducer
             throw new EUnexpected();
 
         this.consumer = (DataPipeline.DataConsumer<API_T>) consumer;
+        this.consumerApi = this.consumer.dataInterface();
+    }
+
+    final void instrument(StageMetrics consumerMetrics, boolean isSource) {
+
+        // Calls to the consumer go through a wrapper that records metrics for both stages
+        this.consumerApi = StageInstrumentation.wrap(
+                consumerType, consumer.dataInterface(),
+                metrics(), consumerMetrics, isSource);
     }
 
     @Override
@@ -54,6 +64,6 @@ public abstract class BaseDataProducer
 
     @Override
     public final API_T consumer() {
-        return consumer.dataInterface();
+        return consumerApi;
     }
 }
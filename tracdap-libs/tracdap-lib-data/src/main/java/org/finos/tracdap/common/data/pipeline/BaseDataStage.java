@@ -26,6 +26,8 @@ public abstract class BaseDataStage implements DataPipeline.DataStage {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private final StageMetrics metrics = new StageMetrics(getClass().getSimpleName());
+
     private boolean isDone = false;
 
     protected final void markAsDone() {
@@ -37,4 +39,8 @@ public abstract class BaseDataStage implements DataPipeline.DataStage {
     public boolean isDone() {
         return isDone;
     }
+
+    StageMetrics metrics() {
+        return metrics;
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.common.data.ArrowBatchCache;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataPipeline;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+
+public class BatchCacheSource
+        extends BaseDataProducer<DataPipeline.ArrowApi>
+        implements DataPipeline.SourceStage {
+
+    // Replay batches from an ArrowBatchCache entry, in place of reading and decoding from storage
+    // Cached buffers are loaded into a VSR in the request allocator without copying
+
+    private final ArrowBatchCache cache;
+    private final ArrowBatchCache.Entry entry;
+    private final BufferAllocator allocator;
+
+    private ArrowVsrContext root;
+    private VectorLoader loader;
+    private int nextBatch;
+    private boolean released;
+
+    public BatchCacheSource(ArrowBatchCache cache, ArrowBatchCache.Entry entry, BufferAllocator allocator) {
+        super(DataPipeline.ArrowApi.class);
+        this.cache = cache;
+        this.entry = entry;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public void connect() {
+        // No-op
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void pump() {
+
+        if (isDone())
+            return;
+
+        if (root == null) {
+
+            var vsr = VectorSchemaRoot.create(entry.schema(), allocator);
+
+            root = ArrowVsrContext.forSource(vsr, /* vsr ownership */ true, null, false, allocator);
+            loader = new VectorLoader(vsr);
+
+            consumer().onStart(root);
+        }
+
+        while (!isDone() && consumerReady() && root.readyToLoad()) {
+
+            if (nextBatch < entry.batches().size()) {
+
+                loader.load(entry.batches().get(nextBatch++));
+                root.setLoaded();
+
+                consumer().onBatch();
+            }
+            else {
+
+                markAsDone();
+                releaseEntry();
+
+                consumer().onComplete();
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+
+        markAsDone();
+        releaseEntry();
+    }
+
+    @Override
+    public void close() {
+
+        releaseEntry();
+
+        if (root != null) {
+            root.close();
+            root = null;
+        }
+    }
+
+    private void releaseEntry() {
+
+        if (!released) {
+            cache.release(entry);
+            released = true;
+        }
+    }
+}
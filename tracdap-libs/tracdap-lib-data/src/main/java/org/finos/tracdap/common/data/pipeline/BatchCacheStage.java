@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.common.data.ArrowBatchCache;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataPipeline;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class BatchCacheStage
+        extends BaseDataProducer<DataPipeline.ArrowApi>
+        implements
+        DataPipeline.ArrowApi,
+        DataPipeline.DataConsumer<DataPipeline.ArrowApi>,
+        DataPipeline.DataProducer<DataPipeline.ArrowApi> {
+
+    // Pass-through stage that copies decoded batches into an ArrowBatchCache
+    // Batches are copied because decoders are free to reuse their buffers between batches
+    // The entry is only committed to the cache if the full dataset is seen
+
+    private static final Logger log = LoggerFactory.getLogger(BatchCacheStage.class);
+
+    private final ArrowBatchCache cache;
+    private final String cacheKey;
+
+    private ArrowVsrContext batch;
+    private List<ArrowRecordBatch> cachedBatches;
+    private long cachedBytes;
+
+    public BatchCacheStage(ArrowBatchCache cache, String cacheKey) {
+        super(DataPipeline.ArrowApi.class);
+        this.cache = cache;
+        this.cacheKey = cacheKey;
+    }
+
+    @Override
+    public void onStart(ArrowVsrContext batch) {
+
+        this.batch = batch;
+
+        // Dictionary encoded data is not cached, dictionaries are not held in the cache entry
+        var dictionaries = batch.getDictionaries();
+
+        if (dictionaries == null || dictionaries.getDictionaryIds().isEmpty())
+            this.cachedBatches = new ArrayList<>();
+
+        consumer().onStart(batch);
+    }
+
+    @Override
+    public void onBatch() {
+
+        if (cachedBatches != null)
+            cacheBatch();
+
+        consumer().onBatch();
+    }
+
+    @Override
+    public void onComplete() {
+
+        if (cachedBatches != null) {
+            cache.put(cacheKey, batch.getVsr().getSchema(), cachedBatches, cachedBytes);
+            cachedBatches = null;
+        }
+
+        consumer().onComplete();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+
+        try {
+            consumer().onError(error);
+        }
+        finally {
+            releaseBatches();
+        }
+    }
+
+    @Override
+    public DataPipeline.ArrowApi dataInterface() {
+        return this;
+    }
+
+    @Override
+    public boolean isReady() {
+        return consumerReady();
+    }
+
+    @Override
+    public void pump() {
+        // No-op
+    }
+
+    @Override
+    public void close() {
+        releaseBatches();
+    }
+
+    private void cacheBatch() {
+
+        var unloader = new VectorUnloader(batch.getVsr());
+
+        try (var recordBatch = unloader.getRecordBatch()) {
+
+            var batchBytes = 0L;
+
+            for (var buffer : recordBatch.getBuffers())
+                batchBytes += buffer.readableBytes();
+
+            if (cachedBytes + batchBytes > cache.entryLimit() || !cache.reserve(batchBytes)) {
+                abandonCaching("size limit exceeded");
+                return;
+            }
+
+            var copies = new ArrayList<ArrowBuf>(recordBatch.getBuffers().size());
+
+            try {
+
+                for (var buffer : recordBatch.getBuffers()) {
+
+                    var size = buffer.readableBytes();
+                    var copy = cache.allocator().buffer(size);
+                    copy.setBytes(0, buffer, buffer.readerIndex(), size);
+                    copy.writerIndex(size);
+                    copies.add(copy);
+                }
+
+                // Record batch takes its own reference to the copied buffers
+                var cachedBatch = new ArrowRecordBatch(recordBatch.getLength(), recordBatch.getNodes(), copies);
+
+                cachedBatches.add(cachedBatch);
+                cachedBytes += batchBytes;
+            }
+            finally {
+                copies.forEach(ArrowBuf::close);
+            }
+        }
+        catch (OutOfMemoryException e) {
+
+            abandonCaching("out of memory");
+        }
+    }
+
+    private void abandonCaching(String reason) {
+
+        log.info("DATA CACHE: Not caching, {} [{}]", reason, cacheKey);
+
+        releaseBatches();
+    }
+
+    private void releaseBatches() {
+
+        if (cachedBatches != null) {
+            cachedBatches.forEach(ArrowRecordBatch::close);
+            cachedBatches = null;
+        }
+    }
+}
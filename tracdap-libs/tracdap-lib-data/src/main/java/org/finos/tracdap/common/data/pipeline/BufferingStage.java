@@ -34,6 +34,7 @@ public class BufferingStage
         DataPipeline.StreamApi {
 
     private List<ArrowBuf> buffer;
+    private long bufferedBytes;
 
     public BufferingStage() {
         super(DataPipeline.BufferApi.class);
@@ -68,6 +69,9 @@ public class BufferingStage
     public void onNext(ArrowBuf chunk) {
 
         buffer.add(chunk);
+
+        bufferedBytes += chunk.readableBytes();
+        metrics().recordBuffered(bufferedBytes);
     }
 
     @Override
@@ -17,22 +17,27 @@
 
 package org.finos.tracdap.common.data.pipeline;
 
+import org.finos.tracdap.common.codec.ICodec;
+import org.finos.tracdap.common.data.BufferBudget;
 import org.finos.tracdap.common.data.DataPipeline;
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.exception.ETracInternal;
 import org.finos.tracdap.common.exception.ETracPublic;
 import org.finos.tracdap.common.exception.EUnexpected;
 
+import io.netty.util.concurrent.OrderedEventExecutor;
 import org.apache.arrow.memory.ArrowBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 
 public class DataPipelineImpl implements DataPipeline {
@@ -41,20 +46,28 @@ public class DataPipelineImpl implements DataPipeline {
 
     private final IDataContext ctx;
     private final List<DataStage> stages;
-    private final AtomicBoolean pumpScheduled;
+    private final List<Segment> segments;
+    private final List<StageMetrics> stageMetrics;
     private final CompletableFuture<Void> completion;
+    private final BufferBudget bufferBudget;
 
     private SourceStage sourceStage;
     private SinkStage sinkStage;
     private boolean started;
+    private volatile boolean shutdown;
 
     public DataPipelineImpl(IDataContext ctx) {
 
         this.ctx = ctx;
         this.stages = new ArrayList<>();
-        this.pumpScheduled = new AtomicBoolean(false);
+        this.segments = new ArrayList<>();
+        this.stageMetrics = new ArrayList<>();
         this.completion = new CompletableFuture<>();
 
+        // Each pipeline gets its own byte budget for buffering, inside the service budget if there is one
+        var serviceBudget = ctx.bufferBudget();
+        this.bufferBudget = serviceBudget != null ? serviceBudget.newRequestBudget() : BufferBudget.forRequest();
+
         this.started = false;
     }
 
@@ -69,27 +82,63 @@ public class DataPipelineImpl implements DataPipeline {
         log.info("Executing data pipeline");
 
         started = true;
+        buildSegments();
+        instrumentStages();
+
         sourceStage.connect();
         sinkStage.connect();
 
         // Schedule running the data pump on the pipeline's event loop
-        pumpScheduled.set(true);
-        ctx.eventLoopExecutor().execute(this::runDataPump);
+        pumpData();
 
         return completion;
     }
 
     void pumpData() {
 
-        // Schedule running the data pump on the pipeline's event loop
+        // Schedule running the data pump for each segment, on the executor for that segment
+        // Without offloading there is a single segment which runs on the pipeline's event loop
+
+        for (var segment : segments)
+            schedulePump(segment);
+    }
 
-        var notAlreadyScheduled = pumpScheduled.compareAndSet(false, true);
+    void pumpSegment(DataStage stage) {
+
+        // Schedule the pump only for the segment containing the given stage
+        // Handoff stages use this so a change on one side of the boundary does not wake up every segment
+
+        var index = stages.indexOf(stage);
+
+        for (var segment : segments) {
+            if (index >= segment.first && index <= segment.last) {
+                schedulePump(segment);
+                return;
+            }
+        }
+
+        pumpData();
+    }
+
+    void pumpUpstreamSegment(DataStage stage) {
+
+        var index = stages.indexOf(stage);
+
+        if (index > 0)
+            pumpSegment(stages.get(index - 1));
+        else
+            pumpData();
+    }
+
+    private void schedulePump(Segment segment) {
+
+        var notAlreadyScheduled = segment.pumpScheduled.compareAndSet(false, true);
 
         if (notAlreadyScheduled)
-            ctx.eventLoopExecutor().execute(this::runDataPump);
+            segment.executor.execute(() -> runDataPump(segment));
     }
 
-    private void runDataPump() {
+    private void runDataPump(Segment segment) {
 
         // The data pump makes one pass over all the stages in the pipeline, starting at the back
         // Stages are pumped if their consumer is ready to accept data
@@ -105,16 +154,20 @@ public class DataPipelineImpl implements DataPipeline {
         // Any errors that propagate are picked up using reportUnhandledError (the same as the source/sink stages)
         // Since this is a top level call on teh event loop, it is important to make sure no errors get lost
 
+        // With offloading, each segment is pumped separately on its own executor
+        // The stage after a segment is always a StreamHandoff, which is safe to query from either side
+
         try {
 
-            pumpScheduled.set(false);
+            segment.pumpScheduled.set(false);
 
-            if (completion.isDone())
+            if (shutdown || completion.isDone())
                 return;
 
-            var consumerReady = true;
+            var consumerReady = segment.last == stages.size() - 1 || stages.get(segment.last + 1).isReady();
+            var pumpTime = System.nanoTime();
 
-            for (var i = stages.size() - 1; i >= 0; i--) {
+            for (var i = segment.last; i >= segment.first; i--) {
 
                 var stage = stages.get(i);
 
@@ -122,8 +175,10 @@ public class DataPipelineImpl implements DataPipeline {
                 if (stage.isDone())
                     return;
 
+                stageMetrics.get(i).recordBlocked(!consumerReady, pumpTime);
+
                 if (consumerReady)
-                    stage.pump();
+                    pumpStage(i, stage);
 
                 consumerReady = stage.isReady();
             }
@@ -133,8 +188,35 @@ public class DataPipelineImpl implements DataPipeline {
         }
     }
 
+    BufferBudget bufferBudget() {
+        return bufferBudget;
+    }
+
+    private void pumpStage(int index, DataStage stage) {
+
+        // Sources are driven from outside the pipeline, so their time is not tracked
+        if (index == 0) {
+            stage.pump();
+            return;
+        }
+
+        var start = System.nanoTime();
+
+        try {
+            stage.pump();
+        }
+        finally {
+            stageMetrics.get(index).recordBusy(System.nanoTime() - start);
+        }
+    }
+
     void requestCancel() {
 
+        if (!onPipelineThread()) {
+            ctx.eventLoopExecutor().execute(this::requestCancel);
+            return;
+        }
+
         try {
 
             log.warn("Request to cancel the data operation");
@@ -148,9 +230,7 @@ public class DataPipelineImpl implements DataPipeline {
                 sinkStage.terminate(error);
             }
 
-            closeAllStages();
-
-            completion.completeExceptionally(error);
+            closeAllStages(() -> completion.completeExceptionally(error));
         }
         catch (Throwable shutdownError) {
 
@@ -161,6 +241,11 @@ public class DataPipelineImpl implements DataPipeline {
 
     void reportComplete() {
 
+        if (!onPipelineThread()) {
+            ctx.eventLoopExecutor().execute(this::reportComplete);
+            return;
+        }
+
         try {
 
             // Expect all the stages have gone down cleanly
@@ -178,12 +263,12 @@ public class DataPipelineImpl implements DataPipeline {
                 sinkStage.terminate(error);
             }
 
-            closeAllStages();
-
             // Only signal completion after successful shutdown
 
-            log.info("Data pipeline complete");
-            completion.complete(null);
+            closeAllStages(() -> {
+                log.info("Data pipeline complete: {}", metricsSummary());
+                completion.complete(null);
+            });
         }
         catch (Throwable shutdownError) {
 
@@ -194,6 +279,11 @@ public class DataPipelineImpl implements DataPipeline {
 
     void reportRegularError(Throwable error) {
 
+        if (!onPipelineThread()) {
+            ctx.eventLoopExecutor().execute(() -> reportRegularError(error));
+            return;
+        }
+
         try {
 
             // Expect all the stages have gone down cleanly
@@ -202,11 +292,11 @@ public class DataPipelineImpl implements DataPipeline {
 
             sourceStage.cancel();
             sinkStage.terminate(error);
-            sinkStage.terminate(error);
 
-            closeAllStages();
-
-            completion.completeExceptionally(error);
+            closeAllStages(() -> {
+                log.warn("Data pipeline failed: {}", metricsSummary());
+                completion.completeExceptionally(error);
+            });
         }
         catch (Throwable shutdownError) {
 
@@ -220,6 +310,11 @@ public class DataPipelineImpl implements DataPipeline {
 
     void reportUnhandledError(Throwable error) {
 
+        if (!onPipelineThread()) {
+            ctx.eventLoopExecutor().execute(() -> reportUnhandledError(error));
+            return;
+        }
+
         try {
 
             // Expect the stages are in an inconsistent state
@@ -231,9 +326,10 @@ public class DataPipelineImpl implements DataPipeline {
             sourceStage.cancel();
             sinkStage.terminate(unhandled);
 
-            closeAllStages();
-
-            completion.completeExceptionally(unhandled);
+            closeAllStages(() -> {
+                log.warn("Data pipeline failed: {}", metricsSummary());
+                completion.completeExceptionally(unhandled);
+            });
         }
         catch (Throwable shutdownError) {
 
@@ -245,11 +341,53 @@ public class DataPipelineImpl implements DataPipeline {
         }
     }
 
-    private void closeAllStages() {
+    private boolean onPipelineThread() {
+
+        // Without offloading, callers are already on the pipeline's event loop (this is not checked, for compatibility)
+        // With offloading, shutdown logic is moved onto the event loop so source and sink are only touched from there
+
+        return segments.size() <= 1 || ctx.eventLoopExecutor().inEventLoop();
+    }
+
+    private void closeAllStages(Runnable onClosed) {
 
         // This method is internal, to trigger a shutdown externally use requestCancel(), or report compete / error.
 
-        for (var stage : stages) {
+        shutdown = true;
+
+        if (segments.size() <= 1) {
+            closeStages(0, stages.size() - 1);
+            onClosed.run();
+            return;
+        }
+
+        // Stages in offloaded segments must be closed on their own executor
+        // Completion is only signalled once every segment has closed, so no stages are still running afterwards
+
+        var segmentsClosed = new ArrayList<CompletableFuture<Void>>(segments.size());
+
+        for (var segment : segments) {
+
+            if (segment.executor.inEventLoop()) {
+                closeStages(segment.first, segment.last);
+                segmentsClosed.add(CompletableFuture.completedFuture(null));
+            }
+            else {
+                var closed = CompletableFuture.runAsync(() -> closeStages(segment.first, segment.last), segment.executor);
+                segmentsClosed.add(closed);
+            }
+        }
+
+        CompletableFuture
+                .allOf(segmentsClosed.toArray(CompletableFuture[]::new))
+                .whenCompleteAsync((result, error) -> onClosed.run(), ctx.eventLoopExecutor());
+    }
+
+    private void closeStages(int first, int last) {
+
+        for (var i = first; i <= last; i++) {
+
+            var stage = stages.get(i);
 
             try {
                 stage.close();
@@ -261,6 +399,155 @@ public class DataPipelineImpl implements DataPipeline {
     }
 
 
+    // -----------------------------------------------------------------------------------------------------------------
+    // METRICS
+    // -----------------------------------------------------------------------------------------------------------------
+
+
+    @Override
+    public List<StageMetrics> metrics() {
+        return Collections.unmodifiableList(stageMetrics);
+    }
+
+    private void instrumentStages() {
+
+        // Counters are recorded on the calls between stages, which go through an instrumented wrapper
+        // This happens after offloading is set up, so handoff stages are included
+
+        for (var stage : stages) {
+
+            var metrics = stage instanceof BaseDataStage
+                    ? ((BaseDataStage) stage).metrics()
+                    : new StageMetrics(stage.getClass().getSimpleName());
+
+            stageMetrics.add(metrics);
+        }
+
+        for (var i = 0; i < stages.size() - 1; i++) {
+
+            var producer = (BaseDataProducer<?>) stages.get(i);
+            producer.instrument(stageMetrics.get(i + 1), i == 0);
+        }
+    }
+
+    private String metricsSummary() {
+
+        // Stage metrics are updated by the threads that pump each segment, so only take a snapshot here
+        // Stages that were still blocked when the pipeline stopped are counted up to now
+        var now = System.nanoTime();
+
+        return stageMetrics.stream()
+                .map(metrics -> metrics.summary(now))
+                .collect(Collectors.joining(" -> "));
+    }
+
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // OFFLOADING
+    // -----------------------------------------------------------------------------------------------------------------
+
+
+    private void buildSegments() {
+
+        // CPU-heavy codec stages can be run on a worker executor, so the event loop is only used for I/O
+        // The offloaded segment starts at the first decoder and ends at the last encoder after it
+        // Both boundaries must be byte streams, which are handed across with StreamHandoff stages
+        // Arrow batches never cross between threads, so all the vector handling in a segment stays single-threaded
+
+        var eventLoop = ctx.eventLoopExecutor();
+        var worker = ctx.workerExecutor();
+
+        var start = worker != null && worker != eventLoop ? offloadStart() : -1;
+        var end = start > 0 ? offloadEnd(start) : -1;
+
+        if (start <= 0 || end < 0) {
+            segments.add(new Segment(eventLoop, 0, stages.size() - 1));
+            return;
+        }
+
+        var inbound = new StreamHandoff(this, bufferBudget);
+        var outbound = new StreamHandoff(this, bufferBudget);
+
+        var beforeStart = (BaseDataProducer<?>) stages.get(start - 1);
+        var endStage = (BaseDataProducer<?>) stages.get(end);
+        var afterEnd = (DataConsumer<?>) stages.get(end + 1);
+
+        beforeStart.bind(inbound);
+        inbound.bind((DataConsumer<?>) stages.get(start));
+        endStage.bind(outbound);
+        outbound.bind(afterEnd);
+
+        stages.add(end + 1, outbound);
+        stages.add(start, inbound);
+
+        // Indices after inserting the inbound handoff at start
+        var workerFirst = start;
+        var workerLast = end + 1;
+
+        segments.add(new Segment(eventLoop, 0, workerFirst - 1));
+        segments.add(new Segment(worker, workerFirst, workerLast));
+        segments.add(new Segment(eventLoop, workerLast + 1, stages.size() - 1));
+
+        log.info("DATA PIPELINE: Offloading stages {} to {} onto a worker thread",
+                stages.get(workerFirst + 1).getClass().getSimpleName(),
+                stages.get(workerLast).getClass().getSimpleName());
+    }
+
+    private int offloadStart() {
+
+        for (var i = 1; i < stages.size(); i++) {
+
+            if (!(stages.get(i) instanceof ICodec.Decoder))
+                continue;
+
+            // Buffering stages inserted for buffer decoders go with the decoder
+            var start = stages.get(i - 1) instanceof BufferingStage ? i - 1 : i;
+
+            if (start > 0 && producesStream(stages.get(start - 1)))
+                return start;
+
+            return -1;
+        }
+
+        return -1;
+    }
+
+    private int offloadEnd(int start) {
+
+        for (var i = stages.size() - 2; i > start; i--) {
+
+            if (stages.get(i) instanceof ICodec.Encoder && producesStream(stages.get(i))) {
+
+                if (stages.get(i + 1) instanceof DataConsumer<?>)
+                    return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean producesStream(DataStage stage) {
+
+        return stage instanceof BaseDataProducer<?> &&
+                ((BaseDataProducer<?>) stage).consumerType() == StreamApi.class;
+    }
+
+    private static class Segment {
+
+        final OrderedEventExecutor executor;
+        final int first;
+        final int last;
+        final AtomicBoolean pumpScheduled;
+
+        Segment(OrderedEventExecutor executor, int first, int last) {
+            this.executor = executor;
+            this.first = first;
+            this.last = last;
+            this.pumpScheduled = new AtomicBoolean(false);
+        }
+    }
+
+
     // -----------------------------------------------------------------------------------------------------------------
     // PIPELINE ASSEMBLY
     // -----------------------------------------------------------------------------------------------------------------
@@ -324,7 +611,7 @@ public class DataPipelineImpl implements DataPipeline {
 
     public DataPipeline addSink(Flow.Subscriber<ArrowBuf> sink) {
 
-        var sinkBuffer = new ElasticBuffer();
+        var sinkBuffer = new ElasticBuffer(this, bufferBudget);
         addStage(sinkBuffer);
 
         var reactiveSink = new ReactiveByteSink(this, sink);
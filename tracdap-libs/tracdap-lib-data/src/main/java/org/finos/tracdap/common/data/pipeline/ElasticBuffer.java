@@ -17,8 +17,8 @@
 
 package org.finos.tracdap.common.data.pipeline;
 
+import org.finos.tracdap.common.data.BufferBudget;
 import org.finos.tracdap.common.data.DataPipeline;
-import org.finos.tracdap.common.exception.ETracInternal;
 
 import org.apache.arrow.memory.ArrowBuf;
 import org.slf4j.Logger;
@@ -35,17 +35,27 @@ public class ElasticBuffer
         DataPipeline.DataConsumer<DataPipeline.StreamApi>,
         DataPipeline.StreamApi {
 
+    // Flow control is based on the bytes held in the buffer, not the number of chunks
+    // The buffer always accepts incoming data, it goes not-ready when the byte budget is used up
+    // That stops upstream stages pumping and pauses the source, until the budget has capacity again
+    // Budgets are per request and per service, so requests also pause when the whole service is holding too much
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    private static final int QUEUE_LIMIT = 1024;
-    private static final int QUEUE_SAFETY_LIMIT = 512;
+    private final DataPipelineImpl pipeline;
+    private final BufferBudget budget;
 
     private final Queue<ArrowBuf> queue;
+    private long queuedBytes;
     private boolean eos;
 
-    public ElasticBuffer() {
+    private volatile boolean waitingForBudget;
+
+    ElasticBuffer(DataPipelineImpl pipeline, BufferBudget budget) {
         super(DataPipeline.StreamApi.class);
-        this.queue = new ArrayDeque<>(QUEUE_LIMIT);
+        this.pipeline = pipeline;
+        this.budget = budget;
+        this.queue = new ArrayDeque<>();
     }
 
     @Override
@@ -57,7 +67,7 @@ public class ElasticBuffer
     public void pump() {
 
         while (consumerReady() && !queue.isEmpty()) {
-            var chunk = queue.remove();
+            var chunk = dequeue();
             consumer().onNext(chunk);
         }
 
@@ -69,7 +79,28 @@ public class ElasticBuffer
 
     @Override
     public boolean isReady() {
-        return queue.size() < (QUEUE_LIMIT - QUEUE_SAFETY_LIMIT) && !isDone();
+
+        if (isDone())
+            return false;
+
+        // An empty buffer is always ready, otherwise a budget used up further back could never drain
+        if (queue.isEmpty() || budget.hasCapacity())
+            return true;
+
+        // Ask the budget for a wake-up when space is released, possibly by another request
+        // Only one wake-up is registered at a time, the pump will check again when it runs
+
+        if (!waitingForBudget) {
+
+            waitingForBudget = true;
+
+            budget.onCapacity(() -> {
+                waitingForBudget = false;
+                pipeline.pumpData();
+            });
+        }
+
+        return false;
     }
 
     @Override
@@ -87,13 +118,12 @@ public class ElasticBuffer
             return;
         }
 
-        var queued = queue.offer(chunk);
+        var chunkBytes = chunk.readableBytes();
 
-        if (!queued) {
-            log.warn("Data buffer has overflowed, this data pipeline will fail");
-            chunk.close();
-            throw new ETracInternal("Data buffer has overflowed");
-        }
+        queue.add(chunk);
+        queuedBytes += chunkBytes;
+        budget.acquire(chunkBytes);
+        metrics().recordBuffered(queuedBytes);
 
         pump();
     }
@@ -123,6 +153,17 @@ public class ElasticBuffer
         }
     }
 
+    private ArrowBuf dequeue() {
+
+        var chunk = queue.remove();
+        var chunkBytes = chunk.readableBytes();
+
+        queuedBytes -= chunkBytes;
+        budget.release(chunkBytes);
+
+        return chunk;
+    }
+
     private void doComplete() {
 
         try {
@@ -138,7 +179,7 @@ public class ElasticBuffer
     public void close() {
 
         while (!queue.isEmpty()) {
-            var chunk = queue.remove();
+            var chunk = dequeue();
             chunk.close();
         }
     }
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.grpc.GrpcErrorMapping;
+
+import org.apache.arrow.flight.FlightProducer;
+import org.apache.arrow.flight.grpc.StatusUtils;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class FlightDataSink
+        extends BaseDataSink<DataPipeline.ArrowApi>
+        implements DataPipeline.ArrowApi {
+
+    // Send record batches straight from the pipeline to an Arrow Flight stream
+    // Flight writes the IPC messages from the vector buffers, there is no intermediate encoding step
+
+    // Zero-copy is not used, the root is handed back to the producer as soon as putNext() returns
+    // If the listener is not ready, the batch is held in the root (still loaded) until the onReady callback
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final FlightProducer.ServerStreamListener listener;
+
+    private ArrowVsrContext root;
+    private boolean completePending;
+    private volatile boolean cancelled;
+
+    public FlightDataSink(DataPipeline pipeline, FlightProducer.ServerStreamListener listener) {
+
+        super(pipeline);
+
+        this.listener = listener;
+    }
+
+    @Override
+    public DataPipeline.ArrowApi dataInterface() {
+        return this;
+    }
+
+    @Override
+    public void connect() {
+
+        // Flight callbacks arrive on the gRPC threads, pumpData() moves the work onto the pipeline event loop
+
+        listener.setOnCancelHandler(this::apiOnCancel);
+        listener.setOnReadyHandler(pipeline::pumpData);
+    }
+
+    @Override
+    public boolean isReady() {
+        return !cancelled && listener.isReady();
+    }
+
+    @Override
+    public void pump() {
+
+        // Send any batch that was held back while the listener was not ready
+
+        if (isDone() || root == null)
+            return;
+
+        if (root.readyToUnload())
+            sendBatch();
+
+        if (completePending && root.readyToLoad())
+            sendComplete();
+    }
+
+    @Override
+    public void terminate(Throwable error) {
+
+        if (isDone()) {
+            log.warn("Requested termination, but stage is already down");
+            return;
+        }
+
+        markAsDone();
+
+        if (!cancelled)
+            listener.error(flightError(error));
+    }
+
+    @Override
+    public void close() {
+
+        // Root is owned by the stage that produced it
+        root = null;
+    }
+
+    @Override
+    public void onStart(ArrowVsrContext context) {
+
+        root = context;
+
+        var dictionaries = root.getDictionaries() != null
+                ? root.getDictionaries()
+                : new DictionaryProvider.MapDictionaryProvider();
+
+        listener.start(root.getVsr(), dictionaries);
+    }
+
+    @Override
+    public void onBatch() {
+
+        sendBatch();
+    }
+
+    @Override
+    public void onComplete() {
+
+        // Do not complete the stream until a held batch has been sent
+
+        if (root != null && root.readyToUnload()) {
+            completePending = true;
+            return;
+        }
+
+        sendComplete();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+
+        markAsDone();
+
+        if (!cancelled)
+            listener.error(flightError(error));
+
+        reportRegularError(error);
+    }
+
+    private void sendBatch() {
+
+        if (cancelled || !listener.isReady())
+            return;
+
+        try {
+            listener.putNext();
+            root.setUnloaded();
+        }
+        catch (Throwable e) {
+            markAsDone();
+            reportRegularError(e);
+        }
+    }
+
+    private void sendComplete() {
+
+        completePending = false;
+
+        markAsDone();
+        listener.completed();
+
+        reportComplete();
+    }
+
+    private void apiOnCancel() {
+
+        cancelled = true;
+
+        if (!isDone())
+            pipeline.requestCancel();
+    }
+
+    private static Throwable flightError(Throwable error) {
+
+        // Apply the regular TRAC error mapping, so Flight clients see the same status codes as the gRPC APIs
+        var grpcError = GrpcErrorMapping.processError(error);
+        return StatusUtils.fromGrpcRuntimeException(grpcError);
+    }
+}
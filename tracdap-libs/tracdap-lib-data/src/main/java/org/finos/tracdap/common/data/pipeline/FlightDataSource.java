@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.ArrowVsrSchema;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.exception.EDataConstraint;
+
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+public class FlightDataSource
+        extends BaseDataProducer<DataPipeline.ArrowApi>
+        implements DataPipeline.SourceStage {
+
+    // Feed record batches from an incoming Arrow Flight stream into a data pipeline
+    // Reading a Flight stream is blocking, so feed() runs on a worker thread and hands batches to the event loop
+    // Batches are not copied, unloading from the Flight root retains the received buffers
+    // The queue between the two threads is small, so a slow pipeline applies backpressure to the client
+    // If a required schema is set, the incoming schema is checked before any data is passed to the pipeline
+
+    private static final int QUEUE_SIZE = 2;
+    private static final long OFFER_TIMEOUT = 100;
+
+    private final FlightStream stream;
+    private final IDataContext dataContext;
+    private final BlockingQueue<ArrowRecordBatch> queue;
+
+    private volatile Schema schema;
+    private volatile boolean streamComplete;
+    private volatile Throwable streamError;
+    private volatile boolean cancelled;
+
+    private volatile ArrowVsrSchema requiredSchema;
+    private boolean connected;
+
+    private ArrowVsrContext root;
+    private VectorLoader loader;
+
+    public FlightDataSource(FlightStream stream, IDataContext dataContext) {
+
+        super(DataPipeline.ArrowApi.class);
+
+        this.stream = stream;
+        this.dataContext = dataContext;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    }
+
+    public void feed() {
+
+        // Runs on the calling (worker) thread, blocks until the Flight stream is fully received
+
+        try {
+
+            var flightRoot = stream.getRoot();
+            var unloader = new VectorUnloader(flightRoot);
+
+            schema = flightRoot.getSchema();
+            dataContext.eventLoopExecutor().execute(this::sendBatches);
+
+            while (!cancelled && stream.next()) {
+
+                var batch = unloader.getRecordBatch();
+
+                while (!queue.offer(batch, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        batch.close();
+                        return;
+                    }
+                }
+
+                dataContext.eventLoopExecutor().execute(this::sendBatches);
+            }
+
+            streamComplete = true;
+        }
+        catch (InterruptedException e) {
+            streamError = e;
+            Thread.currentThread().interrupt();
+        }
+        catch (Throwable e) {
+            streamError = e;
+        }
+        finally {
+            dataContext.eventLoopExecutor().execute(this::sendBatches);
+        }
+    }
+
+    public void requireSchema(ArrowVsrSchema requiredSchema) {
+
+        // Must be set on the event loop before the pipeline starts
+        this.requiredSchema = requiredSchema;
+    }
+
+    @Override
+    public void connect() {
+
+        // Data arrives when feed() is called, batches are held until the pipeline is connected
+        connected = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void pump() {
+        sendBatches();
+    }
+
+    private void sendBatches() {
+
+        if (isDone()) {
+            releaseQueue();
+            return;
+        }
+
+        if (!connected)
+            return;
+
+        // Schema is not available until the first message arrives
+        if (schema == null) {
+
+            if (streamError != null) {
+                markAsDone();
+                consumer().onError(streamError);
+            }
+
+            return;
+        }
+
+        if (root == null) {
+
+            if (requiredSchema != null && !schemaMatches(schema, requiredSchema)) {
+
+                var message = String.format(
+                        "Flight stream schema does not match the dataset schema: %s",
+                        schema.getFields());
+
+                // Stop reading from the client, the stream will not be saved
+                cancel();
+                consumer().onError(new EDataConstraint(message));
+
+                return;
+            }
+
+            var allocator = dataContext.arrowAllocator();
+            var vsr = VectorSchemaRoot.create(schema, allocator);
+
+            // Dictionaries are held by the Flight stream, which stays open until the upload is complete
+            root = ArrowVsrContext.forSource(vsr, /* vsr ownership */ true, stream.getDictionaryProvider(), false, allocator);
+            loader = new VectorLoader(vsr);
+
+            consumer().onStart(root);
+        }
+
+        while (!isDone() && consumerReady() && root.readyToLoad()) {
+
+            // Read the stream state before polling, so the last batch cannot be missed
+
+            var complete = streamComplete;
+            var error = streamError;
+            var batch = queue.poll();
+
+            if (batch != null) {
+
+                try (batch) {
+                    loader.load(batch);
+                }
+
+                root.setLoaded();
+                consumer().onBatch();
+            }
+            else if (error != null) {
+
+                markAsDone();
+                consumer().onError(error);
+            }
+            else if (complete) {
+
+                markAsDone();
+                consumer().onComplete();
+            }
+            else {
+
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+
+        markAsDone();
+        cancelled = true;
+
+        releaseQueue();
+    }
+
+    @Override
+    public void close() {
+
+        cancelled = true;
+        releaseQueue();
+
+        if (root != null) {
+            root.close();
+            root = null;
+        }
+    }
+
+    private static boolean schemaMatches(Schema incoming, ArrowVsrSchema required) {
+
+        // Dictionary fields are matched by name only, because dictionaries may not be received yet
+        // All other fields must have the same name (case-insensitive) and the same Arrow type
+
+        var incomingFields = incoming.getFields();
+        var requiredFields = required.logical().getFields();
+
+        if (incomingFields.size() != requiredFields.size())
+            return false;
+
+        for (var i = 0; i < incomingFields.size(); i++) {
+
+            var incomingField = incomingFields.get(i);
+            var requiredField = requiredFields.get(i);
+
+            if (!incomingField.getName().equalsIgnoreCase(requiredField.getName()))
+                return false;
+
+            if (incomingField.getDictionary() == null && !incomingField.getType().equals(requiredField.getType()))
+                return false;
+        }
+
+        return true;
+    }
+
+    private void releaseQueue() {
+
+        ArrowRecordBatch batch;
+
+        while ((batch = queue.poll()) != null)
+            batch.close();
+    }
+}
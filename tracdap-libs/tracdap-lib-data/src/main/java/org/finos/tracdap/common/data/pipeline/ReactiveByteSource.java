@@ -35,7 +35,9 @@ public class ReactiveByteSource
         DataPipeline.SourceStage,
         Flow.Subscriber<ArrowBuf> {
 
-    private static final int BACKPRESSURE_HEADROOM = 256;
+    // Keep the number of outstanding chunks low, so the byte budget in downstream buffers is effective
+    // Chunks already requested will always be delivered, even if the pipeline has paused
+    private static final int BACKPRESSURE_HEADROOM = 8;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
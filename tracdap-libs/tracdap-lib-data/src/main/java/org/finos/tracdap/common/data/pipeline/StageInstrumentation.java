@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.exception.EUnexpected;
+
+import org.apache.arrow.memory.ArrowBuf;
+
+import java.util.List;
+
+
+class StageInstrumentation {
+
+    // Wrap the data interface between two stages, to count the data passed and time the calls
+    // Time spent in a call is added to the consumer and taken away from the producer,
+    // so busy time for each stage excludes the stages after it
+    // Sources are driven from outside the pipeline, so their time is not tracked
+
+    @SuppressWarnings("unchecked")
+    static <API_T extends DataPipeline.DataInterface<API_T>> API_T wrap(
+            Class<API_T> apiType, API_T target,
+            StageMetrics producer, StageMetrics consumer,
+            boolean producerIsSource) {
+
+        var edge = new Edge(producer, consumer, producerIsSource);
+
+        if (apiType == DataPipeline.StreamApi.class)
+            return (API_T) new InstrumentedStreamApi((DataPipeline.StreamApi) target, edge);
+
+        if (apiType == DataPipeline.ArrowApi.class)
+            return (API_T) new InstrumentedArrowApi((DataPipeline.ArrowApi) target, edge);
+
+        if (apiType == DataPipeline.BufferApi.class)
+            return (API_T) new InstrumentedBufferApi((DataPipeline.BufferApi) target, edge);
+
+        throw new EUnexpected();
+    }
+
+    private static class Edge {
+
+        final StageMetrics producer;
+        final StageMetrics consumer;
+        final boolean producerIsSource;
+
+        Edge(StageMetrics producer, StageMetrics consumer, boolean producerIsSource) {
+            this.producer = producer;
+            this.consumer = consumer;
+            this.producerIsSource = producerIsSource;
+        }
+
+        long start() {
+            return System.nanoTime();
+        }
+
+        void finish(long start) {
+
+            var elapsed = System.nanoTime() - start;
+
+            consumer.recordBusy(elapsed);
+
+            if (!producerIsSource)
+                producer.recordBusy(-elapsed);
+        }
+    }
+
+    private static class InstrumentedStreamApi implements DataPipeline.StreamApi {
+
+        private final DataPipeline.StreamApi target;
+        private final Edge edge;
+
+        InstrumentedStreamApi(DataPipeline.StreamApi target, Edge edge) {
+            this.target = target;
+            this.edge = edge;
+        }
+
+        @Override
+        public DataPipeline.StreamApi dataInterface() {
+            return this;
+        }
+
+        @Override
+        public void onStart() {
+
+            var start = edge.start();
+
+            try {
+                target.onStart();
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onNext(ArrowBuf chunk) {
+
+            // Read the size before the call, ownership of the chunk passes to the consumer
+            edge.producer.recordBytes(edge.consumer, chunk.readableBytes());
+
+            var start = edge.start();
+
+            try {
+                target.onNext(chunk);
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+
+            var start = edge.start();
+
+            try {
+                target.onComplete();
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+
+            var start = edge.start();
+
+            try {
+                target.onError(error);
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+    }
+
+    private static class InstrumentedArrowApi implements DataPipeline.ArrowApi {
+
+        private final DataPipeline.ArrowApi target;
+        private final Edge edge;
+        private ArrowVsrContext batch;
+
+        InstrumentedArrowApi(DataPipeline.ArrowApi target, Edge edge) {
+            this.target = target;
+            this.edge = edge;
+        }
+
+        @Override
+        public DataPipeline.ArrowApi dataInterface() {
+            return this;
+        }
+
+        @Override
+        public void onStart(ArrowVsrContext context) {
+
+            this.batch = context;
+
+            var start = edge.start();
+
+            try {
+                target.onStart(context);
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onBatch() {
+
+            edge.producer.recordRows(edge.consumer, batch.getVsr().getRowCount());
+
+            var start = edge.start();
+
+            try {
+                target.onBatch();
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+
+            var start = edge.start();
+
+            try {
+                target.onComplete();
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+
+            var start = edge.start();
+
+            try {
+                target.onError(error);
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+    }
+
+    private static class InstrumentedBufferApi implements DataPipeline.BufferApi {
+
+        private final DataPipeline.BufferApi target;
+        private final Edge edge;
+
+        InstrumentedBufferApi(DataPipeline.BufferApi target, Edge edge) {
+            this.target = target;
+            this.edge = edge;
+        }
+
+        @Override
+        public DataPipeline.BufferApi dataInterface() {
+            return this;
+        }
+
+        @Override
+        public void onBuffer(List<ArrowBuf> buffer) {
+
+            var bytes = 0L;
+
+            for (var chunk : buffer)
+                bytes += chunk.readableBytes();
+
+            edge.producer.recordBytes(edge.consumer, bytes);
+
+            var start = edge.start();
+
+            try {
+                target.onBuffer(buffer);
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+
+            var start = edge.start();
+
+            try {
+                target.onError(error);
+            }
+            finally {
+                edge.finish(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.common.data.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class StageMetrics {
+
+    // Counters for a single stage in a data pipeline, updated as data passes between stages
+    // Stages either side of a thread handoff can be updated from two threads, so counters are thread safe
+    // Busy time excludes time spent inside the next stage, so each stage only reports its own work
+    // Blocked time is time when the next stage was not ready, which is only sampled when the pipeline pumps
+
+    private final String stageName;
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder rowsIn = new LongAdder();
+    private final LongAdder rowsOut = new LongAdder();
+    private final LongAdder batchesIn = new LongAdder();
+    private final LongAdder batchesOut = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong peakBufferedBytes = new AtomicLong();
+
+    // Only updated by the thread that pumps this stage, other threads can read it to take a snapshot
+    private volatile long blockedSince;
+
+    StageMetrics(String stageName) {
+        this.stageName = stageName;
+    }
+
+    public String stageName() {
+        return stageName;
+    }
+
+    public long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long bytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long rowsIn() {
+        return rowsIn.sum();
+    }
+
+    public long rowsOut() {
+        return rowsOut.sum();
+    }
+
+    public long batchesIn() {
+        return batchesIn.sum();
+    }
+
+    public long batchesOut() {
+        return batchesOut.sum();
+    }
+
+    public long busyNanos() {
+        return busyNanos.sum();
+    }
+
+    public long blockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    public long peakBufferedBytes() {
+        return peakBufferedBytes.get();
+    }
+
+    void recordBytes(StageMetrics consumer, long bytes) {
+
+        bytesOut.add(bytes);
+        batchesOut.increment();
+        consumer.bytesIn.add(bytes);
+        consumer.batchesIn.increment();
+    }
+
+    void recordRows(StageMetrics consumer, long rows) {
+
+        rowsOut.add(rows);
+        batchesOut.increment();
+        consumer.rowsIn.add(rows);
+        consumer.batchesIn.increment();
+    }
+
+    void recordBusy(long nanos) {
+        busyNanos.add(nanos);
+    }
+
+    void recordBuffered(long bytes) {
+
+        // Avoid the CAS unless there is a new peak
+        if (bytes > peakBufferedBytes.get())
+            peakBufferedBytes.accumulateAndGet(bytes, Math::max);
+    }
+
+    void recordBlocked(boolean blocked, long now) {
+
+        if (blocked && blockedSince == 0) {
+            blockedSince = now;
+        }
+        else if (!blocked && blockedSince != 0) {
+            blockedNanos.add(now - blockedSince);
+            blockedSince = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        return summary(System.nanoTime());
+    }
+
+    String summary(long now) {
+
+        // Snapshot of the counters, a stage that is still blocked is counted up to now without updating any state
+        // This is safe to call from any thread
+
+        var since = blockedSince;
+        var blocked = blockedNanos.sum() + (since != 0 ? now - since : 0);
+
+        var summary = new StringBuilder(stageName).append("[");
+
+        if (batchesIn.sum() > 0)
+            appendCounts(summary, "in", bytesIn.sum(), rowsIn.sum(), batchesIn.sum());
+
+        if (batchesOut.sum() > 0)
+            appendCounts(summary, "out", bytesOut.sum(), rowsOut.sum(), batchesOut.sum());
+
+        summary.append("busy=").append(busyNanos.sum() / 1000000).append("ms");
+        summary.append(", blocked=").append(blocked / 1000000).append("ms");
+
+        if (peakBufferedBytes.get() > 0)
+            summary.append(", peak=").append(peakBufferedBytes.get()).append("B");
+
+        return summary.append("]").toString();
+    }
+
+    private static void appendCounts(StringBuilder summary, String label, long bytes, long rows, long batches) {
+
+        summary.append(label).append("=");
+
+        if (bytes > 0 || rows == 0)
+            summary.append(bytes).append("B");
+
+        if (rows > 0)
+            summary.append(bytes > 0 ? "/" : "").append(rows).append(" rows");
+
+        summary.append(" (").append(batches).append("), ");
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data.pipeline;
+
+import org.finos.tracdap.common.data.BufferBudget;
+import org.finos.tracdap.common.data.DataPipeline;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+
+public class StreamHandoff
+    extends
+        BaseDataProducer<DataPipeline.StreamApi>
+    implements
+        DataPipeline.DataConsumer<DataPipeline.StreamApi>,
+        DataPipeline.StreamApi {
+
+    // Hand a byte stream across from one segment of a data pipeline to another, running on a different thread
+    // StreamApi calls arrive on the upstream thread, pump() delivers to the consumer on the downstream thread
+    // Ownership of each chunk passes through the queue, the upstream side never touches a chunk once it is queued
+    // The queue is bounded, isReady() goes false when it is full so backpressure carries across the boundary
+    // Queued bytes count against the pipeline's buffer budget, so a few large chunks also stop the upstream side
+    // Pumps are only scheduled for the side of the boundary that can make progress
+
+    private static final int QUEUE_LIMIT = 32;
+
+    private static final Object START_SIGNAL = new Object();
+    private static final Object COMPLETE_SIGNAL = new Object();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DataPipelineImpl pipeline;
+    private final BufferBudget budget;
+    private final Queue<Object> queue;
+    private long queuedBytes;
+    private boolean closed;
+    private volatile boolean waitingForBudget;
+
+    StreamHandoff(DataPipelineImpl pipeline, BufferBudget budget) {
+        super(DataPipeline.StreamApi.class);
+        this.pipeline = pipeline;
+        this.budget = budget;
+        this.queue = new ArrayDeque<>(QUEUE_LIMIT);
+    }
+
+    @Override
+    public DataPipeline.StreamApi dataInterface() {
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isReady() {
+
+        // Called from the upstream thread
+
+        if (closed || queue.size() >= QUEUE_LIMIT)
+            return false;
+
+        // An empty handoff is always ready, so stages downstream can drain data held earlier in the pipeline
+        if (queue.isEmpty() || budget.hasCapacity())
+            return true;
+
+        if (!waitingForBudget) {
+
+            waitingForBudget = true;
+
+            budget.onCapacity(() -> {
+                waitingForBudget = false;
+                pipeline.pumpUpstreamSegment(this);
+            });
+        }
+
+        return false;
+    }
+
+    @Override
+    public void pump() {
+
+        // Called from the downstream thread
+
+        var delivered = false;
+
+        while (!isDone()) {
+
+            Object item;
+
+            synchronized (this) {
+
+                item = queue.peek();
+
+                // Signals can always be delivered, data chunks need the consumer to be ready
+                if (item == null || (item instanceof ArrowBuf && !consumerReady()))
+                    break;
+
+                queue.remove();
+
+                if (item instanceof ArrowBuf)
+                    releaseBytes((ArrowBuf) item);
+            }
+
+            delivered = true;
+            deliver(item);
+        }
+
+        // Space has been freed in the queue, let the upstream segment send more
+        if (delivered)
+            pipeline.pumpUpstreamSegment(this);
+    }
+
+    private void deliver(Object item) {
+
+        if (item == START_SIGNAL) {
+            consumer().onStart();
+        }
+        else if (item == COMPLETE_SIGNAL) {
+            markAsDone();
+            consumer().onComplete();
+        }
+        else if (item instanceof ErrorSignal) {
+            markAsDone();
+            consumer().onError(((ErrorSignal) item).error);
+        }
+        else {
+            consumer().onNext((ArrowBuf) item);
+        }
+    }
+
+    @Override
+    public void onStart() {
+        enqueue(START_SIGNAL);
+    }
+
+    @Override
+    public void onNext(ArrowBuf chunk) {
+        enqueue(chunk);
+    }
+
+    @Override
+    public void onComplete() {
+        enqueue(COMPLETE_SIGNAL);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        enqueue(new ErrorSignal(error));
+    }
+
+    private void enqueue(Object item) {
+
+        synchronized (this) {
+
+            if (closed) {
+
+                log.warn("Data stage is already closed, incoming data will be dropped");
+
+                if (item instanceof ArrowBuf)
+                    ((ArrowBuf) item).close();
+
+                return;
+            }
+
+            queue.add(item);
+
+            if (item instanceof ArrowBuf)
+                acquireBytes((ArrowBuf) item);
+        }
+
+        // Schedule a pump so the downstream segment picks up the new item
+        pipeline.pumpSegment(this);
+    }
+
+    @Override
+    public synchronized void close() {
+
+        closed = true;
+
+        while (!queue.isEmpty()) {
+            var item = queue.remove();
+            if (item instanceof ArrowBuf) {
+                releaseBytes((ArrowBuf) item);
+                ((ArrowBuf) item).close();
+            }
+        }
+    }
+
+    private void acquireBytes(ArrowBuf chunk) {
+
+        // Called with the lock held
+
+        var chunkBytes = chunk.readableBytes();
+
+        queuedBytes += chunkBytes;
+        budget.acquire(chunkBytes);
+        metrics().recordBuffered(queuedBytes);
+    }
+
+    private void releaseBytes(ArrowBuf chunk) {
+
+        // Called with the lock held
+
+        var chunkBytes = chunk.readableBytes();
+
+        queuedBytes -= chunkBytes;
+        budget.release(chunkBytes);
+    }
+
+    private static class ErrorSignal {
+
+        private final Throwable error;
+
+        ErrorSignal(Throwable error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Adaptive limit on the number of requests in flight to a storage backend (AIMD).
+ *
+ * <p>Each successful request grows the limit slowly (additive increase, roughly +1 per
+ * limit's worth of requests). When the backend signals throttling, or recent latency rises
+ * well above the longer-term average, the limit is cut in half (multiplicative decrease).
+ * Decreases are spaced out, so a burst of failures from requests that were already
+ * in flight only counts once.</p>
+ *
+ * <p>Latency is tracked separately for each class of request, so a shift in the mix of requests
+ * (e.g. a batch of uploads after a run of metadata calls) is not mistaken for congestion.
+ * Requests whose duration depends on the object size only contribute throttling signals.</p>
+ *
+ * <p>Requests over the limit wait in a queue and are admitted in order as capacity
+ * becomes available, they do not fail. One limit is shared by all requests on a storage instance.</p>
+ */
+class AdaptiveConcurrencyLimit {
+
+    static final int DEFAULT_INITIAL_LIMIT = 32;
+    static final int MIN_LIMIT = 1;
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final long DECREASE_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    // Latency is compared between a fast and a slow moving average
+    private static final double SHORT_EWMA_WEIGHT = 0.2;
+    private static final double LONG_EWMA_WEIGHT = 0.01;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final int LATENCY_WARMUP_SAMPLES = 50;
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class);
+
+    private final String storageKey;
+    private final int maxLimit;
+
+    private final Queue<Waiter> waiters;
+
+    private double limit;
+    private int inFlight;
+
+    private final Map<RequestClass, LatencyEstimate> latency;
+    private long lastDecrease;
+
+    AdaptiveConcurrencyLimit(String storageKey, int initialLimit, int maxLimit) {
+
+        this.storageKey = storageKey;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+        this.waiters = new ArrayDeque<>();
+        this.latency = new EnumMap<>(RequestClass.class);
+        this.lastDecrease = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+    }
+
+    CompletionStage<Void> acquire(Executor executor) {
+
+        synchronized (this) {
+
+            if (inFlight < (int) limit && waiters.isEmpty()) {
+                inFlight += 1;
+                return CompletableFuture.completedFuture(null);
+            }
+
+            var waiter = new Waiter(executor);
+            waiters.add(waiter);
+
+            return waiter.signal;
+        }
+    }
+
+    void release(RequestClass requestClass, long latencyNanos, boolean throttled) {
+
+        var admitted = new ArrayList<Waiter>();
+
+        synchronized (this) {
+
+            inFlight -= 1;
+
+            var congested = !throttled && recordLatency(requestClass, latencyNanos);
+
+            if (throttled || congested)
+                decrease(throttled ? "throttled" : "latency increased");
+            else if (limit < maxLimit)
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                inFlight += 1;
+                admitted.add(waiters.remove());
+            }
+        }
+
+        // Complete waiters outside the lock, on their own executors
+        for (var waiter : admitted)
+            waiter.executor.execute(() -> waiter.signal.complete(null));
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return waiters.size();
+    }
+
+    private boolean recordLatency(RequestClass requestClass, long latencyNanos) {
+
+        if (requestClass == RequestClass.BULK)
+            return false;
+
+        var estimate = latency.computeIfAbsent(requestClass, rc -> new LatencyEstimate());
+
+        return estimate.record(latencyNanos);
+    }
+
+    private void decrease(String reason) {
+
+        var now = System.nanoTime();
+
+        if (now - lastDecrease < DECREASE_INTERVAL_NANOS)
+            return;
+
+        lastDecrease = now;
+
+        var priorLimit = (int) limit;
+        limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+
+        // Let the short-term latency settle at the new level, otherwise it will keep triggering decreases
+        latency.values().forEach(LatencyEstimate::settle);
+
+        log.warn("Storage [{}] {}, reducing concurrent requests from {} to {}",
+                storageKey, reason, priorLimit, (int) limit);
+    }
+
+    private static class LatencyEstimate {
+
+        double shortLatency;
+        double longLatency;
+        long samples;
+
+        boolean record(long latencyNanos) {
+
+            if (samples == 0) {
+                shortLatency = latencyNanos;
+                longLatency = latencyNanos;
+            }
+            else {
+                shortLatency += SHORT_EWMA_WEIGHT * (latencyNanos - shortLatency);
+                longLatency += LONG_EWMA_WEIGHT * (latencyNanos - longLatency);
+            }
+
+            samples += 1;
+
+            return samples > LATENCY_WARMUP_SAMPLES && shortLatency > LATENCY_TOLERANCE * longLatency;
+        }
+
+        void settle() {
+            shortLatency = longLatency;
+        }
+    }
+
+    private static class Waiter {
+
+        final Executor executor;
+        final CompletableFuture<Void> signal;
+
+        Waiter(Executor executor) {
+            this.executor = executor;
+            this.signal = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.config.ConfigHelpers;
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.IExecutionContext;
+import org.finos.tracdap.common.exception.EStartup;
+import org.finos.tracdap.common.storage.local.LocalFileStorage;
+import org.finos.tracdap.config.PluginConfig;
+
+import io.netty.channel.EventLoopGroup;
+import org.apache.arrow.memory.ArrowBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Read-through cache for file storage, holding whole objects on local disk
+ *
+ * <p>Objects written by TRAC are never modified in place, so a cached copy stays valid
+ * until the object is removed or rewritten through this storage instance. On a cache miss,
+ * the object is copied to the local cache directory before it is served. Objects larger
+ * than the cache size limit are always read from the underlying storage.
+ * Entries are evicted in LRU order once the size limit is reached.</p>
+ *
+ * <p>Readers pin the cache entry they are reading, an entry that is evicted or invalidated
+ * while it is pinned is removed from the index straight away, but the local file is only
+ * deleted once the last reader has finished with it.</p>
+ *
+ * <p>The cache index is held in memory, the cache directory is cleared on startup.</p>
+ */
+public class CachingFileStorage implements IFileStorage {
+
+    public static final String CACHE_DIR_KEY = "cacheDir";
+    public static final String CACHE_SIZE_LIMIT_KEY = "cacheSizeLimit";
+    public static final long CACHE_SIZE_LIMIT_DEFAULT = 1073741824;
+
+    private static final String CACHE_FILE_SUFFIX = ".cache";
+    private static final String FILL_FILE_SUFFIX = ".fill";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String storageKey;
+    private final IFileStorage remoteStorage;
+    private final LocalFileStorage localStorage;
+
+    private final Path cacheDir;
+    private final long sizeLimit;
+
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private final Map<String, CompletableFuture<Boolean>> fills;
+    private long usedBytes;
+    private long reservedBytes;
+
+    public static boolean isCacheEnabled(PluginConfig storageConfig) {
+
+        var cacheDir = storageConfig.getPropertiesOrDefault(CACHE_DIR_KEY, "");
+        return !cacheDir.isBlank();
+    }
+
+    public CachingFileStorage(PluginConfig storageConfig, IFileStorage remoteStorage) {
+
+        var properties = new Properties();
+        properties.putAll(storageConfig.getPropertiesMap());
+
+        this.storageKey = properties.getProperty(IStorageManager.PROP_STORAGE_KEY);
+        this.remoteStorage = remoteStorage;
+
+        var cacheDirProp = ConfigHelpers.readString(storageKey, properties, CACHE_DIR_KEY, true);
+        this.cacheDir = Paths.get(cacheDirProp).toAbsolutePath().normalize();
+        this.sizeLimit = ConfigHelpers.readLong(storageKey, properties, CACHE_SIZE_LIMIT_KEY, CACHE_SIZE_LIMIT_DEFAULT);
+
+        var localProps = new Properties();
+        localProps.setProperty(LocalFileStorage.CONFIG_ROOT_PATH, cacheDir.toString());
+
+        this.localStorage = new LocalFileStorage(storageKey, localProps);
+
+        // Access-ordered map gives LRU iteration order
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.fills = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void start(EventLoopGroup eventLoopGroup) {
+
+        prepareCacheDir();
+
+        log.info("Using local read cache for storage [{}], size limit = {} bytes", storageKey, sizeLimit);
+
+        localStorage.start(eventLoopGroup);
+        remoteStorage.start(eventLoopGroup);
+    }
+
+    @Override
+    public void stop() {
+
+        remoteStorage.stop();
+        localStorage.stop();
+    }
+
+    @Override
+    public StorageMetrics metrics() {
+
+        // Cache hits never reach the backend, only calls to the remote storage are counted
+        return remoteStorage.metrics();
+    }
+
+    @Override
+    public CompletionStage<Boolean> exists(String storagePath, IExecutionContext execContext) {
+
+        if (lookup(storagePath) != null)
+            return CompletableFuture.completedFuture(true);
+
+        return remoteStorage.exists(storagePath, execContext);
+    }
+
+    @Override
+    public CompletionStage<Long> size(String storagePath, IExecutionContext execContext) {
+
+        var entry = lookup(storagePath);
+
+        if (entry != null)
+            return CompletableFuture.completedFuture(entry.size);
+
+        return remoteStorage.size(storagePath, execContext);
+    }
+
+    @Override
+    public CompletionStage<FileStat> stat(String storagePath, IExecutionContext execContext) {
+
+        return remoteStorage.stat(storagePath, execContext);
+    }
+
+    @Override
+    public CompletionStage<List<FileStat>> ls(String storagePath, IExecutionContext execContext) {
+
+        return remoteStorage.ls(storagePath, execContext);
+    }
+
+    @Override
+    public CompletionStage<FileListing> ls(
+            String storagePath, boolean recursive,
+            String pageToken, int pageSize,
+            IExecutionContext execContext) {
+
+        return remoteStorage.ls(storagePath, recursive, pageToken, pageSize, execContext);
+    }
+
+    @Override
+    public CompletionStage<Void> mkdir(String storagePath, boolean recursive, IExecutionContext execContext) {
+
+        return remoteStorage.mkdir(storagePath, recursive, execContext);
+    }
+
+    @Override
+    public CompletionStage<Void> rm(String storagePath, IExecutionContext execContext) {
+
+        invalidate(storagePath, false);
+
+        return remoteStorage.rm(storagePath, execContext);
+    }
+
+    @Override
+    public CompletionStage<Void> rmdir(String storagePath, IExecutionContext execContext) {
+
+        invalidate(storagePath, true);
+
+        return remoteStorage.rmdir(storagePath, execContext);
+    }
+
+    @Override
+    public CompletionStage<ArrowBuf> readChunk(String storagePath, long offset, int size, IDataContext dataContext) {
+
+        var entry = acquire(storagePath);
+
+        if (entry != null) {
+
+            log.debug("CACHE HIT {}: [{}]", storageKey, storagePath);
+
+            return localStorage.readChunk(entry.cacheKey, offset, size, dataContext)
+                    .whenComplete((result, error) -> release(entry));
+        }
+
+        return remoteStorage.readChunk(storagePath, offset, size, dataContext);
+    }
+
+    @Override
+    public Flow.Publisher<ArrowBuf> reader(String storagePath, IDataContext dataContext) {
+
+        var entry = acquire(storagePath);
+
+        if (entry != null) {
+            log.debug("CACHE HIT {}: [{}]", storageKey, storagePath);
+            return pinnedReader(entry, localStorage.reader(entry.cacheKey, dataContext));
+        }
+
+        // Concurrent misses for the same object share a single fill
+        var newFill = new CompletableFuture<Boolean>();
+        var priorFill = fills.putIfAbsent(storagePath, newFill);
+        var fill = priorFill != null ? priorFill : newFill;
+
+        if (priorFill == null) {
+            fillCache(storagePath, dataContext).whenComplete((cached, error) -> {
+                fills.remove(storagePath, newFill);
+                newFill.complete(cached != null && cached);
+            });
+        }
+
+        // The new entry can be evicted again before the read starts, in which case read from remote
+        var source = fill.thenApplyAsync(cached -> {
+
+            var filledEntry = cached ? acquire(storagePath) : null;
+
+            return filledEntry != null
+                    ? pinnedReader(filledEntry, localStorage.reader(filledEntry.cacheKey, dataContext))
+                    : remoteStorage.reader(storagePath, dataContext);
+
+        }, dataContext.eventLoopExecutor());
+
+        return new DeferredPublisher(source);
+    }
+
+    @Override
+    public Flow.Publisher<ArrowBuf> reader(String storagePath, long offset, long limit, IDataContext dataContext) {
+
+        var entry = acquire(storagePath);
+
+        if (entry != null) {
+            log.debug("CACHE HIT {}: [{}]", storageKey, storagePath);
+            return pinnedReader(entry, localStorage.reader(entry.cacheKey, offset, limit, dataContext));
+        }
+
+        // Partial reads go straight to the remote storage, they do not fill the cache
+        return remoteStorage.reader(storagePath, offset, limit, dataContext);
+    }
+
+    @Override
+    public Flow.Subscriber<ArrowBuf> writer(String storagePath, CompletableFuture<Long> signal, IDataContext dataContext) {
+
+        invalidate(storagePath, false);
+
+        return remoteStorage.writer(storagePath, signal, dataContext);
+    }
+
+    @Override
+    public CompletionStage<Long> copy(String sourcePath, String targetPath, IDataContext dataContext) {
+
+        invalidate(targetPath, false);
+
+        return remoteStorage.copy(sourcePath, targetPath, dataContext);
+    }
+
+    private CompletionStage<Boolean> fillCache(String storagePath, IDataContext dataContext) {
+
+        // Each fill gets its own cache file, so a new fill never replaces a file an old reader still has pinned
+        var cacheKey = UUID.randomUUID() + CACHE_FILE_SUFFIX;
+        var fillKey = UUID.randomUUID() + FILL_FILE_SUFFIX;
+
+        var fill = remoteStorage.size(storagePath, dataContext).thenCompose(size -> {
+
+            if (!reserve(size))
+                return CompletableFuture.completedFuture(false);
+
+            var signal = new CompletableFuture<Long>();
+            var localWriter = localStorage.writer(fillKey, signal, dataContext);
+            var remoteReader = remoteStorage.reader(storagePath, dataContext);
+
+            remoteReader.subscribe(localWriter);
+
+            return signal.handle((bytesWritten, error) ->
+                    commitFill(storagePath, cacheKey, fillKey, size, bytesWritten, error));
+        });
+
+        // Failed fills fall back to reading from the underlying storage
+        return fill.exceptionally(error -> {
+            log.warn("CACHE FILL FAILED {}: [{}] {}", storageKey, storagePath, error.getMessage());
+            return false;
+        });
+    }
+
+    private boolean commitFill(
+            String storagePath, String cacheKey, String fillKey,
+            long size, Long bytesWritten, Throwable error) {
+
+        var fillPath = cacheDir.resolve(fillKey);
+        var cachePath = cacheDir.resolve(cacheKey);
+
+        try {
+
+            if (error != null || bytesWritten == null || bytesWritten != size) {
+
+                if (error != null)
+                    log.warn("CACHE FILL FAILED {}: [{}] {}", storageKey, storagePath, error.getMessage());
+
+                Files.deleteIfExists(fillPath);
+                unreserve(size);
+                return false;
+            }
+
+            Files.move(fillPath, cachePath, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+
+                reservedBytes -= size;
+                usedBytes += size;
+
+                var priorEntry = entries.put(storagePath, new CacheEntry(cacheKey, size));
+
+                if (priorEntry != null)
+                    evict(priorEntry);
+            }
+
+            log.info("CACHE FILL {}: [{}] {} bytes", storageKey, storagePath, size);
+
+            return true;
+        }
+        catch (IOException e) {
+
+            log.warn("CACHE FILL FAILED {}: [{}] {}", storageKey, storagePath, e.getMessage());
+
+            deleteQuietly(fillPath);
+            unreserve(size);
+            return false;
+        }
+    }
+
+    private synchronized CacheEntry lookup(String storagePath) {
+
+        return entries.get(storagePath);
+    }
+
+    private synchronized CacheEntry acquire(String storagePath) {
+
+        var entry = entries.get(storagePath);
+
+        if (entry != null)
+            entry.readers += 1;
+
+        return entry;
+    }
+
+    private void release(CacheEntry entry) {
+
+        boolean deleteFile;
+
+        synchronized (this) {
+
+            entry.readers -= 1;
+            deleteFile = entry.evicted && entry.readers == 0;
+
+            if (deleteFile)
+                usedBytes -= entry.size;
+        }
+
+        if (deleteFile)
+            deleteQuietly(cacheDir.resolve(entry.cacheKey));
+    }
+
+    private Flow.Publisher<ArrowBuf> pinnedReader(CacheEntry entry, Flow.Publisher<ArrowBuf> localReader) {
+
+        return subscriber -> localReader.subscribe(new PinnedSubscriber(subscriber, () -> release(entry)));
+    }
+
+    private synchronized boolean reserve(long size) {
+
+        if (size > sizeLimit)
+            return false;
+
+        var iterator = entries.values().iterator();
+
+        while (usedBytes + reservedBytes + size > sizeLimit && iterator.hasNext()) {
+
+            var entry = iterator.next();
+            iterator.remove();
+            evict(entry);
+        }
+
+        if (usedBytes + reservedBytes + size > sizeLimit)
+            return false;
+
+        reservedBytes += size;
+        return true;
+    }
+
+    private synchronized void unreserve(long size) {
+
+        reservedBytes -= size;
+    }
+
+    private synchronized void invalidate(String storagePath, boolean recursive) {
+
+        var dirPrefix = storagePath.endsWith("/") ? storagePath : storagePath + "/";
+        var iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            var entry = iterator.next();
+            var path = entry.getKey();
+
+            if (path.equals(storagePath) || (recursive && path.startsWith(dirPrefix))) {
+                iterator.remove();
+                evict(entry.getValue());
+            }
+        }
+    }
+
+    private void evict(CacheEntry entry) {
+
+        // Always called holding the lock, after the entry is removed from the index
+        // Pinned entries are deleted by the last reader to release them, space is not reclaimed until then
+
+        entry.evicted = true;
+
+        if (entry.readers == 0) {
+            usedBytes -= entry.size;
+            deleteQuietly(cacheDir.resolve(entry.cacheKey));
+        }
+    }
+
+    private void prepareCacheDir() {
+
+        try {
+
+            Files.createDirectories(cacheDir);
+
+            // Index is not persisted, so anything already in the cache dir is stale
+            try (var stale = Files.list(cacheDir)) {
+                stale.filter(path -> path.toString().endsWith(CACHE_FILE_SUFFIX) || path.toString().endsWith(FILL_FILE_SUFFIX))
+                        .forEach(this::deleteQuietly);
+            }
+        }
+        catch (IOException e) {
+
+            var err = String.format("Cache directory is not usable: %s [%s]", storageKey, cacheDir);
+            log.error(err, e);
+            throw new EStartup(err, e);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            log.warn("Failed to remove cache file: [{}] {}", path, e.getMessage());
+        }
+    }
+
+    private static class CacheEntry {
+
+        final String cacheKey;
+        final long size;
+
+        // Guarded by the storage instance lock
+        int readers;
+        boolean evicted;
+
+        CacheEntry(String cacheKey, long size) {
+            this.cacheKey = cacheKey;
+            this.size = size;
+        }
+    }
+
+    private static class DeferredPublisher implements Flow.Publisher<ArrowBuf> {
+
+        private final CompletionStage<Flow.Publisher<ArrowBuf>> source;
+
+        DeferredPublisher(CompletionStage<Flow.Publisher<ArrowBuf>> source) {
+            this.source = source;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ArrowBuf> subscriber) {
+
+            source.whenComplete((publisher, error) -> {
+
+                if (error == null)
+                    publisher.subscribe(subscriber);
+
+                else {
+                    subscriber.onSubscribe(new FailedSubscription());
+                    subscriber.onError(error);
+                }
+            });
+        }
+    }
+
+    private static class PinnedSubscriber implements Flow.Subscriber<ArrowBuf> {
+
+        private final Flow.Subscriber<? super ArrowBuf> subscriber;
+        private final Runnable release;
+        private final AtomicBoolean released;
+
+        PinnedSubscriber(Flow.Subscriber<? super ArrowBuf> subscriber, Runnable release) {
+            this.subscriber = subscriber;
+            this.release = release;
+            this.released = new AtomicBoolean(false);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                    releaseOnce();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(ArrowBuf item) {
+            subscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            releaseOnce();
+            subscriber.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            releaseOnce();
+            subscriber.onComplete();
+        }
+
+        private void releaseOnce() {
+            if (released.compareAndSet(false, true))
+                release.run();
+        }
+    }
+
+    private static class FailedSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+
+        }
+
+        @Override
+        public void cancel() {
+
+        }
+    }
+}
@@ -17,11 +17,11 @@
 
 package org.finos.tracdap.common.storage;
 
-import org.finos.tracdap.common.codec.ICodec;
 import org.finos.tracdap.common.codec.ICodecManager;
 import org.finos.tracdap.common.async.Flows;
 import org.finos.tracdap.common.data.DataPipeline;
 import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.IExecutionContext;
 import org.finos.tracdap.common.data.pipeline.RangeSelector;
 import org.finos.tracdap.common.exception.EStorageValidation;
 import org.finos.tracdap.config.PluginConfig;
@@ -29,12 +29,15 @@ import org.finos.tracdap.metadata.SchemaDefinition;
 import org.finos.tracdap.metadata.StorageCopy;
 
 import io.netty.channel.EventLoopGroup;
+import org.apache.arrow.memory.ArrowBuf;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 
 
 public class CommonDataStorage implements IDataStorage {
@@ -81,14 +84,16 @@ public class CommonDataStorage implements IDataStorage {
             long offset, long limit) {
 
         var codec = formats.getCodec(storageCopy.getStorageFormat());
+        var compression = formats.getCompression(storageCopy.getStorageFormat());
 
-        var chunkPath = chunkPath(storageCopy, codec);
-        var load = fileStorage.reader(chunkPath, dataContext);
-        var checkSize = fileStorage.size(chunkPath, dataContext).thenApply(this::checkSizeBeforeLoad);
-        var checkAndLoad = Flows.waitForSignal(load, checkSize);
+        var chunkPath = chunkPath(storageCopy);
+        var checkAndLoad = fileStorage.reader(chunkPath, this::checkSizeBeforeLoad, dataContext);
 
         var pipeline = DataPipeline.forSource(checkAndLoad, dataContext);
 
+        if (compression != null)
+            pipeline.addStage(compression.getDecompressor(dataContext.arrowAllocator()));
+
         var options = Map.<String, String>of();
         var decoder = requiredSchema != null
                 ? codec.getDecoder(requiredSchema, dataContext.arrowAllocator(), options)
@@ -102,19 +107,49 @@ public class CommonDataStorage implements IDataStorage {
         return pipeline;
     }
 
+    @Override
+    public Flow.Publisher<ArrowBuf> reader(StorageCopy storageCopy, IDataContext dataContext) {
+
+        // Raw content is returned as stored, including any compression
+        var chunkPath = chunkPath(storageCopy);
+
+        return fileStorage.reader(chunkPath, this::checkSizeBeforeLoad, dataContext);
+    }
+
+    @Override
+    public Flow.Publisher<ArrowBuf> reader(StorageCopy storageCopy, long offset, long limit, IDataContext dataContext) {
+
+        // Partial reads are not subject to the download size limit
+        var chunkPath = chunkPath(storageCopy);
+
+        return fileStorage.reader(chunkPath, offset, limit, dataContext);
+    }
+
+    @Override
+    public CompletionStage<Long> size(StorageCopy storageCopy, IExecutionContext execContext) {
+
+        var chunkPath = chunkPath(storageCopy);
+
+        return fileStorage.size(chunkPath, execContext);
+    }
+
     @Override
     public DataPipeline pipelineWriter(
             StorageCopy storageCopy, IDataContext dataContext, DataPipeline pipeline,
             CompletableFuture<Long> signal) {
 
         var codec = formats.getCodec(storageCopy.getStorageFormat());
+        var compression = formats.getCompression(storageCopy.getStorageFormat());
         var options = Map.<String, String>of();
 
         var encoder = codec.getEncoder(dataContext.arrowAllocator(), options);
         pipeline = pipeline.addStage(encoder);
 
+        if (compression != null)
+            pipeline = pipeline.addStage(compression.getCompressor(dataContext.arrowAllocator()));
+
         var storagePath = storageCopy.getStoragePath();
-        var chunkPath = chunkPath(storageCopy, codec);
+        var chunkPath = chunkPath(storageCopy);
         var save = fileStorage.writer(chunkPath, signal, dataContext);
 
         if (chunkPath.length() > storagePath.length()) {
@@ -127,10 +162,23 @@ public class CommonDataStorage implements IDataStorage {
         }
     }
 
-    private String chunkPath(StorageCopy storageCopy, ICodec codec) {
+    @Override
+    public CompletionStage<Void> delete(StorageCopy storageCopy, IExecutionContext execContext) {
+
+        var storagePath = storageCopy.getStoragePath();
+        var chunkPath = chunkPath(storageCopy);
+
+        // Copies held as a directory of chunks are removed along with their directory
+        if (chunkPath.length() > storagePath.length())
+            return fileStorage.rmdir(storagePath, execContext);
+        else
+            return fileStorage.rm(chunkPath, execContext);
+    }
+
+    private String chunkPath(StorageCopy storageCopy) {
 
         var storagePath = storageCopy.getStoragePath();
-        var extension = codec.defaultFileExtension();
+        var extension = formats.getDefaultFileExtension(storageCopy.getStorageFormat());
 
         if (storagePath.endsWith(extension))
             return storagePath;
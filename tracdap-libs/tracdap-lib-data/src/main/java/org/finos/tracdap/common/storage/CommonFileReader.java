@@ -22,6 +22,7 @@ import org.finos.tracdap.common.data.IDataContext;
 import org.apache.arrow.memory.ArrowBuf;
 import org.apache.arrow.memory.BufferAllocator;
 
+import org.finos.tracdap.common.exception.ETrac;
 import org.finos.tracdap.common.exception.ETracInternal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +31,9 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
 
 import static org.finos.tracdap.common.storage.CommonFileStorage.READ_OPERATION;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.DUPLICATE_SUBSCRIPTION;
@@ -42,6 +45,9 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
     private static final int DEFAULT_CHUNK_BUFFER_TARGET = 2;
     private static final int DEFAULT_CLIENT_BUFFER_TARGET = 32;
 
+    private static final long RESUME_BASE_DELAY_MILLIS = 100;
+    private static final long RESUME_MAX_DELAY_MILLIS = 2000;
+
     protected final Logger log = LoggerFactory.getLogger(getClass());
 
     private final IDataContext dataContext;
@@ -70,6 +76,14 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
     private boolean gotCancel;
     private boolean gotError;
 
+    private LongConsumer sizeCheck;
+    private boolean openEndedRange;
+
+    private int maxResumes;
+    private int nResumes;
+    private boolean resumePending;
+    private RetryBudget retryBudget;
+
     protected abstract void clientStart();
     protected abstract void clientRequest(long n);
     protected abstract void clientCancel();
@@ -219,6 +233,68 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
         return gotError || gotCancel || gotComplete;
     }
 
+    // Readers that get the object size from their first response should override this
+    // and call onObjectSize(), so size checks do not need a separate request
+
+    protected boolean reportsObjectSize() {
+
+        return false;
+    }
+
+    final void checkObjectSize(LongConsumer sizeCheck) {
+
+        this.sizeCheck = sizeCheck;
+    }
+
+    // A read that is used to discover the object size may ask for a range that runs past the end of the object
+    // Readers that check the length of a ranged response must accept a short response in this case,
+    // as long as the response reaches the end of the object
+
+    protected final boolean isOpenEndedRange() {
+
+        return openEndedRange;
+    }
+
+    final void openEndedRange() {
+
+        this.openEndedRange = true;
+    }
+
+    // Readers that can restart the read from a position in the object should override these
+    // After a transient failure, clientResume() is called with the number of bytes already received
+    // The reader must start a new client request from that position and stop delivering from the old one
+
+    protected boolean supportsResume() {
+
+        return false;
+    }
+
+    protected void clientResume(long position) {
+
+        throw new ETracInternal("Resume is not supported by " + getClass().getSimpleName());
+    }
+
+    final void enableResume(int maxResumes, RetryBudget retryBudget) {
+
+        this.maxResumes = maxResumes;
+        this.retryBudget = retryBudget;
+    }
+
+    protected final void onObjectSize(long objectSize) {
+
+        if (sizeCheck == null || isDone())
+            return;
+
+        try {
+            sizeCheck.accept(objectSize);
+        }
+        catch (RuntimeException e) {
+
+            clientCancel();
+            onError(e);
+        }
+    }
+
     protected final ArrowBuf allocateChunk(long size) {
 
         return allocator.buffer(size);
@@ -226,6 +302,10 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
 
     protected final void onChunk(ByteBuffer chunk) {
 
+        // Discard anything still in flight after the read has finished, or from a request that is being resumed
+        if (isDone() || resumePending)
+            return;
+
         try {
 
             clientReceived += 1;
@@ -259,6 +339,11 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
 
     protected final void onChunk(ArrowBuf chunk) {
 
+        if (isDone() || resumePending) {
+            chunk.close();
+            return;
+        }
+
         try {
 
             clientReceived += 1;
@@ -275,7 +360,7 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
 
     protected final void onComplete() {
 
-        if (gotError || gotCancel || gotComplete)
+        if (gotError || gotCancel || gotComplete || resumePending)
             return;
 
         try {
@@ -297,9 +382,16 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
 
     protected final void onError(Throwable error) {
 
-        try {
+        // Errors from the old client request are expected while waiting to resume
+        if (resumePending && !isDone())
+            return;
+
+        var tracError = errors.handleException(READ_OPERATION, storagePath, error);
 
-            var tracError = errors.handleException(READ_OPERATION, storagePath, error);
+        if (!isDone() && tryResume(error, tracError))
+            return;
+
+        try {
 
             if (gotError) {
                 log.warn("{} {} [{}]: Read operation already failed, then another error occurred",
@@ -322,6 +414,57 @@ public abstract class CommonFileReader implements Flow.Publisher<ArrowBuf> {
         }
     }
 
+    private boolean tryResume(Throwable error, ETrac tracError) {
+
+        if (!supportsResume() || nResumes >= maxResumes || !errors.isRetryable(tracError))
+            return false;
+
+        // Throttling before any data is received is left to the storage, which reopens under the request limit
+        if (bytesReceived == 0 && errors.isThrottlingError(error))
+            return false;
+
+        if (retryBudget != null && !retryBudget.tryRetry())
+            return false;
+
+        var resumeDelay = Math.min(RESUME_BASE_DELAY_MILLIS << nResumes, RESUME_MAX_DELAY_MILLIS);
+
+        nResumes += 1;
+        resumePending = true;
+
+        log.warn("{} {} [{}]: Resuming read at position {} (attempt {} of {}): {}",
+                READ_OPERATION, storageKey, storagePath, bytesReceived,
+                nResumes, maxResumes, tracError.getMessage());
+
+        dataContext.eventLoopExecutor().schedule(this::resume, resumeDelay, TimeUnit.MILLISECONDS);
+
+        return true;
+    }
+
+    private void resume() {
+
+        resumePending = false;
+
+        if (isDone())
+            return;
+
+        try {
+
+            // Chunks already received are kept, the new request starts after the last byte received
+            // Client-side flow control starts again from zero for the new request
+
+            var initialRequest = (long) 2 * clientBufferTarget;
+
+            clientReceived = 0;
+            clientRequested = initialRequest;
+
+            clientResume(bytesReceived);
+            clientRequest(initialRequest);
+        }
+        catch (Exception e) {
+            onError(e);
+        }
+    }
+
     private void askForMore() {
 
         if (pendingChunks.size() < chunkBufferTarget) {
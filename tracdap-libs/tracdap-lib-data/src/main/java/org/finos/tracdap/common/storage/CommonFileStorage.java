@@ -19,8 +19,11 @@ package org.finos.tracdap.common.storage;
 
 import org.finos.tracdap.common.async.Flows;
 import org.finos.tracdap.common.data.IExecutionContext;
+import org.finos.tracdap.common.config.ConfigDefaults;
 import org.finos.tracdap.common.config.ConfigHelpers;
 import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EStartup;
 import org.finos.tracdap.common.exception.ETrac;
 
 import org.apache.arrow.memory.ArrowBuf;
@@ -30,14 +33,21 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.*;
 
 
@@ -69,10 +79,35 @@ public abstract class CommonFileStorage implements IFileStorage {
     public static final String RMDIR_OPERATION = "RMDIR";
     public static final String READ_OPERATION = "READ";
     public static final String WRITE_OPERATION = "WRITE";
+    public static final String COPY_OPERATION = "COPY";
+
+    public static final int LS_PAGE_SIZE_DEFAULT = 1000;
 
     public static final String READ_ONLY_CONFIG_KEY = "readOnly";
     public static final boolean READ_ONLY_CONFIG_DEFAULT = false;
 
+    // Number of concurrent ranged reads per object, 1 = read each object as a single stream
+    public static final String READ_CONCURRENCY_CONFIG_KEY = "readConcurrency";
+    public static final int READ_CONCURRENCY_CONFIG_DEFAULT = 1;
+
+    public static final String READ_RANGE_SIZE_CONFIG_KEY = "readRangeSize";
+    public static final int READ_RANGE_SIZE_CONFIG_DEFAULT = 8 * 1024 * 1024;  // 8 MB
+
+    // Hedge ranged reads that take longer than this percentile of recent read latency, 0 = no hedging
+    public static final String READ_HEDGE_PERCENTILE_CONFIG_KEY = "readHedgePercentile";
+    public static final int READ_HEDGE_PERCENTILE_CONFIG_DEFAULT = 0;
+
+    public static final String READ_RETRIES_CONFIG_KEY = "readRetries";
+    public static final int READ_RETRIES_CONFIG_DEFAULT = 3;
+
+    // Upper bound for the adaptive limit on concurrent requests to the storage backend
+    public static final String MAX_CONCURRENT_REQUESTS_CONFIG_KEY = "maxConcurrentRequests";
+    public static final int MAX_CONCURRENT_REQUESTS_CONFIG_DEFAULT = 256;
+
+    private static final int THROTTLE_MAX_RETRIES = 5;
+    private static final long THROTTLE_BASE_DELAY_MILLIS = 200;
+    private static final long THROTTLE_MAX_DELAY_MILLIS = 5000;
+
     protected static final boolean BUCKET_SEMANTICS = true;
     protected static final boolean FILE_SEMANTICS = false;
 
@@ -82,18 +117,49 @@ public abstract class CommonFileStorage implements IFileStorage {
     protected abstract CompletionStage<Boolean> fsDirExists(String prefix, IExecutionContext ctx);
     protected abstract CompletionStage<FileStat> fsGetFileInfo(String objectKey, IExecutionContext ctx);
     protected abstract CompletionStage<FileStat> fsGetDirInfo(String prefix, IExecutionContext ctx);
-    protected abstract CompletionStage<List<FileStat>> fsListContents(
-            String prefix, String startAfter, int maxKeys, boolean recursive,
+    protected abstract CompletionStage<FileListing> fsListContents(
+            String prefix, String pageToken, int maxKeys, boolean recursive,
             IExecutionContext ctx);
 
+    // Combined lookup for a file or directory, the result is null if neither exists
+    // The default implementation uses separate calls for directories and files
+    // Backends that can resolve both in a single request should override this
+
+    protected CompletionStage<FileStat> fsStat(String objectKey, String prefix, IExecutionContext ctx) {
+
+        return limitRequest(ctx, () -> fsDirExists(prefix, ctx)).thenCompose(isDir -> {
+
+            if (isDir)
+                return limitRequest(ctx, () -> fsGetDirInfo(prefix, ctx));
+
+            return limitRequest(ctx, () -> fsExists(objectKey, ctx)).thenCompose(isFile -> isFile
+                    ? limitRequest(ctx, () -> fsGetFileInfo(objectKey, ctx))
+                    : CompletableFuture.<FileStat>completedFuture(null));
+        });
+    }
+
     protected abstract CompletionStage<Void> fsCreateDir(String prefix, IExecutionContext ctx);
     protected abstract CompletionStage<Void> fsDeleteFile(String objectKey, IExecutionContext ctx);
     protected abstract CompletionStage<Void> fsDeleteDir(String directoryKey, IExecutionContext ctx);
 
     protected abstract CompletionStage<ArrowBuf> fsReadChunk(String objectKey, long offset, int size, IDataContext ctx);
-    protected abstract Flow.Publisher<ArrowBuf> fsOpenInputStream(String objectKey, IDataContext ctx);
+    protected abstract Flow.Publisher<ArrowBuf> fsOpenInputStream(String objectKey, long offset, long limit, IDataContext ctx);
     protected abstract Flow.Subscriber<ArrowBuf> fsOpenOutputStream(String objectKey, CompletableFuture<Long> signal, IDataContext ctx);
 
+    // Backends that can copy objects server-side should override fsCopyFile()
+    // The default implementation streams content through the service using the read and write streams
+
+    protected CompletionStage<Long> fsCopyFile(String sourceKey, String targetKey, long size, IDataContext ctx) {
+
+        var signal = new CompletableFuture<Long>();
+        var readStream = openInputStream(sourceKey, 0, 0, null, ctx);
+        var writeStream = fsOpenOutputStream(targetKey, fromContext(ctx, signal), ctx);
+
+        readStream.subscribe(writeStream);
+
+        return signal;
+    }
+
     // Expose final member variables to avoid duplication in child classes
 
     protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -101,9 +167,29 @@ public abstract class CommonFileStorage implements IFileStorage {
     protected final boolean bucketSemantics;
     protected final String storageKey;
     protected final boolean readOnly;
+    protected final int readConcurrency;
+    protected final int readRangeSize;
+    protected final int readRetries;
+
+    private final ReadLatencyTracker readLatencyTracker;
+    private final AdaptiveConcurrencyLimit requestLimit;
+    private final RetryBudget retryBudget;
+    private final StorageMetrics metrics;
 
     protected final StorageErrors errors;
 
+    // Readers and writers that send their own requests (e.g. upload parts) use this to share the request limit
+    protected final IRequestLimiter requestLimiter = new IRequestLimiter() {
+
+        @Override
+        public <T> CompletionStage<T> limitRequest(
+                IExecutionContext ctx, RequestClass requestClass,
+                Supplier<CompletionStage<T>> request) {
+
+            return CommonFileStorage.this.limitRequest(ctx, requestClass, request);
+        }
+    };
+
     protected CommonFileStorage(
             boolean bucketSemantics,
             String storageKey,
@@ -117,9 +203,68 @@ public abstract class CommonFileStorage implements IFileStorage {
                 READ_ONLY_CONFIG_KEY,
                 READ_ONLY_CONFIG_DEFAULT);
 
+        this.readConcurrency = ConfigHelpers.readInt(
+                storageKey, properties,
+                READ_CONCURRENCY_CONFIG_KEY,
+                READ_CONCURRENCY_CONFIG_DEFAULT);
+
+        this.readRangeSize = ConfigHelpers.readInt(
+                storageKey, properties,
+                READ_RANGE_SIZE_CONFIG_KEY,
+                READ_RANGE_SIZE_CONFIG_DEFAULT);
+
+        this.readRetries = ConfigHelpers.readInt(
+                storageKey, properties,
+                READ_RETRIES_CONFIG_KEY,
+                READ_RETRIES_CONFIG_DEFAULT);
+
+        var hedgePercentile = ConfigHelpers.readInt(
+                storageKey, properties,
+                READ_HEDGE_PERCENTILE_CONFIG_KEY,
+                READ_HEDGE_PERCENTILE_CONFIG_DEFAULT);
+
+        if (readConcurrency < 1 || readRangeSize < 1) {
+            var message = String.format("Invalid read settings for storage [%s]: %s = %d, %s = %d",
+                    storageKey, READ_CONCURRENCY_CONFIG_KEY, readConcurrency, READ_RANGE_SIZE_CONFIG_KEY, readRangeSize);
+            throw new EStartup(message);
+        }
+
+        if (readRetries < 0 || hedgePercentile < 0 || hedgePercentile >= 100) {
+            var message = String.format("Invalid read settings for storage [%s]: %s = %d, %s = %d",
+                    storageKey, READ_RETRIES_CONFIG_KEY, readRetries, READ_HEDGE_PERCENTILE_CONFIG_KEY, hedgePercentile);
+            throw new EStartup(message);
+        }
+
+        this.readLatencyTracker = hedgePercentile > 0 ? new ReadLatencyTracker(hedgePercentile) : null;
+
+        var maxConcurrentRequests = ConfigHelpers.readInt(
+                storageKey, properties,
+                MAX_CONCURRENT_REQUESTS_CONFIG_KEY,
+                MAX_CONCURRENT_REQUESTS_CONFIG_DEFAULT);
+
+        if (maxConcurrentRequests < 1) {
+            var message = String.format("Invalid config property [%s] for storage [%s]: Must be at least 1",
+                    MAX_CONCURRENT_REQUESTS_CONFIG_KEY, storageKey);
+            throw new EStartup(message);
+        }
+
+        this.requestLimit = new AdaptiveConcurrencyLimit(
+                storageKey, AdaptiveConcurrencyLimit.DEFAULT_INITIAL_LIMIT,
+                maxConcurrentRequests);
+
+        this.retryBudget = new RetryBudget();
+
+        this.metrics = new StorageMetrics(storageKey, getClass().getSimpleName());
+
         this.errors = errors;
     }
 
+    @Override
+    public StorageMetrics metrics() {
+
+        return metrics;
+    }
+
 
     @Override
     public CompletionStage<Boolean>
@@ -134,20 +279,7 @@ public abstract class CommonFileStorage implements IFileStorage {
         var objectKey = resolveObjectKey(operationName, storagePath, true);
         var prefix = resolveDirPrefix(objectKey);
 
-        if (storagePath.endsWith(BACKSLASH)) {
-
-            return fsDirExists(prefix, ctx).thenCompose(
-                exists -> exists
-                    ? CompletableFuture.completedFuture(true)
-                    : fsExists(objectKey, ctx));
-        }
-        else {
-
-            return fsExists(objectKey, ctx).thenCompose(
-                exists -> exists
-                    ? CompletableFuture.completedFuture(true)
-                    : fsDirExists(prefix, ctx));
-        }
+        return fsStat(objectKey, prefix, ctx).thenApply(Objects::nonNull);
     }
 
     @Override
@@ -163,9 +295,13 @@ public abstract class CommonFileStorage implements IFileStorage {
         var objectKey = resolveObjectKey(operationName, storagePath, true);
         var prefix = resolveDirPrefix(objectKey);
 
-        return fsDirExists(prefix, ctx).thenCompose(isDir -> isDir
-                ? fsGetDirInfo(prefix, ctx)
-                : fsGetFileInfo(objectKey, ctx));
+        return fsStat(objectKey, prefix, ctx).thenApply(stat -> {
+
+            if (stat == null)
+                throw errors.explicitError(operationName, storagePath, OBJECT_NOT_FOUND);
+
+            return stat;
+        });
     }
 
     @Override
@@ -193,23 +329,44 @@ public abstract class CommonFileStorage implements IFileStorage {
     public CompletionStage<List<FileStat>>
     ls(String storagePath, IExecutionContext ctx) {
 
-        return wrapOperation(LS_OPERATION, storagePath, (op, path) -> ls(op, path, false, ctx));
+        return wrapOperation(LS_OPERATION, storagePath, (op, path) ->
+                ls(op, path, false, null, LS_PAGE_SIZE_DEFAULT, ctx)
+                .thenApply(listing -> listing.entries));
+    }
+
+    @Override
+    public CompletionStage<FileListing>
+    ls(String storagePath, boolean recursive, String pageToken, int pageSize, IExecutionContext ctx) {
+
+        return wrapOperation(LS_OPERATION, storagePath, (op, path) -> ls(op, path, recursive, pageToken, pageSize, ctx));
     }
 
-    private CompletionStage<List<FileStat>>
-    ls(String operationName, String storagePath, boolean recursive, IExecutionContext ctx) {
+    private CompletionStage<FileListing>
+    ls(String operationName, String storagePath,
+       boolean recursive, String pageToken, int pageSize,
+       IExecutionContext ctx) {
+
+        var objectKey = resolveObjectKey(operationName, storagePath, true);
+        var prefix = resolveDirPrefix(objectKey);
+
+        if (pageSize <= 0 || pageSize > ConfigDefaults.STORAGE_LS_PAGE_SIZE_MAX) {
+            var detail = String.format("page size = %d", pageSize);
+            throw errors.explicitError(operationName, storagePath, STORAGE_PARAMS_INVALID, detail);
+        }
+
+        // Continuation pages go straight to the backend, the path was checked when the first page was listed
+
+        if (pageToken != null && !pageToken.isEmpty())
+            return limitRequest(ctx, () -> fsListContents(prefix, pageToken, pageSize, recursive, ctx));
 
         var _stat = stat(operationName, storagePath, ctx);
 
         return _stat.thenCompose(stat -> {
 
             if (stat.fileType == FileType.FILE)
-                return CompletableFuture.completedFuture(List.of(stat));
-
-            var objectKey = resolveObjectKey(operationName, storagePath, true);
-            var prefix = resolveDirPrefix(objectKey);
+                return CompletableFuture.completedFuture(new FileListing(List.of(stat), null));
 
-            return fsListContents(prefix, null, 1000, false, ctx);
+            return limitRequest(ctx, () -> fsListContents(prefix, null, pageSize, recursive, ctx));
         });
     }
 
@@ -230,7 +387,7 @@ public abstract class CommonFileStorage implements IFileStorage {
 
         var parent = path.contains(BACKSLASH) ? path.substring(0, path.lastIndexOf(BACKSLASH)) : null;
         var checkParent = path.contains(BACKSLASH) && !recursive
-                ? fsDirExists(parent, ctx)
+                ? limitRequest(ctx, () -> fsDirExists(parent, ctx))
                 : CompletableFuture.completedFuture(true);
 
         return checkParent.thenCompose(parentOk -> {
@@ -247,16 +404,15 @@ public abstract class CommonFileStorage implements IFileStorage {
 
         var prefix = resolveDirPrefix(resolvedPath);
 
-        var objectExists = fsExists(resolvedPath, ctx);
-        var dirExists =  fsDirExists(prefix, ctx);
-        var fileExists = objectExists.thenCombine(dirExists, (obj, dir) -> obj && !dir);
+        var fileExists = fsStat(resolvedPath, prefix, ctx)
+                .thenApply(stat -> stat != null && stat.fileType == FileType.FILE);
 
         return fileExists.thenCompose(exists -> {
 
             if (exists)
                 throw errors.explicitError(operationName, storagePath, OBJECT_ALREADY_EXISTS);
 
-            return fsCreateDir(prefix, ctx);
+            return limitRequest(ctx, () -> fsCreateDir(prefix, ctx));
         });
     }
 
@@ -282,7 +438,7 @@ public abstract class CommonFileStorage implements IFileStorage {
             if (fi.fileType != FileType.FILE)
                 throw errors.explicitError(operationName, storagePath, NOT_A_FILE);
 
-            return fsDeleteFile(objectKey, ctx);
+            return limitRequest(ctx, () -> fsDeleteFile(objectKey, ctx));
         });
     }
 
@@ -309,7 +465,7 @@ public abstract class CommonFileStorage implements IFileStorage {
             if (fi.fileType != FileType.DIRECTORY)
                 throw errors.explicitError(operationName, storagePath, NOT_A_DIRECTORY);
 
-            return fsDeleteDir(dirPrefix, ctx);
+            return limitRequest(ctx, () -> fsDeleteDir(dirPrefix, ctx));
         });
     }
 
@@ -334,7 +490,7 @@ public abstract class CommonFileStorage implements IFileStorage {
                 throw errors.explicitError(operationName, storagePath, NOT_A_FILE);
         });
 
-        var readChunk = checkFile.thenCompose(x -> fsReadChunk(objectKey, offset, size, ctx));
+        var readChunk = checkFile.thenCompose(x -> limitRequest(ctx, RequestClass.TRANSFER, () -> fsReadChunk(objectKey, offset, size, ctx)));
 
         return readChunkMonitor(storagePath, readChunk);
     }
@@ -354,11 +510,292 @@ public abstract class CommonFileStorage implements IFileStorage {
 
         var objectKey = resolveObjectKey(operationName, storagePath, false);
 
-        var readStream = fsOpenInputStream(objectKey, dataContext);
+        if (useRangeReads()) {
+            var readStream = parallelReader(operationName, storagePath, objectKey, 0, 0, null, dataContext);
+            return new ReadStreamMonitor(storagePath, readStream);
+        }
+
+        var readStream = limitedInputStream(objectKey, 0, 0, null, dataContext);
 
         return new ReadStreamMonitor(storagePath, readStream);
     }
 
+    @Override
+    public Flow.Publisher<ArrowBuf>
+    reader(String storagePath, long offset, long limit, IDataContext ctx) {
+
+        return wrapStreamOperation(
+                READ_OPERATION, storagePath,
+                (op, path) -> reader(op, path, offset, limit, ctx),
+                err -> { throw err; });
+    }
+
+    private Flow.Publisher<ArrowBuf>
+    reader(String operationName, String storagePath, long offset, long limit, IDataContext dataContext) {
+
+        var objectKey = resolveObjectKey(operationName, storagePath, false);
+
+        if (offset < 0 || limit < 0) {
+            var detail = String.format("offset = %d, limit = %d", offset, limit);
+            throw errors.explicitError(operationName, storagePath, STORAGE_PARAMS_INVALID, detail);
+        }
+
+        if (useRangeReads()) {
+            var readStream = parallelReader(operationName, storagePath, objectKey, offset, limit, null, dataContext);
+            return new ReadStreamMonitor(storagePath, readStream);
+        }
+
+        var readStream = limitedInputStream(objectKey, offset, limit, null, dataContext);
+
+        return new ReadStreamMonitor(storagePath, readStream);
+    }
+
+    @Override
+    public Flow.Publisher<ArrowBuf>
+    reader(String storagePath, LongConsumer sizeCheck, IDataContext ctx) {
+
+        return wrapStreamOperation(
+                READ_OPERATION, storagePath,
+                (op, path) -> reader(op, path, sizeCheck, ctx),
+                err -> { throw err; });
+    }
+
+    private Flow.Publisher<ArrowBuf>
+    reader(String operationName, String storagePath, LongConsumer sizeCheck, IDataContext dataContext) {
+
+        var objectKey = resolveObjectKey(operationName, storagePath, false);
+
+        // Ranged reads look up the object size before reading, so the size check happens there
+        if (useRangeReads()) {
+            var readStream = parallelReader(operationName, storagePath, objectKey, 0, 0, sizeCheck, dataContext);
+            return new ReadStreamMonitor(storagePath, readStream);
+        }
+
+        var readStream = limitedInputStream(objectKey, 0, 0, sizeCheck, dataContext);
+
+        // If the reader learns the object size from its first response, no separate lookup is needed
+        if (readStream.reportsObjectSize())
+            return new ReadStreamMonitor(storagePath, readStream);
+
+        var checkSize = size(operationName, storagePath, dataContext).thenAccept(sizeCheck);
+        var checkAndRead = Flows.waitForSignal(readStream, checkSize);
+
+        return new ReadStreamMonitor(storagePath, checkAndRead);
+    }
+
+    private LimitedReadStream limitedInputStream(
+            String objectKey, long offset, long limit,
+            LongConsumer sizeCheck, IDataContext dataContext) {
+
+        // The first stream is created up front, so callers can check whether it reports the object size
+        // Further streams are only created if opening the stream is throttled and has to be retried
+
+        var firstStream = openInputStream(objectKey, offset, limit, sizeCheck, dataContext);
+
+        return new LimitedReadStream(dataContext, firstStream,
+                () -> openInputStream(objectKey, offset, limit, sizeCheck, dataContext));
+    }
+
+    private Flow.Publisher<ArrowBuf> openInputStream(
+            String objectKey, long offset, long limit,
+            LongConsumer sizeCheck, IDataContext dataContext) {
+
+        var readStream = fsOpenInputStream(objectKey, offset, limit, dataContext);
+
+        if (readStream instanceof CommonFileReader) {
+
+            var reader = (CommonFileReader) readStream;
+
+            // Readers that can resume from an offset pick up where they left off after a transient failure
+            // Resumes count against the same retry budget as other retries on this storage
+            reader.enableResume(readRetries, retryBudget);
+
+            if (sizeCheck != null && reader.reportsObjectSize())
+                reader.checkObjectSize(sizeCheck);
+        }
+
+        return readStream;
+    }
+
+    private static boolean reportsObjectSize(Flow.Publisher<ArrowBuf> readStream) {
+
+        return readStream instanceof CommonFileReader && ((CommonFileReader) readStream).reportsObjectSize();
+    }
+
+    private <T> CompletionStage<T> limitRequest(IExecutionContext ctx, Supplier<CompletionStage<T>> request) {
+
+        return limitRequest(ctx, RequestClass.METADATA, request, 0);
+    }
+
+    private <T> CompletionStage<T> limitRequest(
+            IExecutionContext ctx, RequestClass requestClass,
+            Supplier<CompletionStage<T>> request) {
+
+        return limitRequest(ctx, requestClass, request, 0);
+    }
+
+    private <T> CompletionStage<T> limitRequest(
+            IExecutionContext ctx, RequestClass requestClass,
+            Supplier<CompletionStage<T>> request, int attempt) {
+
+        // Requests over the current limit wait for capacity, instead of adding load to a backend that is struggling
+        // Throttled requests are retried with backoff, since throttling is expected to clear
+        // Retries are limited by the retry budget, so sustained throttling is reported instead of piling up retries
+
+        retryBudget.recordRequest();
+
+        return requestLimit.acquire(ctx.eventLoopExecutor()).thenCompose(x -> {
+
+            var startTime = System.nanoTime();
+            var result = new CompletableFuture<T>();
+
+            CompletionStage<T> response;
+
+            try {
+                response = request.get();
+            }
+            catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+
+            response.whenComplete((value, error) -> {
+
+                var throttled = error != null && errors.isThrottlingError(error);
+
+                var elapsed = System.nanoTime() - startTime;
+
+                requestLimit.release(requestClass, elapsed, throttled);
+                metrics.recordOperation(StorageMetrics.BACKEND_REQUEST, elapsed, 0, error != null);
+
+                if (throttled && attempt < THROTTLE_MAX_RETRIES && retryBudget.tryRetry()) {
+
+                    var delay = throttleDelay(attempt);
+
+                    log.warn("Storage [{}] request throttled, retrying in {} ms", storageKey, delay);
+
+                    ctx.eventLoopExecutor().schedule(() -> limitRequest(ctx, requestClass, request, attempt + 1)
+                            .whenComplete((retryValue, retryError) -> {
+                                if (retryError != null)
+                                    result.completeExceptionally(retryError);
+                                else
+                                    result.complete(retryValue);
+                            }),
+                            delay, TimeUnit.MILLISECONDS);
+                }
+                else if (error != null)
+                    result.completeExceptionally(error);
+                else
+                    result.complete(value);
+            });
+
+            return result;
+        });
+    }
+
+    private static long throttleDelay(int attempt) {
+
+        var delay = Math.min(THROTTLE_BASE_DELAY_MILLIS << attempt, THROTTLE_MAX_DELAY_MILLIS);
+        var jitter = (long) (Math.random() * delay / 2);
+
+        return delay + jitter;
+    }
+
+    private boolean useRangeReads() {
+
+        // Ranged reads are used for parallel reads and for hedging, otherwise read as a single stream
+        return readConcurrency > 1 || readLatencyTracker != null;
+    }
+
+    private Flow.Publisher<ArrowBuf> parallelReader(
+            String operationName, String storagePath, String objectKey,
+            long offset, long limit, LongConsumer sizeCheck,
+            IDataContext dataContext) {
+
+        // The object size is needed to split the read into ranges
+        // If the backend reports the object size in its read responses, it is taken from the first range
+        // Otherwise the size is looked up before reading, which costs an extra request
+
+        Supplier<CompletionStage<Long>> readSize = () -> size(operationName, storagePath, dataContext);
+
+        ParallelRangeReader.FirstRangeRead firstRangeRead = (rangeOffset, rangeSize, objectSize) -> {
+
+            // The stream is not subscribed until the first range is read, so no request is made if it is not used
+            var firstStream = fsOpenInputStream(objectKey, rangeOffset, rangeSize, dataContext);
+
+            if (!reportsObjectSize(firstStream))
+                return null;
+
+            return readFirstRange(objectKey, (CommonFileReader) firstStream, rangeOffset, rangeSize, objectSize, dataContext);
+        };
+
+        return new ParallelRangeReader(
+                dataContext, errors, storageKey, storagePath,
+                offset, limit, readSize, sizeCheck,
+                readRangeSize, readConcurrency,
+                readRetries, readLatencyTracker, retryBudget,
+                firstRangeRead,
+                (rangeOffset, rangeSize) -> limitRequest(dataContext, RequestClass.TRANSFER, () ->
+                        fsReadChunk(objectKey, rangeOffset, rangeSize, dataContext)));
+    }
+
+    private CompletionStage<ArrowBuf> readFirstRange(
+            String objectKey, CommonFileReader firstStream,
+            long offset, int size, LongConsumer objectSize,
+            IDataContext dataContext) {
+
+        // Read the first range as a stream, so readers that parse the object size from the response can report it
+        // The object size is not known yet, so the range can run past the end of the object
+        // Readers are told to accept a short response, so long as it reaches the end of the object
+
+        // Each attempt needs its own stream, in case the first attempt is throttled and retried
+        var nAttempts = new AtomicInteger(0);
+
+        Supplier<CompletionStage<List<ArrowBuf>>> readStream = () -> {
+
+            var stream = nAttempts.getAndIncrement() == 0
+                    ? firstStream
+                    : (CommonFileReader) fsOpenInputStream(objectKey, offset, size, dataContext);
+
+            stream.openEndedRange();
+            stream.checkObjectSize(objectSize);
+
+            List<ArrowBuf> attemptChunks = new ArrayList<>();
+
+            return Flows.fold(stream, (xs, x) -> { xs.add(x); return xs; }, attemptChunks)
+                    .whenComplete((xs, error) -> { if (error != null) attemptChunks.forEach(ArrowBuf::close); });
+        };
+
+        var collect = limitRequest(dataContext, RequestClass.TRANSFER, readStream);
+
+        return collect.handle((chunks, error) -> {
+
+            if (error != null)
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+
+            if (chunks.size() == 1)
+                return chunks.get(0);
+
+            // Combine the chunks, so the range is delivered as one buffer like the other ranges
+            try {
+                var rangeSize = Bytes.readableBytes(chunks);
+                var range = dataContext.arrowAllocator().buffer(rangeSize);
+                var position = 0L;
+
+                for (var chunk : chunks) {
+                    range.setBytes(position, chunk, chunk.readerIndex(), chunk.readableBytes());
+                    position += chunk.readableBytes();
+                }
+
+                range.writerIndex(rangeSize);
+
+                return range;
+            }
+            finally {
+                chunks.forEach(ArrowBuf::close);
+            }
+        });
+    }
+
     @Override
     public Flow.Subscriber<ArrowBuf>
     writer(String storagePath, CompletableFuture<Long> signal, IDataContext ctx) {
@@ -373,12 +810,70 @@ public abstract class CommonFileStorage implements IFileStorage {
     writer(String operationName, String storagePath, CompletableFuture<Long> signal, IDataContext ctx) {
 
         var objectKey = resolveObjectKey(operationName, storagePath, false);
-        var parent = objectKey.contains(BACKSLASH) ? objectKey.substring(0, objectKey.lastIndexOf(BACKSLASH)) : null;
 
         // Before opening the write stream several checks are needed
+        var prepare = prepareWrite(operationName, storagePath, objectKey, ctx);
+
+        // Monitor the result signal to log complete / error events
+        var monitorSignal = writeMonitor(storagePath, signal);
+
+        // Create the output stream - it will not activate until it is subscribed to a source
+        var outputStream = fsOpenOutputStream(objectKey, fromContext(ctx, monitorSignal), ctx);
+
+        // Return a delayed subscriber, that waits for the prepare step to finish before starting
+        return Flows.waitForSignal(outputStream, toContext(ctx, prepare));
+    }
+
+    @Override
+    public CompletionStage<Long>
+    copy(String sourcePath, String targetPath, IDataContext ctx) {
+
+        return wrapOperation(COPY_OPERATION, sourcePath, (op, path) -> copy(op, path, targetPath, ctx));
+    }
+
+    private CompletionStage<Long>
+    copy(String operationName, String sourcePath, String targetPath, IDataContext ctx) {
+
+        var sourceKey = resolveObjectKey(operationName, sourcePath, false);
+        var targetKey = resolveObjectKey(operationName, targetPath, false);
+
+        if (sourceKey.equals(targetKey)) {
+            var detail = String.format("copy target is the same as the source [%s]", targetPath);
+            throw errors.explicitError(operationName, sourcePath, STORAGE_PARAMS_INVALID, detail);
+        }
+
+        var sourceInfo = stat(operationName, sourcePath, ctx).thenApply(fi -> {
+
+            if (fi.fileType != FileType.FILE)
+                throw errors.explicitError(operationName, sourcePath, NOT_A_FILE);
+
+            return fi.size;
+        });
+
+        var prepare = sourceInfo.thenCompose(size -> prepareWrite(operationName, targetPath, targetKey, ctx));
+
+        var copy = prepare
+                .thenCompose(x -> sourceInfo)
+                .thenCompose(size -> limitRequest(ctx, RequestClass.BULK, () -> fsCopyFile(sourceKey, targetKey, size, ctx)));
+
+        return copy.thenApply(size -> {
+
+            var fileSize = LoggingHelpers.formatFileSize(size);
+            log.info("{} {} COMPLETE: {} [{}] -> [{}]", operationName, storageKey, fileSize, sourcePath, targetPath);
+
+            metrics.recordBytes(operationName, size);
+
+            return size;
+        });
+    }
+
+    private CompletionStage<Boolean>
+    prepareWrite(String operationName, String storagePath, String objectKey, IExecutionContext ctx) {
+
+        var parent = objectKey.contains(BACKSLASH) ? objectKey.substring(0, objectKey.lastIndexOf(BACKSLASH)) : null;
 
         // Check storage is not readOnly - if it is, return an error before anything else is attempted
-        var prepare = CompletableFuture.completedFuture(true).thenApply(x -> {
+        return CompletableFuture.completedFuture(true).thenApply(x -> {
 
             if (readOnly)
                 throw errors.explicitError(operationName, storagePath, ACCESS_DENIED);
@@ -391,13 +886,13 @@ public abstract class CommonFileStorage implements IFileStorage {
             if (parent == null || bucketSemantics)
                 return CompletableFuture.completedFuture(true);
             else
-                return fsDirExists(parent, ctx);
+                return limitRequest(ctx, () -> fsDirExists(parent, ctx));
 
         // If a parent dir is needed, create one (this makes file semantics behave like buckets)
         }).thenCompose(parentOk -> {
 
             if (!parentOk)
-                return fsCreateDir(parent, ctx);
+                return limitRequest(ctx, () -> fsCreateDir(parent, ctx));
             else
                 return CompletableFuture.completedFuture(null);
 
@@ -405,22 +900,13 @@ public abstract class CommonFileStorage implements IFileStorage {
         // With bucket semantics, a file and a directory can have the same name
         // This explicit check tries to prevent that confusion
         // Race conditions are possible, but the structured way TRAC uses storage makes that unlikely in practice
-        }).thenCompose(x -> fsDirExists(objectKey + BACKSLASH, ctx)).thenApply(isDir -> {
+        }).thenCompose(x -> limitRequest(ctx, () -> fsDirExists(objectKey + BACKSLASH, ctx))).thenApply(isDir -> {
 
             if (isDir)
                 throw errors.explicitError(operationName, storagePath, OBJECT_ALREADY_EXISTS);
 
             return true;
         });
-
-        // Monitor the result signal to log complete / error events
-        var monitorSignal = writeMonitor(storagePath, signal);
-
-        // Create the output stream - it will not activate until it is subscribed to a source
-        var outputStream = fsOpenOutputStream(objectKey, fromContext(ctx, monitorSignal), ctx);
-
-        // Return a delayed subscriber, that waits for the prepare step to finish before starting
-        return Flows.waitForSignal(outputStream, toContext(ctx, prepare));
     }
 
 
@@ -506,13 +992,17 @@ public abstract class CommonFileStorage implements IFileStorage {
     private <TResult> CompletionStage<TResult>
     wrapOperation(String operationName, String storagePath, FsOperation<TResult> func) {
 
+        var startTime = System.nanoTime();
+
         try {
 
             log.info("{} {}: [{}]", operationName, storageKey, storagePath);
 
             var result = func.call(operationName, storagePath);
 
-            return result.exceptionally(error -> {
+            return result.whenComplete((value, error) ->
+                    metrics.recordOperation(operationName, System.nanoTime() - startTime, 0, error != null))
+            .exceptionally(error -> {
 
                 var mappedError = errors.handleException(operationName, storagePath, error);
 
@@ -524,6 +1014,8 @@ public abstract class CommonFileStorage implements IFileStorage {
         }
         catch (Exception error) {
 
+            metrics.recordOperation(operationName, System.nanoTime() - startTime, 0, true);
+
             var mappedError = errors.handleException(operationName, storagePath, error);
 
             log.error("{} {} FAILED: [{}]", operationName, storageKey, storagePath);
@@ -547,6 +1039,8 @@ public abstract class CommonFileStorage implements IFileStorage {
         }
         catch (Exception error) {
 
+            metrics.recordOperation(operationName, 0, 0, true);
+
             var mappedError = errors.handleException(operationName, storagePath, error);
 
             log.error("{} {} FAILED: [{}]", operationName, storageKey, storagePath);
@@ -559,9 +1053,13 @@ public abstract class CommonFileStorage implements IFileStorage {
     private CompletableFuture<Long> writeMonitor(String storagePath, CompletableFuture<Long> readSignal) {
 
         var monitorSignal = new CompletableFuture<Long>();
+        var startTime = System.nanoTime();
 
         monitorSignal.whenComplete((size, error) -> {
 
+            var elapsed = System.nanoTime() - startTime;
+            metrics.recordOperation(WRITE_OPERATION, elapsed, error == null ? size : 0, error != null);
+
             if (error != null) {
                 var mappedError = errors.handleException(WRITE_OPERATION, storagePath, error);
                 log.error("{} {} FAILED: [{}]", WRITE_OPERATION, storageKey, storagePath);
@@ -582,6 +1080,8 @@ public abstract class CommonFileStorage implements IFileStorage {
 
         return readChunk.thenApply(buffer -> {
 
+            metrics.recordBytes(READ_OPERATION, buffer.readableBytes());
+
             var fileSize = LoggingHelpers.formatFileSize(buffer.readableBytes());
             log.info("{} {} COMPLETE: {} [{}]", READ_OPERATION, storageKey, fileSize, storagePath);
             return buffer;
@@ -604,6 +1104,7 @@ public abstract class CommonFileStorage implements IFileStorage {
         private Flow.Subscriber<? super ArrowBuf> target;
 
         private long byteCounter;
+        private long startTime;
 
         public ReadStreamMonitor(String storagePath, Flow.Publisher<ArrowBuf> source) {
             this.storagePath = storagePath;
@@ -621,6 +1122,8 @@ public abstract class CommonFileStorage implements IFileStorage {
             }
 
             this.target = subscriber;
+            this.startTime = System.nanoTime();
+
             source.subscribe(this);
         }
 
@@ -637,6 +1140,7 @@ public abstract class CommonFileStorage implements IFileStorage {
 
         @Override
         public void onError(Throwable error) {
+            metrics.recordOperation(READ_OPERATION, System.nanoTime() - startTime, byteCounter, true);
             var mappedError = errors.handleException(READ_OPERATION, storagePath, error);
             log.error("{} {} FAILED: [{}]", READ_OPERATION, storageKey, storagePath);
             log.error(mappedError.getMessage(), mappedError);
@@ -645,12 +1149,240 @@ public abstract class CommonFileStorage implements IFileStorage {
 
         @Override
         public void onComplete() {
+            metrics.recordOperation(READ_OPERATION, System.nanoTime() - startTime, byteCounter, false);
             var fileSize = LoggingHelpers.formatFileSize(byteCounter);
             log.info("{} {} COMPLETE: {} [{}]", READ_OPERATION, storageKey, fileSize, storagePath);
             target.onComplete();
         }
     }
 
+    private final class LimitedReadStream implements Flow.Publisher<ArrowBuf> {
+
+        // Opening a read stream takes a slot in the request limit, which is released when the first response arrives
+        // The slot is not held for the whole stream, a slow consumer should not hold back other requests
+        // If the open is throttled before any data is delivered, a new stream is opened after a backoff
+
+        private final IDataContext dataContext;
+        private final Flow.Publisher<ArrowBuf> firstStream;
+        private final Supplier<Flow.Publisher<ArrowBuf>> reopenStream;
+
+        private final AtomicBoolean targetSet = new AtomicBoolean(false);
+        private Flow.Subscriber<? super ArrowBuf> target;
+
+        private Flow.Subscription source;
+        private int attempt;
+        private long nRequested;
+        private long startTime;
+        private boolean slotHeld;
+        private boolean gotData;
+        private boolean gotCancel;
+
+        LimitedReadStream(
+                IDataContext dataContext,
+                Flow.Publisher<ArrowBuf> firstStream,
+                Supplier<Flow.Publisher<ArrowBuf>> reopenStream) {
+
+            this.dataContext = dataContext;
+            this.firstStream = firstStream;
+            this.reopenStream = reopenStream;
+        }
+
+        boolean reportsObjectSize() {
+            return CommonFileStorage.reportsObjectSize(firstStream);
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ArrowBuf> subscriber) {
+
+            var firstSubscription = targetSet.compareAndSet(false, true);
+
+            if (!firstSubscription) {
+                subscriber.onError(new IllegalStateException("Duplicate subscription"));
+                return;
+            }
+
+            this.target = subscriber;
+
+            // Queue the open before any requests from the subscription, same as for the readers
+            dataContext.eventLoopExecutor().submit(this::open);
+
+            subscriber.onSubscribe(new Subscription());
+        }
+
+        private class Subscription implements Flow.Subscription {
+
+            @Override
+            public void request(long n) {
+                dataContext.eventLoopExecutor().submit(() -> onRequest(n));
+            }
+
+            @Override
+            public void cancel() {
+                dataContext.eventLoopExecutor().submit(LimitedReadStream.this::onCancel);
+            }
+        }
+
+        private void open() {
+
+            if (gotCancel)
+                return;
+
+            retryBudget.recordRequest();
+
+            requestLimit.acquire(dataContext.eventLoopExecutor()).thenRun(this::start);
+        }
+
+        private void start() {
+
+            slotHeld = true;
+            startTime = System.nanoTime();
+
+            if (gotCancel) {
+                releaseSlot(false, false);
+                return;
+            }
+
+            var sourceAttempt = attempt;
+
+            try {
+                var stream = sourceAttempt == 0 ? firstStream : reopenStream.get();
+                stream.subscribe(new SourceSubscriber(sourceAttempt));
+            }
+            catch (Exception e) {
+                onSourceError(sourceAttempt, e);
+            }
+        }
+
+        private void onRequest(long n) {
+
+            if (gotCancel)
+                return;
+
+            // Keep a count of demand until data arrives, so it can be passed on if the stream is reopened
+            if (!gotData)
+                nRequested = nRequested + n < 0 ? Long.MAX_VALUE : nRequested + n;
+
+            if (source != null)
+                source.request(n);
+        }
+
+        private void onCancel() {
+
+            gotCancel = true;
+
+            if (source != null)
+                source.cancel();
+
+            releaseSlot(false, false);
+        }
+
+        private void onSourceSubscribe(int sourceAttempt, Flow.Subscription subscription) {
+
+            if (sourceAttempt != attempt || gotCancel) {
+                subscription.cancel();
+                return;
+            }
+
+            source = subscription;
+
+            if (nRequested > 0)
+                source.request(nRequested);
+        }
+
+        private void onSourceNext(ArrowBuf chunk) {
+
+            if (!gotData) {
+                gotData = true;
+                releaseSlot(false, false);
+            }
+
+            target.onNext(chunk);
+        }
+
+        private void onSourceError(int sourceAttempt, Throwable error) {
+
+            if (sourceAttempt != attempt)
+                return;
+
+            var throttled = !gotData && errors.isThrottlingError(error);
+
+            releaseSlot(true, throttled);
+
+            if (gotCancel)
+                return;
+
+            if (throttled && attempt < THROTTLE_MAX_RETRIES && retryBudget.tryRetry()) {
+
+                var delay = throttleDelay(attempt);
+
+                log.warn("Storage [{}] read stream throttled, retrying in {} ms", storageKey, delay);
+
+                attempt += 1;
+                source = null;
+
+                dataContext.eventLoopExecutor().schedule(this::open, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            target.onError(error);
+        }
+
+        private void onSourceComplete(int sourceAttempt) {
+
+            if (sourceAttempt != attempt)
+                return;
+
+            releaseSlot(false, false);
+
+            if (!gotCancel)
+                target.onComplete();
+        }
+
+        private void releaseSlot(boolean failed, boolean throttled) {
+
+            if (!slotHeld)
+                return;
+
+            slotHeld = false;
+
+            var elapsed = System.nanoTime() - startTime;
+
+            requestLimit.release(RequestClass.STREAM_OPEN, elapsed, throttled);
+            metrics.recordOperation(StorageMetrics.BACKEND_REQUEST, elapsed, 0, failed);
+        }
+
+        // Readers deliver their signals on the event loop for the data context, so no further hand-off is needed
+
+        private class SourceSubscriber implements Flow.Subscriber<ArrowBuf> {
+
+            private final int sourceAttempt;
+
+            SourceSubscriber(int sourceAttempt) {
+                this.sourceAttempt = sourceAttempt;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                onSourceSubscribe(sourceAttempt, subscription);
+            }
+
+            @Override
+            public void onNext(ArrowBuf item) {
+                onSourceNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                onSourceError(sourceAttempt, throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                onSourceComplete(sourceAttempt);
+            }
+        }
+    }
+
     @FunctionalInterface
     private interface FsOperation<TResult> {
 
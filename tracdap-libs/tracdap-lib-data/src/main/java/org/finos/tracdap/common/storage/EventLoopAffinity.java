@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.data.IExecutionContext;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+/**
+ * Holds one storage client per event loop, so each request uses a client bound to its own event loop.
+ *
+ * <p>Storage clients built on Netty assign connections to event loops in the group they are given.
+ * With one client for the whole group, responses for a request usually arrive on a different event loop
+ * to the one running the request, and every callback and data chunk is posted back across threads.
+ * With one client per event loop, I/O for a request happens on the request's own event loop and
+ * callbacks are processed in place.</p>
+ *
+ * <p>Execution contexts that are not part of the group (e.g. tests or tools with a separate event loop)
+ * are shared between the available clients in round-robin order.</p>
+ */
+public class EventLoopAffinity<TClient> {
+
+    private final Map<EventExecutor, TClient> clientMap;
+    private final List<TClient> clients;
+    private final AtomicInteger nextClient;
+
+    public EventLoopAffinity(EventLoopGroup eventLoopGroup, Function<EventLoop, TClient> clientFactory) {
+
+        var clientMap = new IdentityHashMap<EventExecutor, TClient>();
+        var clients = new ArrayList<TClient>();
+
+        for (var executor : eventLoopGroup) {
+
+            if (!(executor instanceof EventLoop))
+                throw new IllegalArgumentException("Event loop group contains an executor that is not an event loop");
+
+            var client = clientFactory.apply((EventLoop) executor);
+
+            clientMap.put(executor, client);
+            clients.add(client);
+        }
+
+        if (clients.isEmpty())
+            throw new IllegalArgumentException("Event loop group does not contain any event loops");
+
+        this.clientMap = Collections.unmodifiableMap(clientMap);
+        this.clients = Collections.unmodifiableList(clients);
+        this.nextClient = new AtomicInteger(0);
+    }
+
+    public TClient client(IExecutionContext ctx) {
+
+        var client = clientMap.get(ctx.eventLoopExecutor());
+
+        if (client != null)
+            return client;
+
+        return anyClient();
+    }
+
+    public TClient anyClient() {
+
+        var index = Math.floorMod(nextClient.getAndIncrement(), clients.size());
+        return clients.get(index);
+    }
+
+    public List<TClient> allClients() {
+
+        return clients;
+    }
+}
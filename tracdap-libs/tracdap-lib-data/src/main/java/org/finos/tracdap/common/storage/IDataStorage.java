@@ -19,12 +19,16 @@ package org.finos.tracdap.common.storage;
 
 import org.finos.tracdap.common.data.DataPipeline;
 import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.IExecutionContext;
 import org.finos.tracdap.metadata.SchemaDefinition;
 import org.finos.tracdap.metadata.StorageCopy;
 
 import io.netty.channel.EventLoopGroup;
+import org.apache.arrow.memory.ArrowBuf;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 
 
 public interface IDataStorage extends AutoCloseable {
@@ -50,9 +54,29 @@ public interface IDataStorage extends AutoCloseable {
             IDataContext dataContext,
             long offset, long limit);
 
+    // Read the stored content of a copy exactly as it is held in storage, with no decoding
+    Flow.Publisher<ArrowBuf> reader(
+            StorageCopy storageCopy,
+            IDataContext dataContext);
+
+    // Read a byte range of the stored content, a limit of zero reads to the end
+    Flow.Publisher<ArrowBuf> reader(
+            StorageCopy storageCopy,
+            long offset, long limit,
+            IDataContext dataContext);
+
+    CompletionStage<Long> size(
+            StorageCopy storageCopy,
+            IExecutionContext execContext);
+
     DataPipeline pipelineWriter(
             StorageCopy storageCopy,
             IDataContext dataContext,
             DataPipeline pipeline,
             CompletableFuture<Long> signal);
+
+    // Remove the stored content of a copy, e.g. a copy that could not be recorded in metadata
+    CompletionStage<Void> delete(
+            StorageCopy storageCopy,
+            IExecutionContext execContext);
 }
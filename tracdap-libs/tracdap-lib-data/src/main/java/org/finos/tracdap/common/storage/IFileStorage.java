@@ -17,6 +17,7 @@
 
 package org.finos.tracdap.common.storage;
 
+import org.finos.tracdap.common.async.Flows;
 import org.finos.tracdap.common.data.IExecutionContext;
 import org.finos.tracdap.common.data.IDataContext;
 
@@ -27,6 +28,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
 
 
 public interface IFileStorage extends AutoCloseable {
@@ -38,6 +40,9 @@ public interface IFileStorage extends AutoCloseable {
     @Override
     default void close() { stop(); }
 
+    /// Latency, throughput and error counters for operations on this storage instance
+    StorageMetrics metrics();
+
     CompletionStage<Boolean> exists(String storagePath, IExecutionContext execContext);
 
     CompletionStage<Long> size(String storagePath, IExecutionContext execContext);
@@ -46,6 +51,11 @@ public interface IFileStorage extends AutoCloseable {
 
     CompletionStage<List<FileStat>> ls(String storagePath, IExecutionContext execContext);
 
+    CompletionStage<FileListing> ls(
+            String storagePath, boolean recursive,
+            String pageToken, int pageSize,
+            IExecutionContext execContext);
+
     CompletionStage<Void> mkdir(String storagePath, boolean recursive, IExecutionContext execContext);
 
     CompletionStage<Void> rm(String storagePath, IExecutionContext execContext);
@@ -61,8 +71,40 @@ public interface IFileStorage extends AutoCloseable {
             String storagePath,
             IDataContext dataContext);
 
+    /// Open a reader for a byte range of the object
+    ///
+    /// Only the requested range is fetched from the storage backend. A limit of zero reads
+    /// to the end of the object, the stream may be shorter than the limit if the object ends first.
+    Flow.Publisher<ArrowBuf> reader(
+            String storagePath,
+            long offset, long limit,
+            IDataContext dataContext);
+
+    /// Open a reader that checks the object size before any content is delivered
+    ///
+    /// The size check should throw if the object cannot be read. Implementations that learn
+    /// the size from the read itself can avoid a separate metadata request.
+    default Flow.Publisher<ArrowBuf> reader(
+            String storagePath,
+            LongConsumer sizeCheck,
+            IDataContext dataContext) {
+
+        var checkSize = size(storagePath, dataContext).thenAccept(sizeCheck);
+
+        return Flows.waitForSignal(reader(storagePath, dataContext), checkSize);
+    }
+
     Flow.Subscriber<ArrowBuf> writer(
             String storagePath,
             CompletableFuture<Long> signal,
             IDataContext dataContext);
+
+    /// Copy a file to a new location in the same storage, overwriting the target if it exists
+    ///
+    /// Backends that support it copy the content server-side, so data does not pass through TRAC.
+    /// The result is the number of bytes copied.
+    CompletionStage<Long> copy(
+            String sourcePath,
+            String targetPath,
+            IDataContext dataContext);
 }
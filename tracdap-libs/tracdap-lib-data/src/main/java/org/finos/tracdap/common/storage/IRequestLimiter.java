@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.data.IExecutionContext;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+
+/**
+ * Send requests to a storage backend under the adaptive request limit for that storage.
+ *
+ * <p>Storage implementations pass the limiter to their readers and writers, so requests they make
+ * directly (e.g. multipart uploads) share the same limit as other requests on the storage.
+ * Throttled requests are retried with backoff, within the retry budget for the storage.</p>
+ */
+public interface IRequestLimiter {
+
+    /**
+     * Requests are grouped by their expected latency, rising latency is only compared within a group.
+     */
+    enum RequestClass {
+
+        /** Small requests with no data, e.g. exists, stat, list, delete */
+        METADATA,
+
+        /** Data requests of a bounded size, e.g. a ranged read or an upload part */
+        TRANSFER,
+
+        /** Time to the first response for a streaming read */
+        STREAM_OPEN,
+
+        /** Requests whose duration depends on the size of the object (e.g. copy), only throttling is used */
+        BULK
+    }
+
+    <T> CompletionStage<T> limitRequest(
+            IExecutionContext ctx, RequestClass requestClass,
+            Supplier<CompletionStage<T>> request);
+}
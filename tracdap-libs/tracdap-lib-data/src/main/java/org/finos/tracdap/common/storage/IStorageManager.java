@@ -19,13 +19,22 @@ package org.finos.tracdap.common.storage;
 
 import org.finos.tracdap.metadata.StorageLayout;
 
+import java.util.List;
+
 public interface IStorageManager {
 
     String PROP_STORAGE_KEY = "TRAC_STORAGE_KEY";
 
+    // Storage layout for new objects in an individual storage location, overrides the tenant default
+    String PROP_STORAGE_LAYOUT = "layout";
+
     String defaultLocation();
     String defaultFormat();
     StorageLayout defaultLayout();
+    StorageLayout defaultLayout(String storageKey);
+
+    // Formats that datasets are copied into on download, as set by tenant policy
+    List<String> copyFormats();
 
     IDataStorage getDataStorage(String storageKey);
 
@@ -20,6 +20,7 @@ package org.finos.tracdap.common.storage;
 import org.finos.tracdap.common.config.ConfigDefaults;
 import org.finos.tracdap.common.exception.ETracInternal;
 import org.finos.tracdap.common.storage.layouts.DateSnapLayout;
+import org.finos.tracdap.common.storage.layouts.HashShardLayout;
 import org.finos.tracdap.common.storage.layouts.ObjectIdLayout;
 import org.finos.tracdap.metadata.StorageLayout;
 
@@ -33,7 +34,8 @@ public class LayoutSelector {
 
     private static final Map<StorageLayout, IStorageLayout> STORAGE_LAYOUTS = Map.ofEntries(
             Map.entry(StorageLayout.OBJECT_ID_LAYOUT, new ObjectIdLayout()),
-            Map.entry(StorageLayout.DATE_SNAP_LAYOUT, new DateSnapLayout()));
+            Map.entry(StorageLayout.DATE_SNAP_LAYOUT, new DateSnapLayout()),
+            Map.entry(StorageLayout.HASH_SHARD_LAYOUT, new HashShardLayout()));
 
     // For new objects, use ConfigDefaults if a default layout is set in the storage configuration
     private static final StorageLayout DEFAULT_STORAGE_LAYOUT = ConfigDefaults.STORAGE_DEFAULT_LAYOUT;
@@ -0,0 +1,540 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.exception.EUnexpected;
+
+import org.apache.arrow.memory.ArrowBuf;
+import io.netty.util.concurrent.OrderedEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+import static org.finos.tracdap.common.storage.CommonFileStorage.READ_OPERATION;
+import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.DUPLICATE_SUBSCRIPTION;
+import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.STORAGE_PARAMS_INVALID;
+
+
+/**
+ * Read an object as a sequence of ranged reads, with several ranges in flight at once.
+ *
+ * <p>Ranges can complete in any order, completed ranges are held and delivered to the
+ * subscriber in sequence. The number of ranges in flight (or completed but not yet delivered)
+ * never exceeds the configured concurrency or the outstanding demand from the subscriber,
+ * so memory use is bounded by concurrency * range size.</p>
+ *
+ * <p>The object size is needed to split the read into ranges. If the backend can report the object size
+ * in the response to a ranged read (e.g. from the Content-Range header), the first range is read straight away
+ * and the size is taken from that response. Otherwise, the size is looked up with a separate request before
+ * any ranges are read. The same lookup is used if the backend rejects the first range as not satisfiable
+ * (e.g. for an empty object), any other error in the first range fails the read.</p>
+ *
+ * <p>Each range is read independently, so a transient failure only retries that range (with backoff)
+ * instead of failing the whole read. Retries draw on the retry budget of the storage, so a backend that
+ * is failing across the board does not get a retry for every range. If a latency tracker is supplied,
+ * a range that has not returned within the hedge delay gets a duplicate request and whichever response
+ * arrives first is used, this applies to retried attempts as well as the first attempt.</p>
+ */
+class ParallelRangeReader implements Flow.Publisher<ArrowBuf> {
+
+    @FunctionalInterface
+    interface RangeRead {
+        CompletionStage<ArrowBuf> readRange(long offset, int size);
+    }
+
+    @FunctionalInterface
+    interface FirstRangeRead {
+
+        // Returns null if the backend cannot report the object size, nothing is read in that case
+        CompletionStage<ArrowBuf> readFirstRange(long offset, int size, LongConsumer objectSize);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelRangeReader.class);
+
+    private static final long RETRY_BASE_DELAY_MILLIS = 100;
+    private static final long RETRY_MAX_DELAY_MILLIS = 2000;
+
+    private final OrderedEventExecutor executor;
+    private final StorageErrors errors;
+    private final String storageKey;
+    private final String storagePath;
+
+    private final Supplier<CompletionStage<Long>> readSize;
+    private final LongConsumer sizeCheck;
+    private final FirstRangeRead firstRangeRead;
+    private final RangeRead rangeRead;
+    private final long offset;
+    private final long limit;
+    private final int rangeSize;
+    private final int concurrency;
+    private final int maxRetries;
+    private final ReadLatencyTracker latencyTracker;
+    private final RetryBudget retryBudget;
+
+    private final AtomicBoolean subscriberSet;
+    private Flow.Subscriber<? super ArrowBuf> subscriber;
+
+    private final Map<Long, ArrowBuf> completedRanges;
+    private long length;
+    private long nRanges;
+    private long nextRange;
+    private long nextDelivery;
+    private long nRequested;
+
+    private boolean gotLength;
+    private boolean gotComplete;
+    private boolean gotError;
+    private volatile boolean gotCancel;
+
+    ParallelRangeReader(
+            IDataContext dataContext, StorageErrors errors,
+            String storageKey, String storagePath,
+            long offset, long limit,
+            Supplier<CompletionStage<Long>> readSize, LongConsumer sizeCheck,
+            int rangeSize, int concurrency,
+            int maxRetries, ReadLatencyTracker latencyTracker, RetryBudget retryBudget,
+            FirstRangeRead firstRangeRead, RangeRead rangeRead) {
+
+        this.executor = dataContext.eventLoopExecutor();
+        this.errors = errors;
+        this.storageKey = storageKey;
+        this.storagePath = storagePath;
+
+        this.readSize = readSize;
+        this.sizeCheck = sizeCheck;
+        this.firstRangeRead = firstRangeRead;
+        this.rangeRead = rangeRead;
+        this.offset = offset;
+        this.limit = limit;
+        this.rangeSize = rangeSize;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.latencyTracker = latencyTracker;
+        this.retryBudget = retryBudget;
+
+        this.subscriberSet = new AtomicBoolean(false);
+        this.completedRanges = new HashMap<>();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ArrowBuf> subscriber) {
+
+        var subscribeOk = subscriberSet.compareAndSet(false, true);
+
+        if (!subscribeOk) {
+            var eStorage = errors.explicitError(READ_OPERATION, storagePath, DUPLICATE_SUBSCRIPTION);
+            var eFlowState = new IllegalStateException(eStorage.getMessage(), eStorage);
+            subscriber.onError(eFlowState);
+            return;
+        }
+
+        this.subscriber = subscriber;
+
+        // Same pattern as CommonFileReader, start() is queued before any requests from the subscription
+
+        executor.submit(this::start);
+
+        subscriber.onSubscribe(new Subscription());
+    }
+
+    private class Subscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            executor.submit(() -> ParallelRangeReader.this.request(n));
+        }
+
+        @Override
+        public void cancel() {
+            // Set the flag immediately, so no more chunks are delivered once cancel is requested
+            gotCancel = true;
+            executor.submit(ParallelRangeReader.this::cancel);
+        }
+    }
+
+    private void start() {
+
+        if (isDone())
+            return;
+
+        if (firstRangeRead != null)
+            readFirstRange();
+        else
+            readSize();
+    }
+
+    private void readFirstRange() {
+
+        // Read the first range without knowing the object size, the response will report it
+        // If the range runs past the end of the object, the backend returns what is there
+
+        var size = limit > 0 ? (int) Math.min(rangeSize, limit) : rangeSize;
+        var objectSize = new AtomicLong(-1);
+
+        try {
+
+            var firstRange = firstRangeRead.readFirstRange(offset, size, objectSize::set);
+
+            if (firstRange == null) {
+                readSize();
+                return;
+            }
+
+            firstRange.whenComplete((chunk, err) ->
+                    executor.submit(() -> onFirstRange(chunk, objectSize.get(), err)));
+        }
+        catch (Exception e) {
+            onError(e);
+        }
+    }
+
+    private void onFirstRange(ArrowBuf chunk, long objectSize, Throwable error) {
+
+        if (isDone()) {
+            if (chunk != null)
+                chunk.close();
+            return;
+        }
+
+        if (error != null && !errors.isRangeNotSatisfiable(error)) {
+            onError(error);
+            return;
+        }
+
+        // A range the backend cannot satisfy does not report the size (e.g. a range on an empty object)
+        // Fall back to a separate lookup, which will also catch an offset past the end of the object
+
+        if (error != null || objectSize < 0) {
+
+            if (chunk != null)
+                chunk.close();
+
+            log.debug("{} {} [{}]: Object size not available from the first range, looking up the size",
+                    READ_OPERATION, storageKey, storagePath);
+
+            readSize();
+            return;
+        }
+
+        try {
+
+            var length = readLength(objectSize);
+
+            if (chunk.readableBytes() != Math.min(rangeSize, length))
+                throw new EUnexpected();
+
+            if (length > 0) {
+                completedRanges.put(0L, chunk);
+                nextRange = 1;
+            }
+            else
+                chunk.close();
+
+            onLength(length);
+        }
+        catch (Exception e) {
+            chunk.close();
+            onError(e);
+        }
+    }
+
+    private void readSize() {
+
+        try {
+            readSize.get().whenComplete((size, err) -> executor.submit(() -> onSize(size, err)));
+        }
+        catch (Exception e) {
+            onError(e);
+        }
+    }
+
+    private void onSize(Long objectSize, Throwable error) {
+
+        if (isDone())
+            return;
+
+        if (error != null) {
+            onError(error);
+            return;
+        }
+
+        try {
+            onLength(readLength(objectSize));
+        }
+        catch (Exception e) {
+            onError(e);
+        }
+    }
+
+    private long readLength(long objectSize) {
+
+        if (sizeCheck != null)
+            sizeCheck.accept(objectSize);
+
+        if (offset > objectSize) {
+            var detail = String.format("offset = %d, size = %d", offset, objectSize);
+            throw errors.explicitError(READ_OPERATION, storagePath, STORAGE_PARAMS_INVALID, detail);
+        }
+
+        // Ranges that extend past the end of the object stop at the end, same as for a single stream
+        return limit > 0 ? Math.min(limit, objectSize - offset) : objectSize - offset;
+    }
+
+    private void onLength(long length) {
+
+        this.length = length;
+        this.nRanges = (length + rangeSize - 1) / rangeSize;
+        this.gotLength = true;
+
+        sendRanges();
+        readRanges();
+    }
+
+    private void request(long n) {
+
+        if (isDone())
+            return;
+
+        nRequested += n;
+
+        // Guard against overflow for unbounded requests
+        if (nRequested < 0)
+            nRequested = Long.MAX_VALUE;
+
+        sendRanges();
+        readRanges();
+    }
+
+    private void cancel() {
+
+        if (gotComplete || gotError)
+            return;
+
+        log.info("READ CANCELLED: [{}]", storagePath);
+
+        releaseCompletedRanges();
+    }
+
+    private void readRanges() {
+
+        if (!gotLength || isDone())
+            return;
+
+        // Ranges in flight or waiting for delivery, each one will satisfy one unit of demand
+        while (nextRange < nRanges) {
+
+            var outstanding = nextRange - nextDelivery;
+            var demand = nRequested - nextDelivery;
+
+            if (outstanding >= concurrency || outstanding >= demand)
+                break;
+
+            var rangeIndex = nextRange++;
+            var rangeOffset = rangeIndex * rangeSize;
+            var size = (int) Math.min(rangeSize, length - rangeOffset);
+
+            var range = new RangeState(rangeIndex, offset + rangeOffset, size);
+
+            startAttempt(range);
+            scheduleHedge(range);
+        }
+    }
+
+    private static class RangeState {
+
+        final long index;
+        final long offset;
+        final int size;
+
+        int attemptsInFlight;
+        int retries;
+        boolean complete;
+        ScheduledFuture<?> hedgeTimer;
+
+        RangeState(long index, long offset, int size) {
+            this.index = index;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private void startAttempt(RangeState range) {
+
+        var startTime = System.nanoTime();
+
+        range.attemptsInFlight += 1;
+
+        try {
+            rangeRead.readRange(range.offset, range.size).whenComplete((chunk, err) ->
+                    executor.submit(() -> onAttempt(range, startTime, chunk, err)));
+        }
+        catch (Exception e) {
+            executor.submit(() -> onAttempt(range, startTime, null, e));
+        }
+    }
+
+    private void scheduleHedge(RangeState range) {
+
+        if (latencyTracker == null)
+            return;
+
+        if (range.hedgeTimer != null)
+            range.hedgeTimer.cancel(false);
+
+        var hedgeDelay = latencyTracker.hedgeDelayNanos();
+        range.hedgeTimer = executor.schedule(() -> hedgeRange(range), hedgeDelay, TimeUnit.NANOSECONDS);
+    }
+
+    private void hedgeRange(RangeState range) {
+
+        if (isDone() || range.complete)
+            return;
+
+        log.info("{} {} [{}]: Hedging slow read for range at offset {}",
+                READ_OPERATION, storageKey, storagePath, range.offset);
+
+        startAttempt(range);
+    }
+
+    private void onAttempt(RangeState range, long startTime, ArrowBuf chunk, Throwable error) {
+
+        range.attemptsInFlight -= 1;
+
+        // Discard results after the read is finished, or from the slower of two hedged requests
+        if (isDone() || range.complete) {
+            if (chunk != null)
+                chunk.close();
+            return;
+        }
+
+        if (error == null) {
+
+            range.complete = true;
+
+            if (range.hedgeTimer != null)
+                range.hedgeTimer.cancel(false);
+
+            if (latencyTracker != null)
+                latencyTracker.recordLatency(System.nanoTime() - startTime);
+
+            completedRanges.put(range.index, chunk);
+
+            sendRanges();
+            readRanges();
+
+            return;
+        }
+
+        // If a hedged request is still running, it may yet succeed
+        if (range.attemptsInFlight > 0)
+            return;
+
+        var tracError = errors.handleException(READ_OPERATION, storagePath, error);
+
+        if (range.retries < maxRetries && errors.isRetryable(tracError) &&
+            (retryBudget == null || retryBudget.tryRetry())) {
+
+            var retryDelay = Math.min(RETRY_BASE_DELAY_MILLIS << range.retries, RETRY_MAX_DELAY_MILLIS);
+            range.retries += 1;
+
+            // Do not hedge while waiting to retry, the retry is hedged when it starts
+            if (range.hedgeTimer != null)
+                range.hedgeTimer.cancel(false);
+
+            log.warn("{} {} [{}]: Retrying read for range at offset {} (attempt {} of {}): {}",
+                    READ_OPERATION, storageKey, storagePath, range.offset,
+                    range.retries, maxRetries, tracError.getMessage());
+
+            executor.schedule(() -> retryRange(range), retryDelay, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        onError(tracError);
+    }
+
+    private void retryRange(RangeState range) {
+
+        if (isDone() || range.complete)
+            return;
+
+        // A retried attempt can be slow for the same reasons as the first, so it is hedged the same way
+        startAttempt(range);
+        scheduleHedge(range);
+    }
+
+    private void sendRanges() {
+
+        while (!isDone() && nextDelivery < nRequested && completedRanges.containsKey(nextDelivery)) {
+
+            var chunk = completedRanges.remove(nextDelivery);
+            nextDelivery += 1;
+
+            subscriber.onNext(chunk);
+        }
+
+        if (gotLength && !isDone() && nextDelivery == nRanges) {
+            gotComplete = true;
+            subscriber.onComplete();
+        }
+    }
+
+    private void onError(Throwable error) {
+
+        try {
+
+            var tracError = errors.handleException(READ_OPERATION, storagePath, error);
+
+            if (gotError || gotCancel) {
+                log.warn("{} {} [{}]: Read operation already stopped, then an error occurred",
+                        READ_OPERATION, storageKey, storagePath, tracError);
+            }
+            else {
+                log.error("{} {} [{}]: {}",
+                        READ_OPERATION, storageKey, storagePath, tracError.getMessage(), tracError);
+
+                gotError = true;
+                subscriber.onError(tracError);
+            }
+        }
+        finally {
+            releaseCompletedRanges();
+        }
+    }
+
+    private boolean isDone() {
+
+        return gotComplete || gotError || gotCancel;
+    }
+
+    private void releaseCompletedRanges() {
+
+        completedRanges.values().forEach(ArrowBuf::close);
+        completedRanges.clear();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+
+/**
+ * Track recent latencies for ranged reads, to decide when a slow read should be hedged.
+ *
+ * <p>One tracker is shared by all reads on a storage instance. The hedge delay is the
+ * configured percentile of recent latencies, so only reads that are slow compared to
+ * the recent behaviour of the same storage get a duplicate request.</p>
+ */
+class ReadLatencyTracker {
+
+    private static final int WINDOW_SIZE = 256;
+    private static final int MIN_SAMPLES = 20;
+
+    // Used until enough samples are available to estimate the percentile
+    private static final long DEFAULT_DELAY_NANOS = Duration.ofSeconds(2).toNanos();
+    private static final long MIN_DELAY_NANOS = Duration.ofMillis(20).toNanos();
+
+    private final double percentile;
+    private final long[] samples;
+    private int nextSample;
+    private int nSamples;
+
+    ReadLatencyTracker(int percentile) {
+
+        this.percentile = percentile / 100.0;
+        this.samples = new long[WINDOW_SIZE];
+    }
+
+    synchronized void recordLatency(long nanos) {
+
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % WINDOW_SIZE;
+
+        if (nSamples < WINDOW_SIZE)
+            nSamples += 1;
+    }
+
+    synchronized long hedgeDelayNanos() {
+
+        if (nSamples < MIN_SAMPLES)
+            return DEFAULT_DELAY_NANOS;
+
+        var sorted = Arrays.copyOf(samples, nSamples);
+        Arrays.sort(sorted);
+
+        var index = (int) Math.min(nSamples - 1, Math.ceil(percentile * nSamples) - 1);
+        var delay = sorted[Math.max(index, 0)];
+
+        return Math.max(delay, MIN_DELAY_NANOS);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+
+/**
+ * Limit the number of retries sent to a storage backend, relative to the number of requests.
+ *
+ * <p>Each request adds a fraction of a token to the budget and each retry spends a whole token,
+ * up to a fixed maximum. When a backend is failing across the board, retries from every read
+ * and every request would multiply the load on it. The budget lets occasional failures be retried
+ * freely, while sustained failures quickly run out of tokens and are reported instead.</p>
+ *
+ * <p>One budget is shared by all requests on a storage instance, including throttle retries,
+ * retries for individual ranges and resumed streams.</p>
+ */
+class RetryBudget {
+
+    static final double DEFAULT_RETRY_RATIO = 0.1;
+    static final double DEFAULT_MAX_TOKENS = 10.0;
+
+    private final double retryRatio;
+    private final double maxTokens;
+    private double tokens;
+
+    RetryBudget(double retryRatio, double maxTokens) {
+
+        this.retryRatio = retryRatio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    RetryBudget() {
+
+        this(DEFAULT_RETRY_RATIO, DEFAULT_MAX_TOKENS);
+    }
+
+    synchronized void recordRequest() {
+
+        tokens = Math.min(tokens + retryRatio, maxTokens);
+    }
+
+    synchronized boolean tryRetry() {
+
+        if (tokens < 1.0)
+            return false;
+
+        tokens -= 1.0;
+        return true;
+    }
+}
@@ -45,6 +45,7 @@ public abstract class StorageErrors {
         OBJECT_NOT_FOUND,
         OBJECT_ALREADY_EXISTS,
         OBJECT_SIZE_TOO_SMALL,
+        OBJECT_CHANGED,
         NOT_A_FILE,
         NOT_A_DIRECTORY,
         NOT_A_FILE_OR_DIRECTORY,
@@ -73,6 +74,7 @@ public abstract class StorageErrors {
             Map.entry(OBJECT_NOT_FOUND, "Object not found in storage layer: %s %s [%s]"),
             Map.entry(OBJECT_ALREADY_EXISTS, "Object already exists in storage layer: %s %s [%s]"),
             Map.entry(OBJECT_SIZE_TOO_SMALL, "Object is smaller than expected: %s %s [%s]"),
+            Map.entry(OBJECT_CHANGED, "Object was modified while it was being read: %s %s [%s]"),
             Map.entry(NOT_A_FILE, "Object is not a file: %s %s [%s]"),
             Map.entry(NOT_A_DIRECTORY, "Object is not a directory: %s %s [%s]"),
             Map.entry(NOT_A_FILE_OR_DIRECTORY, "Object is not a file or directory: %s %s [%s]"),
@@ -97,6 +99,7 @@ public abstract class StorageErrors {
             Map.entry(OBJECT_NOT_FOUND, EStorageRequest.class),
             Map.entry(OBJECT_ALREADY_EXISTS, EStorageRequest.class),
             Map.entry(OBJECT_SIZE_TOO_SMALL, EStorageRequest.class),
+            Map.entry(OBJECT_CHANGED, EStorageRequest.class),
             Map.entry(NOT_A_FILE, EStorageRequest.class),
             Map.entry(NOT_A_DIRECTORY, EStorageRequest.class),
             Map.entry(NOT_A_FILE_OR_DIRECTORY, EStorageRequest.class),
@@ -119,6 +122,51 @@ public abstract class StorageErrors {
 
     protected abstract ExplicitError checkKnownExceptions(Throwable e);
 
+    // Backends that signal throttling (e.g. HTTP 503 slow down) should override this
+    // Throttled requests are retried and reduce the number of concurrent requests to the backend
+
+    protected boolean checkThrottling(Throwable e) {
+
+        return false;
+    }
+
+    public boolean isThrottlingError(Throwable error) {
+
+        if (error instanceof CompletionException && error.getCause() != null)
+            error = error.getCause();
+
+        // Some backends map client errors before they reach the request limit, look at the original error
+        if (error instanceof ETrac && error.getCause() != null)
+            error = error.getCause();
+
+        return checkThrottling(error);
+    }
+
+    public boolean isRetryable(ETrac tracError) {
+
+        // Requests that are invalid, not allowed or misconfigured will fail the same way every time
+        return !(tracError instanceof EStorageRequest ||
+                 tracError instanceof EStorageAccess ||
+                 tracError instanceof EStorageValidation ||
+                 tracError instanceof EStorageConfig ||
+                 tracError instanceof EValidationGap);
+    }
+
+    public boolean isRangeNotSatisfiable(Throwable error) {
+
+        // The error may already be wrapped by the read stream, so look for a known cause
+
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+
+            if (cause instanceof ETrac || cause instanceof CompletionException)
+                continue;
+
+            return checkKnownExceptions(cause) == OBJECT_SIZE_TOO_SMALL;
+        }
+
+        return false;
+    }
+
     public ETrac handleException(String operation, String path, Throwable error) {
 
         if (error instanceof CompletionException && error.getCause() != null)
@@ -37,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 
 public class StorageManager implements IStorageManager, AutoCloseable {
@@ -53,6 +54,7 @@ public class StorageManager implements IStorageManager, AutoCloseable {
     private String defaultLocation;
     private String defaultFormat;
     private StorageLayout defaultLayout;
+    private List<String> copyFormats;
 
     public StorageManager(
             IPluginManager plugins, ConfigManager configManager,
@@ -67,6 +69,7 @@ public class StorageManager implements IStorageManager, AutoCloseable {
         this.defaultLocation = null;
         this.defaultFormat = ConfigDefaults.STORAGE_DEFAULT_FORMAT;
         this.defaultLayout = ConfigDefaults.STORAGE_DEFAULT_LAYOUT;
+        this.copyFormats = List.of();
     }
 
     public void updateStorageDefaults(TenantConfig tenantConfig) {
@@ -85,9 +88,25 @@ public class StorageManager implements IStorageManager, AutoCloseable {
                 ConfigKeys.STORAGE_DEFAULT_LAYOUT,
                 ConfigDefaults.STORAGE_DEFAULT_LAYOUT.name());
 
+        var copyFormats = ConfigHelpers.readString(
+                "storage defaults", tenantConfig.getPropertiesMap(),
+                ConfigKeys.STORAGE_COPY_FORMATS, false);
+
         this.defaultLocation = defaultLocation;
         this.defaultFormat = defaultFormat;
         this.defaultLayout = StorageLayout.valueOf(defaultLayout);
+        this.copyFormats = parseFormatList(copyFormats);
+    }
+
+    private static List<String> parseFormatList(String formatList) {
+
+        if (formatList == null || formatList.isBlank())
+            return List.of();
+
+        return Arrays.stream(formatList.split(","))
+                .map(String::trim)
+                .filter(format -> !format.isEmpty())
+                .collect(Collectors.toUnmodifiableList());
     }
 
     @Override
@@ -108,6 +127,22 @@ public class StorageManager implements IStorageManager, AutoCloseable {
         return defaultLayout;
     }
 
+    @Override
+    public StorageLayout defaultLayout(String storageKey) {
+
+        var store = this.storage.get(storageKey);
+
+        if (store != null && store.layout != null)
+            return store.layout;
+
+        return defaultLayout;
+    }
+
+    @Override
+    public List<String> copyFormats() {
+        return copyFormats;
+    }
+
     public void addStorage(String storageKey, ResourceDefinition resourceConfig) {
         addStorage(storageKey, ConfigHelpers.resourceToPluginConfig(resourceConfig));
     }
@@ -168,10 +203,16 @@ public class StorageManager implements IStorageManager, AutoCloseable {
                 .build();
 
         var backend = new StorageBackend();
+        backend.layout = readStorageLayout(storageKey, storageConfig);
 
         if (plugins.isServiceAvailable(IFileStorage.class, storageConfig.getProtocol())) {
 
             var fileInstance = plugins.createService(IFileStorage.class, storageConfigWithKey, configManager);
+
+            // Optional read-through cache on local disk, in front of the storage plugin
+            if (CachingFileStorage.isCacheEnabled(storageConfig))
+                fileInstance = new CachingFileStorage(storageConfigWithKey, fileInstance);
+
             fileInstance.start(eventLoopGroup);
 
             backend.fileInstances.add(fileInstance);
@@ -209,6 +250,30 @@ public class StorageManager implements IStorageManager, AutoCloseable {
         return backend;
     }
 
+    private StorageLayout readStorageLayout(String storageKey, PluginConfig storageConfig) {
+
+        var layout = storageConfig.getPropertiesOrDefault(PROP_STORAGE_LAYOUT, null);
+
+        if (layout == null || layout.isBlank())
+            return null;
+
+        var layoutId = Arrays.stream(StorageLayout.values())
+                .filter(id -> id.name().equals(layout.trim()))
+                .filter(id -> id != StorageLayout.STORAGE_LAYOUT_NOT_SET && id != StorageLayout.UNRECOGNIZED)
+                .findFirst();
+
+        if (layoutId.isEmpty()) {
+
+            var message = String.format("Invalid storage layout [%s] for storage [%s]", layout, storageKey);
+            var error = new EStartup(message);
+
+            log.error(message, error);
+            throw error;
+        }
+
+        return layoutId.get();
+    }
+
     private void stopStorageBackend(String storageKey, StorageBackend backend) {
 
         // For errors during shutdown, log the error and continue shutting down other instances
@@ -232,6 +297,11 @@ public class StorageManager implements IStorageManager, AutoCloseable {
 
             try {
 
+                var metrics = fileImpl.metrics();
+
+                if (metrics != null)
+                    log.info("Storage metrics: {}", metrics);
+
                 fileImpl.close();
             }
             catch (Exception error) {
@@ -291,6 +361,8 @@ public class StorageManager implements IStorageManager, AutoCloseable {
 
     private static class StorageBackend {
 
+        StorageLayout layout;
+
         List<IFileStorage> fileInstances = new ArrayList<>();
 
         List<IDataStorage> dataInstances = new ArrayList<>();
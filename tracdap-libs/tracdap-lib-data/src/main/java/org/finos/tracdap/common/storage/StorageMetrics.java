@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class StorageMetrics {
+
+    // Latency, throughput and error counters for a single storage instance
+    // Operations are the calls made on IFileStorage, timed from the call until the result is available
+    // Requests are the individual calls made to the storage backend, several of which can make up one operation
+    // Comparing the two shows whether time is spent in the backend or in the service
+
+    public static final String BACKEND_REQUEST = "REQUEST";
+
+    // Upper bounds for the latency histogram buckets, the last bucket is unbounded
+    private static final long[] LATENCY_BUCKETS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+
+    private final String storageKey;
+    private final String backend;
+    private final Map<String, OperationMetrics> operations;
+
+    StorageMetrics(String storageKey, String backend) {
+        this.storageKey = storageKey;
+        this.backend = backend;
+        this.operations = new ConcurrentHashMap<>();
+    }
+
+    public String storageKey() {
+        return storageKey;
+    }
+
+    public String backend() {
+        return backend;
+    }
+
+    public OperationMetrics operation(String operationName) {
+        return operations.computeIfAbsent(operationName, OperationMetrics::new);
+    }
+
+    public Map<String, OperationMetrics> operations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    public static long[] latencyBucketsMillis() {
+        return LATENCY_BUCKETS_MILLIS.clone();
+    }
+
+    void recordOperation(String operationName, long nanos, long bytes, boolean failed) {
+        operation(operationName).record(nanos, bytes, failed);
+    }
+
+    void recordBytes(String operationName, long bytes) {
+        operation(operationName).bytes.add(bytes);
+    }
+
+    @Override
+    public String toString() {
+
+        var summary = new StringBuilder(storageKey).append(" (").append(backend).append(") [");
+        var first = true;
+
+        for (var op : operations().values()) {
+
+            if (!first)
+                summary.append(", ");
+
+            summary.append(op);
+            first = false;
+        }
+
+        return summary.append("]").toString();
+    }
+
+    public static class OperationMetrics {
+
+        private final String operationName;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] latencyCounts;
+
+        OperationMetrics(String operationName) {
+
+            this.operationName = operationName;
+            this.latencyCounts = new LongAdder[LATENCY_BUCKETS_MILLIS.length + 1];
+
+            for (var i = 0; i < latencyCounts.length; i++)
+                latencyCounts[i] = new LongAdder();
+        }
+
+        public String operationName() {
+            return operationName;
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long errors() {
+            return errors.sum();
+        }
+
+        public long bytes() {
+            return bytes.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        // Counts for each bucket in latencyBucketsMillis(), plus one for latencies above the last bound
+        public long[] latencyCounts() {
+
+            var counts = new long[latencyCounts.length];
+
+            for (var i = 0; i < counts.length; i++)
+                counts[i] = latencyCounts[i].sum();
+
+            return counts;
+        }
+
+        // Upper bound of the bucket containing the given percentile, or -1 for the unbounded bucket
+        public long latencyPercentileMillis(int percentile) {
+
+            var counts = latencyCounts();
+            var total = 0L;
+
+            for (var c : counts)
+                total += c;
+
+            if (total == 0)
+                return 0;
+
+            var target = (long) Math.ceil(total * percentile / 100.0);
+            var cumulative = 0L;
+
+            for (var i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+
+                cumulative += counts[i];
+
+                if (cumulative >= target)
+                    return LATENCY_BUCKETS_MILLIS[i];
+            }
+
+            return -1;
+        }
+
+        void record(long nanos, long nBytes, boolean failed) {
+
+            count.increment();
+            totalNanos.add(nanos);
+
+            if (nBytes > 0)
+                bytes.add(nBytes);
+
+            if (failed)
+                errors.increment();
+
+            var millis = nanos / 1000000;
+            var bucket = 0;
+
+            while (bucket < LATENCY_BUCKETS_MILLIS.length && millis >= LATENCY_BUCKETS_MILLIS[bucket])
+                bucket++;
+
+            latencyCounts[bucket].increment();
+        }
+
+        @Override
+        public String toString() {
+
+            var nCalls = count.sum();
+            var meanMillis = nCalls > 0 ? totalNanos.sum() / nCalls / 1000000 : 0;
+            var p99 = latencyPercentileMillis(99);
+
+            var summary = new StringBuilder(operationName).append("=").append(nCalls);
+
+            if (errors.sum() > 0)
+                summary.append("/").append(errors.sum()).append(" failed");
+
+            if (bytes.sum() > 0)
+                summary.append(" ").append(bytes.sum()).append("B");
+
+            summary.append(" mean=").append(meanMillis).append("ms");
+            summary.append(" p99").append(p99 >= 0 ? "<" + p99 : ">" + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1]).append("ms");
+
+            return summary.toString();
+        }
+    }
+}
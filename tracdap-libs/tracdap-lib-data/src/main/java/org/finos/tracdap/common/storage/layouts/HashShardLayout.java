@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.layouts;
+
+import org.finos.tracdap.common.exception.EUnexpected;
+import org.finos.tracdap.common.storage.IStorageLayout;
+import org.finos.tracdap.common.storage.LayoutItem;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+public class HashShardLayout implements IStorageLayout {
+
+    // SHARD / OBJECT ID LAYOUT
+    // The shard is a short hash of the object ID, so object keys do not share a long common prefix
+    // Object stores partition request capacity by key prefix, so writes spread evenly across partitions
+    // All versions of an object go in the same shard, the shard for an object can be found from its ID
+
+    private static final String SHARD_TEMPLATE = "%02x";
+    private static final String SHARD_HASH_ALGORITHM = "SHA-256";
+
+    private final ObjectIdLayout objectIdLayout;
+
+    public HashShardLayout() {
+        this.objectIdLayout = new ObjectIdLayout();
+    }
+
+    public static String shardForObject(String objectId) {
+
+        try {
+
+            var digest = MessageDigest.getInstance(SHARD_HASH_ALGORITHM);
+            var hash = digest.digest(objectId.getBytes(StandardCharsets.UTF_8));
+
+            return String.format(SHARD_TEMPLATE, hash[0] & 0xff);
+        }
+        catch (NoSuchAlgorithmException e) {
+
+            // SHA-256 is required on every Java platform
+            throw new EUnexpected(e);
+        }
+    }
+
+    @Override
+    public String newFilePath(LayoutItem layoutItem) {
+
+        var path = objectIdLayout.newFilePath(layoutItem);
+        return shardPath(layoutItem, path);
+    }
+
+    @Override
+    public String updateFilePath(LayoutItem layoutItem, LayoutItem priorLayoutItem) {
+
+        // Hash shard layout is fully deterministic, not affected by the layout of prior items
+        return newFilePath(layoutItem);
+    }
+
+    @Override
+    public String newDataPath(LayoutItem layoutItem) {
+
+        var path = objectIdLayout.newDataPath(layoutItem);
+        return shardPath(layoutItem, path);
+    }
+
+    @Override
+    public String updateDataPath(LayoutItem layoutItem, LayoutItem priorLayoutItem) {
+
+        // Hash shard layout is fully deterministic, not affected by the layout of prior items
+        return newDataPath(layoutItem);
+    }
+
+    private String shardPath(LayoutItem layoutItem, String path) {
+
+        var objectId = layoutItem.header().getObjectId();
+        return shardForObject(objectId) + "/" + path;
+    }
+}
@@ -53,6 +53,9 @@ public class LocalFileReader implements Flow.Publisher<ArrowBuf> {
     private final OrderedEventExecutor executor;
     private final StorageErrors errors;
 
+    private final long offset;
+    private final long limit;
+
     private final AtomicBoolean subscriberSet;
     private Flow.Subscriber<? super ArrowBuf> subscriber;
 
@@ -68,6 +71,7 @@ public class LocalFileReader implements Flow.Publisher<ArrowBuf> {
 
     LocalFileReader(
             String storagePath, Path absolutePath,
+            long offset, long limit,
             IDataContext dataContext,
             StorageErrors errors) {
 
@@ -77,6 +81,9 @@ public class LocalFileReader implements Flow.Publisher<ArrowBuf> {
         this.executor = dataContext.eventLoopExecutor();
         this.errors = errors;
 
+        this.offset = offset;
+        this.limit = limit;
+
         this.subscriberSet = new AtomicBoolean(false);
         this.subscriber = null;
 
@@ -244,10 +251,15 @@ public class LocalFileReader implements Flow.Publisher<ArrowBuf> {
             if (chunkInProgress)
                 throw new EUnexpected();
 
-            var chunk = allocator.buffer(DEFAULT_CHUNK_SIZE);
-            var nioChunk = chunk.nioBuffer(0, DEFAULT_CHUNK_SIZE);
+            // For ranged reads, do not read past the end of the range
+            var chunkSize = limit > 0
+                    ? (int) Math.min(DEFAULT_CHUNK_SIZE, limit - bytesRead)
+                    : DEFAULT_CHUNK_SIZE;
 
-            channel.read(nioChunk, bytesRead, chunk, readHandler);
+            var chunk = allocator.buffer(chunkSize);
+            var nioChunk = chunk.nioBuffer(0, chunkSize);
+
+            channel.read(nioChunk, offset + bytesRead, chunk, readHandler);
 
             chunkInProgress = true;
         }
@@ -338,10 +350,14 @@ public class LocalFileReader implements Flow.Publisher<ArrowBuf> {
                 return;
             }
 
+            // A ranged read is complete as soon as the end of the range is reached
+
+            var rangeComplete = limit > 0 && bytesRead >= limit;
+
             // Trigger the next read operation immediately
             // Possibly the subscriber is going to do processing in onNext
 
-            if (chunksPending > 0)
+            if (chunksPending > 0 && !rangeComplete)
                 readChunk();
 
             // The channel wrote into the underlying nio ByteBuffer
@@ -352,6 +368,11 @@ public class LocalFileReader implements Flow.Publisher<ArrowBuf> {
             // Signal the subscriber
 
             subscriber.onNext(chunk);
+
+            if (rangeComplete && !gotComplete && !gotCancel && !gotError) {
+                gotComplete = true;
+                doComplete();
+            }
         }
         catch (Exception e) {
 
@@ -31,6 +31,8 @@ import java.nio.channels.Channel;
 import java.nio.channels.CompletionHandler;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
@@ -169,8 +171,8 @@ public class LocalFileStorage extends CommonFileStorage {
     }
 
     @Override
-    protected CompletionStage<List<FileStat>> fsListContents(
-            String storagePath, String startAfter, int maxKeys, boolean recursive,
+    protected CompletionStage<FileListing> fsListContents(
+            String storagePath, String pageToken, int maxKeys, boolean recursive,
             IExecutionContext execContext) {
 
         try {
@@ -178,25 +180,102 @@ public class LocalFileStorage extends CommonFileStorage {
             var stat = buildFileStat(absolutePath, storagePath);
 
             if (stat.fileType != FileType.DIRECTORY) {
-                var listing = List.of(stat);
+                var listing = new FileListing(List.of(stat), null);
                 return CompletableFuture.completedFuture(listing);
             }
 
-            try (var paths = Files.list(absolutePath)) {
+            // The page token is the storage path of the last entry in the previous page
+            // Entries are visited in tree order with siblings sorted by name, so the token can be used
+            // to seek straight to the resume point without walking the parts of the tree already listed
 
-                var entries = paths
-                        .map(p -> buildFileStatChecked(p, rootPath.relativize(p).toString()))
-                        .collect(Collectors.toList());
+            var resumeAfter = pageToken != null ? pageTokenParts(absolutePath, pageToken) : null;
+            var entries = new ArrayList<FileStat>(Math.min(maxKeys + 1, 1024));
 
-                return CompletableFuture.completedFuture(entries);
-            }
+            listPage(absolutePath, resumeAfter, 0, recursive, maxKeys + 1, entries);
+
+            if (entries.size() <= maxKeys)
+                return CompletableFuture.completedFuture(new FileListing(entries, null));
+
+            var page = entries.subList(0, maxKeys);
+            var nextPageToken = page.get(maxKeys - 1).storagePath;
+
+            return CompletableFuture.completedFuture(new FileListing(page, nextPageToken));
         }
         catch (IOException e) {
             return CompletableFuture.failedFuture(new CompletionException(e));
         }
-        catch (CompletionException e) {
-            return CompletableFuture.failedFuture(e);
+    }
+
+    private List<String> pageTokenParts(Path absolutePath, String pageToken) {
+
+        var tokenPath = rootPath.resolve(pageToken).normalize();
+
+        if (!tokenPath.startsWith(absolutePath) || tokenPath.equals(absolutePath))
+            throw errors.explicitError(LS_OPERATION, pageToken, STORAGE_PARAMS_INVALID, "invalid page token");
+
+        var relativePath = absolutePath.relativize(tokenPath);
+        var parts = new ArrayList<String>(relativePath.getNameCount());
+
+        for (var part : relativePath)
+            parts.add(part.toString());
+
+        return parts;
+    }
+
+    private boolean listPage(
+            Path dirPath, List<String> resumeAfter, int depth,
+            boolean recursive, int limit, List<FileStat> entries)
+            throws IOException {
+
+        List<Path> children;
+
+        try (var paths = Files.list(dirPath)) {
+            children = paths
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString()))
+                    .collect(Collectors.toList());
         }
+
+        // While seeking, skip siblings that sort before the token at this level
+        // The sibling on the token path was already listed, but its children may not have been
+
+        var seeking = resumeAfter != null && depth < resumeAfter.size();
+
+        for (var child : children) {
+
+            if (entries.size() >= limit)
+                return false;
+
+            var descend = recursive && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+
+            if (seeking) {
+
+                var cmp = child.getFileName().toString().compareTo(resumeAfter.get(depth));
+
+                if (cmp < 0)
+                    continue;
+
+                if (cmp == 0) {
+
+                    var onTokenPath = depth < resumeAfter.size() - 1;
+
+                    if (descend && !listPage(child, onTokenPath ? resumeAfter : null, depth + 1, true, limit, entries))
+                        return false;
+
+                    seeking = false;
+                    continue;
+                }
+
+                seeking = false;
+            }
+
+            var storagePath = rootPath.relativize(child).toString();
+            entries.add(buildFileStat(child, storagePath));
+
+            if (descend && !listPage(child, null, depth + 1, true, limit, entries))
+                return false;
+        }
+
+        return entries.size() < limit;
     }
 
     // A note on atime in Windows file systems.
@@ -259,16 +338,6 @@ public class LocalFileStorage extends CommonFileStorage {
                 mtime, atime);
     }
 
-    private FileStat buildFileStatChecked(Path absolutePath, String storagePath) {
-
-        try {
-            return buildFileStat(absolutePath, storagePath);
-        }
-        catch (IOException e) {
-            throw new CompletionException(e);
-        }
-    }
-
     @Override
     protected CompletionStage<Void> fsCreateDir(String storagePath, IExecutionContext execContext) {
 
@@ -396,11 +465,11 @@ public class LocalFileStorage extends CommonFileStorage {
 
     @Override
     protected Flow.Publisher<ArrowBuf>
-    fsOpenInputStream(String storagePath, IDataContext dataContext) {
+    fsOpenInputStream(String storagePath, long offset, long limit, IDataContext dataContext) {
 
         var absolutePath = resolvePath(storagePath);
 
-        return new LocalFileReader(storagePath, absolutePath, dataContext, errors);
+        return new LocalFileReader(storagePath, absolutePath, offset, limit, dataContext, errors);
     }
 
     @Override
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.memory;
+
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.storage.CommonFileReader;
+import org.finos.tracdap.common.storage.StorageErrors;
+
+import static org.finos.tracdap.common.storage.CommonFileStorage.READ_OPERATION;
+
+
+class MemoryFileReader extends CommonFileReader implements MemoryFileStorage.MemoryStream {
+
+    private final MemoryFileStorage storage;
+    private final IDataContext dataContext;
+    private final String storagePath;
+    private final long offset;
+    private final long limit;
+
+    private MemoryFileStorage.MemoryEntry entry;
+    private int chunkIndex;
+    private long chunkStart;
+    private long position;
+    private long end;
+
+    private long pending;
+    private boolean pumping;
+    private boolean registered;
+
+    MemoryFileReader(
+            MemoryFileStorage storage,
+            String storageKey, String storagePath,
+            long offset, long limit,
+            IDataContext dataContext,
+            StorageErrors errors) {
+
+        super(dataContext, errors, storageKey, storagePath);
+
+        this.storage = storage;
+        this.dataContext = dataContext;
+        this.storagePath = storagePath;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    @Override
+    protected boolean reportsObjectSize() {
+        return true;
+    }
+
+    @Override
+    protected void clientStart() {
+
+        try {
+
+            storage.registerStream(this, READ_OPERATION, storagePath);
+            registered = true;
+
+            // Holding a reference keeps the content alive, even if the file is deleted or overwritten
+            entry = storage.openFile(READ_OPERATION, storagePath);
+
+            position = offset;
+            end = limit > 0 ? Math.min(offset + limit, entry.size) : entry.size;
+
+            onObjectSize(entry.size);
+        }
+        catch (Exception e) {
+            releaseEntry();
+            onError(e);
+        }
+    }
+
+    @Override
+    protected void clientRequest(long n) {
+
+        pending += n;
+
+        // Sending a chunk can trigger another request, which is picked up by the loop that is already running
+        if (pumping || entry == null)
+            return;
+
+        try {
+
+            pumping = true;
+
+            while (entry != null && pending > 0 && position < end && !isDone()) {
+
+                var chunk = entry.chunks.get(chunkIndex);
+                var chunkEnd = chunkStart + chunk.readableBytes();
+
+                if (position >= chunkEnd) {
+                    chunkStart = chunkEnd;
+                    chunkIndex += 1;
+                    continue;
+                }
+
+                var from = chunk.readerIndex() + position - chunkStart;
+                var nBytes = Math.min(chunkEnd, end) - position;
+
+                position += nBytes;
+                pending -= 1;
+
+                onChunk(chunk.nioBuffer(from, (int) nBytes));
+            }
+
+            if (entry != null && position >= end && !isDone()) {
+                releaseEntry();
+                onComplete();
+            }
+        }
+        catch (Exception e) {
+            releaseEntry();
+            onError(e);
+        }
+        finally {
+            pumping = false;
+        }
+    }
+
+    @Override
+    protected void clientCancel() {
+
+        releaseEntry();
+    }
+
+    @Override
+    public void shutdown() {
+
+        dataContext.eventLoopExecutor().submit(() -> {
+
+            if (!isDone()) {
+                releaseEntry();
+                onError(storage.storageStopped(READ_OPERATION, storagePath));
+            }
+            else
+                releaseEntry();
+        });
+    }
+
+    private void releaseEntry() {
+
+        if (entry != null) {
+            entry.release();
+            entry = null;
+        }
+
+        if (registered) {
+            storage.deregisterStream(this);
+            registered = false;
+        }
+    }
+}
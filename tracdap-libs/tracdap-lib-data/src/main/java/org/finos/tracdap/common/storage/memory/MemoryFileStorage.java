@@ -0,0 +1,535 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.memory;
+
+import org.finos.tracdap.common.config.ConfigHelpers;
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.IExecutionContext;
+import org.finos.tracdap.common.exception.EStorage;
+import org.finos.tracdap.common.exception.ETrac;
+import org.finos.tracdap.common.storage.*;
+
+import io.netty.channel.EventLoopGroup;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+
+import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.*;
+
+
+/**
+ * File storage held entirely in memory, using off-heap Arrow buffers.
+ *
+ * <p>Content is lost when the storage is stopped. This is intended for scratch data that never
+ * needs to persist, such as intermediate outputs, and for fast testing. Total content size is
+ * capped by the sizeLimit property, writes that would exceed the limit fail.</p>
+ *
+ * <p>Files become visible when the write stream completes, a failed write leaves nothing behind.
+ * Readers hold a reference to the content they are reading, so files can be deleted or
+ * overwritten while a read is in progress.</p>
+ *
+ * <p>Stopping the storage fails any reads or writes that are still open, and waits for them
+ * to release their buffers before the memory is freed.</p>
+ */
+public class MemoryFileStorage extends CommonFileStorage {
+
+    public static final String CONFIG_SIZE_LIMIT = "sizeLimit";
+    public static final long DEFAULT_SIZE_LIMIT = 1024L * 1024 * 1024;  // 1 GiB
+
+    private static final String ROOT_KEY = "";
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BufferAllocator allocator;
+    private final ConcurrentSkipListMap<String, MemoryEntry> entries;
+    private final Set<MemoryStream> openStreams;
+    private volatile boolean stopped;
+
+    public MemoryFileStorage(String storageKey, Properties properties) {
+
+        super(FILE_SEMANTICS, storageKey, properties, new MemoryStorageErrors(storageKey));
+
+        var sizeLimit = ConfigHelpers.readLong(storageKey, properties, CONFIG_SIZE_LIMIT, DEFAULT_SIZE_LIMIT);
+
+        this.allocator = new RootAllocator(sizeLimit);
+        this.entries = new ConcurrentSkipListMap<>();
+        this.openStreams = new HashSet<>();
+
+        entries.put(ROOT_KEY, MemoryEntry.directory());
+    }
+
+    @Override
+    public void start(EventLoopGroup eventLoopGroup) {
+
+        log.info("Memory storage size limit: {} MiB", allocator.getLimit() / (1024 * 1024));
+    }
+
+    @Override
+    public void stop() {
+
+        // Do not hold the storage lock while waiting, open streams may need it to finish
+
+        List<MemoryStream> activeStreams;
+
+        synchronized (openStreams) {
+
+            if (stopped)
+                return;
+
+            stopped = true;
+            activeStreams = new ArrayList<>(openStreams);
+        }
+
+        synchronized (this) {
+            entries.values().forEach(MemoryEntry::release);
+            entries.clear();
+        }
+
+        // Open streams are failed on their own event loop, which releases the buffers they hold
+
+        if (!activeStreams.isEmpty()) {
+
+            log.info("Memory storage stopping, closing {} open stream(s)", activeStreams.size());
+
+            for (var stream : activeStreams)
+                stream.shutdown();
+
+            awaitOpenStreams();
+        }
+
+        // Closing the allocator with buffers still in use fails, the memory is reclaimed when they are released
+
+        try {
+            allocator.close();
+        }
+        catch (IllegalStateException e) {
+            log.warn("Memory storage stopped with {} bytes still in use: {}",
+                    allocator.getAllocatedMemory(), e.getMessage());
+        }
+    }
+
+    private void awaitOpenStreams() {
+
+        var deadline = System.nanoTime() + SHUTDOWN_TIMEOUT.toNanos();
+
+        synchronized (openStreams) {
+
+            try {
+
+                var remaining = deadline - System.nanoTime();
+
+                while (!openStreams.isEmpty() && remaining > 0) {
+                    openStreams.wait(Math.max(remaining / 1000000, 1));
+                    remaining = deadline - System.nanoTime();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!openStreams.isEmpty())
+                log.warn("Memory storage stopped, {} stream(s) did not close in time", openStreams.size());
+        }
+    }
+
+    @Override
+    protected CompletionStage<Boolean> fsExists(String storagePath, IExecutionContext ctx) {
+
+        var exists = entries.containsKey(normalize(storagePath));
+
+        return CompletableFuture.completedFuture(exists);
+    }
+
+    @Override
+    protected CompletionStage<Boolean> fsDirExists(String storagePath, IExecutionContext ctx) {
+
+        var entry = entries.get(normalize(storagePath));
+        var exists = entry != null && entry.isDirectory;
+
+        return CompletableFuture.completedFuture(exists);
+    }
+
+    @Override
+    protected CompletionStage<FileStat> fsGetFileInfo(String storagePath, IExecutionContext ctx) {
+
+        var key = normalize(storagePath);
+        var entry = entries.get(key);
+
+        if (entry == null)
+            return CompletableFuture.failedFuture(errors.explicitError(STAT_OPERATION, storagePath, OBJECT_NOT_FOUND));
+
+        return CompletableFuture.completedFuture(buildFileStat(key, entry));
+    }
+
+    @Override
+    protected CompletionStage<FileStat> fsGetDirInfo(String storagePath, IExecutionContext ctx) {
+
+        return fsGetFileInfo(storagePath, ctx);
+    }
+
+    @Override
+    protected CompletionStage<FileListing> fsListContents(
+            String storagePath, String pageToken, int maxKeys, boolean recursive,
+            IExecutionContext ctx) {
+
+        var key = normalize(storagePath);
+        var entry = entries.get(key);
+
+        if (entry == null)
+            return CompletableFuture.failedFuture(errors.explicitError(LS_OPERATION, storagePath, OBJECT_NOT_FOUND));
+
+        entry.atime = Instant.now();
+
+        if (!entry.isDirectory) {
+            var listing = new FileListing(List.of(buildFileStat(key, entry)), null);
+            return CompletableFuture.completedFuture(listing);
+        }
+
+        // Entries are held sorted by path, so listing can resume after the page token
+        var children = key.isEmpty()
+                ? entries.tailMap(ROOT_KEY, false)
+                : entries.subMap(key + BACKSLASH, true, key + (char) (BACKSLASH.charAt(0) + 1), false);
+
+        var prefixLength = key.isEmpty() ? 0 : key.length() + 1;
+
+        var page = children.entrySet().stream()
+                .filter(e -> recursive || !e.getKey().substring(prefixLength).contains(BACKSLASH))
+                .filter(e -> pageToken == null || e.getKey().compareTo(pageToken) > 0)
+                .limit(maxKeys + 1)
+                .map(e -> buildFileStat(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+
+        if (page.size() <= maxKeys)
+            return CompletableFuture.completedFuture(new FileListing(page, null));
+
+        var entriesPage = page.subList(0, maxKeys);
+        var nextPageToken = entriesPage.get(maxKeys - 1).storagePath;
+
+        return CompletableFuture.completedFuture(new FileListing(entriesPage, nextPageToken));
+    }
+
+    @Override
+    protected synchronized CompletionStage<Void> fsCreateDir(String storagePath, IExecutionContext ctx) {
+
+        var key = normalize(storagePath);
+
+        // Create any missing parents, in line with local storage
+        var parts = key.split(BACKSLASH);
+        var path = new StringBuilder();
+
+        for (var part : parts) {
+
+            if (path.length() > 0)
+                path.append(BACKSLASH);
+
+            path.append(part);
+
+            var existing = entries.get(path.toString());
+
+            if (existing == null) {
+                entries.put(path.toString(), MemoryEntry.directory());
+                touchParent(path.toString());
+            }
+
+            else if (!existing.isDirectory)
+                return CompletableFuture.failedFuture(errors.explicitError(MKDIR_OPERATION, storagePath, OBJECT_ALREADY_EXISTS));
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected synchronized CompletionStage<Void> fsDeleteFile(String storagePath, IExecutionContext ctx) {
+
+        var key = normalize(storagePath);
+        var entry = entries.remove(key);
+
+        if (entry == null)
+            return CompletableFuture.failedFuture(errors.explicitError(RM_OPERATION, storagePath, OBJECT_NOT_FOUND));
+
+        entry.release();
+        touchParent(key);
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected synchronized CompletionStage<Void> fsDeleteDir(String storagePath, IExecutionContext ctx) {
+
+        var key = normalize(storagePath);
+
+        if (!entries.containsKey(key))
+            return CompletableFuture.failedFuture(errors.explicitError(RMDIR_OPERATION, storagePath, OBJECT_NOT_FOUND));
+
+        var children = entries.subMap(key + BACKSLASH, true, key + (char) (BACKSLASH.charAt(0) + 1), false);
+
+        children.values().forEach(MemoryEntry::release);
+        children.clear();
+
+        entries.remove(key).release();
+        touchParent(key);
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected CompletionStage<ArrowBuf> fsReadChunk(String storagePath, long offset, int size, IDataContext ctx) {
+
+        MemoryEntry entry = null;
+        ArrowBuf buffer = null;
+
+        try {
+
+            entry = openFile(READ_OPERATION, storagePath);
+
+            if (offset + size > entry.size)
+                throw errors.explicitError(READ_OPERATION, storagePath, OBJECT_SIZE_TOO_SMALL);
+
+            buffer = ctx.arrowAllocator().buffer(size);
+
+            entry.copyRange(offset, buffer, size);
+            buffer.writerIndex(size);
+
+            return CompletableFuture.completedFuture(buffer);
+        }
+        catch (Exception e) {
+
+            if (buffer != null)
+                buffer.close();
+
+            return CompletableFuture.failedFuture(e);
+        }
+        finally {
+
+            if (entry != null)
+                entry.release();
+        }
+    }
+
+    @Override
+    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String storagePath, long offset, long limit, IDataContext ctx) {
+
+        return new MemoryFileReader(this, storageKey, storagePath, offset, limit, ctx, errors);
+    }
+
+    @Override
+    protected Flow.Subscriber<ArrowBuf> fsOpenOutputStream(String storagePath, CompletableFuture<Long> signal, IDataContext ctx) {
+
+        return new MemoryFileWriter(this, storagePath, signal, ctx.eventLoopExecutor(), errors);
+    }
+
+    @Override
+    protected CompletionStage<Long> fsCopyFile(String sourceKey, String targetKey, long size, IDataContext ctx) {
+
+        // Committed content is never modified, so the copy can share buffers with the source
+        // The reference taken by openFile() is handed over to the new entry
+
+        try {
+
+            var entry = openFile(COPY_OPERATION, sourceKey);
+            commitFile(targetKey, entry.chunks);
+
+            return CompletableFuture.completedFuture(entry.size);
+        }
+        catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Reference to the file content, the caller must release the entry when it is finished
+    synchronized MemoryEntry openFile(String operationName, String storagePath) {
+
+        if (stopped)
+            throw storageStopped(operationName, storagePath);
+
+        var entry = entries.get(normalize(storagePath));
+
+        if (entry == null)
+            throw errors.explicitError(operationName, storagePath, OBJECT_NOT_FOUND);
+
+        if (entry.isDirectory)
+            throw errors.explicitError(operationName, storagePath, NOT_A_FILE);
+
+        entry.atime = Instant.now();
+        entry.retain();
+
+        return entry;
+    }
+
+    ArrowBuf allocateBuffer(long size) {
+
+        return allocator.buffer(size);
+    }
+
+    synchronized void commitFile(String storagePath, List<ArrowBuf> chunks) {
+
+        // The caller still owns the chunks if the commit fails
+        if (stopped)
+            throw storageStopped(WRITE_OPERATION, storagePath);
+
+        // Overwrite any existing content, in line with other storage implementations
+        var key = normalize(storagePath);
+        var prior = entries.put(key, MemoryEntry.file(chunks));
+
+        if (prior != null)
+            prior.release();
+
+        touchParent(key);
+    }
+
+    // Streams that hold storage buffers must be registered, so they can be closed when the storage stops
+
+    void registerStream(MemoryStream stream, String operationName, String storagePath) {
+
+        synchronized (openStreams) {
+
+            if (stopped)
+                throw storageStopped(operationName, storagePath);
+
+            openStreams.add(stream);
+        }
+    }
+
+    void deregisterStream(MemoryStream stream) {
+
+        synchronized (openStreams) {
+
+            openStreams.remove(stream);
+
+            if (openStreams.isEmpty())
+                openStreams.notifyAll();
+        }
+    }
+
+    ETrac storageStopped(String operationName, String storagePath) {
+
+        var message = String.format("Memory storage was stopped: %s %s [%s]", operationName, storageKey, storagePath);
+        return new EStorage(message);
+    }
+
+    private void touchParent(String key) {
+
+        // Directory mtime follows the local filesystem, it changes when an entry is added or removed
+
+        var parentKey = key.contains(BACKSLASH) ? key.substring(0, key.lastIndexOf(BACKSLASH)) : ROOT_KEY;
+        var parent = entries.get(parentKey);
+
+        if (parent != null)
+            parent.mtime = Instant.now();
+    }
+
+    private FileStat buildFileStat(String key, MemoryEntry entry) {
+
+        var storagePath = key.isEmpty() ? "." : key;
+        var fileName = key.isEmpty() ? "." : key.substring(key.lastIndexOf(BACKSLASH) + 1);
+        var fileType = entry.isDirectory ? FileType.DIRECTORY : FileType.FILE;
+
+        return new FileStat(storagePath, fileName, fileType, entry.size, entry.mtime, entry.atime);
+    }
+
+    private String normalize(String storagePath) {
+
+        var key = storagePath;
+
+        if (key.equals(DOT))
+            return ROOT_KEY;
+
+        while (key.endsWith(BACKSLASH))
+            key = key.substring(0, key.length() - 1);
+
+        return key;
+    }
+
+    interface MemoryStream {
+
+        // Fail the stream and release any storage buffers, called from outside the stream's event loop
+        void shutdown();
+    }
+
+    static final class MemoryEntry {
+
+        final boolean isDirectory;
+        final List<ArrowBuf> chunks;
+        final long size;
+        volatile Instant mtime;
+        volatile Instant atime;
+
+        private MemoryEntry(boolean isDirectory, List<ArrowBuf> chunks, long size) {
+            this.isDirectory = isDirectory;
+            this.chunks = chunks;
+            this.size = size;
+            this.mtime = Instant.now();
+            this.atime = mtime;
+        }
+
+        static MemoryEntry directory() {
+            return new MemoryEntry(true, List.of(), 0);
+        }
+
+        static MemoryEntry file(List<ArrowBuf> chunks) {
+            var size = chunks.stream().mapToLong(ArrowBuf::readableBytes).sum();
+            return new MemoryEntry(false, new ArrayList<>(chunks), size);
+        }
+
+        void retain() {
+            chunks.forEach(chunk -> chunk.getReferenceManager().retain());
+        }
+
+        void release() {
+            chunks.forEach(chunk -> chunk.getReferenceManager().release());
+        }
+
+        void copyRange(long offset, ArrowBuf target, long length) {
+
+            var chunkStart = 0L;
+            var targetIndex = target.writerIndex();
+            var remaining = length;
+
+            for (var chunk : chunks) {
+
+                var chunkEnd = chunkStart + chunk.readableBytes();
+
+                if (chunkEnd > offset && remaining > 0) {
+
+                    var from = Math.max(offset, chunkStart) - chunkStart;
+                    var nBytes = Math.min(chunk.readableBytes() - from, remaining);
+
+                    target.setBytes(targetIndex, chunk, chunk.readerIndex() + from, nBytes);
+
+                    targetIndex += nBytes;
+                    remaining -= nBytes;
+                    offset += nBytes;
+                }
+
+                chunkStart = chunkEnd;
+            }
+        }
+    }
+}
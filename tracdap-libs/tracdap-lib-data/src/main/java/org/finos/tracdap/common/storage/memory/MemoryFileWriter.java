@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.memory;
+
+import org.finos.tracdap.common.storage.StorageErrors;
+
+import io.netty.util.concurrent.OrderedEventExecutor;
+import org.apache.arrow.memory.ArrowBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.finos.tracdap.common.storage.CommonFileStorage.WRITE_OPERATION;
+import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.DUPLICATE_SUBSCRIPTION;
+
+
+class MemoryFileWriter implements Flow.Subscriber<ArrowBuf>, MemoryFileStorage.MemoryStream {
+
+    private static final int CHUNK_BUFFER_TARGET = 16;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final MemoryFileStorage storage;
+    private final String storagePath;
+    private final CompletableFuture<Long> signal;
+    private final OrderedEventExecutor executor;
+    private final StorageErrors errors;
+
+    private final AtomicBoolean subscriptionSet;
+    private Flow.Subscription subscription;
+
+    private final List<ArrowBuf> content;
+    private long bytesWritten;
+    private boolean gotComplete;
+    private boolean gotError;
+
+    MemoryFileWriter(
+            MemoryFileStorage storage, String storagePath,
+            CompletableFuture<Long> signal,
+            OrderedEventExecutor executor,
+            StorageErrors errors) {
+
+        this.storage = storage;
+        this.storagePath = storagePath;
+        this.signal = signal;
+        this.executor = executor;
+        this.errors = errors;
+
+        this.subscriptionSet = new AtomicBoolean(false);
+        this.content = new ArrayList<>();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+
+        var subscribeOk = subscriptionSet.compareAndSet(false, true);
+
+        if (!subscribeOk) {
+            var eStorage = errors.explicitError(WRITE_OPERATION, storagePath, DUPLICATE_SUBSCRIPTION);
+            throw new IllegalStateException(eStorage.getMessage(), eStorage);
+        }
+
+        this.subscription = subscription;
+
+        // Buffers are held until the file is committed, so the storage must be able to close this stream
+        try {
+            storage.registerStream(this, WRITE_OPERATION, storagePath);
+        }
+        catch (Exception e) {
+            executor.submit(() -> {
+                gotError = true;
+                handleError(e, true);
+            });
+            return;
+        }
+
+        executor.submit(() -> subscription.request(CHUNK_BUFFER_TARGET));
+    }
+
+    @Override
+    public void shutdown() {
+
+        executor.submit(() -> {
+
+            if (gotComplete || gotError)
+                return;
+
+            gotError = true;
+            handleError(storage.storageStopped(WRITE_OPERATION, storagePath), true);
+        });
+    }
+
+    @Override
+    public void onNext(ArrowBuf chunk) {
+
+        // Avoid concurrency issues - ensure all calls are processed in the ordered event loop
+        executor.submit(() -> this.doNext(chunk));
+    }
+
+    @Override
+    public void onComplete() {
+
+        executor.submit(this::doComplete);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+
+        executor.submit(() -> this.doError(error));
+    }
+
+    private void doNext(ArrowBuf chunk) {
+
+        try {
+
+            if (gotComplete || gotError)
+                return;
+
+            // Copy into storage memory, so the size limit applies and the source buffer can be released
+            // Allocation fails if the storage size limit would be exceeded
+
+            var nBytes = chunk.readableBytes();
+
+            if (nBytes > 0) {
+
+                var buffer = storage.allocateBuffer(nBytes);
+                buffer.setBytes(0, chunk, chunk.readerIndex(), nBytes);
+                buffer.writerIndex(nBytes);
+
+                content.add(buffer);
+                bytesWritten += nBytes;
+            }
+
+            subscription.request(1);
+        }
+        catch (Exception e) {
+
+            gotError = true;
+            handleError(e, true);
+        }
+        finally {
+            chunk.close();
+        }
+    }
+
+    private void doComplete() {
+
+        if (gotComplete || gotError)
+            return;
+
+        gotComplete = true;
+
+        try {
+
+            // Content only becomes visible once the whole file is received
+            storage.commitFile(storagePath, content);
+
+            log.info("File committed to memory storage: [{}]", storagePath);
+
+            signal.complete(bytesWritten);
+        }
+        catch (Exception e) {
+
+            content.forEach(ArrowBuf::close);
+            content.clear();
+
+            var eStorage = errors.handleException(WRITE_OPERATION, storagePath, e);
+            signal.completeExceptionally(eStorage);
+        }
+        finally {
+            storage.deregisterStream(this);
+        }
+    }
+
+    private void doError(Throwable error) {
+
+        if (gotComplete || gotError)
+            return;
+
+        gotError = true;
+        handleError(error, false);
+    }
+
+    private void handleError(Throwable error, boolean internalError) {
+
+        var eWrapped = internalError
+                ? errors.handleException(WRITE_OPERATION, storagePath, error)
+                : wrapExternalError(error);
+
+        if (internalError) {
+            log.error("Write operation failed: {} [{}]", error.getMessage(), storagePath, eWrapped);
+            subscription.cancel();
+        }
+        else
+            log.error("Write operation stopped due to an error: {} [{}]", error.getMessage(), storagePath);
+
+        // Nothing was committed, so releasing the buffers discards the partial content
+        content.forEach(ArrowBuf::close);
+        content.clear();
+
+        storage.deregisterStream(this);
+
+        signal.completeExceptionally(eWrapped);
+    }
+
+    private Exception wrapExternalError(Throwable error) {
+
+        if (error instanceof CompletionException)
+            return (CompletionException) error;
+        else
+            return new CompletionException(error.getMessage(), error);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.codec.compression;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.codec.csv.CsvCodec;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EDataCorruption;
+import org.finos.tracdap.test.data.DataComparison;
+import org.finos.tracdap.test.data.MemoryTestHelpers;
+import org.finos.tracdap.test.data.SingleBatchDataSink;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.finos.tracdap.test.data.SampleData.generateBasicData;
+
+public class GzipCompressionTest {
+
+    private static final boolean DEBUG_ALLOCATION_LOGGING = false;
+
+    private final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private final GzipCompression gzip = new GzipCompression();
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+    private DataContext ctx;
+
+    @BeforeEach
+    void setup() {
+        // Use a separate allocator for each test case so errors can be identified
+        allocator = MemoryTestHelpers.testAllocator(DEBUG_ALLOCATION_LOGGING);
+        eventLoop = new DefaultEventExecutor();
+        ctx = new DataContext(eventLoop, allocator);
+    }
+
+    @AfterEach
+    void teardown() {
+
+        eventLoop.shutdownGracefully();
+
+        // Test for leaks on each individual test case
+        // BufferAllocator will throw if memory is not released
+        allocator.close();
+    }
+
+    @Test
+    void gzip_roundTrip() throws Exception {
+
+        var original = sampleText(500000);
+
+        var compressed = runStages(chunked(original, 10000), gzip.getCompressor(allocator));
+        var roundTrip = runStages(chunked(compressed, 10000), gzip.getDecompressor(allocator));
+
+        Assertions.assertTrue(compressed.length < original.length);
+        Assertions.assertArrayEquals(original, roundTrip);
+    }
+
+    @Test
+    void gzip_emptyStream() throws Exception {
+
+        var compressed = runStages(List.of(), gzip.getCompressor(allocator));
+        var roundTrip = runStages(List.of(compressed), gzip.getDecompressor(allocator));
+
+        Assertions.assertEquals(0, roundTrip.length);
+    }
+
+    @Test
+    void gzip_readableByJdk() throws Exception {
+
+        var original = sampleText(100000);
+        var compressed = runStages(chunked(original, 4096), gzip.getCompressor(allocator));
+
+        try (var stream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            Assertions.assertArrayEquals(original, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void gzip_readJdkMultiMember() throws Exception {
+
+        // Concatenated gzip members are a single valid gzip stream
+
+        var part1 = sampleText(50000);
+        var part2 = sampleText(20000);
+
+        var compressed = new ByteArrayOutputStream();
+        compressed.writeBytes(jdkGzip(part1));
+        compressed.writeBytes(jdkGzip(part2));
+
+        var expected = new ByteArrayOutputStream();
+        expected.writeBytes(part1);
+        expected.writeBytes(part2);
+
+        var roundTrip = runStages(chunked(compressed.toByteArray(), 1000), gzip.getDecompressor(allocator));
+
+        Assertions.assertArrayEquals(expected.toByteArray(), roundTrip);
+    }
+
+    @Test
+    void gzip_optionalHeaderFields() throws Exception {
+
+        // Add a file name and comment to the header, and feed it in one byte at a time
+
+        var original = sampleText(1000);
+        var jdkBytes = jdkGzip(original);
+
+        var header = new ByteArrayOutputStream();
+        header.write(jdkBytes, 0, 10);
+        header.writeBytes("data.csv\0".getBytes(StandardCharsets.ISO_8859_1));
+        header.writeBytes("a comment\0".getBytes(StandardCharsets.ISO_8859_1));
+
+        var compressed = header.toByteArray();
+        compressed[3] = 0x08 | 0x10;
+        compressed = concat(compressed, Arrays.copyOfRange(jdkBytes, 10, jdkBytes.length));
+
+        var roundTrip = runStages(chunked(compressed, 1), gzip.getDecompressor(allocator));
+
+        Assertions.assertArrayEquals(original, roundTrip);
+    }
+
+    @Test
+    void gzip_csvRoundTrip() {
+
+        try (var inputData = generateBasicData(allocator)) {
+
+            var csv = new CsvCodec();
+
+            var dataSrc = new SingleBatchDataSource(inputData);
+            var pipeline = DataPipeline.forSource(dataSrc, ctx);
+
+            pipeline.addStage(csv.getEncoder(allocator, Map.of()));
+            pipeline.addStage(gzip.getCompressor(allocator));
+            pipeline.addStage(gzip.getDecompressor(allocator));
+            pipeline.addStage(csv.getDecoder(inputData.getSchema(), allocator, Map.of()));
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch, offset, false));
+            pipeline.addSink(dataSink);
+
+            var exec = pipeline.execute();
+            waitFor(TEST_TIMEOUT, exec);
+            Assertions.assertDoesNotThrow(() -> getResultOf(exec));
+
+            Assertions.assertEquals(inputData.getVsr().getRowCount(), dataSink.getRowCount());
+        }
+    }
+
+    @Test
+    void gzip_corruptData() throws Exception {
+
+        var original = sampleText(100000);
+        var compressed = runStages(chunked(original, 10000), gzip.getCompressor(allocator));
+
+        // Damage the deflate stream, leaving the header intact
+        var random = new Random();
+        for (var i = 100; i < compressed.length - 100; i += 50)
+            compressed[i] = (byte) random.nextInt();
+
+        var exec = runPipeline(chunked(compressed, 10000), gzip.getDecompressor(allocator));
+        waitFor(TEST_TIMEOUT, exec);
+
+        Assertions.assertThrows(EDataCorruption.class, () -> getResultOf(exec));
+    }
+
+    @Test
+    void gzip_notGzip() {
+
+        var exec = runPipeline(List.of(sampleText(1000)), gzip.getDecompressor(allocator));
+        waitFor(TEST_TIMEOUT, exec);
+
+        Assertions.assertThrows(EDataCorruption.class, () -> getResultOf(exec));
+    }
+
+    @Test
+    void gzip_truncated() throws Exception {
+
+        var original = sampleText(100000);
+        var compressed = runStages(chunked(original, 10000), gzip.getCompressor(allocator));
+        var truncated = Arrays.copyOf(compressed, compressed.length - 4);
+
+        var exec = runPipeline(chunked(truncated, 10000), gzip.getDecompressor(allocator));
+        waitFor(TEST_TIMEOUT, exec);
+
+        Assertions.assertThrows(EDataCorruption.class, () -> getResultOf(exec));
+    }
+
+    private byte[] runStages(List<byte[]> input, DataPipeline.DataStage stage) throws Exception {
+
+        var exec = runPipeline(input, stage);
+        waitFor(TEST_TIMEOUT, exec);
+
+        return getResultOf(exec);
+    }
+
+    private CompletionStage<byte[]> runPipeline(List<byte[]> input, DataPipeline.DataStage stage) {
+
+        var buffers = new ArrayList<ArrowBuf>();
+        input.forEach(bytes -> buffers.add(Bytes.copyToBuffer(bytes, allocator)));
+
+        var sink = new CollectingSink();
+
+        var pipeline = DataPipeline.forSource(Flows.publish(buffers), ctx);
+        pipeline.addStage(stage);
+        pipeline.addSink(sink);
+
+        return pipeline.execute().thenCompose(x -> sink.result);
+    }
+
+    private static byte[] sampleText(int size) {
+
+        // Repetitive text with some variation, similar to CSV content
+
+        var random = new Random();
+        var text = new StringBuilder();
+
+        while (text.length() < size)
+            text.append(String.format("row_%d,%.4f,value_%d\n", text.length(), random.nextDouble(), random.nextInt(10)));
+
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    private static List<byte[]> chunked(byte[] bytes, int chunkSize) {
+
+        var chunks = new ArrayList<byte[]>();
+
+        for (var offset = 0; offset < bytes.length; offset += chunkSize)
+            chunks.add(Arrays.copyOfRange(bytes, offset, Math.min(offset + chunkSize, bytes.length)));
+
+        return chunks;
+    }
+
+    private static byte[] jdkGzip(byte[] bytes) throws IOException {
+
+        var out = new ByteArrayOutputStream();
+
+        try (var stream = new GZIPOutputStream(out)) {
+            stream.write(bytes);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+
+        var result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+
+        return result;
+    }
+
+    private static class CollectingSink implements Flow.Subscriber<ArrowBuf> {
+
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ArrowBuf item) {
+            try (item) {
+                content.writeBytes(Bytes.copyFromBuffer(item));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(content.toByteArray());
+        }
+    }
+}
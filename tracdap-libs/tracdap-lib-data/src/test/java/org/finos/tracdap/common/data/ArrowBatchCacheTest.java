@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data;
+
+import org.finos.tracdap.common.data.pipeline.BatchCacheSource;
+import org.finos.tracdap.common.data.pipeline.BatchCacheStage;
+import org.finos.tracdap.common.data.pipeline.RangeSelector;
+import org.finos.tracdap.test.data.DataComparison;
+import org.finos.tracdap.test.data.MemoryTestHelpers;
+import org.finos.tracdap.test.data.SingleBatchDataSink;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.finos.tracdap.test.data.SampleData.generateBasicData;
+
+
+public class ArrowBatchCacheTest {
+
+    private static final boolean DEBUG_ALLOCATION_LOGGING = false;
+
+    private static final String CACHE_KEY = "test_tenant/test_storage/data/test_path/chunk-0.arrow";
+    private static final long MEMORY_LIMIT = 64 * 1024 * 1024;
+
+    private final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void setupAllocator() {
+        // Use a separate allocator for each test case so errors can be identified
+        allocator = MemoryTestHelpers.testAllocator(DEBUG_ALLOCATION_LOGGING);
+    }
+
+    @AfterEach
+    void closeAllocator() {
+        // Test for leaks on each individual test case
+        // BufferAllocator will throw if memory is not released
+        allocator.close();
+    }
+
+    @Test
+    void populateAndReplay() {
+
+        try (var cache = new ArrowBatchCache(allocator, MEMORY_LIMIT, MEMORY_LIMIT);
+             var inputData = generateBasicData(allocator, 10000)) {
+
+            populateCache(cache, inputData);
+
+            var entry = cache.acquire(CACHE_KEY);
+            Assertions.assertNotNull(entry);
+            Assertions.assertEquals(1, entry.batches().size());
+
+            var ctx = new DataContext(new DefaultEventExecutor(), allocator);
+            var pipeline = DataPipeline.forSource(new BatchCacheSource(cache, entry, allocator), ctx);
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch));
+
+            pipeline.addSink(dataSink);
+            runPipeline(pipeline.execute());
+
+            Assertions.assertEquals(10000, dataSink.getRowCount());
+        }
+    }
+
+    @Test
+    void replayWithRange() {
+
+        try (var cache = new ArrowBatchCache(allocator, MEMORY_LIMIT, MEMORY_LIMIT);
+             var inputData = generateBasicData(allocator, 10000)) {
+
+            populateCache(cache, inputData);
+
+            var entry = cache.acquire(CACHE_KEY);
+            Assertions.assertNotNull(entry);
+
+            var ctx = new DataContext(new DefaultEventExecutor(), allocator);
+            var pipeline = DataPipeline.forSource(new BatchCacheSource(cache, entry, allocator), ctx);
+            pipeline.addStage(new RangeSelector(1347, 228));
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch, 1347, false));
+
+            pipeline.addSink(dataSink);
+            runPipeline(pipeline.execute());
+
+            Assertions.assertEquals(228, dataSink.getRowCount());
+        }
+    }
+
+    @Test
+    void entryLimitExceeded() {
+
+        try (var cache = new ArrowBatchCache(allocator, MEMORY_LIMIT, 1024);
+             var inputData = generateBasicData(allocator, 10000)) {
+
+            populateCache(cache, inputData);
+
+            Assertions.assertNull(cache.acquire(CACHE_KEY));
+        }
+    }
+
+    @Test
+    void evictedWhileInUse() {
+
+        try (var cache = new ArrowBatchCache(allocator, MEMORY_LIMIT, MEMORY_LIMIT);
+             var inputData = generateBasicData(allocator, 10000)) {
+
+            populateCache(cache, inputData);
+
+            var entry = cache.acquire(CACHE_KEY);
+            Assertions.assertNotNull(entry);
+
+            // Reserving the whole budget evicts everything, but the pinned entry must stay readable
+            cache.reserve(MEMORY_LIMIT);
+            Assertions.assertNull(cache.acquire(CACHE_KEY));
+
+            var ctx = new DataContext(new DefaultEventExecutor(), allocator);
+            var pipeline = DataPipeline.forSource(new BatchCacheSource(cache, entry, allocator), ctx);
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch));
+
+            pipeline.addSink(dataSink);
+            runPipeline(pipeline.execute());
+
+            Assertions.assertEquals(10000, dataSink.getRowCount());
+        }
+    }
+
+    @Test
+    void disabledCache() {
+
+        try (var cache = new ArrowBatchCache(allocator, 0, 0)) {
+
+            Assertions.assertFalse(cache.isEnabled());
+            Assertions.assertNull(cache.acquire(CACHE_KEY));
+            Assertions.assertFalse(cache.reserve(1));
+        }
+    }
+
+    private void populateCache(ArrowBatchCache cache, ArrowVsrContext inputData) {
+
+        var ctx = new DataContext(new DefaultEventExecutor(), allocator);
+
+        var pipeline = DataPipeline.forSource(new SingleBatchDataSource(inputData), ctx);
+        pipeline.addStage(new BatchCacheStage(cache, CACHE_KEY));
+        pipeline.addSink(new SingleBatchDataSink(pipeline));
+
+        runPipeline(pipeline.execute());
+    }
+
+    private void runPipeline(CompletionStage<?> exec) {
+
+        waitFor(TEST_TIMEOUT, exec);
+
+        // Ensure errors are reported (pipeline errors or validation failures)
+        try {
+            getResultOf(exec);
+        }
+        catch(Exception e) {
+            if (e instanceof RuntimeException)
+                throw (RuntimeException) e;
+            else
+                throw new RuntimeException(e);
+        }
+    }
+}
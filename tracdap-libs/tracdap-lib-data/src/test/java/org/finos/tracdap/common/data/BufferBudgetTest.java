@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.common.data;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.test.data.MemoryTestHelpers;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+
+public class BufferBudgetTest {
+
+    private static final boolean DEBUG_ALLOCATION_LOGGING = false;
+
+    private final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    // Number of chunks a reactive source requests ahead
+    private static final int SOURCE_HEADROOM = 8;
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+
+    @BeforeEach
+    void setup() {
+        allocator = MemoryTestHelpers.testAllocator(DEBUG_ALLOCATION_LOGGING);
+        eventLoop = new DefaultEventExecutor();
+    }
+
+    @AfterEach
+    void teardown() {
+
+        eventLoop.shutdownGracefully();
+
+        // Test for leaks on each individual test case
+        allocator.close();
+    }
+
+    @Test
+    void budget_acquireRelease() {
+
+        var service = new BufferBudget(1000, 400);
+        var request = service.newRequestBudget();
+
+        request.acquire(300);
+        Assertions.assertTrue(request.hasCapacity());
+        Assertions.assertEquals(300, service.used());
+
+        // Acquire always succeeds, the budget goes over its limit and reports no capacity
+        request.acquire(300);
+        Assertions.assertFalse(request.hasCapacity());
+        Assertions.assertTrue(service.hasCapacity());
+
+        request.release(600);
+        Assertions.assertTrue(request.hasCapacity());
+        Assertions.assertEquals(0, request.used());
+        Assertions.assertEquals(0, service.used());
+    }
+
+    @Test
+    void budget_serviceLimit() {
+
+        var service = new BufferBudget(1000, 800);
+        var request1 = service.newRequestBudget();
+        var request2 = service.newRequestBudget();
+
+        request1.acquire(600);
+        request2.acquire(500);
+
+        // Both requests are inside their own limits, but the service limit is used up
+        Assertions.assertFalse(service.hasCapacity());
+        Assertions.assertFalse(request1.hasCapacity());
+        Assertions.assertFalse(request2.hasCapacity());
+
+        request1.release(600);
+
+        Assertions.assertTrue(request1.hasCapacity());
+        Assertions.assertTrue(request2.hasCapacity());
+
+        request2.release(500);
+    }
+
+    @Test
+    void budget_waiters() {
+
+        var service = new BufferBudget(1000, 800);
+        var request1 = service.newRequestBudget();
+        var request2 = service.newRequestBudget();
+
+        var notified = new AtomicInteger(0);
+
+        // Waiter runs straight away if there is capacity
+        request2.onCapacity(notified::incrementAndGet);
+        Assertions.assertEquals(1, notified.get());
+
+        request1.acquire(600);
+        request2.acquire(500);
+
+        // Request 2 is waiting on the service budget, which is freed up by request 1
+        request2.onCapacity(notified::incrementAndGet);
+        Assertions.assertEquals(1, notified.get());
+
+        request1.release(200);
+        Assertions.assertEquals(2, notified.get());
+
+        // Waiters only fire once
+        request1.release(400);
+        Assertions.assertEquals(2, notified.get());
+
+        request2.release(500);
+    }
+
+    @Test
+    void pipeline_slowConsumer() throws Exception {
+
+        // A source with many more chunks than would fit in the budget, feeding a slow consumer
+        // The source should be paused when the budget is used up, and the pipeline should not fail
+
+        var chunkSize = 4096;
+        var nChunks = 2000;
+
+        var service = new BufferBudget(64 * 1024, 32 * 1024);
+        var ctx = new DataContext(eventLoop, eventLoop, allocator, service);
+
+        var chunks = IntStream.range(0, nChunks)
+                .mapToObj(i -> Bytes.copyToBuffer(new byte[chunkSize], allocator))
+                .collect(Collectors.toList());
+
+        var source = Flows.publish(chunks);
+        var sink = new SlowSubscriber(service);
+
+        var pipeline = DataPipeline.forSource(source, ctx);
+        pipeline.addSink(sink);
+
+        var exec = pipeline.execute();
+        waitFor(TEST_TIMEOUT, exec);
+
+        Assertions.assertDoesNotThrow(() -> getResultOf(exec));
+        Assertions.assertDoesNotThrow(() -> getResultOf(sink.complete));
+
+        Assertions.assertEquals((long) chunkSize * nChunks, sink.bytesReceived.get());
+
+        // Chunks already requested from the source can take the buffer over its limit, but no further
+        Assertions.assertTrue(sink.maxBuffered.get() <= 32 * 1024 + (long) chunkSize * SOURCE_HEADROOM);
+
+        // All the buffered bytes are released when the pipeline completes
+        Assertions.assertEquals(0, service.used());
+    }
+
+    private class SlowSubscriber implements Flow.Subscriber<ArrowBuf> {
+
+        private final BufferBudget budget;
+        private final AtomicLong bytesReceived = new AtomicLong(0);
+        private final AtomicLong maxBuffered = new AtomicLong(0);
+        private final CompletableFuture<Void> complete = new CompletableFuture<>();
+
+        private Flow.Subscription subscription;
+
+        SlowSubscriber(BufferBudget budget) {
+            this.budget = budget;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ArrowBuf item) {
+
+            bytesReceived.addAndGet(item.readableBytes());
+            maxBuffered.accumulateAndGet(budget.used(), Math::max);
+            item.close();
+
+            // Request the next chunk later, to let data build up in the pipeline
+            eventLoop.schedule(() -> subscription.request(1), 100, TimeUnit.MICROSECONDS);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            complete.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            complete.complete(null);
+        }
+    }
+}
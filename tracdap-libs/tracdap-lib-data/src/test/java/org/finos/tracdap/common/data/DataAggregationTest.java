@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.data;
+
+import org.finos.tracdap.api.AggregateFunction;
+import org.finos.tracdap.api.DataAggregate;
+import org.finos.tracdap.api.DataAggregation;
+import org.finos.tracdap.common.config.ConfigDefaults;
+import org.finos.tracdap.common.data.pipeline.AggregationStage;
+import org.finos.tracdap.common.exception.EConsistencyValidation;
+import org.finos.tracdap.common.exception.EDataConstraint;
+import org.finos.tracdap.metadata.BasicType;
+import org.finos.tracdap.metadata.FieldSchema;
+import org.finos.tracdap.metadata.SchemaDefinition;
+import org.finos.tracdap.metadata.SchemaType;
+import org.finos.tracdap.metadata.TableSchema;
+import org.finos.tracdap.test.data.MemoryTestHelpers;
+import org.finos.tracdap.test.data.SampleData;
+import org.finos.tracdap.test.data.SingleBatchDataSink;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.finos.tracdap.test.data.SampleData.generateBasicData;
+
+public class DataAggregationTest {
+
+    private static final boolean DEBUG_ALLOCATION_LOGGING = false;
+
+    private final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final SchemaDefinition SUM_SCHEMA = SchemaDefinition.newBuilder()
+            .setSchemaType(SchemaType.TABLE_SCHEMA)
+            .setTable(TableSchema.newBuilder()
+            .addFields(FieldSchema.newBuilder()
+                    .setFieldName("integer_field")
+                    .setFieldOrder(0)
+                    .setFieldType(BasicType.INTEGER))
+            .addFields(FieldSchema.newBuilder()
+                    .setFieldName("decimal_field")
+                    .setFieldOrder(1)
+                    .setFieldType(BasicType.DECIMAL)))
+            .build();
+
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void setupAllocator() {
+        // Use a separate allocator for each test case so errors can be identified
+        allocator = MemoryTestHelpers.testAllocator(DEBUG_ALLOCATION_LOGGING);
+    }
+
+    @AfterEach
+    void closeAllocator() {
+        // Test for leaks on each individual test case
+        // BufferAllocator will throw if memory is not released
+        allocator.close();
+    }
+
+    @Test
+    void aggregateSchema_basic() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addGroupBy("categorical_field")
+                .addAggregates(aggregate(AggregateFunction.COUNT, null))
+                .addAggregates(aggregate(AggregateFunction.SUM, "decimal_field"))
+                .build();
+
+        var schema = AggregationStage.aggregateSchema(SampleData.BASIC_TABLE_SCHEMA, aggregation);
+        var fields = schema.getTable().getFieldsList();
+
+        Assertions.assertEquals(3, fields.size());
+
+        Assertions.assertEquals("categorical_field", fields.get(0).getFieldName());
+        Assertions.assertEquals(BasicType.STRING, fields.get(0).getFieldType());
+        Assertions.assertFalse(fields.get(0).getCategorical());
+
+        Assertions.assertEquals("count", fields.get(1).getFieldName());
+        Assertions.assertEquals(BasicType.INTEGER, fields.get(1).getFieldType());
+
+        Assertions.assertEquals("sum_decimal_field", fields.get(2).getFieldName());
+        Assertions.assertEquals(BasicType.DECIMAL, fields.get(2).getFieldType());
+    }
+
+    @Test
+    void aggregateSchema_invalid() {
+
+        var unknownField = DataAggregation.newBuilder()
+                .addGroupBy("unknown_field")
+                .build();
+
+        var sumOfString = DataAggregation.newBuilder()
+                .addAggregates(aggregate(AggregateFunction.SUM, "string_field"))
+                .build();
+
+        var duplicateName = DataAggregation.newBuilder()
+                .addGroupBy("integer_field")
+                .addAggregates(aggregate(AggregateFunction.MAX, "float_field").toBuilder().setResultName("INTEGER_FIELD"))
+                .build();
+
+        var schema = SampleData.BASIC_TABLE_SCHEMA;
+
+        Assertions.assertThrows(EConsistencyValidation.class, () -> AggregationStage.aggregateSchema(schema, unknownField));
+        Assertions.assertThrows(EConsistencyValidation.class, () -> AggregationStage.aggregateSchema(schema, sumOfString));
+        Assertions.assertThrows(EConsistencyValidation.class, () -> AggregationStage.aggregateSchema(schema, duplicateName));
+    }
+
+    @Test
+    void aggregate_groupByCategorical() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addGroupBy("categorical_field")
+                .addAggregates(aggregate(AggregateFunction.COUNT, null))
+                .addAggregates(aggregate(AggregateFunction.SUM, "integer_field"))
+                .addAggregates(aggregate(AggregateFunction.MIN, "float_field"))
+                .addAggregates(aggregate(AggregateFunction.MAX, "datetime_field"))
+                .build();
+
+        var results = new HashMap<String, Object[]>();
+
+        runAggregation(aggregation, 10000, batch -> {
+
+            var vsr = batch.getVsr();
+
+            for (var row = 0; row < vsr.getRowCount(); row++) {
+
+                var key = vsr.getVector(0).getObject(row).toString();
+                var values = new Object[] {
+                        vsr.getVector(1).getObject(row),
+                        vsr.getVector(2).getObject(row),
+                        vsr.getVector(3).getObject(row),
+                        vsr.getVector(4).getObject(row) };
+
+                results.put(key, values);
+            }
+        });
+
+        // Sample data assigns categories in rotation: RED, BLUE, GREEN
+
+        Assertions.assertEquals(3, results.size());
+
+        var expected = Map.of(
+                "RED", new Object[] {3334L, sumOfMultiples(0, 10000), 0.0, datetime(9999)},
+                "BLUE", new Object[] {3333L, sumOfMultiples(1, 10000), 1.0, datetime(9997)},
+                "GREEN", new Object[] {3333L, sumOfMultiples(2, 10000), 2.0, datetime(9998)});
+
+        for (var category : expected.keySet())
+            Assertions.assertArrayEquals(expected.get(category), results.get(category), category);
+    }
+
+    @Test
+    void aggregate_noGroupBy() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addAggregates(aggregate(AggregateFunction.COUNT, "integer_field"))
+                .addAggregates(aggregate(AggregateFunction.MAX, "integer_field"))
+                .build();
+
+        var rowCount = new long[1];
+        var values = new Object[2];
+
+        runAggregation(aggregation, 5000, batch -> {
+
+            var vsr = batch.getVsr();
+            rowCount[0] += vsr.getRowCount();
+
+            values[0] = vsr.getVector(0).getObject(0);
+            values[1] = vsr.getVector(1).getObject(0);
+        });
+
+        Assertions.assertEquals(1, rowCount[0]);
+        Assertions.assertEquals(5000L, values[0]);
+        Assertions.assertEquals(4999L, values[1]);
+    }
+
+    @Test
+    void aggregate_groupLimit() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addGroupBy("categorical_field")
+                .addAggregates(aggregate(AggregateFunction.COUNT, null))
+                .build();
+
+        var rowCount = new long[1];
+
+        // Three categories fit exactly inside a limit of three groups
+        runAggregation(aggregation, 1000, 3, batch -> rowCount[0] += batch.getVsr().getRowCount());
+
+        Assertions.assertEquals(3, rowCount[0]);
+    }
+
+    @Test
+    void aggregate_groupLimitExceeded() {
+
+        // Every row has a unique value, so the number of groups grows with the size of the data
+
+        var aggregation = DataAggregation.newBuilder()
+                .addGroupBy("integer_field")
+                .addAggregates(aggregate(AggregateFunction.COUNT, null))
+                .build();
+
+        Assertions.assertThrows(EDataConstraint.class, () -> runAggregation(aggregation, 10000, 100, batch -> {}));
+    }
+
+    @Test
+    void aggregate_sumIntegerOverflow() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addAggregates(aggregate(AggregateFunction.SUM, "integer_field"))
+                .build();
+
+        var data = List.<Map<String, Object>>of(
+                Map.of("integer_field", Long.MAX_VALUE),
+                Map.of("integer_field", 1L));
+
+        Assertions.assertThrows(EDataConstraint.class, () -> runAggregation(SUM_SCHEMA, data, aggregation, batch -> {}));
+    }
+
+    @Test
+    void aggregate_sumDecimalWide() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addAggregates(aggregate(AggregateFunction.SUM, "decimal_field"))
+                .build();
+
+        // The running total goes past the output precision, but the final result is in range
+
+        var largeValue = new BigDecimal("9e25");
+
+        var data = List.<Map<String, Object>>of(
+                Map.of("decimal_field", largeValue),
+                Map.of("decimal_field", largeValue),
+                Map.of("decimal_field", largeValue.negate()));
+
+        var result = new Object[1];
+
+        runAggregation(SUM_SCHEMA, data, aggregation, batch -> result[0] = batch.getVsr().getVector(0).getObject(0));
+
+        Assertions.assertEquals(0, largeValue.compareTo((BigDecimal) result[0]));
+    }
+
+    @Test
+    void aggregate_sumDecimalOverflow() {
+
+        var aggregation = DataAggregation.newBuilder()
+                .addAggregates(aggregate(AggregateFunction.SUM, "decimal_field"))
+                .build();
+
+        var largeValue = new BigDecimal("9e25");
+
+        var data = List.<Map<String, Object>>of(
+                Map.of("decimal_field", largeValue),
+                Map.of("decimal_field", largeValue));
+
+        Assertions.assertThrows(EDataConstraint.class, () -> runAggregation(SUM_SCHEMA, data, aggregation, batch -> {}));
+    }
+
+    private void runAggregation(
+            DataAggregation aggregation, int nRows,
+            Consumer<ArrowVsrContext> callback) {
+
+        runAggregation(aggregation, nRows, ConfigDefaults.DATA_AGGREGATION_GROUP_LIMIT, callback);
+    }
+
+    private void runAggregation(
+            DataAggregation aggregation, int nRows, int maxGroups,
+            Consumer<ArrowVsrContext> callback) {
+
+        try (var inputData = generateBasicData(allocator, nRows)) {
+            runAggregation(SampleData.BASIC_TABLE_SCHEMA, inputData, aggregation, maxGroups, callback);
+        }
+    }
+
+    private void runAggregation(
+            SchemaDefinition schema, List<Map<String, Object>> data,
+            DataAggregation aggregation, Consumer<ArrowVsrContext> callback) {
+
+        var arrowSchema = SchemaMapping.tracToArrow(schema, allocator);
+
+        try (var inputData = SampleData.convertData(arrowSchema, data, allocator)) {
+            runAggregation(schema, inputData, aggregation, ConfigDefaults.DATA_AGGREGATION_GROUP_LIMIT, callback);
+        }
+    }
+
+    private void runAggregation(
+            SchemaDefinition schema, ArrowVsrContext inputData,
+            DataAggregation aggregation, int maxGroups,
+            Consumer<ArrowVsrContext> callback) {
+
+        var ctx = new DataContext(new DefaultEventExecutor(), allocator);
+
+        var dataSrc = new SingleBatchDataSource(inputData);
+        var pipeline = DataPipeline.forSource(dataSrc, ctx);
+        pipeline.addStage(new AggregationStage(schema, aggregation, maxGroups));
+
+        var dataSink = new SingleBatchDataSink(pipeline, callback);
+        pipeline.addSink(dataSink);
+
+        var exec = pipeline.execute();
+        waitFor(TEST_TIMEOUT, exec);
+
+        // Ensure errors are reported (pipeline errors or validation failures)
+        try {
+            getResultOf(exec);
+        }
+        catch(Exception e) {
+            if (e instanceof RuntimeException)
+                throw (RuntimeException) e;
+            else
+                throw new RuntimeException(e);
+        }
+
+        Assertions.assertEquals(1, dataSink.getBatchCount());
+    }
+
+    private static DataAggregate aggregate(AggregateFunction function, String fieldName) {
+
+        var aggregate = DataAggregate.newBuilder().setFunction(function);
+
+        if (fieldName != null)
+            aggregate.setFieldName(fieldName);
+
+        return aggregate.build();
+    }
+
+    private static long sumOfMultiples(int remainder, int nRows) {
+
+        var sum = 0L;
+
+        for (var i = remainder; i < nRows; i += 3)
+            sum += i;
+
+        return sum;
+    }
+
+    private static LocalDateTime datetime(int index) {
+
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plusSeconds(index);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.common.data;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.async.flow.ReduceProcessor;
+import org.finos.tracdap.common.codec.csv.CsvCodec;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.test.data.DataComparison;
+import org.finos.tracdap.test.data.MemoryTestHelpers;
+import org.finos.tracdap.test.data.SingleBatchDataSink;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.finos.tracdap.test.data.SampleData.generateBasicData;
+
+public class DataPipelineMetricsTest {
+
+    private static final boolean DEBUG_ALLOCATION_LOGGING = false;
+
+    private final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+
+    @BeforeEach
+    void setup() {
+        allocator = MemoryTestHelpers.testAllocator(DEBUG_ALLOCATION_LOGGING);
+        eventLoop = new DefaultEventExecutor();
+    }
+
+    @AfterEach
+    void teardown() {
+
+        eventLoop.shutdownGracefully();
+
+        // Test for leaks on each individual test case
+        allocator.close();
+    }
+
+    @Test
+    void metrics_rowsAndBytes() {
+
+        try (var inputData = generateBasicData(allocator, 5000)) {
+
+            var ctx = new DataContext(eventLoop, allocator);
+            var csv = new CsvCodec();
+
+            var dataSrc = new SingleBatchDataSource(inputData);
+            var pipeline = DataPipeline.forSource(dataSrc, ctx);
+
+            pipeline.addStage(csv.getEncoder(allocator, Map.of()));
+            pipeline.addStage(csv.getDecoder(inputData.getSchema(), allocator, Map.of()));
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch, offset, false));
+            pipeline.addSink(dataSink);
+
+            var exec = pipeline.execute();
+            waitFor(TEST_TIMEOUT, exec);
+            Assertions.assertDoesNotThrow(() -> getResultOf(exec));
+
+            var metrics = pipeline.metrics();
+            var source = metrics.get(0);
+            var encoder = metrics.get(1);
+            var sink = metrics.get(metrics.size() - 1);
+
+            var rowCount = inputData.getVsr().getRowCount();
+
+            Assertions.assertEquals("SingleBatchDataSource", source.stageName());
+            Assertions.assertEquals(rowCount, source.rowsOut());
+            Assertions.assertEquals(rowCount, encoder.rowsIn());
+            Assertions.assertTrue(encoder.bytesOut() > 0);
+            Assertions.assertTrue(encoder.batchesOut() > 0);
+            Assertions.assertEquals("SingleBatchDataSink", sink.stageName());
+            Assertions.assertEquals(rowCount, sink.rowsIn());
+
+            // What goes out of each stage is what goes into the next one
+            for (var i = 0; i < metrics.size() - 1; i++) {
+                Assertions.assertEquals(metrics.get(i).bytesOut(), metrics.get(i + 1).bytesIn());
+                Assertions.assertEquals(metrics.get(i).rowsOut(), metrics.get(i + 1).rowsIn());
+                Assertions.assertEquals(metrics.get(i).batchesOut(), metrics.get(i + 1).batchesIn());
+            }
+
+            // Sources are driven externally, their time is not tracked
+            Assertions.assertEquals(0, source.busyNanos());
+            Assertions.assertTrue(encoder.busyNanos() > 0);
+            metrics.forEach(m -> Assertions.assertTrue(m.busyNanos() >= 0));
+        }
+    }
+
+    @Test
+    void metrics_peakBuffered() {
+
+        var chunkSize = 1024;
+        var nChunks = 100;
+
+        var chunks = IntStream.range(0, nChunks)
+                .mapToObj(i -> Bytes.copyToBuffer(new byte[chunkSize], allocator))
+                .collect(Collectors.toList());
+
+        var ctx = new DataContext(eventLoop, allocator);
+        var pipeline = DataPipeline.forSource(Flows.publish(chunks), ctx);
+
+        var received = new ArrayList<ArrowBuf>();
+        var result = new CompletableFuture<ArrayList<ArrowBuf>>();
+        var sink = new ReduceProcessor<ArrowBuf, ArrayList<ArrowBuf>>(
+                (list, buf) -> { list.add(buf); return list; },
+                result, received);
+
+        pipeline.addSink(sink);
+
+        var exec = pipeline.execute();
+        waitFor(TEST_TIMEOUT, exec);
+        Assertions.assertDoesNotThrow(() -> getResultOf(exec));
+
+        try {
+
+            var metrics = pipeline.metrics();
+            var buffer = metrics.get(1);
+
+            Assertions.assertEquals("ElasticBuffer", buffer.stageName());
+            Assertions.assertEquals((long) chunkSize * nChunks, buffer.bytesIn());
+            Assertions.assertEquals(nChunks, buffer.batchesIn());
+            Assertions.assertTrue(buffer.peakBufferedBytes() >= chunkSize);
+        }
+        finally {
+            received.forEach(ArrowBuf::close);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.common.data;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.codec.arrow.ArrowStreamCodec;
+import org.finos.tracdap.common.codec.csv.CsvCodec;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EDataCorruption;
+import org.finos.tracdap.test.data.DataComparison;
+import org.finos.tracdap.test.data.MemoryTestHelpers;
+import org.finos.tracdap.test.data.SampleData;
+import org.finos.tracdap.test.data.SingleBatchDataSink;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.finos.tracdap.test.data.SampleData.generateBasicData;
+
+public class DataPipelineOffloadTest {
+
+    private static final boolean DEBUG_ALLOCATION_LOGGING = false;
+
+    private final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+    private CountingExecutor worker;
+
+    @BeforeEach
+    void setup() {
+        // Use a separate allocator for each test case so errors can be identified
+        allocator = MemoryTestHelpers.testAllocator(DEBUG_ALLOCATION_LOGGING);
+        eventLoop = new DefaultEventExecutor();
+        worker = new CountingExecutor();
+    }
+
+    @AfterEach
+    void teardown() {
+
+        eventLoop.shutdownGracefully();
+        worker.shutdownGracefully();
+
+        // Test for leaks on each individual test case
+        // BufferAllocator will throw if memory is not released
+        allocator.close();
+    }
+
+    @Test
+    void offload_roundTrip() {
+
+        try (var inputData = generateBasicData(allocator, 5000)) {
+
+            var ctx = new DataContext(eventLoop, worker, allocator);
+
+            var csv = new CsvCodec();
+            var arrow = new ArrowStreamCodec();
+
+            var dataSrc = new SingleBatchDataSource(inputData);
+            var pipeline = DataPipeline.forSource(dataSrc, ctx);
+
+            // CSV decoder through to Arrow encoder should be offloaded to the worker
+            pipeline.addStage(csv.getEncoder(allocator, Map.of()));
+            pipeline.addStage(csv.getDecoder(inputData.getSchema(), allocator, Map.of()));
+            pipeline.addStage(arrow.getEncoder(allocator, Map.of()));
+            pipeline.addStage(arrow.getDecoder(inputData.getSchema(), allocator, Map.of()));
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch, offset, false));
+            pipeline.addSink(dataSink);
+
+            var exec = pipeline.execute();
+            waitFor(TEST_TIMEOUT, exec);
+            Assertions.assertDoesNotThrow(() -> getResultOf(exec));
+
+            DataComparison.compareSchemas(inputData.getSchema(), dataSink.getSchema());
+            Assertions.assertEquals(inputData.getVsr().getRowCount(), dataSink.getRowCount());
+
+            Assertions.assertTrue(worker.taskCount.get() > 0);
+        }
+    }
+
+    @Test
+    void offload_noEncoder() {
+
+        // Without an encoder to hand back a byte stream, nothing is offloaded
+
+        try (var inputData = generateBasicData(allocator)) {
+
+            var ctx = new DataContext(eventLoop, worker, allocator);
+            var csv = new CsvCodec();
+
+            var dataSrc = new SingleBatchDataSource(inputData);
+            var pipeline = DataPipeline.forSource(dataSrc, ctx);
+
+            pipeline.addStage(csv.getEncoder(allocator, Map.of()));
+            pipeline.addStage(csv.getDecoder(inputData.getSchema(), allocator, Map.of()));
+
+            var dataSink = new SingleBatchDataSink(pipeline, (batch, offset) ->
+                    DataComparison.compareBatches(inputData, batch, offset, false));
+            pipeline.addSink(dataSink);
+
+            var exec = pipeline.execute();
+            waitFor(TEST_TIMEOUT, exec);
+            Assertions.assertDoesNotThrow(() -> getResultOf(exec));
+
+            Assertions.assertEquals(inputData.getVsr().getRowCount(), dataSink.getRowCount());
+            Assertions.assertEquals(0, worker.taskCount.get());
+        }
+    }
+
+    @Test
+    void offload_errorOnWorker() {
+
+        // Errors raised in the offloaded segment must shut down the whole pipeline and release all memory
+
+        var arrowSchema = SchemaMapping.tracToArrow(SampleData.BASIC_TABLE_SCHEMA);
+
+        var testData = List.of(
+                new byte[10000],
+                new byte[10000],
+                new byte[10000]);
+
+        var random = new Random();
+        testData.forEach(random::nextBytes);
+
+        var testDataBuf = testData.stream()
+                .map(bytes -> Bytes.copyToBuffer(bytes, allocator))
+                .collect(Collectors.toList());
+        var testDataStream = Flows.publish(testDataBuf);
+
+        var ctx = new DataContext(eventLoop, worker, allocator);
+
+        var csv = new CsvCodec();
+        var arrow = new ArrowStreamCodec();
+
+        var pipeline = DataPipeline.forSource(testDataStream, ctx);
+        pipeline.addStage(csv.getDecoder(arrowSchema, allocator, Map.of()));
+        pipeline.addStage(arrow.getEncoder(allocator, Map.of()));
+        pipeline.addStage(arrow.getDecoder(arrowSchema, allocator, Map.of()));
+
+        var dataSink = new SingleBatchDataSink(pipeline);
+        pipeline.addSink(dataSink);
+
+        var exec = pipeline.execute();
+        waitFor(TEST_TIMEOUT, exec);
+
+        Assertions.assertThrows(EDataCorruption.class, () -> getResultOf(exec));
+        Assertions.assertTrue(worker.taskCount.get() > 0);
+    }
+
+    private static class CountingExecutor extends DefaultEventExecutor {
+
+        private final AtomicInteger taskCount = new AtomicInteger(0);
+
+        @Override
+        public void execute(Runnable task) {
+            taskCount.incrementAndGet();
+            super.execute(task);
+        }
+    }
+}
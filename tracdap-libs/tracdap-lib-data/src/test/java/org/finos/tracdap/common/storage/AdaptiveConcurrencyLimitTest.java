@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long LATENCY = Duration.ofMillis(10).toNanos();
+
+    @Test
+    void requestsOverLimitAreQueued() {
+
+        var limit = new AdaptiveConcurrencyLimit("TEST_STORAGE", 2, 2);
+
+        var first = limit.acquire(Runnable::run);
+        var second = limit.acquire(Runnable::run);
+        var third = limit.acquire(Runnable::run);
+
+        Assertions.assertTrue(first.toCompletableFuture().isDone());
+        Assertions.assertTrue(second.toCompletableFuture().isDone());
+        Assertions.assertFalse(third.toCompletableFuture().isDone());
+        Assertions.assertEquals(1, limit.queued());
+
+        // Releasing a request admits the next one in the queue
+        limit.release(RequestClass.METADATA, LATENCY, false);
+
+        Assertions.assertTrue(third.toCompletableFuture().isDone());
+        Assertions.assertEquals(2, limit.inFlight());
+        Assertions.assertEquals(0, limit.queued());
+    }
+
+    @Test
+    void throttlingReducesLimit() {
+
+        var limit = new AdaptiveConcurrencyLimit("TEST_STORAGE", 16, 64);
+
+        limit.acquire(Runnable::run);
+        limit.acquire(Runnable::run);
+
+        limit.release(RequestClass.METADATA, LATENCY, true);
+        Assertions.assertEquals(8, limit.limit());
+
+        // A second throttled response straight after should not reduce the limit again
+        limit.release(RequestClass.METADATA, LATENCY, true);
+        Assertions.assertEquals(8, limit.limit());
+    }
+
+    @Test
+    void successGrowsLimit() {
+
+        var limit = new AdaptiveConcurrencyLimit("TEST_STORAGE", 4, 8);
+
+        // Roughly one step of growth per limit's worth of successful requests
+        for (var i = 0; i < 100; i++) {
+            limit.acquire(Runnable::run);
+            limit.release(RequestClass.METADATA, LATENCY, false);
+        }
+
+        Assertions.assertEquals(8, limit.limit());
+    }
+
+    @Test
+    void latencyComparedPerRequestClass() {
+
+        var limit = new AdaptiveConcurrencyLimit("TEST_STORAGE", 16, 16);
+
+        for (var i = 0; i < 100; i++) {
+            limit.acquire(Runnable::run);
+            limit.release(RequestClass.METADATA, LATENCY, false);
+        }
+
+        // Transfers are much slower than metadata calls, that is not a sign of congestion
+        for (var i = 0; i < 100; i++) {
+            limit.acquire(Runnable::run);
+            limit.release(RequestClass.TRANSFER, 50 * LATENCY, false);
+        }
+
+        Assertions.assertEquals(16, limit.limit());
+
+        // Bulk requests only contribute throttling signals
+        limit.acquire(Runnable::run);
+        limit.release(RequestClass.BULK, 1000 * LATENCY, false);
+
+        Assertions.assertEquals(16, limit.limit());
+    }
+
+    @Test
+    void latencyIncreaseReducesLimit() {
+
+        var limit = new AdaptiveConcurrencyLimit("TEST_STORAGE", 16, 16);
+
+        for (var i = 0; i < 100; i++) {
+            limit.acquire(Runnable::run);
+            limit.release(RequestClass.METADATA, LATENCY, false);
+        }
+
+        // A sustained rise in latency for the same class of request is treated as congestion
+        for (var i = 0; i < 20; i++) {
+            limit.acquire(Runnable::run);
+            limit.release(RequestClass.METADATA, 10 * LATENCY, false);
+        }
+
+        Assertions.assertEquals(8, limit.limit());
+    }
+
+    @Test
+    void queuedRequestsAdmittedInOrder() {
+
+        var limit = new AdaptiveConcurrencyLimit("TEST_STORAGE", 1, 1);
+        var order = new ArrayList<Integer>();
+
+        limit.acquire(Runnable::run);
+
+        var waiters = new ArrayList<CompletionStage<Void>>();
+
+        for (var i = 0; i < 3; i++) {
+            var index = i;
+            var waiter = limit.acquire(Runnable::run);
+            waiter.thenRun(() -> order.add(index));
+            waiters.add(waiter);
+        }
+
+        for (var i = 0; i < 3; i++)
+            limit.release(RequestClass.METADATA, LATENCY, false);
+
+        Assertions.assertEquals(List.of(0, 1, 2), order);
+        Assertions.assertTrue(waiters.stream().allMatch(w -> w.toCompletableFuture().isDone()));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.storage.local.LocalStorageErrors;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+
+
+public class CommonFileReaderTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private static final int CONTENT_SIZE = 10000;
+    private static final int RESPONSE_SIZE = 1000;
+
+    private RootAllocator allocator;
+    private DefaultEventExecutor eventExecutor;
+    private DataContext dataContext;
+    private StorageErrors errors;
+    private byte[] content;
+
+    @BeforeEach
+    void setup() {
+
+        allocator = new RootAllocator();
+        eventExecutor = new DefaultEventExecutor(new DefaultThreadFactory("t-events"));
+        dataContext = new DataContext(eventExecutor, allocator);
+        errors = new LocalStorageErrors("TEST_STORAGE");
+
+        content = new byte[CONTENT_SIZE];
+        new Random().nextBytes(content);
+    }
+
+    @AfterEach
+    void teardown() {
+
+        eventExecutor.shutdownGracefully();
+        allocator.close();
+    }
+
+    @Test
+    void interruptedReadResumed() throws Exception {
+
+        // The first request fails part way through, the read resumes from the last byte received
+        var reader = new TestReader(dataContext, errors, content, 1);
+        reader.enableResume(3, null);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(List.of(0L, 3L * RESPONSE_SIZE), reader.startPositions);
+    }
+
+    @Test
+    void resumeLimitReached() {
+
+        // Every request fails part way through, the read gives up after the configured number of resumes
+        var reader = new TestReader(dataContext, errors, content, Integer.MAX_VALUE);
+        reader.enableResume(2, null);
+
+        Assertions.assertThrows(Exception.class, () -> readAll(reader));
+        Assertions.assertEquals(3, reader.startPositions.size());
+    }
+
+    @Test
+    void resumeBudgetExhausted() {
+
+        // The retry budget allows one resume, even though the reader would allow more
+        var reader = new TestReader(dataContext, errors, content, Integer.MAX_VALUE);
+        reader.enableResume(3, new RetryBudget(0.0, 1.0));
+
+        Assertions.assertThrows(Exception.class, () -> readAll(reader));
+        Assertions.assertEquals(2, reader.startPositions.size());
+    }
+
+    @Test
+    void resumeNotEnabled() {
+
+        var reader = new TestReader(dataContext, errors, content, 1);
+
+        Assertions.assertThrows(Exception.class, () -> readAll(reader));
+        Assertions.assertEquals(List.of(0L), reader.startPositions);
+    }
+
+    private byte[] readAll(CommonFileReader reader) throws Exception {
+
+        // Chunks delivered before a failure are still in the list, so they can be released
+        var buffers = new ArrayList<ArrowBuf>();
+        var result = Flows.fold(reader, (list, buf) -> { list.add(buf); return list; }, buffers);
+
+        try {
+            waitFor(TEST_TIMEOUT, result);
+            return Bytes.copyFromBuffer(getResultOf(result));
+        }
+        finally {
+            buffers.forEach(ArrowBuf::close);
+        }
+    }
+
+    private static class TestReader extends CommonFileReader {
+
+        private final IDataContext dataContext;
+        private final byte[] content;
+        private final int failures;
+
+        final List<Long> startPositions = new ArrayList<>();
+
+        TestReader(IDataContext dataContext, StorageErrors errors, byte[] content, int failures) {
+
+            super(dataContext, errors, "TEST_STORAGE", "test.dat", RESPONSE_SIZE, 2, 4);
+
+            this.dataContext = dataContext;
+            this.content = content;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void clientStart() {
+            sendFrom(0);
+        }
+
+        @Override
+        protected void clientRequest(long n) {
+            // Responses are sent straight away, the reader buffers them
+        }
+
+        @Override
+        protected void clientCancel() {
+        }
+
+        @Override
+        protected boolean supportsResume() {
+            return true;
+        }
+
+        @Override
+        protected void clientResume(long position) {
+            sendFrom(position);
+        }
+
+        private void sendFrom(long position) {
+
+            var attempt = startPositions.size();
+            startPositions.add(position);
+
+            // Failing requests send three responses then an error
+            var failAfter = attempt < failures ? 3 : Integer.MAX_VALUE;
+
+            dataContext.eventLoopExecutor().submit(() -> {
+
+                var nResponses = 0;
+
+                for (var pos = (int) position; pos < content.length; pos += RESPONSE_SIZE) {
+
+                    if (nResponses++ == failAfter) {
+                        onError(new IOException("Connection reset"));
+                        return;
+                    }
+
+                    var end = Math.min(pos + RESPONSE_SIZE, content.length);
+                    onChunk(ByteBuffer.wrap(Arrays.copyOfRange(content, pos, end)));
+                }
+
+                onComplete();
+            });
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.data.DataContext;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+
+public class EventLoopAffinityTest {
+
+    @Test
+    void clientPerEventLoop() {
+
+        var eventLoopGroup = new DefaultEventLoopGroup(4);
+
+        try (var allocator = new RootAllocator()) {
+
+            var affinity = new EventLoopAffinity<EventLoop>(eventLoopGroup, el -> el);
+
+            Assertions.assertEquals(4, affinity.allClients().size());
+            Assertions.assertEquals(4, new HashSet<>(affinity.allClients()).size());
+
+            // Each context gets the client for its own event loop, every time
+
+            for (var i = 0; i < 8; i++) {
+
+                var eventLoop = eventLoopGroup.next();
+                var ctx = new DataContext(eventLoop, allocator);
+
+                Assertions.assertSame(eventLoop, affinity.client(ctx));
+                Assertions.assertSame(eventLoop, affinity.client(ctx));
+            }
+        }
+        finally {
+            eventLoopGroup.shutdownGracefully();
+        }
+    }
+
+    @Test
+    void externalContextsShareClients() {
+
+        var eventLoopGroup = new DefaultEventLoopGroup(2);
+        var externalExecutor = new DefaultEventExecutor();
+
+        try (var allocator = new RootAllocator()) {
+
+            var affinity = new EventLoopAffinity<EventLoop>(eventLoopGroup, el -> el);
+            var ctx = new DataContext(externalExecutor, allocator);
+
+            var clients = new HashSet<EventLoop>();
+
+            for (var i = 0; i < 4; i++)
+                clients.add(affinity.client(ctx));
+
+            // Contexts outside the group are spread across all the available clients
+            Assertions.assertEquals(new HashSet<>(affinity.allClients()), clients);
+        }
+        finally {
+            externalExecutor.shutdownGracefully();
+            eventLoopGroup.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EStorageRequest;
+import org.finos.tracdap.common.storage.local.LocalStorageErrors;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+
+
+public class ParallelRangeReaderTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private static final int RANGE_SIZE = 1024;
+    private static final int N_RANGES = 10;
+
+    private RootAllocator allocator;
+    private DefaultEventExecutor eventExecutor;
+    private ScheduledExecutorService delayExecutor;
+    private DataContext dataContext;
+    private StorageErrors errors;
+    private byte[] content;
+
+    @BeforeEach
+    void setup() {
+
+        allocator = new RootAllocator();
+        eventExecutor = new DefaultEventExecutor(new DefaultThreadFactory("t-events"));
+        delayExecutor = Executors.newScheduledThreadPool(4);
+        dataContext = new DataContext(eventExecutor, allocator);
+        errors = new LocalStorageErrors("TEST_STORAGE");
+
+        content = new byte[RANGE_SIZE * N_RANGES - 17];
+        new Random().nextBytes(content);
+    }
+
+    @AfterEach
+    void teardown() {
+
+        delayExecutor.shutdownNow();
+        eventExecutor.shutdownGracefully();
+        allocator.close();
+    }
+
+    @Test
+    void rangesOutOfOrder() throws Exception {
+
+        var random = new Random();
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+
+        // Ranges complete after random delays, so they finish out of order
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) -> {
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+            var result = new CompletableFuture<ArrowBuf>();
+            delayExecutor.schedule(() -> {
+                inFlight.decrementAndGet();
+                result.complete(readRange(offset, size));
+            }, random.nextInt(20), TimeUnit.MILLISECONDS);
+
+            return result;
+        };
+
+        var reader = rangeReader(4, 0, null, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    void transientErrorRetried() throws Exception {
+
+        var attempts = new AtomicInteger();
+
+        // The third range fails on the first attempt
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) -> {
+
+            if (offset == 2 * RANGE_SIZE && attempts.getAndIncrement() == 0)
+                return CompletableFuture.failedFuture(new IOException("Connection reset"));
+
+            return CompletableFuture.completedFuture(readRange(offset, size));
+        };
+
+        var reader = rangeReader(4, 3, null, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void permanentErrorNotRetried() {
+
+        var attempts = new AtomicInteger();
+
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new NoSuchFileException("test.dat"));
+        };
+
+        var reader = rangeReader(1, 3, null, rangeRead);
+
+        Assertions.assertThrows(EStorageRequest.class, () -> readAll(reader));
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void slowRangeHedged() throws Exception {
+
+        // Prime the tracker with fast reads, so the hedge delay is short
+        var tracker = new ReadLatencyTracker(50);
+        for (var i = 0; i < 20; i++)
+            tracker.recordLatency(Duration.ofMillis(1).toNanos());
+
+        var attempts = new AtomicInteger();
+
+        // The first request for the first range never completes, only the hedged request will return
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) -> {
+
+            if (offset == 0 && attempts.getAndIncrement() == 0)
+                return new CompletableFuture<>();
+
+            return CompletableFuture.completedFuture(readRange(offset, size));
+        };
+
+        var reader = rangeReader(2, 0, tracker, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void retriedRangeHedged() throws Exception {
+
+        var tracker = new ReadLatencyTracker(50);
+        for (var i = 0; i < 20; i++)
+            tracker.recordLatency(Duration.ofMillis(1).toNanos());
+
+        var attempts = new AtomicInteger();
+
+        // The first attempt for the first range fails, the retry hangs, only the hedged retry will return
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) -> {
+
+            if (offset == 0) {
+                var attempt = attempts.getAndIncrement();
+                if (attempt == 0)
+                    return CompletableFuture.failedFuture(new IOException("Connection reset"));
+                if (attempt == 1)
+                    return new CompletableFuture<>();
+            }
+
+            return CompletableFuture.completedFuture(readRange(offset, size));
+        };
+
+        var reader = rangeReader(2, 3, tracker, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void retryBudgetExhausted() {
+
+        var attempts = new AtomicInteger();
+
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("Connection reset"));
+        };
+
+        // Budget allows a single retry, even though the reader would allow more
+        var budget = new RetryBudget(0.0, 1.0);
+        var reader = rangeReader(1, 3, null, budget, rangeRead);
+
+        Assertions.assertThrows(Exception.class, () -> readAll(reader));
+        Assertions.assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void multipleRangesInOrder() throws Exception {
+
+        var random = new Random();
+
+        // Read from an offset part way into the second range, to a limit part way into the last but one range
+        var offset = RANGE_SIZE + 100L;
+        var limit = RANGE_SIZE * (N_RANGES - 3) + 50L;
+
+        ParallelRangeReader.RangeRead rangeRead = (rangeOffset, size) -> {
+
+            var result = new CompletableFuture<ArrowBuf>();
+            delayExecutor.schedule(
+                    () -> result.complete(readRange(rangeOffset, size)),
+                    random.nextInt(20), TimeUnit.MILLISECONDS);
+
+            return result;
+        };
+
+        var reader = new ParallelRangeReader(
+                dataContext, errors, "TEST_STORAGE", "test.dat",
+                offset, limit, () -> CompletableFuture.completedFuture((long) content.length), null,
+                RANGE_SIZE, 4, 0, null, null, null, rangeRead);
+
+        var expected = Arrays.copyOfRange(content, (int) offset, (int) (offset + limit));
+
+        Assertions.assertArrayEquals(expected, readAll(reader));
+    }
+
+    @Test
+    void sizeFromFirstRange() throws Exception {
+
+        var sizeLookups = new AtomicInteger();
+
+        // The first range reports the object size, so no separate size lookup is needed
+        ParallelRangeReader.FirstRangeRead firstRangeRead = (offset, size, objectSize) -> {
+            objectSize.accept(content.length);
+            return CompletableFuture.completedFuture(readRange(offset, size));
+        };
+
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) ->
+                CompletableFuture.completedFuture(readRange(offset, size));
+
+        var reader = new ParallelRangeReader(
+                dataContext, errors, "TEST_STORAGE", "test.dat",
+                0, 0, () -> { sizeLookups.incrementAndGet(); return CompletableFuture.completedFuture((long) content.length); }, null,
+                RANGE_SIZE, 4, 0, null, null, firstRangeRead, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(0, sizeLookups.get());
+    }
+
+    @Test
+    void sizeNotReported() throws Exception {
+
+        var sizeLookups = new AtomicInteger();
+
+        // If the backend cannot report the size, nothing is read and the size is looked up instead
+        ParallelRangeReader.FirstRangeRead firstRangeRead = (offset, size, objectSize) -> null;
+
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) ->
+                CompletableFuture.completedFuture(readRange(offset, size));
+
+        var reader = new ParallelRangeReader(
+                dataContext, errors, "TEST_STORAGE", "test.dat",
+                0, 0, () -> { sizeLookups.incrementAndGet(); return CompletableFuture.completedFuture((long) content.length); }, null,
+                RANGE_SIZE, 4, 0, null, null, firstRangeRead, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(1, sizeLookups.get());
+    }
+
+    @Test
+    void sizeFromFirstRangeNotSatisfiable() throws Exception {
+
+        var sizeLookups = new AtomicInteger();
+
+        // Backends reject a range on an empty object, the size is looked up and the read continues as normal
+        var rangeErrors = new StorageErrors("TEST_STORAGE") {
+            @Override
+            protected ExplicitError checkKnownExceptions(Throwable e) {
+                return e instanceof EOFException ? ExplicitError.OBJECT_SIZE_TOO_SMALL : null;
+            }
+        };
+
+        ParallelRangeReader.FirstRangeRead firstRangeRead = (offset, size, objectSize) ->
+                CompletableFuture.failedFuture(new EOFException("Range not satisfiable"));
+
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) ->
+                CompletableFuture.completedFuture(readRange(offset, size));
+
+        var reader = new ParallelRangeReader(
+                dataContext, rangeErrors, "TEST_STORAGE", "test.dat",
+                0, 0, () -> { sizeLookups.incrementAndGet(); return CompletableFuture.completedFuture((long) content.length); }, null,
+                RANGE_SIZE, 4, 0, null, null, firstRangeRead, rangeRead);
+
+        Assertions.assertArrayEquals(content, readAll(reader));
+        Assertions.assertEquals(1, sizeLookups.get());
+    }
+
+    @Test
+    void sizeFromFirstRangeError() {
+
+        var sizeLookups = new AtomicInteger();
+
+        // Any other error in the first range fails the read, without falling back to a size lookup
+        ParallelRangeReader.FirstRangeRead firstRangeRead = (offset, size, objectSize) ->
+                CompletableFuture.failedFuture(new NoSuchFileException("test.dat"));
+
+        ParallelRangeReader.RangeRead rangeRead = (offset, size) ->
+                CompletableFuture.completedFuture(readRange(offset, size));
+
+        var reader = new ParallelRangeReader(
+                dataContext, errors, "TEST_STORAGE", "test.dat",
+                0, 0, () -> { sizeLookups.incrementAndGet(); return CompletableFuture.completedFuture((long) content.length); }, null,
+                RANGE_SIZE, 4, 0, null, null, firstRangeRead, rangeRead);
+
+        Assertions.assertThrows(EStorageRequest.class, () -> readAll(reader));
+        Assertions.assertEquals(0, sizeLookups.get());
+    }
+
+    private ParallelRangeReader rangeReader(
+            int concurrency, int maxRetries, ReadLatencyTracker tracker,
+            ParallelRangeReader.RangeRead rangeRead) {
+
+        return rangeReader(concurrency, maxRetries, tracker, null, rangeRead);
+    }
+
+    private ParallelRangeReader rangeReader(
+            int concurrency, int maxRetries, ReadLatencyTracker tracker, RetryBudget budget,
+            ParallelRangeReader.RangeRead rangeRead) {
+
+        return new ParallelRangeReader(
+                dataContext, errors, "TEST_STORAGE", "test.dat",
+                0, 0, () -> CompletableFuture.completedFuture((long) content.length), null,
+                RANGE_SIZE, concurrency, maxRetries, tracker, budget, null, rangeRead);
+    }
+
+    private ArrowBuf readRange(long offset, int size) {
+
+        var range = Arrays.copyOfRange(content, (int) offset, (int) offset + size);
+        return Bytes.copyToBuffer(range, allocator);
+    }
+
+    private byte[] readAll(ParallelRangeReader reader) throws Exception {
+
+        var result = Flows.fold(reader, (list, buf) -> { list.add(buf); return list; }, new ArrayList<ArrowBuf>());
+
+        waitFor(TEST_TIMEOUT, result);
+        List<ArrowBuf> buffers = getResultOf(result);
+
+        try {
+            return Bytes.copyFromBuffer(buffers);
+        }
+        finally {
+            buffers.forEach(ArrowBuf::close);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage;
+
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.exception.EStorageRequest;
+import org.finos.tracdap.common.storage.memory.MemoryFileStorage;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Properties;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+
+
+public class StorageMetricsTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void latencyHistogram() {
+
+        var metrics = new StorageMetrics("TEST_STORAGE", "TestStorage");
+
+        for (var i = 0; i < 98; i++)
+            metrics.recordOperation("STAT", Duration.ofMillis(3).toNanos(), 0, false);
+
+        metrics.recordOperation("STAT", Duration.ofMillis(150).toNanos(), 0, false);
+        metrics.recordOperation("STAT", Duration.ofMinutes(1).toNanos(), 0, true);
+
+        var stat = metrics.operation("STAT");
+
+        Assertions.assertEquals(100, stat.count());
+        Assertions.assertEquals(1, stat.errors());
+        Assertions.assertEquals(5, stat.latencyPercentileMillis(50));
+        Assertions.assertEquals(200, stat.latencyPercentileMillis(99));
+        Assertions.assertEquals(-1, stat.latencyPercentileMillis(100));
+
+        var counts = stat.latencyCounts();
+        Assertions.assertEquals(StorageMetrics.latencyBucketsMillis().length + 1, counts.length);
+        Assertions.assertEquals(1, counts[counts.length - 1]);
+    }
+
+    @Test
+    void operationsAreRecorded() throws Exception {
+
+        var storageProps = new Properties();
+        storageProps.put(IStorageManager.PROP_STORAGE_KEY, "TEST_STORAGE");
+
+        try (var allocator = new RootAllocator();
+             var storage = new MemoryFileStorage("TEST_STORAGE", storageProps)) {
+
+            var executor = new DefaultEventExecutor(new DefaultThreadFactory("t-events"));
+            var dataContext = new DataContext(executor, allocator);
+
+            var mkdir = storage.mkdir("metrics_test/dir", true, dataContext);
+            waitFor(TEST_TIMEOUT, mkdir);
+
+            var stat = storage.stat("metrics_test/missing.txt", dataContext);
+            waitFor(TEST_TIMEOUT, stat);
+            Assertions.assertThrows(EStorageRequest.class, () -> getResultOf(stat));
+
+            var metrics = storage.metrics();
+
+            Assertions.assertEquals("TEST_STORAGE", metrics.storageKey());
+            Assertions.assertEquals("MemoryFileStorage", metrics.backend());
+
+            Assertions.assertEquals(1, metrics.operation(CommonFileStorage.MKDIR_OPERATION).count());
+            Assertions.assertEquals(0, metrics.operation(CommonFileStorage.MKDIR_OPERATION).errors());
+            Assertions.assertEquals(1, metrics.operation(CommonFileStorage.STAT_OPERATION).count());
+            Assertions.assertEquals(1, metrics.operation(CommonFileStorage.STAT_OPERATION).errors());
+
+            // Each operation makes one or more backend requests
+            Assertions.assertTrue(metrics.operation(StorageMetrics.BACKEND_REQUEST).count() >= 2);
+
+            executor.shutdownGracefully();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.junit.jupiter.api.condition.OS;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.*;
@@ -40,6 +41,7 @@ import java.util.function.BiFunction;
 import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.*;
 import static org.finos.tracdap.test.storage.StorageTestHelpers.makeFile;
 import static org.finos.tracdap.test.storage.StorageTestHelpers.makeSmallFile;
+import static org.finos.tracdap.test.storage.StorageTestHelpers.readFile;
 
 
 public abstract class StorageOperationsTestSuite {
@@ -711,6 +713,76 @@ public abstract class StorageOperationsTestSuite {
         Assertions.assertEquals("testLs_file", stat.storagePath);
     }
 
+    @Test
+    void testLs_paged() throws Exception {
+
+        // Listing in pages should give every entry exactly once
+
+        var prepare = storage.mkdir("testLs_paged", false, dataContext)
+                .thenCompose(x -> makeSmallFile("testLs_paged/file_1.txt", storage, dataContext))
+                .thenCompose(x -> makeSmallFile("testLs_paged/file_2.txt", storage, dataContext))
+                .thenCompose(x -> makeSmallFile("testLs_paged/file_3.txt", storage, dataContext))
+                .thenCompose(x -> makeSmallFile("testLs_paged/file_4.txt", storage, dataContext))
+                .thenCompose(x -> makeSmallFile("testLs_paged/file_5.txt", storage, dataContext));
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var entries = new ArrayList<FileStat>();
+        String pageToken = null;
+        int pageCount = 0;
+
+        do {
+
+            var ls = storage.ls("testLs_paged", false, pageToken, 2, dataContext);
+            waitFor(TEST_TIMEOUT, ls);
+
+            var page = getResultOf(ls);
+
+            Assertions.assertTrue(page.entries.size() <= 2);
+
+            entries.addAll(page.entries);
+            pageToken = page.nextPageToken;
+            pageCount++;
+
+        } while (pageToken != null && pageCount < 10);
+
+        Assertions.assertNull(pageToken);
+        Assertions.assertEquals(5, entries.size());
+
+        for (var i = 1; i <= 5; i++) {
+            var fileName = String.format("file_%d.txt", i);
+            Assertions.assertEquals(1, entries.stream().filter(e -> e.fileName.equals(fileName)).count());
+        }
+    }
+
+    @Test
+    void testLs_recursive() throws Exception {
+
+        // Recursive listing includes the contents of sub dirs
+
+        var prepare = storage.mkdir("testLs_recursive/child_1", true, dataContext)
+                .thenCompose(x -> makeSmallFile("testLs_recursive/child_1/file_1.txt", storage, dataContext))
+                .thenCompose(x -> makeSmallFile("testLs_recursive/file_2.txt", storage, dataContext));
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var ls = storage.ls("testLs_recursive", true, null, 1000, dataContext);
+        waitFor(TEST_TIMEOUT, ls);
+
+        var listing = getResultOf(ls);
+
+        Assertions.assertNull(listing.nextPageToken);
+
+        var nestedFile = listing.entries.stream().filter(e -> e.fileName.equals("file_1.txt")).findFirst();
+        var topFile = listing.entries.stream().filter(e -> e.fileName.equals("file_2.txt")).findFirst();
+
+        Assertions.assertTrue(nestedFile.isPresent());
+        Assertions.assertEquals("testLs_recursive/child_1/file_1.txt", nestedFile.get().storagePath);
+        Assertions.assertEquals(FileType.FILE, nestedFile.get().fileType);
+
+        Assertions.assertTrue(topFile.isPresent());
+        Assertions.assertEquals("testLs_recursive/file_2.txt", topFile.get().storagePath);
+        Assertions.assertEquals(FileType.FILE, topFile.get().fileType);
+    }
+
     @Test
     void testLs_missing() {
 
@@ -1182,6 +1254,136 @@ public abstract class StorageOperationsTestSuite {
     }
 
 
+    // -----------------------------------------------------------------------------------------------------------------
+    // COPY
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    void testCopy_ok() throws Exception {
+
+        var bytes = new byte[10 * 1024];
+        new Random().nextBytes(bytes);
+
+        var content = Bytes.copyToBuffer(bytes, dataContext.arrowAllocator());
+        var prepare = makeFile("testCopy_ok.dat", content, storage, dataContext);
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var copy = storage.copy("testCopy_ok.dat", "testCopy_ok_target.dat", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+
+        Assertions.assertEquals(bytes.length, getResultOf(copy));
+
+        var read = readFile("testCopy_ok_target.dat", storage, dataContext);
+        waitFor(TEST_TIMEOUT, read);
+
+        try (var copied = getResultOf(read)) {
+
+            var copiedBytes = new byte[bytes.length];
+            copied.readBytes(copiedBytes);
+
+            Assertions.assertArrayEquals(bytes, copiedBytes);
+        }
+
+        // Source should be unchanged
+
+        var sourceSize = storage.size("testCopy_ok.dat", dataContext);
+        waitFor(TEST_TIMEOUT, sourceSize);
+        Assertions.assertEquals(bytes.length, getResultOf(sourceSize));
+    }
+
+    @Test
+    void testCopy_newDir() throws Exception {
+
+        // Parent directories for the target should be created, same as for writes
+
+        var prepare = makeSmallFile("testCopy_newDir.txt", storage, dataContext);
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var copy = storage.copy("testCopy_newDir.txt", "testCopy_newDir/sub_dir/target.txt", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+        Assertions.assertDoesNotThrow(() -> getResultOf(copy));
+
+        var exists = storage.exists("testCopy_newDir/sub_dir/target.txt", dataContext);
+        waitFor(TEST_TIMEOUT, exists);
+        Assertions.assertTrue(getResultOf(exists));
+    }
+
+    @Test
+    void testCopy_overwrite() throws Exception {
+
+        var bytes = new byte[4096];
+        new Random().nextBytes(bytes);
+
+        var content = Bytes.copyToBuffer(bytes, dataContext.arrowAllocator());
+        var prepare1 = makeFile("testCopy_overwrite.dat", content, storage, dataContext);
+        var prepare2 = makeSmallFile("testCopy_overwrite_target.dat", storage, dataContext);
+        waitFor(TEST_TIMEOUT, prepare1, prepare2);
+
+        var copy = storage.copy("testCopy_overwrite.dat", "testCopy_overwrite_target.dat", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+        Assertions.assertDoesNotThrow(() -> getResultOf(copy));
+
+        var targetSize = storage.size("testCopy_overwrite_target.dat", dataContext);
+        waitFor(TEST_TIMEOUT, targetSize);
+        Assertions.assertEquals(bytes.length, getResultOf(targetSize));
+    }
+
+    @Test
+    void testCopy_missing() {
+
+        var copy = storage.copy("testCopy_missing.dat", "testCopy_missing_target.dat", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+
+        Assertions.assertThrows(EStorageRequest.class, () -> getResultOf(copy));
+    }
+
+    @Test
+    void testCopy_onDir() throws Exception {
+
+        var prepare = storage.mkdir("testCopy_onDir", false, dataContext);
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var copy = storage.copy("testCopy_onDir", "testCopy_onDir_target", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+
+        Assertions.assertThrows(EStorageRequest.class, () -> getResultOf(copy));
+    }
+
+    @Test
+    void testCopy_toDir() throws Exception {
+
+        // Copying onto an existing directory is not allowed, same as for writes
+
+        var prepare = makeSmallFile("testCopy_toDir.txt", storage, dataContext)
+                .thenCompose(x -> storage.mkdir("testCopy_toDir_target", false, dataContext));
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var copy = storage.copy("testCopy_toDir.txt", "testCopy_toDir_target", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+
+        Assertions.assertThrows(EStorageRequest.class, () -> getResultOf(copy));
+    }
+
+    @Test
+    void testCopy_sameTarget() throws Exception {
+
+        var prepare = makeSmallFile("testCopy_sameTarget.txt", storage, dataContext);
+        waitFor(TEST_TIMEOUT, prepare);
+
+        var copy = storage.copy("testCopy_sameTarget.txt", "testCopy_sameTarget.txt", dataContext);
+        waitFor(TEST_TIMEOUT, copy);
+
+        Assertions.assertThrows(EValidationGap.class, () -> getResultOf(copy));
+    }
+
+    @Test
+    void testCopy_badPaths() {
+
+        testBadPaths((path, ctx) -> storage.copy(path, "testCopy_badPaths.txt", dataContext));
+        testBadPaths((path, ctx) -> storage.copy("testCopy_badPaths.txt", path, dataContext));
+    }
+
+
     // -----------------------------------------------------------------------------------------------------------------
     // READ CHUNK
     // -----------------------------------------------------------------------------------------------------------------
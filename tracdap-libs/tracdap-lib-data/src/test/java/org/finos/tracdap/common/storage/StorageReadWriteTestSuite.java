@@ -32,6 +32,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -171,6 +172,58 @@ public abstract class StorageReadWriteTestSuite {
                 storage, dataContext);
     }
 
+    @Test
+    void rangeRead_middle() throws Exception {
+
+        rangeReadTest("rangeRead_middle.dat", 3 * 1024 * 1024 + 17, 1024 * 1024 + 5, 1500000);
+    }
+
+    @Test
+    void rangeRead_toEnd() throws Exception {
+
+        // Limit = 0 reads from the offset to the end of the object
+        rangeReadTest("rangeRead_toEnd.dat", 100000, 99000, 0);
+    }
+
+    @Test
+    void rangeRead_pastEnd() throws Exception {
+
+        // The stream stops at the end of the object if the range is longer
+        rangeReadTest("rangeRead_pastEnd.dat", 100000, 90000, 50000);
+    }
+
+    void rangeReadTest(String storagePath, int size, long offset, long limit) throws Exception {
+
+        var bytes = new byte[size];
+        new Random().nextBytes(bytes);
+
+        var writeSignal = new CompletableFuture<Long>();
+        var writer = storage.writer(storagePath, writeSignal, dataContext);
+        Flows.publish(List.of(Bytes.copyToBuffer(bytes, dataContext.arrowAllocator()))).subscribe(writer);
+
+        waitFor(TEST_TIMEOUT, writeSignal);
+        Assertions.assertEquals(size, getResultOf(writeSignal));
+
+        var reader = storage.reader(storagePath, offset, limit, dataContext);
+        var readResult = Flows.fold(
+                reader, (list, buf) -> { list.add(buf); return list; },
+                new ArrayList<ArrowBuf>());
+
+        waitFor(TEST_TIMEOUT, readResult);
+        var rangeBuffers = getResultOf(readResult);
+
+        try {
+
+            var end = limit > 0 ? Math.min(offset + limit, size) : size;
+            var expected = Arrays.copyOfRange(bytes, (int) offset, (int) end);
+
+            Assertions.assertArrayEquals(expected, Bytes.copyFromBuffer(rangeBuffers));
+        }
+        finally {
+            rangeBuffers.forEach(ArrowBuf::close);
+        }
+    }
+
     static void roundTripTest(
             String storagePath, List<byte[]> originalBytes,
             IFileStorage storage, IDataContext dataContext) throws Exception {
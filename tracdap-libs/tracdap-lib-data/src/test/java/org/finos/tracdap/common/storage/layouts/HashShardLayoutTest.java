@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.layouts;
+
+import org.finos.tracdap.common.storage.LayoutItem;
+import org.finos.tracdap.metadata.FileDefinition;
+import org.finos.tracdap.metadata.ObjectType;
+import org.finos.tracdap.metadata.TagHeader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+
+public class HashShardLayoutTest {
+
+    @Test
+    void shardIsStableForObject() {
+
+        var layout = new HashShardLayout();
+        var objectId = UUID.randomUUID().toString();
+        var shard = HashShardLayout.shardForObject(objectId);
+
+        Assertions.assertTrue(shard.matches("[0-9a-f]{2}"));
+
+        // All versions of an object go in the same shard
+
+        var v1 = layout.newFilePath(fileItem(objectId, 1));
+        var v2 = layout.updateFilePath(fileItem(objectId, 2), fileItem(objectId, 1));
+
+        Assertions.assertTrue(v1.startsWith(shard + "/file/" + objectId + "/version-1"));
+        Assertions.assertTrue(v2.startsWith(shard + "/file/" + objectId + "/version-2"));
+    }
+
+    @Test
+    void shardForKnownObject() {
+
+        // Pinned, the Python runtime must put the same object in the same shard
+        var shard = HashShardLayout.shardForObject("5d2a9b2c-9d5f-4d3e-8a35-0f1e2d3c4b5a");
+
+        Assertions.assertEquals("04", shard);
+    }
+
+    @Test
+    void shardsAreSpread() {
+
+        var shards = new HashSet<String>();
+
+        for (var i = 0; i < 1000; i++)
+            shards.add(HashShardLayout.shardForObject(UUID.randomUUID().toString()));
+
+        // 1000 random IDs should land in most of the 256 shards
+        Assertions.assertTrue(shards.size() > 200);
+    }
+
+    private LayoutItem fileItem(String objectId, int version) {
+
+        var header = TagHeader.newBuilder()
+                .setObjectType(ObjectType.FILE)
+                .setObjectId(objectId)
+                .setObjectVersion(version)
+                .setTagVersion(1)
+                .build();
+
+        var file = FileDefinition.newBuilder()
+                .setName("sample.txt")
+                .setExtension("txt")
+                .setMimeType("text/plain")
+                .build();
+
+        return LayoutItem.forFile(header, file);
+    }
+}
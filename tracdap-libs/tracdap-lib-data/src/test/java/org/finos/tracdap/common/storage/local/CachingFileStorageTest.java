@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.local;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.storage.CachingFileStorage;
+import org.finos.tracdap.common.storage.IStorageManager;
+import org.finos.tracdap.config.PluginConfig;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.finos.tracdap.test.storage.StorageTestHelpers.makeFile;
+
+
+public class CachingFileStorageTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final int FILE_SIZE = 1000;
+    private static final long CACHE_SIZE_LIMIT = 3 * FILE_SIZE;
+
+    @TempDir
+    Path storageDir;
+
+    @TempDir
+    Path cacheDir;
+
+    RootAllocator allocator;
+    EventLoopGroup eventLoopGroup;
+    DefaultEventExecutor elExecutor;
+
+    CachingFileStorage storage;
+    DataContext dataContext;
+
+    @BeforeEach
+    void setupStorage() {
+
+        var storageProps = new Properties();
+        storageProps.put(IStorageManager.PROP_STORAGE_KEY, "TEST_STORAGE");
+        storageProps.put(LocalFileStorage.CONFIG_ROOT_PATH, storageDir.toString());
+        var localInstance = new LocalFileStorage("TEST_STORAGE", storageProps);
+
+        var cacheConfig = PluginConfig.newBuilder()
+                .setProtocol("LOCAL")
+                .putProperties(IStorageManager.PROP_STORAGE_KEY, "TEST_STORAGE")
+                .putProperties(CachingFileStorage.CACHE_DIR_KEY, cacheDir.toString())
+                .putProperties(CachingFileStorage.CACHE_SIZE_LIMIT_KEY, Long.toString(CACHE_SIZE_LIMIT))
+                .build();
+
+        eventLoopGroup = new DefaultEventLoopGroup(1);
+
+        storage = new CachingFileStorage(cacheConfig, localInstance);
+        storage.start(eventLoopGroup);
+
+        allocator = new RootAllocator();
+        elExecutor = new DefaultEventExecutor(new DefaultThreadFactory("t-events"));
+        dataContext = new DataContext(elExecutor, allocator);
+    }
+
+    @AfterEach
+    void tearDownStorage() {
+
+        storage.close();
+        elExecutor.shutdownGracefully();
+        eventLoopGroup.shutdownGracefully();
+        allocator.close();
+    }
+
+    @Test
+    void cacheHit() throws Exception {
+
+        var content = randomBytes();
+        writeFile("hit_test.dat", content);
+
+        // First read fills the cache
+        Assertions.assertArrayEquals(content, readFile("hit_test.dat"));
+        Assertions.assertEquals(1, cacheFiles().size());
+
+        // Remove the object behind the cache, the second read must be served from the cache
+        Files.delete(storageDir.resolve("hit_test.dat"));
+
+        Assertions.assertArrayEquals(content, readFile("hit_test.dat"));
+    }
+
+    @Test
+    void evictionUnderSizeLimit() throws Exception {
+
+        var content = randomBytes();
+
+        for (var i = 0; i < 4; i++) {
+            writeFile("evict_test_" + i + ".dat", content);
+            readFile("evict_test_" + i + ".dat");
+        }
+
+        var cacheFiles = cacheFiles();
+        var cacheBytes = 0L;
+
+        for (var cacheFile : cacheFiles)
+            cacheBytes += Files.size(cacheFile);
+
+        Assertions.assertEquals(3, cacheFiles.size());
+        Assertions.assertTrue(cacheBytes <= CACHE_SIZE_LIMIT);
+
+        // The least recently used entry is evicted, so it can no longer be read without the original
+        Files.delete(storageDir.resolve("evict_test_0.dat"));
+        Files.delete(storageDir.resolve("evict_test_3.dat"));
+
+        Assertions.assertThrows(Exception.class, () -> readFile("evict_test_0.dat"));
+        Assertions.assertArrayEquals(content, readFile("evict_test_3.dat"));
+    }
+
+    @Test
+    void invalidateOnWrite() throws Exception {
+
+        var content1 = randomBytes();
+        var content2 = randomBytes();
+
+        writeFile("write_test.dat", content1);
+        Assertions.assertArrayEquals(content1, readFile("write_test.dat"));
+
+        writeFile("write_test.dat", content2);
+        Assertions.assertArrayEquals(content2, readFile("write_test.dat"));
+    }
+
+    @Test
+    void invalidateOnDelete() throws Exception {
+
+        var content = randomBytes();
+
+        writeFile("delete_test.dat", content);
+        Assertions.assertArrayEquals(content, readFile("delete_test.dat"));
+        Assertions.assertEquals(1, cacheFiles().size());
+
+        var rm = storage.rm("delete_test.dat", dataContext);
+        waitFor(TEST_TIMEOUT, rm);
+
+        var exists = storage.exists("delete_test.dat", dataContext);
+        waitFor(TEST_TIMEOUT, exists);
+
+        Assertions.assertFalse(getResultOf(exists));
+        Assertions.assertEquals(0, cacheFiles().size());
+    }
+
+    private byte[] randomBytes() {
+
+        var bytes = new byte[FILE_SIZE];
+        new Random().nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private void writeFile(String storagePath, byte[] content) throws Exception {
+
+        var buffer = allocator.buffer(content.length);
+        buffer.writeBytes(content);
+
+        var write = makeFile(storagePath, buffer, storage, dataContext);
+        waitFor(TEST_TIMEOUT, write);
+
+        Assertions.assertEquals(content.length, getResultOf(write));
+    }
+
+    private byte[] readFile(String storagePath) throws Exception {
+
+        var reader = storage.reader(storagePath, dataContext);
+
+        CompletionStage<ByteArrayOutputStream> read = Flows.fold(reader, (bytes, chunk) -> {
+            var chunkBytes = new byte[(int) chunk.readableBytes()];
+            chunk.getBytes(chunk.readerIndex(), chunkBytes);
+            chunk.close();
+            bytes.writeBytes(chunkBytes);
+            return bytes;
+        }, new ByteArrayOutputStream());
+
+        waitFor(TEST_TIMEOUT, read);
+
+        return getResultOf(read).toByteArray();
+    }
+
+    private List<Path> cacheFiles() throws IOException {
+
+        try (var files = Files.list(cacheDir)) {
+            return files
+                    .filter(path -> path.toString().endsWith(".cache"))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.common.storage.memory;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EStorage;
+import org.finos.tracdap.common.storage.IStorageManager;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.getResultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+
+public class MemoryStorageStopTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor elExecutor;
+    private DataContext dataContext;
+
+    private MemoryFileStorage storage;
+
+    @BeforeEach
+    void setup() {
+
+        var storageProps = new Properties();
+        storageProps.put(IStorageManager.PROP_STORAGE_KEY, "TEST_STORAGE");
+        storageProps.put(MemoryFileStorage.CONFIG_SIZE_LIMIT, String.valueOf(256 * 1024 * 1024));
+        storage = new MemoryFileStorage("TEST_STORAGE", storageProps);
+
+        allocator = new RootAllocator();
+        elExecutor = new DefaultEventExecutor(new DefaultThreadFactory("t-events"));
+        dataContext = new DataContext(elExecutor, allocator);
+    }
+
+    @AfterEach
+    void tearDown() {
+
+        // Stop is safe to call more than once
+        storage.stop();
+
+        elExecutor.shutdownGracefully();
+        allocator.close();
+    }
+
+    @Test
+    void stopWithStoredContent() throws Exception {
+
+        writeFile("stopWithStoredContent.dat", 10, 1024);
+
+        Assertions.assertDoesNotThrow(storage::stop);
+    }
+
+    @Test
+    void stopWithOpenRead() throws Exception {
+
+        // Enough content that the reader is still holding the file after the first chunk
+        writeFile("stopWithOpenRead.dat", 200, 65536);
+
+        var firstChunk = new CompletableFuture<Void>();
+        var readResult = new CompletableFuture<Void>();
+        var received = new ArrayList<ArrowBuf>();
+
+        var reader = storage.reader("stopWithOpenRead.dat", dataContext);
+
+        reader.subscribe(new Flow.Subscriber<>() {
+
+            @Override public void onSubscribe(Flow.Subscription subscription) { subscription.request(1); }
+            @Override public void onNext(ArrowBuf item) { received.add(item); firstChunk.complete(null); }
+            @Override public void onError(Throwable error) { readResult.completeExceptionally(error); }
+            @Override public void onComplete() { readResult.complete(null); }
+        });
+
+        waitFor(TEST_TIMEOUT, firstChunk);
+
+        // The open read is failed and releases its reference, so the storage memory can be freed
+        Assertions.assertDoesNotThrow(storage::stop);
+
+        waitFor(TEST_TIMEOUT, readResult);
+        Assertions.assertThrows(EStorage.class, () -> getResultOf(readResult));
+
+        elExecutor.submit(() -> received.forEach(ArrowBuf::close)).get();
+    }
+
+    @Test
+    void stopWithOpenWrite() throws Exception {
+
+        var writeSignal = new CompletableFuture<Long>();
+        var writer = storage.writer("stopWithOpenWrite.dat", writeSignal, dataContext);
+
+        var subscription = mock(Flow.Subscription.class);
+        writer.onSubscribe(subscription);
+        verify(subscription, timeout(TEST_TIMEOUT.toMillis())).request(anyLong());
+
+        var bytes = new byte[65536];
+        new Random().nextBytes(bytes);
+        writer.onNext(Bytes.copyToBuffer(bytes, allocator));
+
+        verify(subscription, timeout(TEST_TIMEOUT.toMillis())).request(1);
+
+        // Partial content is discarded and the write fails, nothing is left behind
+        Assertions.assertDoesNotThrow(storage::stop);
+
+        waitFor(TEST_TIMEOUT, writeSignal);
+        Assertions.assertThrows(EStorage.class, () -> getResultOf(writeSignal));
+        verify(subscription, timeout(TEST_TIMEOUT.toMillis())).cancel();
+    }
+
+    @Test
+    void stopRejectsNewOperations() throws Exception {
+
+        writeFile("stopRejectsNewOperations.dat", 1, 1024);
+
+        storage.stop();
+
+        var readResult = Flows.fold(
+                storage.reader("stopRejectsNewOperations.dat", dataContext),
+                (list, buf) -> { list.add(buf); return list; },
+                new ArrayList<ArrowBuf>());
+
+        waitFor(TEST_TIMEOUT, readResult);
+        Assertions.assertThrows(EStorage.class, () -> getResultOf(readResult));
+
+        var writeSignal = new CompletableFuture<Long>();
+        var writer = storage.writer("stopRejectsNewOperations_2.dat", writeSignal, dataContext);
+        Flows.publish(List.of(Bytes.copyToBuffer(new byte[1024], allocator))).subscribe(writer);
+
+        waitFor(TEST_TIMEOUT, writeSignal);
+        Assertions.assertThrows(EStorage.class, () -> getResultOf(writeSignal));
+    }
+
+    private void writeFile(String storagePath, int nChunks, int chunkSize) throws Exception {
+
+        var random = new Random();
+
+        var chunks = IntStream.range(0, nChunks).mapToObj(i -> {
+            var bytes = new byte[chunkSize];
+            random.nextBytes(bytes);
+            return Bytes.copyToBuffer(bytes, allocator);
+        }).collect(Collectors.toList());
+
+        var writeSignal = new CompletableFuture<Long>();
+        var writer = storage.writer(storagePath, writeSignal, dataContext);
+        Flows.publish(chunks).subscribe(writer);
+
+        waitFor(TEST_TIMEOUT, writeSignal);
+        Assertions.assertEquals((long) nChunks * chunkSize, getResultOf(writeSignal));
+    }
+}
@@ -51,6 +51,16 @@ public class DataApiValidator {
     private static final Descriptors.FieldDescriptor DRR_TENANT;
     private static final Descriptors.FieldDescriptor DRR_SELECTOR;
     private static final Descriptors.FieldDescriptor DRR_FORMAT;
+    private static final Descriptors.FieldDescriptor DRR_AGGREGATION;
+
+    private static final Descriptors.Descriptor DATA_AGGREGATION;
+    private static final Descriptors.FieldDescriptor DAG_GROUP_BY;
+    private static final Descriptors.FieldDescriptor DAG_AGGREGATES;
+
+    private static final Descriptors.Descriptor DATA_AGGREGATE;
+    private static final Descriptors.FieldDescriptor DA_FUNCTION;
+    private static final Descriptors.FieldDescriptor DA_FIELD_NAME;
+    private static final Descriptors.FieldDescriptor DA_RESULT_NAME;
 
     private static final Descriptors.Descriptor DATA_DOWNLOAD_REQUEST;
     private static final Descriptors.FieldDescriptor DDR_TENANT;
@@ -92,6 +102,16 @@ public class DataApiValidator {
         DRR_TENANT = ValidatorUtils.field(DATA_READ_REQUEST, DataReadRequest.TENANT_FIELD_NUMBER);
         DRR_SELECTOR = ValidatorUtils.field(DATA_READ_REQUEST, DataReadRequest.SELECTOR_FIELD_NUMBER);
         DRR_FORMAT = ValidatorUtils.field(DATA_READ_REQUEST, DataReadRequest.FORMAT_FIELD_NUMBER);
+        DRR_AGGREGATION = ValidatorUtils.field(DATA_READ_REQUEST, DataReadRequest.AGGREGATION_FIELD_NUMBER);
+
+        DATA_AGGREGATION = DataAggregation.getDescriptor();
+        DAG_GROUP_BY = ValidatorUtils.field(DATA_AGGREGATION, DataAggregation.GROUPBY_FIELD_NUMBER);
+        DAG_AGGREGATES = ValidatorUtils.field(DATA_AGGREGATION, DataAggregation.AGGREGATES_FIELD_NUMBER);
+
+        DATA_AGGREGATE = DataAggregate.getDescriptor();
+        DA_FUNCTION = ValidatorUtils.field(DATA_AGGREGATE, DataAggregate.FUNCTION_FIELD_NUMBER);
+        DA_FIELD_NAME = ValidatorUtils.field(DATA_AGGREGATE, DataAggregate.FIELDNAME_FIELD_NUMBER);
+        DA_RESULT_NAME = ValidatorUtils.field(DATA_AGGREGATE, DataAggregate.RESULTNAME_FIELD_NUMBER);
 
         DATA_DOWNLOAD_REQUEST = DataDownloadRequest.getDescriptor();
         DDR_TENANT = ValidatorUtils.field(DATA_DOWNLOAD_REQUEST, DataDownloadRequest.TENANT_FIELD_NUMBER);
@@ -217,6 +237,51 @@ public class DataApiValidator {
                 .apply(CommonValidators::dataFormat)
                 .pop();
 
+        ctx = ctx.push(DRR_AGGREGATION)
+                .apply(CommonValidators::optional)
+                .apply(DataApiValidator::dataAggregation, DataAggregation.class)
+                .pop();
+
+        return ctx;
+    }
+
+    private static ValidationContext dataAggregation(DataAggregation msg, ValidationContext ctx) {
+
+        ctx = ctx.pushRepeated(DAG_GROUP_BY)
+                .applyRepeated(CommonValidators::identifier, String.class)
+                .apply(CommonValidators::caseInsensitiveDuplicates)
+                .pop();
+
+        ctx = ctx.pushRepeated(DAG_AGGREGATES)
+                .applyRepeated(DataApiValidator::dataAggregate, DataAggregate.class)
+                .pop();
+
+        if (msg.getGroupByCount() == 0 && msg.getAggregatesCount() == 0)
+            return ctx.error("Data aggregation must include at least one group-by field or aggregate");
+
+        return ctx;
+    }
+
+    private static ValidationContext dataAggregate(DataAggregate msg, ValidationContext ctx) {
+
+        ctx = ctx.push(DA_FUNCTION)
+                .apply(CommonValidators::required)
+                .apply(CommonValidators::nonZeroEnum, AggregateFunction.class)
+                .pop();
+
+        // Field name can only be omitted for COUNT, which then counts all rows
+
+        ctx = ctx.push(DA_FIELD_NAME)
+                .applyIfElse(msg.getFunction() != AggregateFunction.COUNT, CommonValidators::required, CommonValidators::optional)
+                .apply(CommonValidators::identifier)
+                .pop();
+
+        ctx = ctx.push(DA_RESULT_NAME)
+                .apply(CommonValidators::optional)
+                .apply(CommonValidators::identifier)
+                .apply(CommonValidators::notTracReserved)
+                .pop();
+
         return ctx;
     }
 
@@ -19,6 +19,7 @@ package org.finos.tracdap.common.validation.api;
 
 import com.google.protobuf.Descriptors;
 import org.finos.tracdap.api.*;
+import org.finos.tracdap.common.config.ConfigDefaults;
 import org.finos.tracdap.common.validation.core.ValidationContext;
 import org.finos.tracdap.common.validation.core.ValidationType;
 import org.finos.tracdap.common.validation.core.Validator;
@@ -34,6 +35,12 @@ public class StorageApiValidator {
     private static final Descriptors.FieldDescriptor SR_STORAGE_KEY;
     private static final Descriptors.FieldDescriptor SR_STORAGE_PATH;
 
+    private static final Descriptors.Descriptor STORAGE_LIST_REQUEST;
+    private static final Descriptors.FieldDescriptor SLR_TENANT;
+    private static final Descriptors.FieldDescriptor SLR_STORAGE_KEY;
+    private static final Descriptors.FieldDescriptor SLR_STORAGE_PATH;
+    private static final Descriptors.FieldDescriptor SLR_PAGE_SIZE;
+
     private static final Descriptors.Descriptor STORAGE_READ_REQUEST;
     private static final Descriptors.FieldDescriptor SRR_TENANT;
     private static final Descriptors.FieldDescriptor SRR_STORAGE_KEY;
@@ -51,6 +58,12 @@ public class StorageApiValidator {
         SR_STORAGE_KEY = ValidatorUtils.field(STORAGE_REQUEST, StorageRequest.STORAGEKEY_FIELD_NUMBER);
         SR_STORAGE_PATH = ValidatorUtils.field(STORAGE_REQUEST, StorageRequest.STORAGEPATH_FIELD_NUMBER);
 
+        STORAGE_LIST_REQUEST = StorageListRequest.getDescriptor();
+        SLR_TENANT = ValidatorUtils.field(STORAGE_LIST_REQUEST, StorageListRequest.TENANT_FIELD_NUMBER);
+        SLR_STORAGE_KEY = ValidatorUtils.field(STORAGE_LIST_REQUEST, StorageListRequest.STORAGEKEY_FIELD_NUMBER);
+        SLR_STORAGE_PATH = ValidatorUtils.field(STORAGE_LIST_REQUEST, StorageListRequest.STORAGEPATH_FIELD_NUMBER);
+        SLR_PAGE_SIZE = ValidatorUtils.field(STORAGE_LIST_REQUEST, StorageListRequest.PAGESIZE_FIELD_NUMBER);
+
         STORAGE_READ_REQUEST = StorageReadRequest.getDescriptor();
         SRR_TENANT = ValidatorUtils.field(STORAGE_READ_REQUEST, StorageReadRequest.TENANT_FIELD_NUMBER);
         SRR_STORAGE_KEY = ValidatorUtils.field(STORAGE_READ_REQUEST, StorageReadRequest.STORAGEKEY_FIELD_NUMBER);
@@ -86,6 +99,33 @@ public class StorageApiValidator {
         return storageRequest(msg, ctx);
     }
 
+    @Validator(method = "listContents")
+    public static ValidationContext listContents(StorageListRequest msg, ValidationContext ctx) {
+
+        ctx = ctx.push(SLR_TENANT)
+                .apply(CommonValidators::required)
+                .apply(CommonValidators::identifier)
+                .pop();
+
+        ctx = ctx.push(SLR_STORAGE_KEY)
+                .apply(CommonValidators::required)
+                .apply(CommonValidators::identifier)
+                .pop();
+
+        ctx = ctx.push(SLR_STORAGE_PATH)
+                .apply(CommonValidators::required)
+                .apply(CommonValidators::relativePath)
+                .pop();
+
+        ctx = ctx.push(SLR_PAGE_SIZE)
+                .apply(CommonValidators::optional)
+                .apply(CommonValidators::positive, Integer.class)
+                .apply(StorageApiValidator::maxPageSize, Integer.class)
+                .pop();
+
+        return ctx;
+    }
+
     @Validator(method = "readFile")
     public static ValidationContext readFile(StorageReadRequest msg, ValidationContext ctx) {
 
@@ -118,6 +158,16 @@ public class StorageApiValidator {
         return ctx;
     }
 
+    private static ValidationContext maxPageSize(int pageSize, ValidationContext ctx) {
+
+        if (pageSize > ConfigDefaults.STORAGE_LS_PAGE_SIZE_MAX) {
+            var err = String.format("Value of [%s] cannot be greater than %d: [%d]", ctx.fieldName(), ConfigDefaults.STORAGE_LS_PAGE_SIZE_MAX, pageSize);
+            return ctx.error(err);
+        }
+
+        return ctx;
+    }
+
     private static ValidationContext storageReadRequest(StorageReadRequest msg, ValidationContext ctx) {
 
         ctx = ctx.push(SRR_TENANT)
@@ -51,7 +51,7 @@ public class S3ObjectReader extends CommonFileReader {
 
     private final boolean useRange;
     private final long offset;
-    private final int size;
+    private final long size;
 
     private final S3AsyncClient client;
     private final OrderedEventExecutor executor;
@@ -60,11 +60,17 @@ public class S3ObjectReader extends CommonFileReader {
     private Subscription awsSubscription;
     private long awsRequested;
 
+    // Each client request is one attempt, events from an earlier attempt are ignored after a resume
+    private int attempt;
+    private long position;
+    private String eTag;
+    private boolean sizeReported;
+
 
     public S3ObjectReader(
             String storageKey, String storagePath,
             String bucket, String objectKey,
-            boolean useRange, long offset, int size,
+            boolean useRange, long offset, long size,
             S3AsyncClient client,
             IDataContext dataContext,
             long chunkSize,
@@ -89,7 +95,7 @@ public class S3ObjectReader extends CommonFileReader {
     public S3ObjectReader(
             String storageKey, String storagePath,
             String bucket, String objectKey,
-            long offset, int size,
+            long offset, long size,
             S3AsyncClient client,
             IDataContext dataContext,
             long chunkSize,
@@ -99,6 +105,18 @@ public class S3ObjectReader extends CommonFileReader {
                 client, dataContext, chunkSize, errors);
     }
 
+    public S3ObjectReader(
+            String storageKey, String storagePath,
+            String bucket, String objectKey,
+            long offset, long size,
+            S3AsyncClient client,
+            IDataContext dataContext,
+            StorageErrors errors) {
+
+        this(storageKey, storagePath, bucket, objectKey, offset, size,
+                client, dataContext, DEFAULT_CHUNK_SIZE, errors);
+    }
+
     public S3ObjectReader(
             String storageKey, String storagePath,
             String bucket, String objectKey,
@@ -124,16 +142,50 @@ public class S3ObjectReader extends CommonFileReader {
     @Override
     protected void clientStart() {
 
+        sendRequest();
+    }
+
+    @Override
+    protected boolean supportsResume() {
+        return true;
+    }
+
+    @Override
+    protected void clientResume(long position) {
+
+        if (awsSubscription != null)
+            awsSubscription.cancel();
+
+        this.attempt += 1;
+        this.position = position;
+        this.awsSubscription = null;
+        this.awsRequested = 0;
+
+        sendRequest();
+    }
+
+    private void sendRequest() {
+
         var request = GetObjectRequest.builder()
                 .bucket(bucket)
                 .key(objectKey);
 
-        if (useRange) {
-            var range = String.format("bytes=%d-%d", offset, offset + size - 1);
+        var start = offset + position;
+
+        // Size = 0 is an open range, read from the offset to the end of the object
+        // A resumed read always uses a range, starting after the last byte received
+        if (useRange || position > 0) {
+            var range = size > 0
+                    ? String.format("bytes=%d-%d", start, offset + size - 1)
+                    : String.format("bytes=%d-", start);
             request.range(range);
         }
 
-        var handler = new ResponseHandler();
+        // Make sure a resumed read gets the same version of the object
+        if (eTag != null)
+            request.ifMatch(eTag);
+
+        var handler = new ResponseHandler(attempt);
         client.getObject(request.build(), handler);
     }
 
@@ -164,18 +216,72 @@ public class S3ObjectReader extends CommonFileReader {
         signal.complete(null);
     }
 
+    @Override
+    protected boolean reportsObjectSize() {
+        return true;
+    }
+
     private void _onResponse(GetObjectResponse response) {
 
-        if (useRange && response.contentLength() != size) {
+        if (useRange && size > 0 && response.contentLength() != size - position && !isShortRangeAtEnd(response)) {
 
             var error = errors.explicitError(READ_OPERATION, storagePath, OBJECT_SIZE_TOO_SMALL);
             onError(error);
+            return;
+        }
+
+        if (eTag == null)
+            eTag = response.eTag();
+
+        if (sizeReported)
+            return;
+
+        sizeReported = true;
+
+        // For ranged reads, the total object size is in the content range header (bytes start-end/total)
+        var contentRange = response.contentRange();
+
+        if (contentRange != null && contentRange.contains("/")) {
+            var totalSize = contentRange.substring(contentRange.lastIndexOf("/") + 1);
+            if (!totalSize.equals("*"))
+                onObjectSize(Long.parseLong(totalSize));
         }
+        else if (!useRange && position == 0)
+            onObjectSize(response.contentLength());
     }
 
-    private void _onStream(SdkPublisher<ByteBuffer> publisher) {
+    private boolean isShortRangeAtEnd(GetObjectResponse response) {
+
+        // A short response is allowed for an open-ended range, if it runs to the end of the object
+        // Content range is in the form bytes start-end/total
+
+        var contentRange = response.contentRange();
 
-        publisher.subscribe(new ResponseStream());
+        if (!isOpenEndedRange() || contentRange == null || !contentRange.startsWith("bytes "))
+            return false;
+
+        try {
+
+            var separator = contentRange.indexOf("-");
+            var totalSeparator = contentRange.lastIndexOf("/");
+
+            if (separator < 0 || totalSeparator < separator)
+                return false;
+
+            var start = Long.parseLong(contentRange.substring("bytes ".length(), separator));
+            var end = Long.parseLong(contentRange.substring(separator + 1, totalSeparator));
+            var total = Long.parseLong(contentRange.substring(totalSeparator + 1));
+
+            return start == offset + position && end == total - 1 && response.contentLength() == end - start + 1;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void _onStream(SdkPublisher<ByteBuffer> publisher, int attempt) {
+
+        publisher.subscribe(new ResponseStream(attempt));
     }
 
     private void _onSubscribe(Subscription awsSubscription) {
@@ -193,54 +299,84 @@ public class S3ObjectReader extends CommonFileReader {
         }
     }
 
-    // Call back events from the AWS SDK are not necessarily in the event loop, so post them back
-    // The AWS client is running with the main ELG, but requests are not sent to a specific EL
+    // The AWS client for a request is normally bound to the EL for that request, so events can be handled in place
+    // Events that arrive on any other thread (e.g. for contexts outside the main ELG) are posted back to the EL
+
+    private void inEventLoop(Runnable task) {
+
+        if (executor.inEventLoop())
+            task.run();
+        else
+            executor.submit(task);
+    }
+
+    private void inEventLoop(int eventAttempt, Runnable task, Runnable staleTask) {
+
+        inEventLoop(() -> {
+            if (eventAttempt == attempt)
+                task.run();
+            else if (staleTask != null)
+                staleTask.run();
+        });
+    }
 
     private class ResponseHandler implements AsyncResponseTransformer<GetObjectResponse, Void> {
 
+        private final int attempt;
+
+        ResponseHandler(int attempt) {
+            this.attempt = attempt;
+        }
+
         @Override
         public CompletableFuture<Void> prepare() {
             var prepareResult = new CompletableFuture<Void>();
-            executor.submit(() -> _onPrepare(prepareResult));
+            inEventLoop(() -> _onPrepare(prepareResult));
             return prepareResult;
         }
 
         @Override
         public void onResponse(GetObjectResponse response) {
-            executor.submit(() -> _onResponse(response));
+            inEventLoop(attempt, () -> _onResponse(response), null);
         }
 
         @Override
         public void onStream(SdkPublisher<ByteBuffer> publisher) {
-            executor.submit(() -> _onStream(publisher));
+            inEventLoop(attempt, () -> _onStream(publisher, attempt), null);
         }
 
         @Override
         public void exceptionOccurred(Throwable error) {
-            executor.submit(() -> onError(error));
+            inEventLoop(attempt, () -> onError(error), null);
         }
     }
 
     private class ResponseStream implements Subscriber<ByteBuffer> {
 
+        private final int attempt;
+
+        ResponseStream(int attempt) {
+            this.attempt = attempt;
+        }
+
         @Override
         public void onSubscribe(Subscription s) {
-            executor.submit(() -> _onSubscribe(s));
+            inEventLoop(attempt, () -> _onSubscribe(s), s::cancel);
         }
 
         @Override
         public void onNext(ByteBuffer byteBuffer) {
-            executor.submit(() -> onChunk(byteBuffer));
+            inEventLoop(attempt, () -> onChunk(byteBuffer), null);
         }
 
         @Override
         public void onError(Throwable error) {
-            executor.submit(() -> onError(error));
+            inEventLoop(attempt, () -> S3ObjectReader.this.onError(error), null);
         }
 
         @Override
         public void onComplete() {
-            executor.submit(S3ObjectReader.this::onComplete);
+            inEventLoop(attempt, S3ObjectReader.this::onComplete, null);
         }
     }
 
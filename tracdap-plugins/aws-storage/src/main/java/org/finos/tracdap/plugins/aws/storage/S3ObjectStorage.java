@@ -18,6 +18,7 @@
 package org.finos.tracdap.plugins.aws.storage;
 
 import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.config.ConfigHelpers;
 import org.finos.tracdap.common.data.IExecutionContext;
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.exception.EStartup;
@@ -36,19 +37,25 @@ import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
 
 import org.apache.arrow.memory.ArrowBuf;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoop;
+import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.*;
 
 
@@ -65,6 +72,13 @@ public class S3ObjectStorage extends CommonFileStorage {
     public static final String ACCESS_KEY_ID_PROPERTY = "accessKeyId";
     public static final String SECRET_ACCESS_KEY_PROPERTY = "secretAccessKey";
 
+    public static final String UPLOAD_PART_SIZE_PROPERTY = "uploadPartSize";
+    public static final String UPLOAD_CONCURRENCY_PROPERTY = "uploadConcurrency";
+
+    // CopyObject is limited to 5 GiB, larger objects are copied in parts with UploadPartCopy
+    private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+
     private final Properties properties;
 
     private final String bucket;
@@ -72,8 +86,11 @@ public class S3ObjectStorage extends CommonFileStorage {
     private final Region region;
     private final URI endpoint;
 
+    private final int uploadPartSize;
+    private final int uploadConcurrency;
+
     // private final AwsCredentialsProvider credentials;
-    private S3AsyncClient client;
+    private EventLoopAffinity<S3AsyncClient> clients;
 
 
     public S3ObjectStorage(String storageKey, Properties properties) {
@@ -91,6 +108,28 @@ public class S3ObjectStorage extends CommonFileStorage {
         this.prefix = normalizePrefix(prefix);
         this.region = region != null && !region.isBlank() ? Region.of(region) : null;
         this.endpoint = endpoint != null && !endpoint.isBlank() ? URI.create(endpoint) : null;
+
+        this.uploadPartSize = ConfigHelpers.readInt(
+                storageKey, properties,
+                UPLOAD_PART_SIZE_PROPERTY,
+                S3ObjectWriter.DEFAULT_PART_SIZE);
+
+        this.uploadConcurrency = ConfigHelpers.readInt(
+                storageKey, properties,
+                UPLOAD_CONCURRENCY_PROPERTY,
+                S3ObjectWriter.DEFAULT_CONCURRENCY);
+
+        if (uploadPartSize < S3ObjectWriter.MIN_PART_SIZE) {
+            var message = String.format("Invalid config property [%s] for S3 storage: Minimum part size is %d bytes",
+                    UPLOAD_PART_SIZE_PROPERTY, S3ObjectWriter.MIN_PART_SIZE);
+            throw new EStartup(message);
+        }
+
+        if (uploadConcurrency < 1) {
+            var message = String.format("Invalid config property [%s] for S3 storage: Must be at least 1",
+                    UPLOAD_CONCURRENCY_PROPERTY);
+            throw new EStartup(message);
+        }
     }
 
     private String normalizePrefix(String prefix) {
@@ -145,9 +184,10 @@ public class S3ObjectStorage extends CommonFileStorage {
         // We aim for one EL per core, minus one core for OS / system tasks
         // This works with all async processing of small events or data chunks directly in the EL
 
-        // For now, we create one client instance per storage backend
-        // The client instance controls connection limits, current AWS default is max 50 concurrent connections
-        // So e.g. 3 storage instances = 3 clients => max 150 total connections, all running on the same ELG
+        // Create one client instance for each EL, so connections for a request are bound to the EL for that request
+        // Responses then arrive on the same EL as the request and can be processed with no cross-thread hand-off
+        // Each client controls its own connection limit, current AWS default is max 50 concurrent connections
+        // So e.g. 8 ELs = 8 clients => max 400 total connections for each storage instance, all on the same ELG
         // When all the processing is async, there is no value to add more threads with separate ELGs
         // ATM, we are not trying to prioritize or share clients / connection pools across storage backends
 
@@ -158,15 +198,25 @@ public class S3ObjectStorage extends CommonFileStorage {
 
         var credentials = setupCredentials(properties);
 
-        var httpElg = SdkEventLoopGroup.create(eventLoopGroup);
+        this.clients = new EventLoopAffinity<>(eventLoopGroup, el -> buildClient(el, credentials));
+
+        checkRootExists();
+    }
+
+    private S3AsyncClient buildClient(EventLoop eventLoop, AwsCredentialsProvider credentials) {
+
+        // The SDK cannot always work out the channel type for a single EL, so set it explicitly where possible
+        var httpElg = eventLoop instanceof NioEventLoop
+                ? SdkEventLoopGroup.create(eventLoop, NioSocketChannel::new)
+                : SdkEventLoopGroup.create(eventLoop);
+
         var httpClient = NettyNioAsyncHttpClient.builder().eventLoopGroup(httpElg);
 
         // Do not post events to another thread, callback directly in the EL
-        // Anyway we need to post events to the EL for the current request, so there is no point posting twice
+        // Since the client is bound to the EL for the current request, callbacks are already in the right place
 
-        // IMPORTANT: Every async call must explicitly post events back to the right EL for the current request
-        // It may make sense to lift this handling into the core data library
-        // Although thought is needed in case a backend posts events for a single request on multiple ELs
+        // IMPORTANT: Every async call must still use toContext() to get events onto the right EL for the request
+        // Requests with an execution context outside the main ELG are not bound to their own EL
 
         var async = ClientAsyncConfiguration.builder()
                 .advancedOption(SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR, Runnable::run)
@@ -183,9 +233,7 @@ public class S3ObjectStorage extends CommonFileStorage {
         if (endpoint != null)
             clientBuilder.endpointOverride(endpoint);
 
-        this.client = clientBuilder.build();
-
-        checkRootExists();
+        return clientBuilder.build();
     }
 
     private void checkRootExists() {
@@ -198,6 +246,8 @@ public class S3ObjectStorage extends CommonFileStorage {
                     .bucket(bucket)
                     .build();
 
+            var client = clients.anyClient();
+
             var bucketResponse = client.headBucket(bucketRequest).get();
 
             log.info("S3 bucket [{}], region = [{}]",
@@ -226,7 +276,8 @@ public class S3ObjectStorage extends CommonFileStorage {
 
         log.info("STOP [{}], fs = [S3], bucket = [{}], prefix = [{}]", storageKey, bucket, prefix);
 
-        client.close();
+        for (var client : clients.allClients())
+            client.close();
     }
 
     @Override
@@ -240,7 +291,7 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .key(absoluteKey)
                 .build();
 
-        var response = toContext(ctx, client.headObject(request));
+        var response = toContext(ctx, clients.client(ctx).headObject(request));
 
         return response
                 .thenApply(x -> true)
@@ -276,11 +327,56 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .maxKeys(1)
                 .build();
 
-        var response = toContext(ctx, client.listObjectsV2(request));
+        var response = toContext(ctx, clients.client(ctx).listObjectsV2(request));
 
         return response.thenApply(ListObjectsV2Response::hasContents);
     }
 
+    @Override
+    protected CompletionStage<FileStat>
+    fsStat(String objectKey, String directoryKey, IExecutionContext ctx) {
+
+        // Storage root is always a directory, use the regular checks
+        if (objectKey.isEmpty() || objectKey.endsWith(BACKSLASH))
+            return super.fsStat(objectKey, directoryKey, ctx);
+
+        var absoluteKey = usePrefix(objectKey);
+        var absoluteDir = usePrefix(directoryKey);
+
+        // A single listing with a delimiter returns the object itself (if it exists)
+        // and the directory prefix (if there is one) in the same response
+
+        var request = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(absoluteKey)
+                .delimiter(BACKSLASH)
+                .build();
+
+        // The listing is sent directly, so it needs to go through the request limit like other metadata calls
+
+        var response = requestLimiter.limitRequest(ctx, RequestClass.METADATA, () ->
+                toContext(ctx, clients.client(ctx).listObjectsV2(request)));
+
+        return response.thenCompose(result -> {
+
+            for (var dir : result.commonPrefixes()) {
+                if (dir.prefix().equals(absoluteDir))
+                    return requestLimiter.limitRequest(ctx, RequestClass.METADATA, () -> fsGetDirInfo(directoryKey, ctx));
+            }
+
+            for (var object : result.contents()) {
+                if (object.key().equals(absoluteKey))
+                    return CompletableFuture.completedFuture(objectToFileStat(object));
+            }
+
+            // Very large numbers of sibling keys with the same prefix can push the match onto a later page
+            if (Boolean.TRUE.equals(result.isTruncated()))
+                return super.fsStat(objectKey, directoryKey, ctx);
+
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
     @Override
     protected CompletionStage<FileStat>
     fsGetFileInfo(String objectKey, IExecutionContext ctx) {
@@ -293,7 +389,7 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .objectAttributes(ObjectAttributes.OBJECT_SIZE)
                 .build();
 
-        var response = toContext(ctx, client.getObjectAttributes(request));
+        var response = toContext(ctx, clients.client(ctx).getObjectAttributes(request));
 
         return response.thenApply(attrs -> attrsToFileStat(objectKey, attrs));
     }
@@ -317,8 +413,8 @@ public class S3ObjectStorage extends CommonFileStorage {
     }
 
     @Override
-    protected CompletionStage<List<FileStat>>
-    fsListContents(String directoryKey, String startAfter, int maxKeys, boolean recursive, IExecutionContext ctx) {
+    protected CompletionStage<FileListing>
+    fsListContents(String directoryKey, String pageToken, int maxKeys, boolean recursive, IExecutionContext ctx) {
 
         var absoluteDir = usePrefix(directoryKey);
 
@@ -327,23 +423,24 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .prefix(absoluteDir)
                 .maxKeys(maxKeys);
 
-        if (startAfter != null)
-            request.startAfter(startAfter);
+        if (pageToken != null)
+            request.continuationToken(pageToken);
 
         if (!recursive)
             request.delimiter(BACKSLASH);
 
         // Send request and get response onto the EL for execContext
-        var response = toContext(ctx, client.listObjectsV2(request.build()));
+        var response = toContext(ctx, clients.client(ctx).listObjectsV2(request.build()));
 
-        return response.thenApply(result -> prefixLsResult(directoryKey, absoluteDir, result));
+        return response.thenApply(result -> prefixLsResult(directoryKey, absoluteDir, pageToken, result));
     }
 
-    private List<FileStat>
-    prefixLsResult(String directoryKey, String absoluteDir, ListObjectsV2Response response) {
+    private FileListing
+    prefixLsResult(String directoryKey, String absoluteDir, String pageToken, ListObjectsV2Response response) {
 
         // If no objects / prefixes are matched, the "directory" doesn't exist
-        if (response.contents().isEmpty() && response.commonPrefixes().isEmpty()) {
+        // Continuation pages can legitimately be empty, if the previous page ended exactly on the last key
+        if (pageToken == null && response.contents().isEmpty() && response.commonPrefixes().isEmpty()) {
             throw errors.explicitError(LS_OPERATION, directoryKey, OBJECT_NOT_FOUND);
         }
 
@@ -363,9 +460,15 @@ public class S3ObjectStorage extends CommonFileStorage {
         var objectStats = objects.stream().map(this::objectToFileStat);
         var prefixStats = prefixes.stream().map(this::prefixToFileStat);
 
-        return Stream
+        var entries = Stream
                 .concat(objectStats, prefixStats)
                 .collect(Collectors.toList());
+
+        var nextPageToken = Boolean.TRUE.equals(response.isTruncated())
+                ? response.nextContinuationToken()
+                : null;
+
+        return new FileListing(entries, nextPageToken);
     }
 
     @Override
@@ -383,7 +486,7 @@ public class S3ObjectStorage extends CommonFileStorage {
         var content = AsyncRequestBody.empty();
 
         // Send request and get response onto the EL for execContext
-        var response = toContext(execContext, client.putObject(request, content));
+        var response = toContext(execContext, clients.client(execContext).putObject(request, content));
 
         return response.thenAccept(result -> {});
     }
@@ -398,7 +501,7 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .key(absoluteKey)
                 .build();
 
-        var response = toContext(ctx, client.deleteObject(request));
+        var response = toContext(ctx, clients.client(ctx).deleteObject(request));
 
         return response.thenApply(x -> null);
     }
@@ -421,7 +524,7 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .build();
 
         // Send request and get response onto the EL for execContext
-        var listResponse = toContext(ctx, client.listObjectsV2(listRequest));
+        var listResponse = toContext(ctx, clients.client(ctx).listObjectsV2(listRequest));
 
         return listResponse.thenCompose(contents -> {
 
@@ -459,7 +562,7 @@ public class S3ObjectStorage extends CommonFileStorage {
                 .delete(del -> del.objects(objIds))
                 .build();
 
-        var response = toContext(ctx, client.deleteObjects(request));
+        var response = toContext(ctx, clients.client(ctx).deleteObjects(request));
 
         return response.thenApply(x -> null);
     }
@@ -471,7 +574,7 @@ public class S3ObjectStorage extends CommonFileStorage {
 
         var reader = new S3ObjectReader(
                 storageKey, storagePath, bucket, objectKey, offset, size,
-                client, ctx, size, errors);
+                clients.client(ctx), ctx, size, errors);
 
         var list = new ArrayList<ArrowBuf>(1);
         var collect = Flows.fold(reader, (xs, x) -> { xs.add(x); return xs; }, list);
@@ -494,13 +597,19 @@ public class S3ObjectStorage extends CommonFileStorage {
     }
 
     @Override
-    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String storagePath, IDataContext dataContext) {
+    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String storagePath, long offset, long limit, IDataContext dataContext) {
 
         var objectKey = usePrefix(storagePath);
 
+        if (offset == 0 && limit == 0)
+            return new S3ObjectReader(
+                    storageKey, storagePath, bucket, objectKey,
+                    clients.client(dataContext), dataContext, errors);
+
         return new S3ObjectReader(
                 storageKey, storagePath, bucket, objectKey,
-                client, dataContext, errors);
+                offset, limit,
+                clients.client(dataContext), dataContext, errors);
     }
 
     @Override
@@ -510,7 +619,131 @@ public class S3ObjectStorage extends CommonFileStorage {
 
         return new S3ObjectWriter(
                 storageKey, storagePath, bucket, objectKey,
-                client, signal, dataContext, errors);
+                clients.client(dataContext), requestLimiter, signal, dataContext,
+                uploadPartSize, uploadConcurrency,
+                errors);
+    }
+
+    @Override
+    protected CompletionStage<Long> fsCopyFile(String sourceKey, String targetKey, long size, IDataContext ctx) {
+
+        var absoluteSource = usePrefix(sourceKey);
+        var absoluteTarget = usePrefix(targetKey);
+
+        if (size > MAX_COPY_OBJECT_SIZE)
+            return copyMultipart(absoluteSource, absoluteTarget, size, ctx);
+
+        var request = CopyObjectRequest.builder()
+                .sourceBucket(bucket)
+                .sourceKey(absoluteSource)
+                .destinationBucket(bucket)
+                .destinationKey(absoluteTarget)
+                .build();
+
+        var response = toContext(ctx, clients.client(ctx).copyObject(request));
+
+        return response.thenApply(x -> size);
+    }
+
+    private CompletionStage<Long>
+    copyMultipart(String sourceKey, String targetKey, long size, IExecutionContext ctx) {
+
+        var createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(targetKey)
+                .build();
+
+        var createResponse = toContext(ctx, clients.client(ctx).createMultipartUpload(createRequest));
+
+        return createResponse.thenCompose(upload -> {
+
+            var uploadId = upload.uploadId();
+            var nextPart = new AtomicInteger(1);
+            var parts = new ConcurrentSkipListMap<Integer, CompletedPart>();
+
+            // Copy parts in parallel, each worker takes the next part when it finishes one
+            var workers = Stream.generate(() -> copyNextPart(sourceKey, targetKey, uploadId, size, nextPart, parts, ctx))
+                    .limit(uploadConcurrency)
+                    .map(CompletionStage::toCompletableFuture)
+                    .toArray(CompletableFuture[]::new);
+
+            var copy = CompletableFuture.allOf(workers).thenCompose(x -> {
+
+                var completedUpload = CompletedMultipartUpload.builder()
+                        .parts(new ArrayList<>(parts.values()))
+                        .build();
+
+                var completeRequest = CompleteMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(targetKey)
+                        .uploadId(uploadId)
+                        .multipartUpload(completedUpload)
+                        .build();
+
+                return toContext(ctx, clients.client(ctx).completeMultipartUpload(completeRequest));
+
+            }).thenApply(x -> size);
+
+            return copy.whenComplete((result, error) -> {
+
+                if (error != null)
+                    abortMultipartCopy(targetKey, uploadId, ctx);
+            });
+        });
+    }
+
+    private CompletionStage<Void> copyNextPart(
+            String sourceKey, String targetKey, String uploadId, long size,
+            AtomicInteger nextPart, Map<Integer, CompletedPart> parts,
+            IExecutionContext ctx) {
+
+        var partNumber = nextPart.getAndIncrement();
+        var rangeStart = (partNumber - 1) * COPY_PART_SIZE;
+
+        if (rangeStart >= size)
+            return CompletableFuture.completedFuture(null);
+
+        var rangeEnd = Math.min(rangeStart + COPY_PART_SIZE, size) - 1;
+
+        var request = UploadPartCopyRequest.builder()
+                .sourceBucket(bucket)
+                .sourceKey(sourceKey)
+                .destinationBucket(bucket)
+                .destinationKey(targetKey)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .copySourceRange(String.format("bytes=%d-%d", rangeStart, rangeEnd))
+                .build();
+
+        var response = toContext(ctx, clients.client(ctx).uploadPartCopy(request));
+
+        return response.thenCompose(result -> {
+
+            var part = CompletedPart.builder()
+                    .partNumber(partNumber)
+                    .eTag(result.copyPartResult().eTag())
+                    .build();
+
+            parts.put(partNumber, part);
+
+            return copyNextPart(sourceKey, targetKey, uploadId, size, nextPart, parts, ctx);
+        });
+    }
+
+    private void abortMultipartCopy(String targetKey, String uploadId, IExecutionContext ctx) {
+
+        var request = AbortMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(targetKey)
+                .uploadId(uploadId)
+                .build();
+
+        toContext(ctx, clients.client(ctx).abortMultipartUpload(request)).whenComplete((result, error) -> {
+
+            if (error != null)
+                log.warn("{} {} [{}]: Failed to abort multipart copy: {}",
+                        COPY_OPERATION, storageKey, targetKey, error.getMessage());
+        });
     }
 
     private FileStat
@@ -535,9 +768,12 @@ public class S3ObjectStorage extends CommonFileStorage {
     private FileStat
     objectToFileStat(S3Object s3Object) {
 
-        var path = s3Object.key().substring(prefix.length());
-        var name = path.contains(BACKSLASH) ? path.substring(path.lastIndexOf(BACKSLASH) + 1) : path;
+        // Directory markers show up as objects in recursive listings, remove the trailing backslash
         var fileType = s3Object.key().endsWith(BACKSLASH) ? FileType.DIRECTORY : FileType.FILE;
+        var path = fileType == FileType.DIRECTORY
+                ? s3Object.key().substring(prefix.length(), s3Object.key().length() - 1)
+                : s3Object.key().substring(prefix.length());
+        var name = path.contains(BACKSLASH) ? path.substring(path.lastIndexOf(BACKSLASH) + 1) : path;
         var size = fileType == FileType.FILE ? s3Object.size() : 0;
         var mtime = fileType == FileType.FILE ? s3Object.lastModified() : null;
 
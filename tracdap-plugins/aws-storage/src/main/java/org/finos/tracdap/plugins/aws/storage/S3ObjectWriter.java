@@ -19,12 +19,12 @@ package org.finos.tracdap.plugins.aws.storage;
 
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.storage.IRequestLimiter;
 import org.finos.tracdap.common.storage.StorageErrors;
 
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.*;
 
 import io.netty.util.concurrent.OrderedEventExecutor;
 import org.apache.arrow.memory.ArrowBuf;
@@ -32,19 +32,42 @@ import org.apache.arrow.memory.ArrowBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.finos.tracdap.common.storage.CommonFileStorage.WRITE_OPERATION;
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.DUPLICATE_SUBSCRIPTION;
 
 
+/**
+ * Write an object to S3 as a stream of parts, using multipart upload.
+ *
+ * <p>Incoming chunks are gathered into parts of (at least) the configured part size,
+ * each part is sent as soon as it is full with up to the configured number of parts in flight.
+ * More data is only requested while there is room for another part, so memory use is
+ * bounded by part size * concurrency. Objects smaller than one part are sent with a single
+ * put request, to avoid the overhead of multipart upload for small files.</p>
+ *
+ * <p>The upload is completed when the stream completes. If the stream fails, or any part
+ * fails to upload, the multipart upload is aborted so no partial parts are kept in the bucket.</p>
+ *
+ * <p>Each request goes through the request limiter of the storage, so uploads share the same
+ * adaptive limit as other requests and throttled parts are retried.</p>
+ */
 public class S3ObjectWriter implements Flow.Subscriber<ArrowBuf> {
 
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;  // 8 MB
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;  // S3 minimum for all parts except the last
+    public static final int DEFAULT_CONCURRENCY = 4;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final String storageKey;
@@ -53,23 +76,42 @@ public class S3ObjectWriter implements Flow.Subscriber<ArrowBuf> {
     private final String objectKey;
 
     private final S3AsyncClient client;
+    private final IRequestLimiter requestLimiter;
     private final CompletableFuture<Long> signal;
     private final IDataContext dataContext;
     private final OrderedEventExecutor executor;
     private final StorageErrors errors;
 
+    private final long partSize;
+    private final int concurrency;
+
     private final AtomicBoolean subscriptionSet;
     private Flow.Subscription subscription;
 
     private final List<ArrowBuf> buffer = new ArrayList<>();
+    private long bufferedBytes;
     private long bytesWritten;
 
+    private final Queue<ByteBuffer> pendingParts = new ArrayDeque<>();
+    private final TreeMap<Integer, CompletedPart> completedParts = new TreeMap<>();
+    private boolean uploadStarted;
+    private String uploadId;
+    private int nextPartNumber = 1;
+    private int partsInFlight;
+    private boolean requestPending;
+    private boolean uploadAborted;
+
+    private boolean gotComplete;
+    private boolean gotError;
+
     public S3ObjectWriter(
             String storageKey, String storagePath,
             String bucket, String objectKey,
             S3AsyncClient client,
+            IRequestLimiter requestLimiter,
             CompletableFuture<Long> signal,
             IDataContext dataContext,
+            long partSize, int concurrency,
             StorageErrors errors) {
 
         this.storageKey = storageKey;
@@ -78,15 +120,32 @@ public class S3ObjectWriter implements Flow.Subscriber<ArrowBuf> {
         this.objectKey = objectKey;
 
         this.client = client;
+        this.requestLimiter = requestLimiter;
         this.signal = signal;
         this.dataContext = dataContext;
         this.executor = dataContext.eventLoopExecutor();
         this.errors = errors;
 
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+
         this.subscriptionSet = new AtomicBoolean();
         this.subscription = null;
     }
 
+    public S3ObjectWriter(
+            String storageKey, String storagePath,
+            String bucket, String objectKey,
+            S3AsyncClient client,
+            IRequestLimiter requestLimiter,
+            CompletableFuture<Long> signal,
+            IDataContext dataContext,
+            StorageErrors errors) {
+
+        this(storageKey, storagePath, bucket, objectKey, client, requestLimiter, signal, dataContext,
+                DEFAULT_PART_SIZE, DEFAULT_CONCURRENCY, errors);
+    }
+
     @Override
     public void onSubscribe(Flow.Subscription subscription) {
 
@@ -100,41 +159,215 @@ public class S3ObjectWriter implements Flow.Subscriber<ArrowBuf> {
 
         this.subscription = subscription;
 
-        executor.submit(() -> this.subscription.request(128));
+        executor.submit(() -> this.subscription.request(1));
     }
 
     @Override
     public void onNext(ArrowBuf item) {
 
+        if (gotError) {
+            item.close();
+            return;
+        }
+
         buffer.add(item);
-        this.subscription.request(1);
+        bufferedBytes += item.readableBytes();
+
+        if (bufferedBytes >= partSize)
+            sendPart();
+
+        requestMore();
     }
 
     @Override
     public void onError(Throwable throwable) {
 
         try {
+
             var tracError = errors.handleException(WRITE_OPERATION, storagePath, throwable);
 
             log.error("{} {} [{}]: {}", WRITE_OPERATION, storageKey, storagePath, tracError.getMessage(), tracError);
 
+            gotError = true;
+            abortUpload();
+
             signal.completeExceptionally(throwable);
         }
         finally {
-            buffer.forEach(ArrowBuf::close);
-            buffer.clear();
+            releaseBuffer();
         }
     }
 
     @Override
     public void onComplete() {
 
+        if (gotError)
+            return;
+
+        gotComplete = true;
+
+        // Small objects, send with a single put
+        if (!uploadStarted) {
+            putObject();
+            return;
+        }
+
+        // Send whatever is left as the last part, which is allowed to be smaller than the minimum
+        if (bufferedBytes > 0)
+            sendPart();
+
+        checkUploadComplete();
+    }
+
+    private void requestMore() {
+
+        if (gotComplete || gotError)
+            return;
+
+        if (partsInFlight + pendingParts.size() < concurrency) {
+            requestPending = false;
+            subscription.request(1);
+        }
+        else {
+            requestPending = true;
+        }
+    }
+
+    private void sendPart() {
+
+        var content = Bytes.readFromBuffer(buffer);
+        releaseBuffer();
+
+        pendingParts.add(content);
+
+        if (!uploadStarted) {
+            uploadStarted = true;
+            createUpload();
+        }
+        else {
+            sendPendingParts();
+        }
+    }
+
+    private void createUpload() {
+
+        var request = CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .build();
+
+        var response = requestLimiter.limitRequest(dataContext, RequestClass.METADATA, () ->
+                dataContext.toContext(client.createMultipartUpload(request)));
+
+        response.whenComplete((result, error) -> {
+
+            if (error != null) {
+                onUploadError(error);
+                return;
+            }
+
+            uploadId = result.uploadId();
+
+            // Error may have happened while the upload was being created
+            if (gotError)
+                abortUpload();
+            else
+                sendPendingParts();
+        });
+    }
+
+    private void sendPendingParts() {
+
+        if (uploadId == null || gotError)
+            return;
+
+        while (!pendingParts.isEmpty()) {
+
+            var content = pendingParts.remove();
+            var contentLength = (long) content.remaining();
+            var partNumber = nextPartNumber++;
+
+            var request = UploadPartRequest.builder()
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength(contentLength)
+                    .build();
+
+            // A new body is needed for each attempt, in case the part is throttled and retried
+            var response = requestLimiter.limitRequest(dataContext, RequestClass.TRANSFER, () ->
+                    dataContext.toContext(client.uploadPart(request, AsyncRequestBody.fromByteBuffer(content.duplicate()))));
+
+            partsInFlight += 1;
+
+            response.whenComplete((result, error) -> onPartComplete(partNumber, contentLength, result, error));
+        }
+    }
+
+    private void onPartComplete(int partNumber, long contentLength, UploadPartResponse result, Throwable error) {
+
+        partsInFlight -= 1;
+
+        if (gotError)
+            return;
+
+        if (error != null) {
+            onUploadError(error);
+            return;
+        }
+
+        var completedPart = CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(result.eTag())
+                .build();
+
+        completedParts.put(partNumber, completedPart);
+        bytesWritten += contentLength;
+
+        if (requestPending)
+            requestMore();
+
+        checkUploadComplete();
+    }
+
+    private void checkUploadComplete() {
+
+        if (!gotComplete || gotError || uploadId == null)
+            return;
+
+        if (partsInFlight > 0 || !pendingParts.isEmpty())
+            return;
+
+        var parts = CompletedMultipartUpload.builder()
+                .parts(new ArrayList<>(completedParts.values()))
+                .build();
+
+        var request = CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .uploadId(uploadId)
+                .multipartUpload(parts)
+                .build();
+
+        var response = requestLimiter.limitRequest(dataContext, RequestClass.METADATA, () ->
+                dataContext.toContext(client.completeMultipartUpload(request)));
+
+        response.whenComplete((result, error) -> {
+
+            if (error != null)
+                onUploadError(error);
+            else
+                signal.complete(bytesWritten);
+        });
+    }
+
+    private void putObject() {
+
         var content = Bytes.readFromBuffer(buffer);
         var contentLength = (long) content.remaining();
-        var body = AsyncRequestBody.fromByteBuffer(content);
 
-        // Store bytes written to use in completion handler
-        bytesWritten = contentLength;
+        releaseBuffer();
 
         var request = PutObjectRequest.builder()
                 .bucket(this.bucket)
@@ -142,28 +375,74 @@ public class S3ObjectWriter implements Flow.Subscriber<ArrowBuf> {
                 .contentLength(contentLength)
                 .build();
 
-        var response = dataContext.toContext(client.putObject(request, body));
-
-        response.handle(this::onCompleteHandler);
-    }
-
-    private CompletionStage<Void> onCompleteHandler(PutObjectResponse result, Throwable error) {
+        var response = requestLimiter.limitRequest(dataContext, RequestClass.TRANSFER, () ->
+                dataContext.toContext(client.putObject(request, AsyncRequestBody.fromByteBuffer(content.duplicate()))));
 
-        try {
+        response.whenComplete((result, error) -> {
 
             if (error != null) {
                 var mappedError = errors.handleException(WRITE_OPERATION, storagePath, error);
                 signal.completeExceptionally(mappedError);
             }
             else {
-                signal.complete(bytesWritten);
+                signal.complete(contentLength);
             }
+        });
+    }
 
-            return CompletableFuture.completedFuture(null);
-        }
-        finally {
-            buffer.forEach(ArrowBuf::close);
-            buffer.clear();
-        }
+    private void onUploadError(Throwable error) {
+
+        if (gotError)
+            return;
+
+        gotError = true;
+
+        var mappedError = errors.handleException(WRITE_OPERATION, storagePath, error);
+
+        log.error("{} {} [{}]: {}", WRITE_OPERATION, storageKey, storagePath, mappedError.getMessage(), mappedError);
+
+        // Stop the incoming stream, if it is still running
+        if (!gotComplete)
+            subscription.cancel();
+
+        abortUpload();
+        releaseBuffer();
+
+        signal.completeExceptionally(mappedError);
+    }
+
+    private void abortUpload() {
+
+        pendingParts.clear();
+
+        // If the upload is still being created, abort will be called when it is ready
+        if (uploadId == null || uploadAborted)
+            return;
+
+        uploadAborted = true;
+
+        var request = AbortMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .uploadId(uploadId)
+                .build();
+
+        var response = requestLimiter.limitRequest(dataContext, RequestClass.METADATA, () ->
+                dataContext.toContext(client.abortMultipartUpload(request)));
+
+        response.whenComplete((result, error) -> {
+
+            if (error != null) {
+                log.warn("{} {} [{}]: Failed to abort multipart upload: {}",
+                        WRITE_OPERATION, storageKey, storagePath, error.getMessage());
+            }
+        });
+    }
+
+    private void releaseBuffer() {
+
+        buffer.forEach(ArrowBuf::close);
+        buffer.clear();
+        bufferedBytes = 0;
     }
 }
@@ -32,10 +32,12 @@ import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.*;
 public class S3StorageErrors extends StorageErrors {
 
     private static final int RANGE_NOT_SATISFIABLE = 416;
+    private static final int TOO_MANY_REQUESTS = 429;
 
     private static final List<Map.Entry<Integer, ExplicitError>> HTTP_ERROR_CODE_MAP = List.of(
             Map.entry(HttpStatusCode.NOT_FOUND, OBJECT_NOT_FOUND),
             Map.entry(RANGE_NOT_SATISFIABLE, OBJECT_SIZE_TOO_SMALL),
+            Map.entry(HttpStatusCode.PRECONDITION_FAILED, OBJECT_CHANGED),
             Map.entry(HttpStatusCode.FORBIDDEN, ACCESS_DENIED));
 
     public S3StorageErrors(String storageKey) {
@@ -61,4 +63,16 @@ public class S3StorageErrors extends StorageErrors {
 
         return null;
     }
+
+    @Override
+    protected boolean checkThrottling(Throwable e) {
+
+        // S3 responds with 503 SlowDown when request rates are too high
+        if (!(e instanceof S3Exception))
+            return false;
+
+        var statusCode = ((S3Exception) e).statusCode();
+
+        return statusCode == HttpStatusCode.SERVICE_UNAVAILABLE || statusCode == TOO_MANY_REQUESTS;
+    }
 }
@@ -62,6 +62,14 @@ public class AzureBlobReader extends CommonFileReader {
         this.size = limit;
     }
 
+    AzureBlobReader(
+            BlobAsyncClient blobClient, IDataContext dataContext, StorageErrors errors,
+            String storageKey, String storagePath,
+            long offset, long limit) {
+
+        this(blobClient, dataContext, errors, storageKey, storagePath, offset, limit, DEFAULT_CHUNK_SIZE);
+    }
+
     AzureBlobReader(
             BlobAsyncClient blobClient, IDataContext dataContext, StorageErrors errors,
             String storageKey, String storagePath) {
@@ -108,8 +116,15 @@ public class AzureBlobReader extends CommonFileReader {
         }
     }
 
+    @Override
+    protected boolean reportsObjectSize() {
+        return true;
+    }
+
     private void onDownload(BlobDownloadAsyncResponse asyncDownload) {
 
+        reportObjectSize(asyncDownload);
+
         var eventLoop = AzureScheduling.schedulerFor(dataContext.eventLoopExecutor());
 
         asyncDownload.getValue()
@@ -117,13 +132,32 @@ public class AzureBlobReader extends CommonFileReader {
                 .subscribe(fluxSubscriber);
     }
 
+    private void reportObjectSize(BlobDownloadAsyncResponse asyncDownload) {
+
+        var headers = asyncDownload.getDeserializedHeaders();
+        var contentRange = headers.getContentRange();
+
+        // Ranged downloads report the total blob size in the content range (bytes start-end/total)
+        if (contentRange != null && contentRange.contains("/")) {
+            var totalSize = contentRange.substring(contentRange.lastIndexOf("/") + 1);
+            if (!totalSize.equals("*"))
+                onObjectSize(Long.parseLong(totalSize));
+        }
+        else if (offset == 0 && size == 0 && headers.getContentLength() != null) {
+            onObjectSize(headers.getContentLength());
+        }
+    }
+
     private class FluxSubscriber implements Subscriber<ByteBuffer> {
 
         @Override
         public void onSubscribe(Subscription subscription) {
 
-            if (isDone())
+            // Release the download if the read already failed (e.g. the size check)
+            if (isDone()) {
+                subscription.cancel();
                 return;
+            }
 
             AzureBlobReader.this.subscription = subscription;
 
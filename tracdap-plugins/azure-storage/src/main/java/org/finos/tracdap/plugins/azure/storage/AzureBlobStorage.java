@@ -18,18 +18,22 @@
 package org.finos.tracdap.plugins.azure.storage;
 
 import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.config.ConfigHelpers;
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.data.IExecutionContext;
 import org.finos.tracdap.common.exception.EStartup;
 import org.finos.tracdap.common.exception.ETrac;
 import org.finos.tracdap.common.exception.EUnexpected;
 import org.finos.tracdap.common.storage.CommonFileStorage;
+import org.finos.tracdap.common.storage.EventLoopAffinity;
+import org.finos.tracdap.common.storage.FileListing;
 import org.finos.tracdap.common.storage.FileStat;
 import org.finos.tracdap.common.storage.FileType;
 
 import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
 import com.azure.core.http.rest.PagedResponse;
 import com.azure.core.util.BinaryData;
+import com.azure.core.util.polling.LongRunningOperationStatus;
 import com.azure.identity.DefaultAzureCredentialBuilder;
 import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobContainerAsyncClient;
@@ -39,6 +43,7 @@ import com.azure.storage.blob.batch.BlobBatchClientBuilder;
 import com.azure.storage.common.StorageSharedKeyCredential;
 import com.azure.storage.blob.models.*;
 
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import org.apache.arrow.memory.ArrowBuf;
 import reactor.core.publisher.Mono;
@@ -55,6 +60,7 @@ import java.util.concurrent.Flow;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.*;
 
 
@@ -77,6 +83,9 @@ public class AzureBlobStorage extends CommonFileStorage {
     public static final String ACCESS_KEY_PROPERTY = "accessKey";        // synonym for backwards compatability
     public static final String SAS_TOKEN_PROPERTY = "sasToken";
 
+    public static final String UPLOAD_BLOCK_SIZE_PROPERTY = "uploadBlockSize";
+    public static final String UPLOAD_CONCURRENCY_PROPERTY = "uploadConcurrency";
+
     public static final String BLOB_ENDPOINT_TEMPLATE = "https://%s.blob.core.windows.net/";
     public static final Duration STARTUP_TIMEOUT = Duration.of(1, ChronoUnit.MINUTES);
 
@@ -87,15 +96,18 @@ public class AzureBlobStorage extends CommonFileStorage {
     // So, use a batch size for delete operations that is inside the default limit
 
     private static final int DELETE_BATCH_SIZE = 250;
+    private static final Duration COPY_POLL_INTERVAL = Duration.ofSeconds(1);
 
     private final String storageAccount;
     private final String container;
     private final String prefix;
 
+    private final int uploadBlockSize;
+    private final int uploadConcurrency;
+
     private final CredentialsProvider credentialsProvider;
 
-    private BlobContainerAsyncClient containerClient;
-    private BlobBatchAsyncClient batchClient;
+    private EventLoopAffinity<AzureClients> clients;
 
     public AzureBlobStorage(String storageKey, Properties properties) {
 
@@ -109,6 +121,22 @@ public class AzureBlobStorage extends CommonFileStorage {
         this.container = container;
         this.prefix = normalizePrefix(prefix);
 
+        this.uploadBlockSize = ConfigHelpers.readInt(
+                storageKey, properties,
+                UPLOAD_BLOCK_SIZE_PROPERTY,
+                AzureBlobWriter.DEFAULT_BLOCK_SIZE);
+
+        this.uploadConcurrency = ConfigHelpers.readInt(
+                storageKey, properties,
+                UPLOAD_CONCURRENCY_PROPERTY,
+                AzureBlobWriter.DEFAULT_CONCURRENCY);
+
+        if (uploadBlockSize < 1 || uploadConcurrency < 1) {
+            var message = String.format("Invalid upload settings for Azure blob storage: %s = %d, %s = %d",
+                    UPLOAD_BLOCK_SIZE_PROPERTY, uploadBlockSize, UPLOAD_CONCURRENCY_PROPERTY, uploadConcurrency);
+            throw new EStartup(message);
+        }
+
         this.credentialsProvider = prepareCredentials(properties);
     }
 
@@ -178,10 +206,20 @@ public class AzureBlobStorage extends CommonFileStorage {
     @Override
     public void start(EventLoopGroup eventLoopGroup) {
 
+        // Create one set of clients for each EL, so connections for a request are bound to the EL for that request
+        // Responses then arrive on the same EL as the request and can be processed with no cross-thread hand-off
+
         var endpoint = String.format(BLOB_ENDPOINT_TEMPLATE, storageAccount);
 
+        clients = new EventLoopAffinity<>(eventLoopGroup, el -> buildClients(el, endpoint));
+
+        checkRootExists();
+    }
+
+    private AzureClients buildClients(EventLoop eventLoop, String endpoint) {
+
         var httpClient = new NettyAsyncHttpClientBuilder()
-                .eventLoopGroup(eventLoopGroup)
+                .eventLoopGroup(eventLoop)
                 .build();
 
         var serviceClientBuilder = new BlobServiceClientBuilder()
@@ -192,14 +230,16 @@ public class AzureBlobStorage extends CommonFileStorage {
                 .setCredentials(serviceClientBuilder)
                 .buildAsyncClient();
 
-        containerClient = serviceClient.getBlobContainerAsyncClient(container);
-        batchClient = new BlobBatchClientBuilder(serviceClient).buildAsyncClient();
+        var containerClient = serviceClient.getBlobContainerAsyncClient(container);
+        var batchClient = new BlobBatchClientBuilder(serviceClient).buildAsyncClient();
 
-        checkRootExists();
+        return new AzureClients(containerClient, batchClient);
     }
 
     private void checkRootExists() {
 
+        var containerClient = clients.anyClient().containerClient;
+
         // Container should already exist, the data service cannot create it
         var existsResult = containerClient.exists();
         var exists0 = existsResult.blockOptional(STARTUP_TIMEOUT);
@@ -236,7 +276,7 @@ public class AzureBlobStorage extends CommonFileStorage {
     protected CompletionStage<Boolean> fsExists(String storagePath, IExecutionContext ctx) {
 
         var blob = usePrefix(storagePath);
-        var blobClient = containerClient.getBlobAsyncClient(blob);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(blob);
 
         var existsCall = blobClient.exists();
 
@@ -268,19 +308,73 @@ public class AzureBlobStorage extends CommonFileStorage {
         // Otherwise we need to check there is at least on object with the resolved prefix
 
         var listCall = (dirPrefix == null || dirPrefix.isEmpty())
-                ? containerClient.exists()
-                : containerClient.listBlobs(listOptions).any(blob -> true);
+                ? containerClient(ctx).exists()
+                : containerClient(ctx).listBlobs(listOptions).any(blob -> true);
 
         return handle(listCall, ctx,
                 this::fsExistsCallback,
                 error -> fsExistsError(storagePath, error));
     }
 
+    @Override
+    protected CompletionStage<FileStat> fsStat(String storagePath, String dirPath, IExecutionContext ctx) {
+
+        // Storage root is always a directory, use the regular checks
+        if (storagePath.isEmpty() || storagePath.endsWith(BACKSLASH))
+            return super.fsStat(storagePath, dirPath, ctx);
+
+        var blobName = usePrefix(storagePath);
+        var dirPrefix = usePrefix(dirPath);
+
+        // A single hierarchy listing returns the blob itself (if it exists)
+        // and the virtual directory (if there is one) in the same page
+
+        var listDetails = new BlobListDetails()
+                .setRetrieveMetadata(true);
+
+        var listOptions = new ListBlobsOptions()
+                .setPrefix(blobName)
+                .setDetails(listDetails);
+
+        var listCall = containerClient(ctx).listBlobsByHierarchy(BACKSLASH, listOptions).byPage().next();
+
+        // The listing is sent directly, so it needs to go through the request limit like other metadata calls
+
+        return requestLimiter.limitRequest(ctx, RequestClass.METADATA, () -> handle(listCall, ctx,
+                page -> page,
+                error -> errors.handleException("STAT", storagePath, error)))
+                .thenCompose(page -> fsStatCallback(storagePath, dirPath, blobName, dirPrefix, page, ctx));
+    }
+
+    private CompletionStage<FileStat> fsStatCallback(
+            String storagePath, String dirPath, String blobName, String dirPrefix,
+            PagedResponse<BlobItem> page, IExecutionContext ctx) {
+
+        if (page == null)
+            return CompletableFuture.completedFuture(null);
+
+        for (var blob : page.getValue()) {
+            if (Boolean.TRUE.equals(blob.isPrefix()) && blob.getName().equals(dirPrefix))
+                return requestLimiter.limitRequest(ctx, RequestClass.METADATA, () -> fsGetDirInfo(dirPath, ctx));
+        }
+
+        for (var blob : page.getValue()) {
+            if (!Boolean.TRUE.equals(blob.isPrefix()) && blob.getName().equals(blobName))
+                return CompletableFuture.completedFuture(buildFileStat(blob.getName(), blob.getProperties()));
+        }
+
+        // Very large numbers of sibling blobs with the same prefix can push the match onto a later page
+        if (page.getContinuationToken() != null)
+            return super.fsStat(storagePath, dirPath, ctx);
+
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     protected CompletionStage<FileStat> fsGetFileInfo(String storagePath, IExecutionContext ctx) {
 
         var blobName = usePrefix(storagePath);
-        var blobClient = containerClient.getBlobAsyncClient(blobName);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(blobName);
 
         var propertiesCall = blobClient.getProperties();
 
@@ -312,7 +406,7 @@ public class AzureBlobStorage extends CommonFileStorage {
     }
 
     @Override
-    protected CompletionStage<List<FileStat>> fsListContents(String storagePath, String startAfter, int maxKeys, boolean recursive, IExecutionContext ctx) {
+    protected CompletionStage<FileListing> fsListContents(String storagePath, String pageToken, int maxKeys, boolean recursive, IExecutionContext ctx) {
 
         var dirPrefix = usePrefix(storagePath);
 
@@ -324,25 +418,35 @@ public class AzureBlobStorage extends CommonFileStorage {
                 .setMaxResultsPerPage(maxKeys)
                 .setDetails(listDetails);
 
-        var listCall = recursive
-                ? containerClient.listBlobs(listOptions).byPage().next()
-                : containerClient.listBlobsByHierarchy(dirPrefix, listOptions).byPage().next();
+        var listFlux = recursive
+                ? containerClient(ctx).listBlobs(listOptions)
+                : containerClient(ctx).listBlobsByHierarchy(BACKSLASH, listOptions);
 
-        var excludeKey = startAfter != null
-                ? startAfter : dirPrefix;
+        // Continuation tokens are passed straight through to / from the Azure API
 
-        return handle(listCall, ctx,
-                page -> fsListContentsCallback(page, excludeKey),
-                error -> fsListContentsError(storagePath, error));
+        var listCall = pageToken != null
+                ? listFlux.byPage(pageToken, maxKeys).next()
+                : listFlux.byPage(maxKeys).next();
+
+        return handle(listCall, ctx, page -> page, error -> fsListContentsError(storagePath, error))
+                .thenApply(page -> fsListContentsCallback(page, dirPrefix));
     }
 
-    private List<FileStat> fsListContentsCallback(PagedResponse<BlobItem> page, String excludeKey) {
+    private FileListing fsListContentsCallback(PagedResponse<BlobItem> page, String excludeKey) {
+
+        // An empty result set may not produce a page at all
+        if (page == null)
+            return new FileListing(List.of(), null);
 
-        return page.getValue()
+        var entries = page.getValue()
                 .stream()
                 .filter(blob -> ! blob.getName().equals(excludeKey))
-                .map(blob -> buildFileStat(blob.getName(), blob.getProperties()))
+                .map(blob -> Boolean.TRUE.equals(blob.isPrefix())
+                        ? buildDirStat(blob.getName())
+                        : buildFileStat(blob.getName(), blob.getProperties()))
                 .collect(Collectors.toList());
+
+        return new FileListing(entries, page.getContinuationToken());
     }
 
     private ETrac fsListContentsError(String storagePath, Throwable error) {
@@ -427,7 +531,7 @@ public class AzureBlobStorage extends CommonFileStorage {
 
         var dirPrefix = usePrefix(storagePath);
 
-        var blobClient = containerClient.getBlobAsyncClient(dirPrefix);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(dirPrefix);
         var blobData = BinaryData.fromBytes(new byte[0]);
 
         var uploadCall = blobClient.upload(blobData, ALWAYS_OVERWRITE);
@@ -444,7 +548,7 @@ public class AzureBlobStorage extends CommonFileStorage {
     protected CompletionStage<Void> fsDeleteFile(String storagePath, IExecutionContext ctx) {
 
         var blobName = usePrefix(storagePath);
-        var blobClient = containerClient.getBlobAsyncClient(blobName);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(blobName);
 
         var deleteCall = blobClient.delete();
 
@@ -473,8 +577,8 @@ public class AzureBlobStorage extends CommonFileStorage {
                 .setMaxResultsPerPage(DELETE_BATCH_SIZE);
 
         var listCall = continuation != null
-                ? containerClient.listBlobs(listOptions, continuation).byPage()
-                : containerClient.listBlobs(listOptions).byPage();
+                ? containerClient(ctx).listBlobs(listOptions, continuation).byPage()
+                : containerClient(ctx).listBlobs(listOptions).byPage();
 
         var scheduler = AzureScheduling.schedulerFor(ctx.eventLoopExecutor());
 
@@ -499,11 +603,11 @@ public class AzureBlobStorage extends CommonFileStorage {
         var blobUrls = blobs.getValue()
                 .stream()
                 .map(BlobItem::getName)
-                .map(containerClient::getBlobAsyncClient)
+                .map(containerClient(ctx)::getBlobAsyncClient)
                 .map(BlobAsyncClient::getBlobUrl)
                 .collect(Collectors.toList());
 
-        var deleteCall = batchClient.deleteBlobs(blobUrls, DeleteSnapshotsOptionType.INCLUDE).collectList();
+        var deleteCall = batchClient(ctx).deleteBlobs(blobUrls, DeleteSnapshotsOptionType.INCLUDE).collectList();
 
         if (blobs.getContinuationToken() == null)
             return deleteCall.mapNotNull(result -> null);
@@ -524,7 +628,7 @@ public class AzureBlobStorage extends CommonFileStorage {
     protected CompletionStage<ArrowBuf> fsReadChunk(String storagePath, long offset, int size, IDataContext ctx) {
 
         var blobName = usePrefix(storagePath);
-        var blobClient = containerClient.getBlobAsyncClient(blobName);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(blobName);
 
         var readStream = new AzureBlobReader(
                 blobClient, ctx, errors,
@@ -559,21 +663,64 @@ public class AzureBlobStorage extends CommonFileStorage {
     }
 
     @Override
-    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String storagePath, IDataContext ctx) {
+    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String storagePath, long offset, long limit, IDataContext ctx) {
 
         var blobName = usePrefix(storagePath);
-        var blobClient = containerClient.getBlobAsyncClient(blobName);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(blobName);
 
-        return new AzureBlobReader(blobClient, ctx, errors, storageKey, storagePath);
+        return new AzureBlobReader(blobClient, ctx, errors, storageKey, storagePath, offset, limit);
     }
 
     @Override
     protected Flow.Subscriber<ArrowBuf> fsOpenOutputStream(String storagePath, CompletableFuture<Long> signal, IDataContext ctx) {
 
         var blobName = usePrefix(storagePath);
-        var blobClient = containerClient.getBlobAsyncClient(blobName);
+        var blobClient = containerClient(ctx).getBlobAsyncClient(blobName);
 
-        return new AzureBlobWriter(blobClient, signal, ctx);
+        return new AzureBlobWriter(
+                storageKey, storagePath, blobClient, requestLimiter,
+                uploadBlockSize, uploadConcurrency, signal, ctx);
+    }
+
+    @Override
+    protected CompletionStage<Long> fsCopyFile(String sourcePath, String targetPath, long size, IDataContext ctx) {
+
+        // Copy Blob within the same account is authorized by the credentials for the target,
+        // copy-from-URL would need a SAS for the source. Copies in the same account complete
+        // on the server, polling waits for copies that the service runs in the background.
+
+        var sourceClient = containerClient(ctx).getBlobAsyncClient(usePrefix(sourcePath));
+        var targetClient = containerClient(ctx).getBlobAsyncClient(usePrefix(targetPath));
+
+        var copyCall = targetClient
+                .beginCopy(sourceClient.getBlobUrl(), COPY_POLL_INTERVAL)
+                .last()
+                .flatMap(response -> {
+
+                    if (response.getStatus() != LongRunningOperationStatus.SUCCESSFULLY_COMPLETED) {
+                        var detail = String.format("copy status = %s", response.getValue().getCopyStatus());
+                        return Mono.error(errors.explicitError(COPY_OPERATION, sourcePath, IO_ERROR, detail));
+                    }
+
+                    return Mono.just(size);
+                });
+
+        return handle(copyCall, ctx, copySize -> copySize, error -> fsCopyFileError(sourcePath, error));
+    }
+
+    private ETrac fsCopyFileError(String storagePath, Throwable error) {
+
+        return errors.handleException(COPY_OPERATION, storagePath, error);
+    }
+
+    private BlobContainerAsyncClient containerClient(IExecutionContext ctx) {
+
+        return clients.client(ctx).containerClient;
+    }
+
+    private BlobBatchAsyncClient batchClient(IExecutionContext ctx) {
+
+        return clients.client(ctx).batchClient;
     }
 
     private String normalizePrefix(String prefix) {
@@ -650,4 +797,15 @@ public class AzureBlobStorage extends CommonFileStorage {
                 .onErrorMap(errorHandler)
                 .toFuture();
     }
+
+    private static class AzureClients {
+
+        final BlobContainerAsyncClient containerClient;
+        final BlobBatchAsyncClient batchClient;
+
+        AzureClients(BlobContainerAsyncClient containerClient, BlobBatchAsyncClient batchClient) {
+            this.containerClient = containerClient;
+            this.batchClient = batchClient;
+        }
+    }
 }
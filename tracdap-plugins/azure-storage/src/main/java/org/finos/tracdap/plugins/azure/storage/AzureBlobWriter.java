@@ -18,152 +18,301 @@
 package org.finos.tracdap.plugins.azure.storage;
 
 import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.storage.IRequestLimiter;
 
+import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobAsyncClient;
-import com.azure.storage.blob.models.BlockBlobItem;
-import com.azure.storage.blob.models.ParallelTransferOptions;
-import org.reactivestreams.Processor;
-import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
+import com.azure.storage.blob.specialized.BlockBlobAsyncClient;
 import reactor.core.publisher.Flux;
 
 import org.apache.arrow.memory.ArrowBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Flow;
 
+import static org.finos.tracdap.common.storage.CommonFileStorage.WRITE_OPERATION;
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
 
+
+/**
+ * Write a blob as a series of explicitly staged blocks, then commit the block list.
+ *
+ * <p>Incoming chunks are gathered into blocks of (at least) the configured block size.
+ * Each block is staged as soon as it is full, with up to the configured number of blocks
+ * staging at once. More data is only requested while there is room for another block,
+ * so memory use is bounded by block size * concurrency. Blobs smaller than one block are
+ * sent with a single upload.</p>
+ *
+ * <p>Uncommitted blocks are never visible, if the write fails they are discarded by the
+ * storage service. Each request goes through the request limiter of the storage, so throttled
+ * blocks are retried and uploads share the same adaptive limit as other requests.</p>
+ */
 public class AzureBlobWriter implements Flow.Subscriber<ArrowBuf> {
 
+    public static final int DEFAULT_BLOCK_SIZE = 8 * 1024 * 1024;  // 8 MB
+    public static final int DEFAULT_CONCURRENCY = 4;
+
     private static final boolean ALWAYS_OVERWRITE = true;
 
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String storageKey;
+    private final String storagePath;
     private final BlobAsyncClient blobClient;
+    private final BlockBlobAsyncClient blockClient;
+    private final IRequestLimiter requestLimiter;
     private final CompletableFuture<Long> signal;
     private final IDataContext dataContext;
 
-    private FluxTransformer fluxTransformer;
-    private long nBytes;
+    private final long blockSize;
+    private final int concurrency;
 
-    AzureBlobWriter(BlobAsyncClient blobClient, CompletableFuture<Long> signal, IDataContext dataContext) {
+    // Block IDs must all be the same length within a blob, a unique prefix avoids clashes with other writers
+    private final String blockIdPrefix;
+    private final List<String> blockIds;
 
+    private Flow.Subscription subscription;
+
+    private final List<ArrowBuf> buffer = new ArrayList<>();
+    private final Queue<ByteBuffer> pendingBlocks = new ArrayDeque<>();
+    private long bufferedBytes;
+    private long nBytes;
+    private int blocksInFlight;
+    private boolean requestPending;
+
+    private boolean gotComplete;
+    private boolean gotError;
+
+    AzureBlobWriter(
+            String storageKey, String storagePath,
+            BlobAsyncClient blobClient,
+            IRequestLimiter requestLimiter,
+            long blockSize, int concurrency,
+            CompletableFuture<Long> signal,
+            IDataContext dataContext) {
+
+        this.storageKey = storageKey;
+        this.storagePath = storagePath;
         this.blobClient = blobClient;
+        this.blockClient = blobClient.getBlockBlobAsyncClient();
+        this.requestLimiter = requestLimiter;
         this.signal = signal;
         this.dataContext = dataContext;
-    }
 
-    @Override
-    public void onSubscribe(Flow.Subscription subscription) {
+        this.blockSize = blockSize;
+        this.concurrency = concurrency;
+
+        this.blockIdPrefix = UUID.randomUUID().toString();
+        this.blockIds = new ArrayList<>();
+    }
 
-        fluxTransformer = new FluxTransformer();
+    AzureBlobWriter(
+            String storageKey, String storagePath,
+            BlobAsyncClient blobClient,
+            IRequestLimiter requestLimiter,
+            CompletableFuture<Long> signal,
+            IDataContext dataContext) {
 
-        var fluxSubscription = new FluxSubscription(subscription);
-        fluxTransformer.onSubscribe(fluxSubscription);
+        this(storageKey, storagePath, blobClient, requestLimiter, DEFAULT_BLOCK_SIZE, DEFAULT_CONCURRENCY, signal, dataContext);
+    }
 
-        // Using default transfer options
-        var options = new ParallelTransferOptions();
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
 
-        var scheduler = AzureScheduling.schedulerFor(dataContext.eventLoopExecutor());
+        this.subscription = subscription;
 
-        blobClient.upload(Flux.from(fluxTransformer), options, ALWAYS_OVERWRITE)
-                .publishOn(scheduler)
-                .subscribe(this::onSuccess, this::onFailure);
+        dataContext.eventLoopExecutor().submit(() -> subscription.request(1));
     }
 
     @Override
     public void onNext(ArrowBuf item) {
-        nBytes += item.readableBytes();
-        fluxTransformer.onNext(item);
+
+        if (gotError) {
+            item.close();
+            return;
+        }
+
+        buffer.add(item);
+        bufferedBytes += item.readableBytes();
+
+        if (bufferedBytes >= blockSize)
+            stageBlock();
+
+        requestMore();
     }
 
     @Override
     public void onError(Throwable error) {
 
         // onError() can be called before onSubscribe() in some cases
-        // In this case, pass the error straight to the callback signal
+        // Either way, pass the error straight to the callback signal
+
+        gotError = true;
+        pendingBlocks.clear();
+        releaseBuffer();
 
-        if (fluxTransformer != null)
-            fluxTransformer.onError(error);
-        else
-            signal.completeExceptionally(error);
+        signal.completeExceptionally(error);
     }
 
     @Override
     public void onComplete() {
-        fluxTransformer.onComplete();
+
+        if (gotError)
+            return;
+
+        gotComplete = true;
+
+        // Small blobs, send with a single upload
+        if (blockIds.isEmpty() && pendingBlocks.isEmpty()) {
+            uploadBlob();
+            return;
+        }
+
+        if (bufferedBytes > 0)
+            stageBlock();
+
+        checkCommit();
     }
 
-    private void onSuccess(BlockBlobItem blob) {
-        signal.complete(nBytes);
+    private void requestMore() {
+
+        if (gotComplete || gotError)
+            return;
+
+        if (blocksInFlight + pendingBlocks.size() < concurrency) {
+            requestPending = false;
+            subscription.request(1);
+        }
+        else {
+            requestPending = true;
+        }
     }
 
-    private void onFailure(Throwable error) {
-        signal.completeExceptionally(error);
+    private void stageBlock() {
+
+        pendingBlocks.add(Bytes.readFromBuffer(buffer));
+        releaseBuffer();
+
+        sendPendingBlocks();
     }
 
-    private static class FluxTransformer implements Processor<ArrowBuf, ByteBuffer> {
+    private void sendPendingBlocks() {
+
+        while (!pendingBlocks.isEmpty() && blocksInFlight < concurrency) {
 
-        private Subscriber<? super ByteBuffer> subscriber;
-        private Subscription subscription;
+            var content = pendingBlocks.remove();
+            var contentLength = (long) content.remaining();
+            var blockId = blockId(blockIds.size());
 
-        @Override
-        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            blockIds.add(blockId);
+            blocksInFlight += 1;
 
-            this.subscriber = subscriber;
+            // A new body is needed for each attempt, in case the block is throttled and retried
+            var staged = requestLimiter.limitRequest(dataContext, RequestClass.TRANSFER, () -> dataContext.toContext(
+                    blockClient.stageBlock(blockId, Flux.just(content.duplicate()), contentLength).toFuture()));
 
-            if (subscription != null)
-                subscriber.onSubscribe(subscription);
+            staged.whenComplete((result, error) -> onBlockStaged(contentLength, error));
         }
+    }
+
+    private void onBlockStaged(long contentLength, Throwable error) {
 
-        @Override
-        public void onSubscribe(Subscription subscription) {
+        blocksInFlight -= 1;
 
-            this.subscription = subscription;
+        if (gotError)
+            return;
 
-            if (subscriber != null)
-                subscriber.onSubscribe(subscription);
+        if (error != null) {
+            onUploadError(error);
+            return;
         }
 
-        @Override
-        public void onNext(ArrowBuf arrowBuf) {
+        nBytes += contentLength;
 
-            try (arrowBuf) {  // always release arrow buf
+        sendPendingBlocks();
 
-                var copyBuf = ByteBuffer.allocateDirect((int) arrowBuf.readableBytes());
-                copyBuf.put(arrowBuf.nioBuffer());
-                copyBuf.flip();
+        if (requestPending)
+            requestMore();
 
-                subscriber.onNext(copyBuf);
-            }
-        }
+        checkCommit();
+    }
 
-        @Override
-        public void onError(Throwable error) {
-            subscriber.onError(error);
-        }
+    private void checkCommit() {
 
-        @Override
-        public void onComplete() {
-            subscriber.onComplete();
-        }
+        if (!gotComplete || gotError || blocksInFlight > 0 || !pendingBlocks.isEmpty())
+            return;
+
+        var commit = requestLimiter.limitRequest(dataContext, RequestClass.METADATA, () -> dataContext.toContext(
+                blockClient.commitBlockList(blockIds, ALWAYS_OVERWRITE).toFuture()));
+
+        commit.whenComplete((result, error) -> {
+
+            if (error != null)
+                onUploadError(error);
+            else
+                signal.complete(nBytes);
+        });
     }
 
-    private static class FluxSubscription implements Subscription {
+    private void uploadBlob() {
 
-        private final Flow.Subscription innerSubscription;
+        var content = Bytes.readFromBuffer(buffer);
+        var contentLength = (long) content.remaining();
 
-        FluxSubscription(Flow.Subscription innerSubscription) {
-            this.innerSubscription = innerSubscription;
-        }
+        releaseBuffer();
 
-        @Override
-        public void request(long n) {
-            innerSubscription.request(n);
-        }
+        var upload = requestLimiter.limitRequest(dataContext, RequestClass.TRANSFER, () -> dataContext.toContext(
+                blobClient.upload(BinaryData.fromByteBuffer(content.duplicate()), ALWAYS_OVERWRITE).toFuture()));
 
-        @Override
-        public void cancel() {
-            innerSubscription.cancel();
-        }
+        upload.whenComplete((result, error) -> {
+
+            if (error != null)
+                signal.completeExceptionally(error);
+            else
+                signal.complete(contentLength);
+        });
+    }
+
+    private void onUploadError(Throwable error) {
+
+        if (gotError)
+            return;
+
+        gotError = true;
+
+        log.error("{} {} [{}]: Blob upload failed: {}",
+                WRITE_OPERATION, storageKey, storagePath, error.getMessage(), error);
+
+        if (!gotComplete)
+            subscription.cancel();
+
+        pendingBlocks.clear();
+        releaseBuffer();
+
+        signal.completeExceptionally(error);
+    }
+
+    private String blockId(int blockIndex) {
+
+        var rawId = String.format("%s-%08d", blockIdPrefix, blockIndex);
+        return Base64.getEncoder().encodeToString(rawId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void releaseBuffer() {
+
+        buffer.forEach(ArrowBuf::close);
+        buffer.clear();
+        bufferedBytes = 0;
     }
 }
@@ -17,6 +17,7 @@
 
 package org.finos.tracdap.plugins.azure.storage;
 
+import io.netty.util.concurrent.EventExecutor;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
@@ -36,9 +37,22 @@ public class AzureScheduling {
         if (existingScheduler != null)
             return existingScheduler;
 
-        var newScheduler = Schedulers.fromExecutorService(executor);
+        // Storage clients are bound to the event loop of the request where possible (see EventLoopAffinity)
+        // Then events are already on the right event loop and can be processed without posting a new task
+
+        var newScheduler = executor instanceof EventExecutor
+                ? Schedulers.fromExecutor(task -> runInEventLoop((EventExecutor) executor, task))
+                : Schedulers.fromExecutorService(executor);
         var priorScheduler = SCHEDULERS.putIfAbsent(executor, newScheduler);
 
         return priorScheduler != null ? priorScheduler : newScheduler;
     }
+
+    private static void runInEventLoop(EventExecutor executor, Runnable task) {
+
+        if (executor.inEventLoop())
+            task.run();
+        else
+            executor.execute(task);
+    }
 }
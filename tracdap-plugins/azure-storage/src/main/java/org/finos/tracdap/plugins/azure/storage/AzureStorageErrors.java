@@ -48,4 +48,16 @@ public class AzureStorageErrors extends StorageErrors {
 
         return BLOB_ERROR_CODE_MAP.getOrDefault(error.getErrorCode(), null);
     }
+
+    @Override
+    protected boolean checkThrottling(Throwable error) {
+
+        // Azure responds with 503 ServerBusy (or 500 OperationTimedOut) when account limits are reached
+        if (!(error instanceof BlobStorageException))
+            return false;
+
+        var errorCode = ((BlobStorageException) error).getErrorCode();
+
+        return BlobErrorCode.SERVER_BUSY.equals(errorCode) || BlobErrorCode.OPERATION_TIMED_OUT.equals(errorCode);
+    }
 }
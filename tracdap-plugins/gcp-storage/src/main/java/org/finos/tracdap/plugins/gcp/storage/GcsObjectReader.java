@@ -45,6 +45,12 @@ public class GcsObjectReader extends CommonFileReader {
     private StreamController gcpController;
     private int gcpRequested;
 
+    // Each client request is one attempt, events from an earlier attempt are ignored after a resume
+    private int attempt;
+    private long position;
+    private long generation;
+    private boolean sizeReported;
+
 
     GcsObjectReader(
             StorageClient storageClient, IDataContext dataContext, StorageErrors errors,
@@ -93,20 +99,48 @@ public class GcsObjectReader extends CommonFileReader {
     @Override
     protected void clientStart() {
 
+        sendRequest();
+    }
+
+    @Override
+    protected boolean supportsResume() {
+        return true;
+    }
+
+    @Override
+    protected void clientResume(long position) {
+
+        if (gcpController != null)
+            gcpController.cancel();
+
+        this.attempt += 1;
+        this.position = position;
+        this.gcpController = null;
+        this.gcpRequested = 0;
+
+        sendRequest();
+    }
+
+    private void sendRequest() {
+
+        // Limit = 0 reads to the end of the object, a resumed read starts after the last byte received
         var request = ReadObjectRequest.newBuilder()
                 .setBucket(bucketName.toString())
                 .setObject(objectKey)
-                .setReadOffset(offset)
-                .setReadLimit(limit)
-                .build();
+                .setReadOffset(offset + position)
+                .setReadLimit(limit > 0 ? limit - position : 0);
+
+        // Make sure a resumed read gets the same version of the object
+        if (generation != 0)
+            request.setIfGenerationMatch(generation);
 
         var readCall = storageClient.readObjectCallable();
-        var readStream = new ApiResponseStream();
+        var readStream = new ApiResponseStream(attempt);
 
         var callOptions = CallOptions.DEFAULT.withExecutor(dataContext.eventLoopExecutor());
         var callCtx = GrpcCallContext.createDefault().withCallOptions(callOptions);
 
-        readCall.call(request, readStream, callCtx);
+        readCall.call(request.build(), readStream, callCtx);
     }
 
     @Override
@@ -127,11 +161,32 @@ public class GcsObjectReader extends CommonFileReader {
         }
     }
 
+    @Override
+    protected boolean reportsObjectSize() {
+        return true;
+    }
+
     private class ApiResponseStream extends StateCheckingResponseObserver<ReadObjectResponse> {
 
+        // Callbacks run on the event loop (set in the call options), so the attempt can be checked directly
+        private final int attempt;
+
+        ApiResponseStream(int attempt) {
+            this.attempt = attempt;
+        }
+
+        private boolean isStale() {
+            return attempt != GcsObjectReader.this.attempt;
+        }
+
         @Override
         protected void onStartImpl(StreamController controller) {
 
+            if (isStale()) {
+                controller.cancel();
+                return;
+            }
+
             gcpController = controller;
             gcpController.disableAutoInboundFlowControl();
 
@@ -144,6 +199,22 @@ public class GcsObjectReader extends CommonFileReader {
         @Override
         protected void onResponseImpl(ReadObjectResponse response) {
 
+            if (isStale())
+                return;
+
+            // Object metadata is only sent with the first response in the stream
+            // Keep the generation from the first attempt, so a resumed read gets the same version
+            if (response.hasMetadata()) {
+
+                if (generation == 0)
+                    generation = response.getMetadata().getGeneration();
+
+                if (!sizeReported) {
+                    sizeReported = true;
+                    GcsObjectReader.this.onObjectSize(response.getMetadata().getSize());
+                }
+            }
+
             var data = response.getChecksummedData().getContent();
 
             GcsObjectReader.this.onChunk(data.asReadOnlyByteBuffer());
@@ -152,13 +223,15 @@ public class GcsObjectReader extends CommonFileReader {
         @Override
         protected void onErrorImpl(Throwable t) {
 
-            GcsObjectReader.this.onError(t);
+            if (!isStale())
+                GcsObjectReader.this.onError(t);
         }
 
         @Override
         protected void onCompleteImpl() {
 
-            GcsObjectReader.this.onComplete();
+            if (!isStale())
+                GcsObjectReader.this.onComplete();
         }
     }
 }
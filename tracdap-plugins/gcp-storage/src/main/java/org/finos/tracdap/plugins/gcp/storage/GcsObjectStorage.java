@@ -24,6 +24,7 @@ import org.finos.tracdap.common.exception.EStartup;
 import org.finos.tracdap.common.exception.EStorageRequest;
 import org.finos.tracdap.common.exception.EUnexpected;
 import org.finos.tracdap.common.storage.CommonFileStorage;
+import org.finos.tracdap.common.storage.FileListing;
 import org.finos.tracdap.common.storage.FileStat;
 import org.finos.tracdap.common.storage.FileType;
 
@@ -53,6 +54,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.*;
 
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.OBJECT_SIZE_TOO_SMALL;
 import static org.finos.tracdap.common.storage.StorageErrors.ExplicitError.UNKNOWN_ERROR;
 
@@ -261,6 +263,68 @@ public class GcsObjectStorage extends CommonFileStorage {
         return result.getObjectsCount() > 0;
     }
 
+    @Override
+    protected CompletionStage<FileStat> fsStat(String storagePath, String dirPath, IExecutionContext ctx) {
+
+        // Storage root is always a directory, use the regular checks
+        if (storagePath.isEmpty() || storagePath.endsWith(BACKSLASH))
+            return super.fsStat(storagePath, dirPath, ctx);
+
+        var objectKey = usePrefix(storagePath);
+
+        // A single listing with a delimiter returns the object itself (if it exists)
+        // and the directory prefix (if there is one) in the same response
+
+        var request = ListObjectsRequest.newBuilder()
+                .setParent(bucketName.toString())
+                .setPrefix(objectKey)
+                .setDelimiter(BACKSLASH)
+                .build();
+
+        var apiCall = storageClient.listObjectsCallable();
+
+        // The listing is sent directly, so it needs to go through the request limit like other metadata calls
+
+        var response = requestLimiter.limitRequest(ctx, RequestClass.METADATA, () ->
+                GcpUtils.unaryCall(apiCall, request, ctx.eventLoopExecutor()));
+
+        return response
+                .handle((result, error) -> fsStatCallback(storagePath, result, error))
+                .thenCompose(result -> fsStatResult(storagePath, dirPath, objectKey, result, ctx));
+    }
+
+    private ListObjectsResponse fsStatCallback(String storagePath, ListObjectsResponse result, Throwable error) {
+
+        if (error != null) {
+            throw errors.handleException("STAT", storagePath, error);
+        }
+
+        return result;
+    }
+
+    private CompletionStage<FileStat> fsStatResult(
+            String storagePath, String dirPath, String objectKey,
+            ListObjectsResponse result, IExecutionContext ctx) {
+
+        var dirPrefix = objectKey + BACKSLASH;
+
+        for (var prefix : result.getPrefixesList()) {
+            if (prefix.equals(dirPrefix))
+                return requestLimiter.limitRequest(ctx, RequestClass.METADATA, () -> fsGetDirInfo(dirPath, ctx));
+        }
+
+        for (var object : result.getObjectsList()) {
+            if (object.getName().equals(objectKey))
+                return CompletableFuture.completedFuture(buildFileStat(object));
+        }
+
+        // Very large numbers of sibling keys with the same prefix can push the match onto a later page
+        if (!result.getNextPageToken().isEmpty())
+            return super.fsStat(storagePath, dirPath, ctx);
+
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     protected CompletionStage<FileStat> fsGetFileInfo(String storagePath, IExecutionContext ctx) {
 
@@ -298,7 +362,7 @@ public class GcsObjectStorage extends CommonFileStorage {
     }
 
     @Override
-    protected CompletionStage<List<FileStat>> fsListContents(String prefix, String startAfter, int maxKeys, boolean recursive, IExecutionContext ctx) {
+    protected CompletionStage<FileListing> fsListContents(String prefix, String pageToken, int maxKeys, boolean recursive, IExecutionContext ctx) {
 
         var absolutePrefix = usePrefix(prefix);
 
@@ -306,11 +370,11 @@ public class GcsObjectStorage extends CommonFileStorage {
                 .setParent(bucketName.toString())
                 .setPrefix(absolutePrefix);
 
-        if (startAfter != null)
-            request.setLexicographicStart(startAfter);
+        if (pageToken != null)
+            request.setPageToken(pageToken);
 
         if (maxKeys > 0)
-            request.setPageSize(maxKeys + 1);
+            request.setPageSize(maxKeys);
 
         if (!recursive)
             request = request.setDelimiter(BACKSLASH);
@@ -319,34 +383,34 @@ public class GcsObjectStorage extends CommonFileStorage {
 
         var response = GcpUtils.unaryCall(apiCall, request.build(), ctx.eventLoopExecutor());
 
-        var excludeKey = startAfter != null && startAfter.compareTo(absolutePrefix) > 0
-                ? startAfter
-                : absolutePrefix;
-
-        return response.handle((result, error) -> fsListContentsCallback(prefix, excludeKey, result, error));
+        return response.handle((result, error) -> fsListContentsCallback(prefix, absolutePrefix, result, error));
     }
 
-    private List<FileStat> fsListContentsCallback(String storagePath, String excludeKey, ListObjectsResponse result, Throwable error) {
+    private FileListing fsListContentsCallback(String storagePath, String excludeKey, ListObjectsResponse result, Throwable error) {
 
         if (error != null) {
             throw errors.handleException("LS", storagePath, error);
         }
 
-        var response = new ArrayList<FileStat>(result.getObjectsCount() + result.getPrefixesCount());
+        var entries = new ArrayList<FileStat>(result.getObjectsCount() + result.getPrefixesCount());
 
         for (var object: result.getObjectsList()) {
             if (!object.getName().equals(excludeKey)) {
                 var stat = buildFileStat(object);
-                response.add(stat);
+                entries.add(stat);
             }
         }
 
         for (var prefix : result.getPrefixesList()) {
             var stat = buildDirStat(prefix);
-            response.add(stat);
+            entries.add(stat);
         }
 
-        return response;
+        var nextPageToken = result.getNextPageToken().isEmpty()
+                ? null
+                : result.getNextPageToken();
+
+        return new FileListing(entries, nextPageToken);
     }
 
     private FileStat buildFileStat(Object object) {
@@ -591,11 +655,14 @@ public class GcsObjectStorage extends CommonFileStorage {
     }
 
     @Override
-    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String objectKey, IDataContext ctx) {
+    protected Flow.Publisher<ArrowBuf> fsOpenInputStream(String objectKey, long offset, long limit, IDataContext ctx) {
 
         var absoluteKey = usePrefix(objectKey);
 
-        return new GcsObjectReader(storageClient, ctx, errors, storageKey, objectKey, bucketName, absoluteKey);
+        return new GcsObjectReader(
+                storageClient, ctx, errors, storageKey, objectKey,
+                bucketName, absoluteKey,
+                offset, limit);
     }
 
     @Override
@@ -603,7 +670,52 @@ public class GcsObjectStorage extends CommonFileStorage {
 
         var absoluteKey = usePrefix(objectKey);
 
-        return new GcsObjectWriter(storageClient, ctx, bucketName, absoluteKey, signal);
+        return new GcsObjectWriter(storageClient, requestLimiter, ctx, bucketName, absoluteKey, signal);
+    }
+
+    @Override
+    protected CompletionStage<Long> fsCopyFile(String sourceKey, String targetKey, long size, IDataContext ctx) {
+
+        var request = RewriteObjectRequest.newBuilder()
+                .setSourceBucket(bucketName.toString())
+                .setSourceObject(usePrefix(sourceKey))
+                .setDestinationBucket(bucketName.toString())
+                .setDestinationName(usePrefix(targetKey))
+                .build();
+
+        return fsCopyFileRewrite(sourceKey, request, ctx);
+    }
+
+    private CompletionStage<Long> fsCopyFileRewrite(String sourceKey, RewriteObjectRequest request, IExecutionContext ctx) {
+
+        // Rewrite runs on the server, large objects can need several calls
+        // Each call returns a token, which is sent back to continue the rewrite
+
+        var apiCall = storageClient.rewriteObjectCallable();
+
+        var response = GcpUtils.unaryCall(apiCall, request, ctx.eventLoopExecutor());
+
+        return response
+                .handle((result, error) -> fsCopyFileCallback(sourceKey, result, error))
+                .thenCompose(result -> {
+
+                    if (result.getDone())
+                        return CompletableFuture.completedFuture(result.getObjectSize());
+
+                    var nextRequest = request.toBuilder()
+                            .setRewriteToken(result.getRewriteToken())
+                            .build();
+
+                    return fsCopyFileRewrite(sourceKey, nextRequest, ctx);
+                });
+    }
+
+    private RewriteResponse fsCopyFileCallback(String sourceKey, RewriteResponse result, Throwable error) {
+
+        if (error != null)
+            throw errors.handleException(COPY_OPERATION, sourceKey, error);
+
+        return result;
     }
 
     private String normalizePrefix(String prefix) {
@@ -18,12 +18,17 @@
 package org.finos.tracdap.plugins.gcp.storage;
 
 import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.storage.IRequestLimiter;
 
 import com.google.api.gax.grpc.GrpcCallContext;
+import com.google.api.gax.rpc.ApiException;
 import com.google.api.gax.rpc.ApiStreamObserver;
 import com.google.api.gax.rpc.CancelledException;
 import com.google.api.gax.rpc.ClientStreamingCallable;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.api.gax.rpc.UnaryCallable;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.storage.v2.*;
 import com.google.storage.v2.Object;
 import io.grpc.CallOptions;
@@ -32,11 +37,16 @@ import org.apache.arrow.memory.ArrowBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Flow;
 
+import static org.finos.tracdap.common.storage.IRequestLimiter.RequestClass;
+
 
 public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
 
@@ -47,26 +57,57 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
     private final static long MAX_CHUNK_SIZE = 2097152;  // 2 MB
     private final static long MIN_CHUNK_SIZE = 1048576;  // 1 MB
 
+    // Writes use a resumable write session, sent as a series of write streams (segments)
+    // Closing each segment tells us how much data GCS has persisted, which can then be released
+    // If a segment fails, a new stream resumes from the last persisted offset
+    // Starting the session and querying its status go through the request limiter for the storage
+
+    private final static long SEGMENT_SIZE = 16 * 1048576;  // 16 MB
+    private final static int MAX_RESUME_ATTEMPTS = 3;
+
+    private final static Set<StatusCode.Code> RESUMABLE_ERRORS = Set.of(
+            StatusCode.Code.UNAVAILABLE,
+            StatusCode.Code.DEADLINE_EXCEEDED,
+            StatusCode.Code.INTERNAL,
+            StatusCode.Code.ABORTED);
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final StorageClient storageClient;
+    private final IRequestLimiter requestLimiter;
     private final IDataContext dataContext;
     private final CompletableFuture<Long> signal;
 
     private final WriteObjectSpec gcsObjectSpec;
+    private String uploadId;
     private ApiStreamObserver<WriteObjectRequest> gcsWriteStream;
 
     private Flow.Subscription subscription;
+    private boolean requestOutstanding;
+
+    // Arrow buffers are wrapped (not copied) into the request stream
+    // They are held until GCS reports the bytes as persisted, then released
+    private final Queue<ArrowBuf> retainedBuffers;
+    private long retainedOffset;
+
     private ByteString pendingChunk;
+    private long segmentStart;
     private long bytesSent;
+    private long bytesReceived;
+    private int resumeAttempts;
+
+    private boolean gotComplete;
+    private boolean gotFailure;
+    private boolean uploadCancelled;
     private Throwable upstreamError;
 
     GcsObjectWriter(
-            StorageClient storageClient, IDataContext dataContext,
+            StorageClient storageClient, IRequestLimiter requestLimiter, IDataContext dataContext,
             BucketName bucketName, String objectKey,
             CompletableFuture<Long> signal) {
 
         this.storageClient = storageClient;
+        this.requestLimiter = requestLimiter;
         this.dataContext = dataContext;
         this.signal = signal;
 
@@ -76,6 +117,7 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
                 .setName(objectKey))
                 .build();
 
+        this.retainedBuffers = new ArrayDeque<>();
         this.pendingChunk = ByteString.empty();
     }
 
@@ -87,64 +129,40 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
         else
             this.subscription = subscription;
 
-        var callOptions = CallOptions.DEFAULT
-                .withExecutor(dataContext.eventLoopExecutor());
-
-        var callCtx = GrpcCallContext.createDefault()
-                .withCallOptions(callOptions);
-
-        var apiCall = addMissingRequestParams(storageClient.writeObjectCallable());
-
-        var gcsResponseStream = new GcpUnaryResponse<WriteObjectResponse>();
-        this.gcsWriteStream = apiCall.clientStreamingCall(gcsResponseStream, callCtx);
-        gcsResponseStream.getResult().whenComplete(this::writeCompleteHandler);
-
-        var initialRequest = WriteObjectRequest.newBuilder()
+        var request = StartResumableWriteRequest.newBuilder()
                 .setWriteObjectSpec(gcsObjectSpec)
                 .build();
 
-        gcsWriteStream.onNext(initialRequest);
+        var apiCall = addMissingRequestParams(storageClient.startResumableWriteCallable());
+        var response = requestLimiter.limitRequest(dataContext, RequestClass.METADATA, () ->
+                GcpUtils.unaryCall(apiCall, request, dataContext.eventLoopExecutor()));
 
-        subscription.request(2);
+        response.whenComplete(this::uploadStartedHandler);
     }
 
     @Override
     public void onNext(ArrowBuf item) {
 
-        try (item) {  // auto-release buffer content
-
-            var buffer = item.nioBuffer();
-
-            while (buffer.remaining() > 0) {
+        requestOutstanding = false;
 
-                var chunkRemaining = MAX_CHUNK_SIZE - pendingChunk.size();
-                var nBytes = (int) Math.min(buffer.remaining(), chunkRemaining);
-
-                // There is no easy way to release bytes once the chunk is written to the stream
-                // So we have to copy and let ByteString handle cleanup, which relies on the Java GC
-
-                var protoBytes = ByteString.copyFrom(buffer, nBytes);
-                pendingChunk = pendingChunk.concat(protoBytes);
-
-                if (pendingChunk.size() >= MIN_CHUNK_SIZE) {
-
-                    var data = ChecksummedData.newBuilder()
-                            .setContent(protoBytes);
+        if (upstreamError != null || gotFailure) {
+            item.close();
+            return;
+        }
 
-                    var request = WriteObjectRequest.newBuilder()
-                            .setChecksummedData(data)
-                            .setWriteOffset(bytesSent)
-                            .build();
+        retainedBuffers.add(item);
+        bytesReceived += item.readableBytes();
 
-                    gcsWriteStream.onNext(request);
+        // If the stream is being resumed, retained bytes are sent when the new segment opens
+        if (gcsWriteStream == null)
+            return;
 
-                    bytesSent += pendingChunk.size();
-                    pendingChunk = ByteString.empty();
-                }
-            }
+        queueBytes(item, 0);
 
-            subscription.request(1);
-        }
+        if (bytesSent - segmentStart >= SEGMENT_SIZE)
+            closeSegment();
+        else
+            requestMore();
     }
 
     @Override
@@ -154,7 +172,7 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
         // It is not an error that occurred in the storage client
 
         // If the GCS stream is open, we can pass the onError signal into the stream
-        // This will cause the stream to cancel and call back the write complete handler
+        // This will cause the stream to cancel and call back the segment complete handler
         // Otherwise, we have to notify the write complete signal directly
 
         // Only one error can be sent down the pipe and ultimately get passed back to the client
@@ -164,12 +182,16 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
 
             upstreamError = throwable;
 
-            // onError() can be called before onSubscribe() if there was a problem during subscription
-
-            if (gcsWriteStream != null)
+            if (gcsWriteStream != null) {
                 gcsWriteStream.onError(throwable);
-            else
+                gcsWriteStream = null;
+            }
+            // Before the upload starts, nothing is held and the upload started handler will cancel
+            // If a segment is closing or resuming, its handler will clean up once the stream is released
+
+            else if (uploadId == null) {
                 signal.completeExceptionally(throwable);
+            }
         }
         else {
 
@@ -181,47 +203,292 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
     @Override
     public void onComplete() {
 
+        gotComplete = true;
+
+        // If a segment is closing or resuming, the write is finished when the next segment opens
+        if (gcsWriteStream != null)
+            finishWrite();
+    }
+
+    private void uploadStartedHandler(StartResumableWriteResponse result, Throwable error) {
+
+        if (upstreamError != null) {
+            if (result != null) {
+                uploadId = result.getUploadId();
+                cancelUpload();
+            }
+            return;
+        }
+
+        if (error != null) {
+            gotFailure = true;
+            signal.completeExceptionally(error);
+            return;
+        }
+
+        uploadId = result.getUploadId();
+
+        openSegment(0);
+        requestMore();
+    }
+
+    private void openSegment(long offset) {
+
+        var callOptions = CallOptions.DEFAULT
+                .withExecutor(dataContext.eventLoopExecutor());
+
+        var callCtx = GrpcCallContext.createDefault()
+                .withCallOptions(callOptions);
+
+        var apiCall = addMissingRequestParams(storageClient.writeObjectCallable());
+
+        var gcsResponseStream = new GcpUnaryResponse<WriteObjectResponse>();
+        gcsWriteStream = apiCall.clientStreamingCall(gcsResponseStream, callCtx);
+        gcsResponseStream.getResult().whenComplete(this::segmentCompleteHandler);
+
+        segmentStart = offset;
+        bytesSent = offset;
+        pendingChunk = ByteString.empty();
+
+        var initialRequest = WriteObjectRequest.newBuilder()
+                .setUploadId(uploadId)
+                .setWriteOffset(offset)
+                .build();
+
+        gcsWriteStream.onNext(initialRequest);
+
+        // Send anything that is held but not yet persisted
+        var bufferOffset = retainedOffset;
+
+        for (var buffer : retainedBuffers) {
+
+            var bufferEnd = bufferOffset + buffer.readableBytes();
+
+            if (bufferEnd > offset)
+                queueBytes(buffer, Math.max(0, offset - bufferOffset));
+
+            bufferOffset = bufferEnd;
+        }
+    }
+
+    private void queueBytes(ArrowBuf buffer, long start) {
+
+        var index = buffer.readerIndex() + start;
+        var end = buffer.writerIndex();
+
+        while (index < end) {
+
+            var chunkRemaining = MAX_CHUNK_SIZE - pendingChunk.size();
+            var nBytes = (int) Math.min(end - index, chunkRemaining);
+
+            // Wrap the Arrow memory directly, the buffer is held until GCS reports the bytes as persisted
+            var protoBytes = UnsafeByteOperations.unsafeWrap(buffer.nioBuffer(index, nBytes));
+            pendingChunk = pendingChunk.concat(protoBytes);
+
+            index += nBytes;
+
+            if (pendingChunk.size() >= MIN_CHUNK_SIZE)
+                sendPendingChunk(false);
+        }
+    }
+
+    private void sendPendingChunk(boolean finishWrite) {
+
         var request = WriteObjectRequest.newBuilder()
-                .setFinishWrite(true);
+                .setWriteOffset(bytesSent);
 
         if (pendingChunk.size() > 0) {
-
             var data = ChecksummedData.newBuilder().setContent(pendingChunk);
-            request.setWriteOffset(bytesSent).setChecksummedData(data);
-
-            bytesSent += pendingChunk.size();
-            pendingChunk = ByteString.empty();
+            request.setChecksummedData(data);
         }
 
+        if (finishWrite)
+            request.setFinishWrite(true);
+
         gcsWriteStream.onNext(request.build());
+
+        bytesSent += pendingChunk.size();
+        pendingChunk = ByteString.empty();
+    }
+
+    private void closeSegment() {
+
+        if (pendingChunk.size() > 0)
+            sendPendingChunk(false);
+
         gcsWriteStream.onCompleted();
+        gcsWriteStream = null;
     }
 
-    private void writeCompleteHandler(WriteObjectResponse result, Throwable error) {
+    private void finishWrite() {
 
-        if (error != null) {
+        sendPendingChunk(true);
+
+        gcsWriteStream.onCompleted();
+        gcsWriteStream = null;
+    }
+
+    private void requestMore() {
+
+        if (requestOutstanding || gotComplete || gcsWriteStream == null)
+            return;
+
+        requestOutstanding = true;
+        subscription.request(1);
+    }
+
+    private void segmentCompleteHandler(WriteObjectResponse result, Throwable error) {
+
+        if (upstreamError != null) {
 
             // If the error is a cancellation due to an up-stream error,
             // Then the client will want the original error instead of the cancellation signal
 
-            if (error instanceof CancelledException && upstreamError != null)
+            if (error == null || error instanceof CancelledException)
                 signal.completeExceptionally(upstreamError);
             else
                 signal.completeExceptionally(error);
 
+            releaseRetained();
+            cancelUpload();
+            return;
+        }
+
+        if (error != null) {
+            segmentErrorHandler(error);
+            return;
+        }
+
+        resumeAttempts = 0;
+        resumeFrom(result.hasResource(), result.getPersistedSize());
+    }
+
+    private void segmentErrorHandler(Throwable error) {
+
+        var resumable = error instanceof ApiException &&
+                RESUMABLE_ERRORS.contains(((ApiException) error).getStatusCode().getCode());
+
+        if (!resumable || resumeAttempts >= MAX_RESUME_ATTEMPTS) {
+            writeFailed(error);
+            return;
+        }
+
+        resumeAttempts += 1;
+
+        log.warn("Write stream failed, attempting to resume (attempt {} of {}): {}",
+                resumeAttempts, MAX_RESUME_ATTEMPTS, error.getMessage());
+
+        var request = QueryWriteStatusRequest.newBuilder()
+                .setUploadId(uploadId)
+                .build();
+
+        var apiCall = addMissingRequestParams(storageClient.queryWriteStatusCallable());
+        var response = requestLimiter.limitRequest(dataContext, RequestClass.METADATA, () ->
+                GcpUtils.unaryCall(apiCall, request, dataContext.eventLoopExecutor()));
+
+        response.whenComplete((status, statusError) -> {
+
+            if (upstreamError != null)
+                segmentCompleteHandler(null, null);
+            else if (statusError != null)
+                writeFailed(statusError);
+            else
+                resumeFrom(status.hasResource(), status.getPersistedSize());
+        });
+    }
+
+    private void resumeFrom(boolean finalized, long persistedSize) {
+
+        // The object is finalized once the last segment completes, the write is done
+
+        if (finalized) {
+            releaseRetained();
+            signal.complete(bytesReceived);
             return;
         }
 
-        // result.getPersistedSize() only contains a value if the operation is not finalized
-        // This is normally zero, so, use bytesSent, which counted as chunks were dispatched
+        releasePersisted(persistedSize);
+
+        openSegment(persistedSize);
 
-        signal.complete(bytesSent);
+        if (gotComplete)
+            finishWrite();
+        else
+            requestMore();
+    }
+
+    private void writeFailed(Throwable error) {
+
+        gotFailure = true;
+
+        signal.completeExceptionally(error);
+
+        if (!gotComplete)
+            subscription.cancel();
+
+        releaseRetained();
+        cancelUpload();
+    }
+
+    private void cancelUpload() {
+
+        if (uploadId == null || uploadCancelled)
+            return;
+
+        uploadCancelled = true;
+
+        var request = CancelResumableWriteRequest.newBuilder()
+                .setUploadId(uploadId)
+                .build();
+
+        var apiCall = addMissingRequestParams(storageClient.cancelResumableWriteCallable());
+        var response = GcpUtils.unaryCall(apiCall, request, dataContext.eventLoopExecutor());
+
+        response.whenComplete((result, error) -> {
+            if (error != null)
+                log.warn("Failed to cancel resumable write: {}", error.getMessage());
+        });
+    }
+
+    private void releasePersisted(long persistedSize) {
+
+        while (!retainedBuffers.isEmpty()) {
+
+            var buffer = retainedBuffers.peek();
+            var bufferEnd = retainedOffset + buffer.readableBytes();
+
+            if (bufferEnd > persistedSize)
+                break;
+
+            retainedOffset = bufferEnd;
+            retainedBuffers.remove().close();
+        }
+    }
+
+    private void releaseRetained() {
+
+        pendingChunk = ByteString.empty();
+
+        while (!retainedBuffers.isEmpty())
+            retainedBuffers.remove().close();
     }
 
     private <TRequest, TResponse>
     ClientStreamingCallable<TRequest, TResponse>
     addMissingRequestParams(ClientStreamingCallable<TRequest, TResponse> callable) {
 
+        return callable.withDefaultCallContext(missingRequestParams());
+    }
+
+    private <TRequest, TResponse>
+    UnaryCallable<TRequest, TResponse>
+    addMissingRequestParams(UnaryCallable<TRequest, TResponse> callable) {
+
+        return callable.withDefaultCallContext(missingRequestParams());
+    }
+
+    private GrpcCallContext missingRequestParams() {
+
         // https://github.com/googleapis/java-storage/blob/main/google-cloud-storage/src/main/java/com/google/cloud/storage/WriteFlushStrategy.java#L89
 
         // GCP SDK adds in this required header
@@ -230,8 +497,6 @@ public class GcsObjectWriter implements Flow.Subscriber<ArrowBuf> {
         var callParams = String.format("bucket=%s", gcsObjectSpec.getResource().getBucket());
         var callMetadata = Map.of("x-goog-request-params", List.of(callParams));
 
-        var defaultContext = GrpcCallContext.createDefault().withExtraHeaders(callMetadata);
-
-        return callable.withDefaultCallContext(defaultContext);
+        return GrpcCallContext.createDefault().withExtraHeaders(callMetadata);
     }
 }
@@ -18,9 +18,11 @@
 package org.finos.tracdap.plugins.gcp.storage;
 
 import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.FailedPreconditionException;
 import com.google.api.gax.rpc.NotFoundException;
 import com.google.api.gax.rpc.OutOfRangeException;
 import com.google.api.gax.rpc.PermissionDeniedException;
+import com.google.api.gax.rpc.StatusCode;
 import org.finos.tracdap.common.storage.StorageErrors;
 
 import java.util.List;
@@ -33,6 +35,8 @@ public class GcsStorageErrors extends StorageErrors {
             Map.entry(PermissionDeniedException.class, ExplicitError.ACCESS_DENIED),
             Map.entry(NotFoundException.class, ExplicitError.OBJECT_NOT_FOUND),
             Map.entry(OutOfRangeException.class, ExplicitError.OBJECT_SIZE_TOO_SMALL),
+            // Generation preconditions fail if the object is replaced, e.g. between resumed reads
+            Map.entry(FailedPreconditionException.class, ExplicitError.OBJECT_CHANGED),
             // Top-level error for GCP API calls over gRPC - catch all mapped to generic IO error
             Map.entry(ApiException.class, ExplicitError.IO_ERROR));
 
@@ -55,4 +59,16 @@ public class GcsStorageErrors extends StorageErrors {
 
         return null;
     }
+
+    @Override
+    protected boolean checkThrottling(Throwable error) {
+
+        // GCS rate limits show up as RESOURCE_EXHAUSTED (HTTP 429) or UNAVAILABLE (HTTP 503)
+        if (!(error instanceof ApiException))
+            return false;
+
+        var code = ((ApiException) error).getStatusCode().getCode();
+
+        return code == StatusCode.Code.RESOURCE_EXHAUSTED || code == StatusCode.Code.UNAVAILABLE;
+    }
 }
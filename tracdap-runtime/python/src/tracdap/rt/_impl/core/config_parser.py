@@ -52,6 +52,9 @@ class ConfigKeys:
     STORAGE_DEFAULT_FORMAT = "storage.default.format"
     STORAGE_DEFAULT_LAYOUT = "storage.default.layout"
 
+    # Resource property, sets the layout for new objects in an individual storage location
+    STORAGE_LOCATION_LAYOUT = "layout"
+
     RUNTIME_LIMIT_RESOURCE_SIZE = "runtime.limit.resourceSize"
 
     RESULT_ENABLED = "result.enabled"
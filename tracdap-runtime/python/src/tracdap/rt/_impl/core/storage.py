@@ -17,6 +17,7 @@ import abc
 import copy
 import datetime as dt
 import enum
+import hashlib
 import pathlib
 import random
 import re
@@ -119,6 +120,8 @@ class StorageLayout(metaclass=abc.ABCMeta):
             layout = ObjectIdLayout()
         elif layout_key == _meta.StorageLayout.DATE_SNAP_LAYOUT:
             layout = DateSnapLayout()
+        elif layout_key == _meta.StorageLayout.HASH_SHARD_LAYOUT:
+            layout = HashShardLayout()
         elif layout_key == _meta.StorageLayout.DEVELOPER_LAYOUT:
             layout = DeveloperLayout()
         else:
@@ -438,6 +441,43 @@ class ObjectIdLayout(BaseLayout):
             file_def.name, file_def.extension.lower())
 
 
+class HashShardLayout(ObjectIdLayout):
+
+    # SHARD / OBJECT ID LAYOUT
+    # The shard is a short hash of the object ID, so object keys do not share a long common prefix
+    # Shards must match the data service, which uses the first byte of the SHA-256 hash of the object ID
+
+    __SHARD_TEMPLATE = "{:02x}/{}"
+
+    def layout_key(self) -> _meta.StorageLayout:
+        return _meta.StorageLayout.HASH_SHARD_LAYOUT
+
+    def _data_storage_path(
+            self, data_id, context_key, trac_schema,
+            part_key, snap_index, delta_index,
+            storage_format, prior_copy):
+
+        path = super()._data_storage_path(
+            data_id, context_key, trac_schema,
+            part_key, snap_index, delta_index,
+            storage_format, prior_copy)
+
+        return self._shard_path(data_id, path)
+
+    def _file_storage_path(self, file_id, file_def, prior_copy):
+
+        path = super()._file_storage_path(file_id, file_def, prior_copy)
+
+        return self._shard_path(file_id, path)
+
+    @classmethod
+    def _shard_path(cls, object_id: _meta.TagHeader, path: str) -> str:
+
+        object_hash = hashlib.sha256(object_id.objectId.encode("utf-8")).digest()
+
+        return cls.__SHARD_TEMPLATE.format(object_hash[0], path)
+
+
 class DateSnapLayout(BaseLayout):
 
     # YEAR / DATE / TIME - OBJECT ID / PART / SNAP / DELTAS & CHUNKS
@@ -548,7 +588,7 @@ def build_data_spec(
         -> _data.DataSpec:
 
     if prior_spec is None:
-        layout_key = _util.read_property(sys_config.properties, _cfg_p.ConfigKeys.STORAGE_DEFAULT_LAYOUT, _cfg_p.ConfigKDefaults.STORAGE_DEFAULT_LAYOUT)
+        layout_key = _new_object_layout(sys_config)
         layout = StorageLayout.select(layout_key)
         spec = layout.new_data_spec(data_id, storage_id, context_key, trac_schema, sys_config)
     else:
@@ -569,7 +609,7 @@ def build_file_spec(
         -> _data.DataSpec:
 
     if prior_spec is None:
-        layout_key = _util.read_property(sys_config.properties, _cfg_p.ConfigKeys.STORAGE_DEFAULT_LAYOUT, _cfg_p.ConfigKDefaults.STORAGE_DEFAULT_LAYOUT)
+        layout_key = _new_object_layout(sys_config)
         layout = StorageLayout.select(layout_key)
         spec = layout.new_file_spec(file_id, storage_id, context_key, file_type, sys_config)
 
@@ -582,6 +622,33 @@ def build_file_spec(
     return spec.with_metadata(metadata) if metadata is not None else spec
 
 
+def _new_object_layout(sys_config: _cfg.RuntimeConfig) -> str:
+
+    # New objects go in the default location, which can set its own layout to override the tenant default
+    # This must match the data service, so objects created by either one follow the same layout
+
+    storage_key = _util.read_property(sys_config.properties, _cfg_p.ConfigKeys.STORAGE_DEFAULT_LOCATION)
+    storage_config = sys_config.resources.get(storage_key) if storage_key else None
+
+    if storage_config is not None:
+
+        location_layout = storage_config.properties.get(_cfg_p.ConfigKeys.STORAGE_LOCATION_LAYOUT)
+
+        if location_layout is not None and location_layout.strip():
+
+            location_layout = location_layout.strip()
+
+            if location_layout not in _meta.StorageLayout.__members__ or \
+                    location_layout == _meta.StorageLayout.STORAGE_LAYOUT_NOT_SET.name:
+                raise _ex.EStorageConfig(f"Invalid storage layout [{location_layout}] for storage [{storage_key}]")
+
+            return location_layout
+
+    return _util.read_property(
+        sys_config.properties, _cfg_p.ConfigKeys.STORAGE_DEFAULT_LAYOUT,
+        _cfg_p.ConfigKDefaults.STORAGE_DEFAULT_LAYOUT)
+
+
 class StorageManager:
 
     __file_impls: tp.Dict[str, IFileStorage.__class__] = dict()
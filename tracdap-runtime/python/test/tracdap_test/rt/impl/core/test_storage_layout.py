@@ -0,0 +1,143 @@
+#  Licensed to the Fintech Open Source Foundation (FINOS) under one or
+#  more contributor license agreements. See the NOTICE file distributed
+#  with this work for additional information regarding copyright ownership.
+#  FINOS licenses this file to you under the Apache License, Version 2.0
+#  (the "License"); you may not use this file except in compliance with the
+#  License. You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+
+import unittest
+
+import tracdap.rt.config as _cfg
+import tracdap.rt.metadata as _meta
+import tracdap.rt.exceptions as _ex
+import tracdap.rt._impl.core.storage as _storage  # noqa
+import tracdap.rt._impl.core.util as _util  # noqa
+
+
+class StorageLayoutTest(unittest.TestCase):
+
+    # Shard for this object ID is pinned, the data service must put the same object in the same shard
+    # First byte of SHA-256("5d2a9b2c-9d5f-4d3e-8a35-0f1e2d3c4b5a") = 0x04
+
+    KNOWN_OBJECT_ID = "5d2a9b2c-9d5f-4d3e-8a35-0f1e2d3c4b5a"
+    KNOWN_SHARD = "04"
+
+    FILE_TYPE = _meta.FileType(extension="txt", mimeType="text/plain")
+
+    def test_location_layout_file(self):
+
+        sys_config = self._sys_config(location_layout="HASH_SHARD_LAYOUT")
+        file_id, storage_id = self._new_ids(_meta.ObjectType.FILE)
+
+        spec = _storage.build_file_spec(file_id, storage_id, "test_output", self.FILE_TYPE, sys_config)
+        storage_path = self._storage_path(spec)
+
+        self.assertEqual(_meta.StorageLayout.HASH_SHARD_LAYOUT, spec.storage.layout)
+        self.assertTrue(storage_path.startswith(f"{self.KNOWN_SHARD}/file/{self.KNOWN_OBJECT_ID}/version-1"))
+
+    def test_location_layout_data(self):
+
+        sys_config = self._sys_config(location_layout="HASH_SHARD_LAYOUT")
+        data_id, storage_id = self._new_ids(_meta.ObjectType.DATA)
+
+        spec = _storage.build_data_spec(data_id, storage_id, "test_output", self._table_schema(), sys_config)
+        storage_path = self._storage_path(spec)
+
+        self.assertEqual(_meta.StorageLayout.HASH_SHARD_LAYOUT, spec.storage.layout)
+        self.assertTrue(storage_path.startswith(f"{self.KNOWN_SHARD}/data/table/{self.KNOWN_OBJECT_ID}/"))
+
+    def test_location_layout_update(self):
+
+        sys_config = self._sys_config(location_layout="HASH_SHARD_LAYOUT")
+        file_id, storage_id = self._new_ids(_meta.ObjectType.FILE)
+
+        prior_spec = _storage.build_file_spec(file_id, storage_id, "test_output", self.FILE_TYPE, sys_config)
+
+        # Updates follow the layout recorded for the object, even if the location setting changes
+
+        sys_config = self._sys_config(location_layout=None)
+        next_file_id = _util.new_object_version(file_id)
+        next_storage_id = _util.new_object_version(storage_id)
+
+        spec = _storage.build_file_spec(
+            next_file_id, next_storage_id, "test_output", self.FILE_TYPE, sys_config,
+            prior_spec=prior_spec)
+
+        storage_path = self._storage_path(spec)
+
+        self.assertEqual(_meta.StorageLayout.HASH_SHARD_LAYOUT, spec.storage.layout)
+        self.assertTrue(storage_path.startswith(f"{self.KNOWN_SHARD}/file/{self.KNOWN_OBJECT_ID}/version-2"))
+
+    def test_location_layout_not_set(self):
+
+        # Without a location setting, the tenant default layout is used
+
+        sys_config = self._sys_config(location_layout=None)
+        file_id, storage_id = self._new_ids(_meta.ObjectType.FILE)
+
+        spec = _storage.build_file_spec(file_id, storage_id, "test_output", self.FILE_TYPE, sys_config)
+
+        self.assertEqual(_meta.StorageLayout.OBJECT_ID_LAYOUT, spec.storage.layout)
+        self.assertTrue(self._storage_path(spec).startswith(f"file/{self.KNOWN_OBJECT_ID}/version-1"))
+
+    def test_location_layout_invalid(self):
+
+        sys_config = self._sys_config(location_layout="NOT_A_LAYOUT")
+        file_id, storage_id = self._new_ids(_meta.ObjectType.FILE)
+
+        self.assertRaises(
+            _ex.EStorageConfig, lambda: _storage.build_file_spec(
+                file_id, storage_id, "test_output", self.FILE_TYPE, sys_config))
+
+    @staticmethod
+    def _sys_config(location_layout):
+
+        storage_props = {"rootPath": "."}
+
+        if location_layout is not None:
+            storage_props["layout"] = location_layout
+
+        storage_config = _meta.ResourceDefinition(
+            resourceType=_meta.ResourceType.INTERNAL_STORAGE,
+            protocol="LOCAL",
+            properties=storage_props)
+
+        sys_config = _cfg.RuntimeConfig()
+        sys_config.properties["storage.default.location"] = "test_bucket"
+        sys_config.properties["storage.default.layout"] = "OBJECT_ID_LAYOUT"
+        sys_config.resources["test_bucket"] = storage_config
+
+        return sys_config
+
+    def _new_ids(self, object_type: _meta.ObjectType):
+
+        object_id = _util.new_object_id(object_type)
+        object_id.objectId = self.KNOWN_OBJECT_ID
+
+        storage_id = _util.new_object_id(_meta.ObjectType.STORAGE)
+
+        return object_id, storage_id
+
+    @staticmethod
+    def _table_schema():
+
+        return _meta.SchemaDefinition(
+            schemaType=_meta.SchemaType.TABLE_SCHEMA,
+            table=_meta.TableSchema(fields=[
+                _meta.FieldSchema(fieldName="field_1", fieldType=_meta.BasicType.STRING)]))
+
+    @staticmethod
+    def _storage_path(spec):
+
+        storage_item = spec.storage.dataItems[spec.data_item]
+        incarnation = storage_item.incarnations[-1]
+
+        return incarnation.copies[-1].storagePath
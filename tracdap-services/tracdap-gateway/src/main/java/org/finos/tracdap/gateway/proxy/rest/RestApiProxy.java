@@ -22,6 +22,7 @@ import org.finos.tracdap.common.exception.*;
 import org.finos.tracdap.common.util.LoggingHelpers;
 import org.finos.tracdap.gateway.proxy.grpc.GrpcUtils;
 
+import com.google.protobuf.Message;
 import io.grpc.Status;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
@@ -51,7 +52,8 @@ public class RestApiProxy extends Http2ChannelDuplexHandler {
             HttpHeaderNames.CONTENT_TYPE.toString(),
             HttpHeaderNames.CONTENT_LENGTH.toString(),
             HttpHeaderNames.CONTENT_ENCODING.toString(),
-            HttpHeaderNames.ACCEPT.toString());
+            HttpHeaderNames.ACCEPT.toString(),
+            HttpHeaderNames.RANGE.toString());
 
     private static final Set<String> FILTER_RESPONSE_HEADERS = Set.of(
             Http2Headers.PseudoHeaderName.STATUS.value().toString(),
@@ -59,6 +61,9 @@ public class RestApiProxy extends Http2ChannelDuplexHandler {
             HttpHeaderNames.CONTENT_LENGTH.toString(),
             HttpHeaderNames.CONTENT_ENCODING.toString());
 
+    // Download requests with this field receive the HTTP Range header
+    private static final String DOWNLOAD_RANGE_FIELD = "range";
+
     private static final ThreadLocal<Logger> logMap = new ThreadLocal<>();
     private final Logger log = LoggingHelpers.threadLocalLogger(this, logMap);
 
@@ -246,6 +251,9 @@ public class RestApiProxy extends Http2ChannelDuplexHandler {
                     ? state.method.requestTranslator.translateRequest(restRequest, state.requestContent)
                     : state.method.requestTranslator.translateRequest(restRequest);
 
+            if (state.method.isDownload)
+                grpcMessage = translateRangeHeader(restHeaders, grpcMessage);
+
             var lpm = GrpcUtils.encodeLpm(grpcMessage, ctx.alloc());
 
             var headersFrame = new DefaultHttp2HeadersFrame(grpcHeaders).stream(state.stream);
@@ -351,8 +359,16 @@ public class RestApiProxy extends Http2ChannelDuplexHandler {
             if (downloadResponse.hasContentType())
                 restHeaders.add(HttpHeaderNames.CONTENT_TYPE, downloadResponse.getContentType());
 
-            if (downloadResponse.hasContentLength())
+            if (downloadResponse.hasContentLength()) {
                 restHeaders.addLong(HttpHeaderNames.CONTENT_LENGTH, downloadResponse.getContentLength());
+                restHeaders.add(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+            }
+
+            // Partial content for ranged downloads
+            if (downloadResponse.hasContentRange()) {
+                restHeaders.status(HttpResponseStatus.PARTIAL_CONTENT.toString());
+                restHeaders.add(HttpHeaderNames.CONTENT_RANGE, downloadResponse.getContentRange());
+            }
 
             var restFrame = new DefaultHttp2HeadersFrame(restHeaders);
             ctx.fireChannelRead(restFrame);
@@ -401,7 +417,7 @@ public class RestApiProxy extends Http2ChannelDuplexHandler {
         var finalGrpcCode = Status.fromCodeValue(finalGrpcStatus).getCode();
         var finalHttpStatus = translator.translateGrpcErrorCode(finalGrpcCode);
 
-        if (state.responseHttpStatus.equals(HttpResponseStatus.OK) && !finalHttpStatus.equals(HttpResponseStatus.OK)) {
+        if (state.responseHttpStatus.codeClass() == HttpStatusClass.SUCCESS && !finalHttpStatus.equals(HttpResponseStatus.OK)) {
             var error = new ETracInternal("Download stream failed with error code " + finalGrpcCode.name());
             ctx.fireExceptionCaught(error);
         }
@@ -410,6 +426,19 @@ public class RestApiProxy extends Http2ChannelDuplexHandler {
         }
     }
 
+    private Message translateRangeHeader(Http2Headers restHeaders, Message grpcMessage) {
+
+        var rangeHeader = restHeaders.get(HttpHeaderNames.RANGE);
+        var rangeField = grpcMessage.getDescriptorForType().findFieldByName(DOWNLOAD_RANGE_FIELD);
+
+        if (rangeHeader == null || rangeField == null)
+            return grpcMessage;
+
+        return grpcMessage.toBuilder()
+                .setField(rangeField, rangeHeader.toString())
+                .build();
+    }
+
     private RestApiMethod lookupMethod(RestApiRequest restRequest) {
 
         for (var method: this.methods) {
@@ -87,6 +87,9 @@ public class ResponseTranslator {
             case FAILED_PRECONDITION:
                 return HttpResponseStatus.PRECONDITION_FAILED;
 
+            case OUT_OF_RANGE:
+                return HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+
             case UNAVAILABLE:
                 return HttpResponseStatus.SERVICE_UNAVAILABLE;
 
@@ -25,10 +25,14 @@ import org.finos.tracdap.config.PlatformConfig;
 import org.finos.tracdap.config.ServiceConfig;
 import org.finos.tracdap.config.TenantConfigMap;
 import org.finos.tracdap.common.config.ConfigHelpers;
+import org.finos.tracdap.common.grpc.RequestMetadataInterceptor;
 import org.finos.tracdap.common.middleware.GrpcConcern;
 import org.finos.tracdap.common.netty.*;
 import org.finos.tracdap.common.config.ConfigKeys;
 import org.finos.tracdap.common.codec.CodecManager;
+import org.finos.tracdap.common.config.ConfigDefaults;
+import org.finos.tracdap.common.data.ArrowBatchCache;
+import org.finos.tracdap.common.data.BufferBudget;
 import org.finos.tracdap.common.config.ConfigManager;
 import org.finos.tracdap.common.exception.EStartup;
 import org.finos.tracdap.common.plugin.PluginManager;
@@ -38,16 +42,23 @@ import org.finos.tracdap.common.util.RoutingUtils;
 import org.finos.tracdap.common.validation.ValidationConcern;
 import org.finos.tracdap.svc.data.api.MessageProcessor;
 import org.finos.tracdap.svc.data.api.TracDataApi;
+import org.finos.tracdap.svc.data.api.TracDataFlight;
 import org.finos.tracdap.svc.data.api.TracStorageApi;
 import org.finos.tracdap.svc.data.service.DataService;
 import org.finos.tracdap.svc.data.service.FileService;
+import org.finos.tracdap.svc.data.service.FormatCopyTracker;
+import org.finos.tracdap.svc.data.service.MetadataCache;
 
 import io.grpc.*;
 import io.grpc.netty.NettyChannelBuilder;
 import io.grpc.netty.NettyServerBuilder;
 import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.arrow.flight.FlightServer;
+import org.apache.arrow.flight.Location;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.memory.netty.NettyAllocationManager;
 import org.finos.tracdap.svc.data.service.StorageService;
@@ -58,8 +69,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 public class TracDataService extends TracServiceBase {
@@ -75,10 +88,13 @@ public class TracDataService extends TracServiceBase {
     private EventLoopGroup bossGroup;
     private EventLoopGroup serviceGroup;
     private ExecutorService offloadExecutor;
+    private EventExecutorGroup workerGroup;
     private ManagedChannel metaClientChanel;
     private ManagedChannel metaBlockingChanel;
     private TenantStorageManager storageManager;
+    private ArrowBatchCache batchCache;
     private Server server;
+    private FlightServer flightServer;
 
     public static void main(String[] args) {
 
@@ -144,6 +160,14 @@ public class TracDataService extends TracServiceBase {
             var baseOffloadExecutor = NettyHelpers.threadPoolExecutor("data-offload");
             offloadExecutor = offloadTracking.wrappExecutorService(baseOffloadExecutor);
 
+            // CPU-heavy pipeline stages (codecs) run on a bounded worker pool, so the ELs are free for I/O
+            // Each request is pinned to one worker thread, so stages still run in order for a single request
+
+            var workerThreadCount = readWorkerThreads(serviceConfig, serviceThreadCount);
+
+            if (workerThreadCount > 0)
+                workerGroup = new DefaultEventExecutorGroup(workerThreadCount, NettyHelpers.threadFactory("data-worker"));
+
             var eventLoopResolver = new EventLoopResolver(serviceGroup, offloadTracking);
 
             // Common framework for cross-cutting concerns
@@ -186,11 +210,22 @@ public class TracDataService extends TracServiceBase {
             // Load config for all tenants and initialize storage
             storageManager.init();
 
-            var dataService = new DataService(storageManager, formats, metaClient);
-            var fileService = new FileService(storageManager, metaClient);
+            batchCache = prepareBatchCache(serviceConfig, arrowAllocator);
+            var metadataCache = prepareMetadataCache(serviceConfig);
+            var copyTracker = prepareCopyTracker(serviceConfig);
+            var bufferBudget = prepareBufferBudget(serviceConfig);
+            var aggregationGroupLimit = readAggregationGroupLimit(serviceConfig);
+
+            var dataService = new DataService(
+                    storageManager, formats, metaClient,
+                    batchCache, metadataCache,
+                    copyTracker, arrowAllocator,
+                    bufferBudget, serviceGroup, commonConcerns,
+                    aggregationGroupLimit);
+            var fileService = new FileService(storageManager, metaClient, metadataCache);
             var storageService = new StorageService(storageManager);
 
-            var dataApi = new TracDataApi(dataService, fileService, formats, eventLoopResolver, arrowAllocator, commonConcerns);
+            var dataApi = new TracDataApi(dataService, fileService, formats, eventLoopResolver, workerGroup, arrowAllocator, bufferBudget, commonConcerns);
             var storageApi = new TracStorageApi(storageService, eventLoopResolver, arrowAllocator);
             var messageProcessor = new MessageProcessor(storageManager, offloadExecutor);
 
@@ -217,6 +252,45 @@ public class TracDataService extends TracServiceBase {
             this.server.start();
 
             log.info("Data service is listening on port {}", server.getPort());
+
+            // Optional Arrow Flight endpoint, for bulk transfer of datasets
+            var flightPort = readFlightPort(serviceConfig);
+
+            if (flightPort > 0) {
+
+                // Flight does not go through the gateway, so it listens on the configured service address only
+                // Extension concerns (including auth) are applied to Flight calls the same as for the main API
+                var flightAddress = RoutingUtils.serviceTarget(platformConfig, ConfigKeys.DATA_SERVICE_KEY).getHost();
+                var flightLocation = Location.forGrpcInsecure(flightAddress, flightPort);
+
+                var dataFlight = new TracDataFlight(dataService, serviceGroup, eventLoopResolver, workerGroup, arrowAllocator, bufferBudget);
+                var flightConcerns = buildFlightConcerns();
+
+                Consumer<NettyServerBuilder> flightServerSetup = flightBuilder -> {
+
+                    flightBuilder
+                            .channelType(channelType)
+                            .bossEventLoopGroup(bossGroup)
+                            .workerEventLoopGroup(serviceGroup);
+
+                    flightConcerns.configureServer(flightBuilder);
+                };
+
+                this.flightServer = FlightServer
+                        .builder(arrowAllocator, flightLocation, dataFlight)
+                        .middleware(TracDataFlight.REQUEST_MIDDLEWARE, dataFlight.middlewareFactory(commonConcerns))
+                        .executor(offloadExecutor)
+                        .transportHint("grpc.builderConsumer", flightServerSetup)
+                        .build();
+
+                this.flightServer.start();
+
+                log.info("Data service Arrow Flight endpoint is listening on {}:{}", flightAddress, flightServer.getPort());
+            }
+            else {
+
+                log.info("Data service Arrow Flight endpoint is disabled");
+            }
         }
         catch (IOException e) {
 
@@ -224,6 +298,126 @@ public class TracDataService extends TracServiceBase {
         }
     }
 
+    private ArrowBatchCache prepareBatchCache(ServiceConfig serviceConfig, RootAllocator arrowAllocator) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        var memoryLimit = ConfigHelpers.readLong(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_CACHE_MEMORY_LIMIT, ConfigDefaults.DATA_CACHE_MEMORY_LIMIT);
+
+        var entryLimit = ConfigHelpers.readLong(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_CACHE_ENTRY_LIMIT, ConfigDefaults.DATA_CACHE_ENTRY_LIMIT);
+
+        if (memoryLimit > 0)
+            log.info("Data cache is enabled, memory limit = {}, entry limit = {}", memoryLimit, entryLimit);
+        else
+            log.info("Data cache is disabled");
+
+        return new ArrowBatchCache(arrowAllocator, memoryLimit, entryLimit);
+    }
+
+    private MetadataCache prepareMetadataCache(ServiceConfig serviceConfig) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        var metadataLimit = ConfigHelpers.readInt(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_CACHE_METADATA_LIMIT, ConfigDefaults.DATA_CACHE_METADATA_LIMIT);
+
+        log.info("Metadata cache limit = {} objects", metadataLimit);
+
+        return new MetadataCache(metadataLimit);
+    }
+
+    private FormatCopyTracker prepareCopyTracker(ServiceConfig serviceConfig) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        var downloadThreshold = ConfigHelpers.readInt(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_COPY_DOWNLOAD_THRESHOLD, ConfigDefaults.DATA_COPY_DOWNLOAD_THRESHOLD);
+
+        if (downloadThreshold > 0)
+            log.info("Format copies will be created after {} downloads", downloadThreshold);
+
+        return new FormatCopyTracker(downloadThreshold);
+    }
+
+    private BufferBudget prepareBufferBudget(ServiceConfig serviceConfig) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        var serviceLimit = ConfigHelpers.readLong(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_BUFFER_SERVICE_LIMIT, ConfigDefaults.DATA_BUFFER_SERVICE_LIMIT);
+
+        var requestLimit = ConfigHelpers.readLong(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_BUFFER_REQUEST_LIMIT, ConfigDefaults.DATA_BUFFER_REQUEST_LIMIT);
+
+        log.info("Data buffer limits: service = {}, request = {}", serviceLimit, requestLimit);
+
+        return new BufferBudget(serviceLimit, requestLimit);
+    }
+
+    private int readAggregationGroupLimit(ServiceConfig serviceConfig) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        var groupLimit = ConfigHelpers.readInt(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_AGGREGATION_GROUP_LIMIT, ConfigDefaults.DATA_AGGREGATION_GROUP_LIMIT);
+
+        log.info("Aggregation group limit = {} groups", groupLimit);
+
+        return groupLimit;
+    }
+
+    private int readFlightPort(ServiceConfig serviceConfig) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        return ConfigHelpers.readInt(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_FLIGHT_PORT, ConfigDefaults.DATA_FLIGHT_PORT);
+    }
+
+    private int readWorkerThreads(ServiceConfig serviceConfig, int serviceThreadCount) {
+
+        var serviceProps = new Properties();
+        serviceProps.putAll(serviceConfig.getPropertiesMap());
+
+        var workerThreads = ConfigHelpers.readInt(
+                "data service config", serviceProps,
+                ConfigKeys.DATA_WORKER_THREADS, ConfigDefaults.DATA_WORKER_THREADS);
+
+        return workerThreads == 0 ? serviceThreadCount : workerThreads;
+    }
+
+    private GrpcConcern buildFlightConcerns() {
+
+        // Flight messages are not regular TRAC API messages, so compression and validation do not apply
+        // Request metadata, error handling and extension concerns (e.g. auth) are the same as the main API
+
+        var flightConcerns = TracServiceConfig.emptyConfig()
+                .addLast(new FlightProtocol())
+                .addLast(new TracServiceConfig.ErrorHandling());
+
+        for (var extension : pluginManager.getExtensions()) {
+            flightConcerns = extension.addServiceConcerns(flightConcerns, configManager, ConfigKeys.DATA_SERVICE_KEY);
+        }
+
+        return flightConcerns.build();
+    }
+
     private GrpcConcern buildCommonConcerns() {
 
         var commonConcerns = TracServiceConfig.coreConcerns(TracDataService.class);
@@ -307,12 +501,24 @@ public class TracDataService extends TracServiceBase {
             return server.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
         });
 
+        var flightDown = flightServer == null || shutdownResource("Arrow Flight server", deadline, remaining -> {
+
+            flightServer.shutdown();
+            return flightServer.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
+        });
+
         var storageDown = shutdownResource("Tenant storage services", deadline, remaining -> {
 
             storageManager.shutdown();
             return true;
         });
 
+        var cacheDown = shutdownResource("Data cache", deadline, remaining -> {
+
+            batchCache.close();
+            return true;
+        });
+
         var clientDown = shutdownResource("Metadata client", deadline, remaining -> {
 
             metaClientChanel.shutdown();
@@ -337,13 +543,19 @@ public class TracDataService extends TracServiceBase {
             return offloadExecutor.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
         });
 
+        var dataWorkersDown = workerGroup == null || shutdownResource("Data worker pool", deadline, remaining -> {
+
+            workerGroup.shutdownGracefully(0, remaining.toMillis(), TimeUnit.MILLISECONDS);
+            return workerGroup.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
+        });
+
         var bossDown = shutdownResource("Boss thread pool", deadline, remaining -> {
 
             bossGroup.shutdownGracefully(0, remaining.toMillis(), TimeUnit.MILLISECONDS);
             return bossGroup.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
         });
 
-        if (serverDown && clientDown && blockingClientDown && storageDown && offloadDown &&  workersDown && bossDown)
+        if (serverDown && flightDown && clientDown && blockingClientDown && storageDown && cacheDown && offloadDown && dataWorkersDown && workersDown && bossDown)
             return 0;
 
         if (!serverDown)
@@ -351,4 +563,18 @@ public class TracDataService extends TracServiceBase {
 
         return -1;
     }
+
+    private static class FlightProtocol implements GrpcConcern {
+
+        @Override
+        public String concernName() {
+            return TracServiceConfig.TRAC_PROTOCOL;
+        }
+
+        @Override
+        public ServerBuilder<? extends ServerBuilder<?>> configureServer(ServerBuilder<? extends ServerBuilder<?>> serverBuilder) {
+
+            return serverBuilder.intercept(new RequestMetadataInterceptor());
+        }
+    }
 }
@@ -18,12 +18,15 @@
 package org.finos.tracdap.svc.data.api;
 
 import org.apache.arrow.memory.BufferAllocator;
+import org.finos.tracdap.common.data.BufferBudget;
 import org.finos.tracdap.common.data.DataContext;
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.grpc.RequestMetadata;
 import org.finos.tracdap.common.netty.EventLoopResolver;
 import org.finos.tracdap.common.util.LoggingHelpers;
 
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.OrderedEventExecutor;
 import org.slf4j.Logger;
 
 
@@ -35,16 +38,28 @@ public class DataContextHelpers {
     private final Logger log;
 
     private final EventLoopResolver eventLoopResolver;
+    private final EventExecutorGroup workerGroup;
     private final BufferAllocator rootAllocator;
+    private final BufferBudget bufferBudget;
 
     private final long reqInitAllocation;
     private final long reqMaxAllocation;
 
     DataContextHelpers(Logger log, EventLoopResolver eventLoopResolver,  BufferAllocator rootAllocator) {
 
+        this(log, eventLoopResolver, null, rootAllocator, null);
+    }
+
+    DataContextHelpers(
+            Logger log, EventLoopResolver eventLoopResolver,
+            EventExecutorGroup workerGroup, BufferAllocator rootAllocator,
+            BufferBudget bufferBudget) {
+
         this.log = log;
         this.eventLoopResolver = eventLoopResolver;
+        this.workerGroup = workerGroup;
         this.rootAllocator = rootAllocator;
+        this.bufferBudget = bufferBudget;
 
         this.reqInitAllocation = DEFAULT_INITIAL_ALLOCATION;
         this.reqMaxAllocation = DEFAULT_MAX_ALLOCATION;
@@ -59,13 +74,28 @@ public class DataContextHelpers {
         // Enforce strict requirement on the event loop
         // All processing for the request must happen on the EL originally assigned to the request
 
-        var requestId = requestMetadata.requestId();
         var eventLoop = eventLoopResolver.currentEventLoop(/* strict = */ true);
+
+        return prepareDataContext(requestMetadata, eventLoop);
+    }
+
+    DataContext prepareDataContext(RequestMetadata requestMetadata, OrderedEventExecutor eventLoop) {
+
+        // Use an explicit event loop, for requests that do not arrive on the service event loop group
+
+        var requestId = requestMetadata.requestId();
         var allocator = rootAllocator.newChildAllocator(requestId, reqInitAllocation, reqMaxAllocation);
 
+        // If there is a worker pool, CPU-heavy stages of the request are pinned to one worker thread
+        // Otherwise all processing for the request happens on the event loop
+
+        var workerExecutor = workerGroup != null
+                ? (OrderedEventExecutor) workerGroup.next()
+                : eventLoop;
+
         log.info("OPEN data context for [{}]", requestId);
 
-        return new DataContext(eventLoop, allocator);
+        return new DataContext(eventLoop, workerExecutor, allocator, bufferBudget);
     }
 
     void closeDataContext(IDataContext dataContext) {
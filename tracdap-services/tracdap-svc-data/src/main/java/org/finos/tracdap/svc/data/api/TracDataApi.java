@@ -20,19 +20,24 @@ package org.finos.tracdap.svc.data.api;
 import org.finos.tracdap.api.*;
 import org.finos.tracdap.common.codec.ICodecManager;
 import org.finos.tracdap.metadata.*;
+import org.finos.tracdap.common.data.BufferBudget;
 import org.finos.tracdap.common.data.pipeline.GrpcDownloadSink;
 import org.finos.tracdap.common.data.pipeline.GrpcUploadSource;
 import org.finos.tracdap.common.grpc.RequestMetadata;
 import org.finos.tracdap.common.middleware.GrpcConcern;
 import org.finos.tracdap.common.netty.EventLoopResolver;
+import org.finos.tracdap.svc.data.service.ByteRange;
 import org.finos.tracdap.svc.data.service.DataService;
 import org.finos.tracdap.svc.data.service.FileService;
 
 import io.grpc.Context;
 import io.grpc.stub.StreamObserver;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.apache.arrow.memory.BufferAllocator;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+
 
 public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
 
@@ -48,7 +53,9 @@ public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
             DataService dataService, FileService fileService,
             ICodecManager formats,
             EventLoopResolver eventLoopResolver,
+            EventExecutorGroup workerGroup,
             BufferAllocator allocator,
+            BufferBudget bufferBudget,
             GrpcConcern commonConcerns) {
 
         this.dataService = dataService;
@@ -57,7 +64,7 @@ public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
         this.commonConcerns = commonConcerns;
 
         var log = LoggerFactory.getLogger(getClass());
-        this.helpers = new DataContextHelpers(log, eventLoopResolver, allocator);
+        this.helpers = new DataContextHelpers(log, eventLoopResolver, workerGroup, allocator, bufferBudget);
     }
 
 
@@ -291,9 +298,12 @@ public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
 
         download.whenComplete(() -> helpers.closeDataContext(dataContext));
 
-        var firstMessage = download.firstMessage((response, fileDef) -> response
-                .setContentType(fileDef.getMimeType())
-                .setContentLength(fileDef.getSize()),
+        var byteRange = downloadRequest.hasRange()
+                ? ByteRange.parseHttpRange(downloadRequest.getRange())
+                : null;
+
+        var firstMessage = download.firstMessage(
+                (response, fileDef) -> downloadFileFirstMessage(fileDef, byteRange, response),
                 FileDefinition.class);
 
         var dataStream = download.dataStream(DownloadResponse.Builder::setContent);
@@ -301,10 +311,14 @@ public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
         // Translate into a regular file read request for the service layer
         var readRequest = FileReadRequest.newBuilder()
                 .setTenant(downloadRequest.getTenant())
-                .setSelector(selector)
-                .build();
+                .setSelector(selector);
 
-        download.start(readRequest)
+        if (byteRange != null) {
+            if (byteRange.hasOffset()) readRequest.setOffset(byteRange.offset());
+            if (byteRange.hasLength()) readRequest.setLength(byteRange.length());
+        }
+
+        download.start(readRequest.build())
                 .thenAccept(request -> fileService.readFile(
                         request, requestMetadata,
                         firstMessage, dataStream,
@@ -350,8 +364,15 @@ public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
         var dataContext = helpers.prepareDataContext(requestMetadata);
         download.whenComplete(() -> helpers.closeDataContext(dataContext));
 
+        // Byte ranges are only honoured if the service finds a stored copy in the requested format
+        var byteRange = downloadRequest.hasRange()
+                ? ByteRange.parseHttpRange(downloadRequest.getRange())
+                : null;
+
+        var resolvedRange = new CompletableFuture<ByteRange>();
+
         var firstMessage = download.firstMessage(
-                (response, schema) -> downloadDataFirstMessage(downloadRequest, response),
+                (response, schema) -> downloadDataFirstMessage(downloadRequest, resolvedRange.getNow(null), response),
                 SchemaDefinition.class);
 
         var dataStream = download.dataStream(DownloadResponse.Builder::setContent);
@@ -364,19 +385,50 @@ public class TracDataApi extends TracDataApiGrpc.TracDataApiImplBase {
                 .build();
 
         download.start(readRequest)
-                .thenAccept(req -> dataService.readDataset(req, firstMessage, dataStream, dataContext, requestMetadata, clientConfig))
+                .thenAccept(req -> dataService.readDataset(
+                        req, byteRange, resolvedRange,
+                        firstMessage, dataStream,
+                        dataContext, requestMetadata, clientConfig))
                 .exceptionally(download::failed);
 
     }
 
+    private DownloadResponse.Builder downloadFileFirstMessage(
+            FileDefinition fileDef, ByteRange byteRange,
+            DownloadResponse.Builder response) {
+
+        response.setContentType(fileDef.getMimeType());
+
+        if (byteRange == null)
+            return response.setContentLength(fileDef.getSize());
+
+        // The service has already checked the range, so resolving it here will not fail
+        var resolved = byteRange.resolve(fileDef.getSize());
+
+        response.setContentLength(resolved.length());
+
+        if (resolved.isPartial())
+            response.setContentRange(resolved.contentRange());
+
+        return response;
+    }
+
     private DownloadResponse.Builder downloadDataFirstMessage(
-            DataDownloadRequest downloadRequest,
+            DataDownloadRequest downloadRequest, ByteRange resolvedRange,
             DownloadResponse.Builder response) {
 
         var mimeType = formats.getDefaultMimeType(downloadRequest.getFormat());
 
-        return response
-                .setContentType(mimeType)
-                .clearContentLength();
+        response.setContentType(mimeType);
+
+        if (resolvedRange == null)
+            return response.clearContentLength();
+
+        response.setContentLength(resolvedRange.length());
+
+        if (resolvedRange.isPartial())
+            response.setContentRange(resolvedRange.contentRange());
+
+        return response;
     }
 }
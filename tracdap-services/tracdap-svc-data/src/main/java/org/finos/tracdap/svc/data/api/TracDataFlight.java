@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.svc.data.api;
+
+import org.finos.tracdap.api.DataReadRequest;
+import org.finos.tracdap.api.DataServiceProto;
+import org.finos.tracdap.api.DataWriteRequest;
+import org.finos.tracdap.common.data.BufferBudget;
+import org.finos.tracdap.common.data.pipeline.FlightDataSink;
+import org.finos.tracdap.common.data.pipeline.FlightDataSource;
+import org.finos.tracdap.common.grpc.GrpcErrorMapping;
+import org.finos.tracdap.common.grpc.RequestMetadata;
+import org.finos.tracdap.common.middleware.GrpcClientState;
+import org.finos.tracdap.common.middleware.GrpcConcern;
+import org.finos.tracdap.common.netty.EventLoopResolver;
+import org.finos.tracdap.common.validation.Validator;
+import org.finos.tracdap.svc.data.service.DataService;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Context;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.apache.arrow.flight.*;
+import org.apache.arrow.flight.grpc.StatusUtils;
+import org.apache.arrow.memory.BufferAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+
+public class TracDataFlight extends NoOpFlightProducer {
+
+    // Arrow Flight endpoint for bulk dataset transfer
+    // Tickets for doGet are serialized DataReadRequest messages
+    // Descriptor commands for doPut are serialized DataWriteRequest messages
+
+    public static final FlightServerMiddleware.Key<RequestMiddleware> REQUEST_MIDDLEWARE =
+            FlightServerMiddleware.Key.of("trac_request");
+
+    private static final String FLIGHT_DATA_FORMAT = "application/vnd.apache.arrow.stream";
+
+    private static final Descriptors.ServiceDescriptor DATA_SERVICE = DataServiceProto
+            .getDescriptor()
+            .findServiceByName("TracDataApi");
+
+    private static final Descriptors.MethodDescriptor READ_DATASET = DATA_SERVICE.findMethodByName("readDataset");
+    private static final Descriptors.MethodDescriptor CREATE_DATASET = DATA_SERVICE.findMethodByName("createDataset");
+    private static final Descriptors.MethodDescriptor UPDATE_DATASET = DATA_SERVICE.findMethodByName("updateDataset");
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DataService dataService;
+    private final EventLoopGroup eventLoopGroup;
+    private final DataContextHelpers helpers;
+    private final Validator validator;
+
+    public TracDataFlight(
+            DataService dataService,
+            EventLoopGroup eventLoopGroup,
+            EventLoopResolver eventLoopResolver,
+            EventExecutorGroup workerGroup,
+            BufferAllocator allocator,
+            BufferBudget bufferBudget) {
+
+        this.dataService = dataService;
+        this.eventLoopGroup = eventLoopGroup;
+        this.helpers = new DataContextHelpers(log, eventLoopResolver, workerGroup, allocator, bufferBudget);
+        this.validator = new Validator();
+    }
+
+    public RequestMiddleware.Factory middlewareFactory(GrpcConcern commonConcerns) {
+        return new RequestMiddleware.Factory(commonConcerns);
+    }
+
+    @Override
+    public void getStream(CallContext context, Ticket ticket, ServerStreamListener listener) {
+
+        DataReadRequest request;
+
+        try {
+
+            request = DataReadRequest.parseFrom(ticket.getBytes());
+
+            if (request.getFormat().isEmpty())
+                request = request.toBuilder().setFormat(FLIGHT_DATA_FORMAT).build();
+
+            validator.validateFixedMethod(request, READ_DATASET);
+        }
+        catch (InvalidProtocolBufferException e) {
+            listener.error(CallStatus.INVALID_ARGUMENT.withDescription("Ticket is not a valid data read request").toRuntimeException());
+            return;
+        }
+        catch (Exception e) {
+            listener.error(flightError(e));
+            return;
+        }
+
+        var requestInfo = context.getMiddleware(REQUEST_MIDDLEWARE);
+        var eventLoop = eventLoopGroup.next();
+        var dataContext = helpers.prepareDataContext(requestInfo.requestMetadata, eventLoop);
+
+        var readRequest = request;
+        var sinkCreated = new boolean[] { false };
+
+        CompletableFuture.supplyAsync(() -> dataService.readDataset(
+                        readRequest,
+                        pipeline -> { sinkCreated[0] = true; return new FlightDataSink(pipeline, listener); },
+                        dataContext, requestInfo.requestMetadata, requestInfo.clientState), eventLoop)
+                .thenCompose(x -> x)
+                .whenCompleteAsync((result, error) -> {
+
+                    // Once the sink is created, it is responsible for reporting errors to the client
+                    if (error != null && !sinkCreated[0])
+                        listener.error(flightError(error));
+
+                    helpers.closeDataContext(dataContext);
+
+                }, eventLoop);
+    }
+
+    @Override
+    public Runnable acceptPut(CallContext context, FlightStream flightStream, StreamListener<PutResult> ackStream) {
+
+        var requestInfo = context.getMiddleware(REQUEST_MIDDLEWARE);
+
+        return () -> {
+
+            DataWriteRequest request;
+
+            try {
+
+                request = DataWriteRequest.parseFrom(flightStream.getDescriptor().getCommand());
+
+                if (request.getFormat().isEmpty())
+                    request = request.toBuilder().setFormat(FLIGHT_DATA_FORMAT).build();
+
+                var method = request.hasPriorVersion() ? UPDATE_DATASET : CREATE_DATASET;
+                validator.validateFixedMethod(request, method);
+            }
+            catch (InvalidProtocolBufferException e) {
+                ackStream.onError(CallStatus.INVALID_ARGUMENT.withDescription("Descriptor is not a valid data write request").toRuntimeException());
+                return;
+            }
+            catch (Exception e) {
+                ackStream.onError(flightError(e));
+                return;
+            }
+
+            var eventLoop = eventLoopGroup.next();
+            var dataContext = helpers.prepareDataContext(requestInfo.requestMetadata, eventLoop);
+            var source = new FlightDataSource(flightStream, dataContext);
+
+            try {
+
+                var writeRequest = request;
+
+                var result = CompletableFuture.supplyAsync(() -> writeRequest.hasPriorVersion()
+                        ? dataService.updateDataset(writeRequest, source, dataContext, requestInfo.requestMetadata, requestInfo.clientState)
+                        : dataService.createDataset(writeRequest, source, dataContext, requestInfo.requestMetadata, requestInfo.clientState),
+                        eventLoop)
+                        .thenCompose(x -> x)
+                        .toCompletableFuture();
+
+                // If the save fails early, stop reading from the client stream
+                result.whenCompleteAsync((header, error) -> { if (error != null) source.cancel(); }, eventLoop);
+
+                // Reading the Flight stream is blocking, this runs on the Flight executor
+                source.feed();
+
+                var header = result.get();
+
+                try (var buffer = dataContext.arrowAllocator().buffer(header.getSerializedSize())) {
+
+                    var headerBytes = header.toByteArray();
+                    buffer.writeBytes(headerBytes);
+
+                    ackStream.onNext(PutResult.metadata(buffer));
+                }
+
+                ackStream.onCompleted();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ackStream.onError(flightError(e));
+            }
+            catch (ExecutionException e) {
+                ackStream.onError(flightError(e.getCause()));
+            }
+            catch (Exception e) {
+                ackStream.onError(flightError(e));
+            }
+            finally {
+                helpers.closeDataContext(dataContext);
+            }
+        };
+    }
+
+    private static FlightRuntimeException flightError(Throwable error) {
+
+        var grpcError = GrpcErrorMapping.processError(error);
+        return StatusUtils.fromGrpcRuntimeException(grpcError);
+    }
+
+
+    public static class RequestMiddleware implements FlightServerMiddleware {
+
+        // Flight calls are dispatched to the producer off the gRPC context
+        // Capture request metadata and client state (including auth) when the call starts
+
+        private final RequestMetadata requestMetadata;
+        private final GrpcClientState clientState;
+
+        private RequestMiddleware(RequestMetadata requestMetadata, GrpcClientState clientState) {
+            this.requestMetadata = requestMetadata;
+            this.clientState = clientState;
+        }
+
+        @Override
+        public void onBeforeSendingHeaders(CallHeaders outgoingHeaders) {
+            // No-op
+        }
+
+        @Override
+        public void onCallCompleted(CallStatus status) {
+            // No-op
+        }
+
+        @Override
+        public void onCallErrored(Throwable err) {
+            // No-op
+        }
+
+        public static class Factory implements FlightServerMiddleware.Factory<RequestMiddleware> {
+
+            private final GrpcConcern commonConcerns;
+
+            private Factory(GrpcConcern commonConcerns) {
+                this.commonConcerns = commonConcerns;
+            }
+
+            @Override
+            public RequestMiddleware onCallStarted(CallInfo info, CallHeaders incomingHeaders, RequestContext context) {
+
+                var requestMetadata = RequestMetadata.get(Context.current());
+                var clientState = commonConcerns.prepareClientCall(Context.current());
+
+                return new RequestMiddleware(requestMetadata, clientState);
+            }
+        }
+    }
+}
@@ -26,9 +26,13 @@ import org.finos.tracdap.svc.data.service.StorageService;
 
 import org.apache.arrow.memory.BufferAllocator;
 import io.grpc.Context;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 
 public class TracStorageApi extends TracStorageApiGrpc.TracStorageApiImplBase {
 
@@ -87,6 +91,26 @@ public class TracStorageApi extends TracStorageApiGrpc.TracStorageApiImplBase {
                 .whenComplete((result, error) -> unaryResponse(result, error, responseObserver, dataContext));
     }
 
+    @Override
+    public void listContents(StorageListRequest request, StreamObserver<StorageLsResponse> responseObserver) {
+
+        var requestMetadata = RequestMetadata.get(Context.current());
+        var dataContext = helpers.prepareDataContext(requestMetadata);
+
+        var serverObserver = (ServerCallStreamObserver<StorageLsResponse>) responseObserver;
+
+        var pageToken = request.hasPageToken()
+                ? request.getPageToken()
+                : null;
+
+        var listing = new ListContentsStream(request, pageToken, serverObserver, dataContext);
+
+        serverObserver.setOnReadyHandler(listing::onReady);
+        serverObserver.setOnCancelHandler(listing::onCancel);
+
+        listing.onReady();
+    }
+
     @Override
     public void readFile(StorageReadRequest request, StreamObserver<StorageReadResponse> responseObserver) {
 
@@ -134,4 +158,100 @@ public class TracStorageApi extends TracStorageApiGrpc.TracStorageApiImplBase {
             helpers.closeDataContext(dataContext);
         }
     }
+
+    private class ListContentsStream {
+
+        // Paging is driven by the transport, the next page is only listed when the client is ready to receive it
+        // At most one page is in flight at a time, the data context is closed once the stream is finished
+
+        private final StorageListRequest request;
+        private final ServerCallStreamObserver<StorageLsResponse> responseObserver;
+        private final DataContext dataContext;
+
+        private String pageToken;
+        private boolean pending;
+        private boolean cancelled;
+        private boolean finished;
+
+        ListContentsStream(
+                StorageListRequest request, String pageToken,
+                ServerCallStreamObserver<StorageLsResponse> responseObserver,
+                DataContext dataContext) {
+
+            this.request = request;
+            this.pageToken = pageToken;
+            this.responseObserver = responseObserver;
+            this.dataContext = dataContext;
+        }
+
+        synchronized void onReady() {
+
+            if (finished || pending || cancelled || !responseObserver.isReady())
+                return;
+
+            pending = true;
+
+            CompletionStage<StorageLsResponse> nextPage;
+
+            try {
+                nextPage = storageService.listContents(request, pageToken, dataContext);
+            }
+            catch (RuntimeException e) {
+                nextPage = CompletableFuture.failedFuture(e);
+            }
+
+            nextPage.whenComplete(this::onPage);
+        }
+
+        synchronized void onCancel() {
+
+            cancelled = true;
+
+            if (!pending)
+                finish();
+        }
+
+        private synchronized void onPage(StorageLsResponse page, Throwable error) {
+
+            pending = false;
+
+            if (cancelled) {
+                finish();
+                return;
+            }
+
+            try {
+
+                if (error != null) {
+                    responseObserver.onError(error);
+                    finish();
+                    return;
+                }
+
+                responseObserver.onNext(page);
+
+                if (page.hasNextPageToken()) {
+                    pageToken = page.getNextPageToken();
+                    onReady();
+                }
+                else {
+                    responseObserver.onCompleted();
+                    finish();
+                }
+            }
+            catch (RuntimeException e) {
+                finish();
+                throw e;
+            }
+        }
+
+        private void finish() {
+
+            if (finished)
+                return;
+
+            finished = true;
+            helpers.closeDataContext(dataContext);
+        }
+    }
 }
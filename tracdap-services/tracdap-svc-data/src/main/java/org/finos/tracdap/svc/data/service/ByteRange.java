@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.svc.data.service;
+
+import org.finos.tracdap.api.FileReadRequest;
+import org.finos.tracdap.common.exception.ERangeValidation;
+import org.finos.tracdap.common.exception.EUnexpected;
+
+import java.util.regex.Pattern;
+
+
+public class ByteRange {
+
+    // Only a single range is supported, multipart range responses are not
+    private static final Pattern HTTP_RANGE = Pattern.compile("^\\s*bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*$");
+
+    private final Long offset;
+    private final Long length;
+    private final Long totalSize;
+
+    private ByteRange(Long offset, Long length, Long totalSize) {
+        this.offset = offset;
+        this.length = length;
+        this.totalSize = totalSize;
+    }
+
+    public static ByteRange of(Long offset, Long length) {
+        return new ByteRange(offset, length, null);
+    }
+
+    public static ByteRange forRequest(FileReadRequest request) {
+
+        return new ByteRange(
+                request.hasOffset() ? request.getOffset() : null,
+                request.hasLength() ? request.getLength() : null,
+                null);
+    }
+
+    public static ByteRange parseHttpRange(String rangeHeader) {
+
+        // Ranges that cannot be parsed are ignored and the full content is sent (RFC 9110, section 14.2)
+
+        if (rangeHeader == null || rangeHeader.isBlank())
+            return null;
+
+        var match = HTTP_RANGE.matcher(rangeHeader);
+
+        if (!match.matches())
+            return null;
+
+        var first = match.group(1);
+        var last = match.group(2);
+
+        try {
+
+            // Suffix range, bytes=-500 is the last 500 bytes
+            if (first.isEmpty())
+                return last.isEmpty() ? null : of(null, Long.parseLong(last));
+
+            var offset = Long.parseLong(first);
+
+            // Open range, bytes=500- is everything from offset 500
+            if (last.isEmpty())
+                return of(offset, null);
+
+            // A last byte past the end of the object is clamped to the object size when the range is resolved
+            // Values too big to hold in a long are certainly past the end, so treat those as an open range
+
+            var lastByte = parseOrMax(last);
+
+            if (lastByte < offset)
+                return null;
+
+            if (lastByte == Long.MAX_VALUE)
+                return of(offset, null);
+
+            return of(offset, lastByte - offset + 1);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseOrMax(String digits) {
+
+        try {
+            return Long.parseLong(digits);
+        }
+        catch (NumberFormatException e) {
+
+            // The regex only allows digits, so a parse failure means the value is out of range
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public ByteRange resolve(long size) {
+
+        if (offset == null && length == null)
+            return new ByteRange(0L, size, size);
+
+        if (length != null && length <= 0)
+            throw new ERangeValidation("Requested range is empty");
+
+        if (offset != null) {
+
+            if (offset < 0 || offset >= size) {
+                var message = String.format("Requested offset [%d] is outside the object size [%d]", offset, size);
+                throw new ERangeValidation(message);
+            }
+
+            // Compare against the remaining size, offset + length can overflow for very large lengths
+            var end = length != null && length <= size - offset ? offset + length : size;
+
+            return new ByteRange(offset, end - offset, size);
+        }
+
+        // Suffix range, the last N bytes of the object
+
+        if (size == 0)
+            throw new ERangeValidation("Requested range is outside the object size [0]");
+
+        var start = Math.max(0, size - length);
+
+        return new ByteRange(start, size - start, size);
+    }
+
+    public boolean isPartial() {
+
+        if (totalSize == null)
+            return offset != null || length != null;
+
+        return offset > 0 || length < totalSize;
+    }
+
+    public boolean hasOffset() {
+        return offset != null;
+    }
+
+    public boolean hasLength() {
+        return length != null;
+    }
+
+    public long offset() {
+        return offset != null ? offset : 0;
+    }
+
+    public long length() {
+        return length != null ? length : 0;
+    }
+
+    public String contentRange() {
+
+        // Only available once the range is resolved against the object size
+        if (totalSize == null)
+            throw new EUnexpected();
+
+        return String.format("bytes %d-%d/%d", offset, offset + length - 1, totalSize);
+    }
+}
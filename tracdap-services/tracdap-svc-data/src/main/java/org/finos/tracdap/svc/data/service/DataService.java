@@ -19,34 +19,54 @@ package org.finos.tracdap.svc.data.service;
 
 import org.finos.tracdap.api.*;
 import org.finos.tracdap.api.internal.InternalMetadataApiGrpc;
+import org.finos.tracdap.common.data.ArrowBatchCache;
+import org.finos.tracdap.common.data.BufferBudget;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.SchemaMapping;
+import org.finos.tracdap.common.data.pipeline.AggregationStage;
+import org.finos.tracdap.common.data.pipeline.BatchCacheSource;
+import org.finos.tracdap.common.data.pipeline.BatchCacheStage;
 import org.finos.tracdap.common.data.pipeline.CounterStage;
+import org.finos.tracdap.common.data.pipeline.FlightDataSource;
+import org.finos.tracdap.common.data.pipeline.RangeSelector;
 import org.finos.tracdap.common.storage.LayoutItem;
 import org.finos.tracdap.common.storage.LayoutSelector;
 import org.finos.tracdap.common.util.LoggingHelpers;
 import org.finos.tracdap.metadata.*;
 import org.finos.tracdap.common.async.Futures;
 import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.exception.EMetadataCorrupt;
 import org.finos.tracdap.common.exception.EMetadataDuplicate;
+import org.finos.tracdap.common.exception.EPluginNotAvailable;
 import org.finos.tracdap.common.codec.ICodec;
 import org.finos.tracdap.common.codec.ICodecManager;
+import org.finos.tracdap.common.codec.compression.ICompression;
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.exception.EUnexpected;
 import org.finos.tracdap.common.middleware.GrpcClientConfig;
+import org.finos.tracdap.common.middleware.GrpcConcern;
 import org.finos.tracdap.common.grpc.RequestMetadata;
 import org.finos.tracdap.common.metadata.MetadataCodec;
 import org.finos.tracdap.common.metadata.MetadataUtil;
 import org.finos.tracdap.common.metadata.PartKeys;
 import org.finos.tracdap.common.validation.Validator;
 
+import io.grpc.Context;
+import io.grpc.Status;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
 import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
+import java.util.function.Function;
 
 import static org.finos.tracdap.common.metadata.MetadataConstants.TRAC_STORAGE_OBJECT_ATTR;
 import static org.finos.tracdap.common.metadata.MetadataUtil.selectorFor;
@@ -60,22 +80,49 @@ public class DataService {
     // TODO: Remove specialisation for STRUCT storage format
     private static final String STRUCT_STORAGE_FORMAT = "application/json";
 
+    // Attempts to record a format copy, if the storage object is updated concurrently
+    private static final int FORMAT_COPY_SAVE_ATTEMPTS = 3;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final TenantStorageManager storageManager;
     private final ICodecManager codecManager;
     private final InternalMetadataApiGrpc.InternalMetadataApiFutureStub metaClient;
+    private final ArrowBatchCache batchCache;
+    private final MetadataCache metadataCache;
+    private final FormatCopyTracker copyTracker;
+    private final BufferAllocator copyAllocator;
+    private final BufferBudget copyBudget;
+    private final EventLoopGroup copyEventLoops;
+    private final GrpcConcern commonConcerns;
+    private final int aggregationGroupLimit;
 
     private final Validator validator = new Validator();
 
     public DataService(
             TenantStorageManager storageManager,
             ICodecManager codecManager,
-            InternalMetadataApiGrpc.InternalMetadataApiFutureStub metaClient) {
+            InternalMetadataApiGrpc.InternalMetadataApiFutureStub metaClient,
+            ArrowBatchCache batchCache,
+            MetadataCache metadataCache,
+            FormatCopyTracker copyTracker,
+            BufferAllocator copyAllocator,
+            BufferBudget copyBudget,
+            EventLoopGroup copyEventLoops,
+            GrpcConcern commonConcerns,
+            int aggregationGroupLimit) {
 
         this.storageManager = storageManager;
         this.codecManager = codecManager;
         this.metaClient = metaClient;
+        this.batchCache = batchCache;
+        this.metadataCache = metadataCache;
+        this.copyTracker = copyTracker;
+        this.copyAllocator = copyAllocator;
+        this.copyBudget = copyBudget;
+        this.copyEventLoops = copyEventLoops;
+        this.commonConcerns = commonConcerns;
+        this.aggregationGroupLimit = aggregationGroupLimit;
     }
 
     public CompletionStage<TagHeader> createDataset(
@@ -85,16 +132,42 @@ public class DataService {
             RequestMetadata requestMetadata,
             GrpcClientConfig clientConfig) {
 
-        var initialState = new RequestState();
-        initialState.tenant = request.getTenant();
-        initialState.requestMetadata = requestMetadata;
-        initialState.clientConfig = clientConfig;
-
         // Look up the requested data codec
         // If the codec is unknown the request will fail right away
         var codec = codecManager.getCodec(request.getFormat());
+        var compression = codecManager.getCompression(request.getFormat());
         var codecOptions = Map.<String, String>of();
 
+        return createDataset(request,
+                state -> decodePipeline(state, contentStream, codec, compression, codecOptions, dataCtx),
+                dataCtx, requestMetadata, clientConfig);
+    }
+
+    public CompletionStage<TagHeader> createDataset(
+            DataWriteRequest request,
+            FlightDataSource arrowSource,
+            IDataContext dataCtx,
+            RequestMetadata requestMetadata,
+            GrpcClientConfig clientConfig) {
+
+        // Source is already producing Arrow record batches, no decoding is needed
+        return createDataset(request,
+                state -> arrowPipeline(state, arrowSource, dataCtx),
+                dataCtx, requestMetadata, clientConfig);
+    }
+
+    private CompletionStage<TagHeader> createDataset(
+            DataWriteRequest request,
+            Function<RequestState, DataPipeline> source,
+            IDataContext dataCtx,
+            RequestMetadata requestMetadata,
+            GrpcClientConfig clientConfig) {
+
+        var initialState = new RequestState();
+        initialState.tenant = request.getTenant();
+        initialState.requestMetadata = requestMetadata;
+        initialState.clientConfig = clientConfig;
+
         return CompletableFuture.completedFuture(initialState)
 
                 // Resolve a concrete schema to use for this save operation
@@ -111,9 +184,7 @@ public class DataService {
                 // Decode the data content stream and write it to the storage layer
                 // This is where the main data processing streams are executed
                 // When this future completes, the data processing stream has completed (or failed)
-                .thenCompose(state -> decodeAndSave(
-                        state, contentStream,
-                        codec, codecOptions, dataCtx))
+                .thenCompose(state -> saveData(state, source.apply(state), dataCtx))
 
                 // Update metadata objects with results from data processing
                 // (currently just size, but could also include other basic stats)
@@ -132,6 +203,37 @@ public class DataService {
             RequestMetadata requestMetadata,
             GrpcClientConfig clientConfig) {
 
+        // Look up the requested data codec
+        // If the codec is unknown the request will fail right away
+        var codec = codecManager.getCodec(request.getFormat());
+        var compression = codecManager.getCompression(request.getFormat());
+        var codecOptions = Map.<String, String>of();
+
+        return updateDataset(request,
+                state -> decodePipeline(state, contentStream, codec, compression, codecOptions, dataCtx),
+                dataCtx, requestMetadata, clientConfig);
+    }
+
+    public CompletionStage<TagHeader> updateDataset(
+            DataWriteRequest request,
+            FlightDataSource arrowSource,
+            IDataContext dataCtx,
+            RequestMetadata requestMetadata,
+            GrpcClientConfig clientConfig) {
+
+        // Source is already producing Arrow record batches, no decoding is needed
+        return updateDataset(request,
+                state -> arrowPipeline(state, arrowSource, dataCtx),
+                dataCtx, requestMetadata, clientConfig);
+    }
+
+    private CompletionStage<TagHeader> updateDataset(
+            DataWriteRequest request,
+            Function<RequestState, DataPipeline> source,
+            IDataContext dataCtx,
+            RequestMetadata requestMetadata,
+            GrpcClientConfig clientConfig) {
+
         var initialState = new RequestState();
         initialState.tenant = request.getTenant();
         initialState.requestMetadata = requestMetadata;
@@ -140,11 +242,6 @@ public class DataService {
         var priorState = new RequestState();
         priorState.clientConfig = clientConfig;
 
-        // Look up the requested data codec
-        // If the codec is unknown the request will fail right away
-        var codec = codecManager.getCodec(request.getFormat());
-        var codecOptions = Map.<String, String>of();
-
         return CompletableFuture.completedFuture(priorState)
 
                 // Load metadata for the prior version (DATA, STORAGE, SCHEMA if external)
@@ -163,10 +260,7 @@ public class DataService {
                 // Decode the data content stream and write it to the storage layer
                 // This is where the main data processing streams are executed
                 // When this future completes, the data processing stream has completed (or failed)
-                .thenCompose(state -> decodeAndSave(
-                        state, contentStream,
-                        codec, codecOptions,
-                        dataCtx))
+                .thenCompose(state -> saveData(state, source.apply(state), dataCtx))
 
                 // Update metadata objects with results from data processing
                 // (currently just size, but could also include other basic stats)
@@ -187,16 +281,34 @@ public class DataService {
             RequestMetadata requestMetadata,
             GrpcClientConfig clientConfig) {
 
+        readDataset(request, null, new CompletableFuture<>(), schema, contentStream, dataCtx, requestMetadata, clientConfig);
+    }
+
+    public void readDataset(
+            DataReadRequest request,
+            ByteRange byteRange,
+            CompletableFuture<ByteRange> resolvedRange,
+            CompletableFuture<SchemaDefinition> schema,
+            Flow.Subscriber<ArrowBuf> contentStream,
+            IDataContext dataCtx,
+            RequestMetadata requestMetadata,
+            GrpcClientConfig clientConfig) {
+
         var state = new RequestState();
         state.tenant = request.getTenant();
         state.requestMetadata = requestMetadata;
         state.clientConfig = clientConfig;
 
         var codec = codecManager.getCodec(request.getFormat());
+        var compression = codecManager.getCompression(request.getFormat());
         var codecOptions = Map.<String, String>of();
 
+        // Format copies are matched on MIME type, including any compression suffix
+        var mimeType = codecManager.getDefaultMimeType(request.getFormat());
+
         state.offset = request.getOffset();
         state.limit = request.getLimit();
+        state.aggregation = request.hasAggregation() ? request.getAggregation() : null;
 
         CompletableFuture.completedFuture(null)
 
@@ -206,20 +318,59 @@ public class DataService {
                 // Select which copy of the data will be read
                 .thenAccept(x -> selectCopy(state))
 
+                // If there is a copy already stored in the requested format, it can be sent as-is
+                .thenAccept(x -> selectFormatCopy(state, mimeType))
+
+                // Byte ranges can only be served from a stored copy, otherwise the whole content is sent
+                .thenCompose(x -> resolveByteRange(state, byteRange, dataCtx))
+                .thenAccept(x -> resolvedRange.complete(state.range))
+
                 // Report the resolved schema back to the caller
                 // This will be used to construct the first message in the response stream
-                .thenAccept(x -> schema.complete(state.schema))
+                .thenAccept(x -> schema.complete(readSchema(state)))
 
                 // Load data from storage and encode it for transmission
                 // This is where the main data processing streams are executed
                 // When this future completes, the data processing stream has completed (or failed)
-                .thenAccept(x -> loadAndEncode(
-                        state, contentStream,
-                        codec, codecOptions, dataCtx))
+                .thenAccept(x -> {
+                    if (state.formatCopy != null)
+                        loadFormatCopy(state, contentStream, dataCtx);
+                    else
+                        loadAndEncode(state, contentStream, codec, compression, codecOptions, mimeType, dataCtx);
+                })
 
                 .exceptionally(error -> Helpers.reportError(error, schema, contentStream));
     }
 
+    public CompletionStage<Void> readDataset(
+            DataReadRequest request,
+            Function<DataPipeline, DataPipeline.SinkStage> arrowSink,
+            IDataContext dataCtx,
+            RequestMetadata requestMetadata,
+            GrpcClientConfig clientConfig) {
+
+        var state = new RequestState();
+        state.tenant = request.getTenant();
+        state.requestMetadata = requestMetadata;
+        state.clientConfig = clientConfig;
+
+        state.offset = request.getOffset();
+        state.limit = request.getLimit();
+        state.aggregation = request.hasAggregation() ? request.getAggregation() : null;
+
+        return CompletableFuture.completedFuture(null)
+
+                // Load metadata for the dataset (DATA, STORAGE, SCHEMA if external)
+                .thenCompose(x -> loadMetadata(request.getTenant(), request.getSelector(), state))
+
+                // Select which copy of the data will be read
+                .thenAccept(x -> selectCopy(state))
+
+                // Load data from storage and send record batches directly to the sink, with no encoding step
+                // The returned future completes when the data processing stream has completed (or failed)
+                .thenCompose(x -> loadArrow(state, arrowSink, dataCtx));
+    }
+
     private CompletionStage<RequestState> preallocateIds(DataWriteRequest request, RequestState state) {
 
         var client = state.clientConfig.configureClient(metaClient);
@@ -249,9 +400,8 @@ public class DataService {
     private CompletionStage<RequestState> loadMetadata(String tenant, TagSelector dataSelector, RequestState state) {
 
         var client = state.clientConfig.configureClient(metaClient);
-        var request = MetadataBuilders.requestForSelector(tenant, dataSelector);
 
-        return Futures.javaFuture(client.readObject(request))
+        return metadataCache.readObject(client, tenant, dataSelector)
                 .thenAccept(tag -> {
                     state.dataId = tag.getHeader();
                     state.data = tag.getDefinition().getData();
@@ -264,9 +414,8 @@ public class DataService {
     private CompletionStage<RequestState> loadStorageAndExternalSchema(String tenant, RequestState state) {
 
         var client = state.clientConfig.configureClient(metaClient);
-        var request = MetadataBuilders.requestForBatch(tenant, state.data.getStorageId(), state.data.getSchemaId());
 
-        return Futures.javaFuture(client.readBatch(request))
+        return metadataCache.readBatch(client, tenant, state.data.getStorageId(), state.data.getSchemaId())
                 .thenApply(response -> {
 
                     var storageTag = response.getTag(0);
@@ -285,9 +434,8 @@ public class DataService {
     private CompletionStage<RequestState> loadStorageAndEmbeddedSchema(String tenant, RequestState state) {
 
         var client = state.clientConfig.configureClient(metaClient);
-        var request = MetadataBuilders.requestForSelector(tenant, state.data.getStorageId());
 
-        return Futures.javaFuture(client.readObject(request))
+        return metadataCache.readObject(client, tenant, state.data.getStorageId())
                 .thenApply(tag -> {
 
                     state.storageId = tag.getHeader();
@@ -322,9 +470,7 @@ public class DataService {
                 return CompletableFuture.completedFuture(state);
             }
 
-            var schemaReq = MetadataBuilders.requestForSelector(request.getTenant(), request.getSchemaId());
-
-            return Futures.javaFuture(client.readObject(schemaReq))
+            return metadataCache.readObject(client, request.getTenant(), request.getSchemaId())
                     .thenApply(tag -> { state.schema = tag.getDefinition().getSchema(); return state; });
         }
 
@@ -340,21 +486,105 @@ public class DataService {
         // Current implementation only supports snap updates, so delta is always zero
         var deltaIndex = 0;
 
-        // Current implementation only creates the first incarnation and copy of each delta
-        var incarnationIndex = 0;
-        var copyIndex = 0;
-
         var delta = state.data
                 .getPartsOrThrow(opaqueKey)
                 .getSnap()
                 .getDeltas(deltaIndex);
 
         var dataItem = delta.getDataItem();
+        var storageItem = state.storage.getDataItemsOrThrow(dataItem);
 
-        state.copy = state.storage
-                .getDataItemsOrThrow(dataItem)
-                .getIncarnations(incarnationIndex)
-                .getCopies(copyIndex);
+        // Read from the latest available incarnation
+        // The primary copy comes first, format copies are added after it
+
+        for (var incarnationIndex = storageItem.getIncarnationsCount() - 1; incarnationIndex >= 0; incarnationIndex--) {
+
+            var incarnation = storageItem.getIncarnations(incarnationIndex);
+
+            if (incarnation.getIncarnationStatus() != IncarnationStatus.INCARNATION_AVAILABLE)
+                continue;
+
+            for (var copy : incarnation.getCopiesList()) {
+
+                if (copy.getCopyStatus() == CopyStatus.COPY_AVAILABLE) {
+
+                    state.dataItem = dataItem;
+                    state.incarnationIndex = incarnationIndex;
+                    state.copy = copy;
+                    return;
+                }
+            }
+        }
+
+        var message = String.format("No copy is available for data item [%s]", dataItem);
+        log.error(message);
+        throw new EMetadataCorrupt(message);
+    }
+
+    private void selectFormatCopy(RequestState state, String mimeType) {
+
+        // Copies can only be sent as-is for a full read, with no range selection or aggregation
+        if (!isFullRead(state))
+            return;
+
+        var copies = state.storage
+                .getDataItemsOrThrow(state.dataItem)
+                .getIncarnations(state.incarnationIndex)
+                .getCopiesList();
+
+        for (var copy : copies) {
+
+            // A copy with the same codec and compression holds exactly the bytes that would be encoded
+            // Sending it means no duplicate copy is ever created for a format that is only an alias
+
+            if (copy.getCopyStatus() == CopyStatus.COPY_AVAILABLE && isSameEncoding(copy.getStorageFormat(), mimeType)) {
+
+                log.info("Sending stored copy in the requested format [{}]", copy.getStorageFormat());
+
+                state.formatCopy = copy;
+                return;
+            }
+        }
+    }
+
+    private boolean isFullRead(RequestState state) {
+
+        return state.offset == 0 && state.limit == 0 && state.aggregation == null;
+    }
+
+    private boolean isSameEncoding(String storageFormat, String mimeType) {
+
+        // Formats that resolve to the same codec and compression give identical stored content
+
+        try {
+
+            var storageCodec = codecManager.getCodec(storageFormat);
+            var copyCodec = codecManager.getCodec(mimeType);
+
+            var storageCompression = codecManager.getCompression(storageFormat);
+            var copyCompression = codecManager.getCompression(mimeType);
+
+            if (storageCodec.getClass() != copyCodec.getClass())
+                return false;
+
+            if (storageCompression == null || copyCompression == null)
+                return storageCompression == copyCompression;
+
+            return storageCompression.getClass() == copyCompression.getClass();
+        }
+        catch (EPluginNotAvailable e) {
+            return false;
+        }
+    }
+
+    private boolean isSameFormat(String storageFormat, String mimeType) {
+
+        try {
+            return codecManager.getDefaultMimeType(storageFormat).equals(mimeType);
+        }
+        catch (EPluginNotAvailable e) {
+            return false;
+        }
     }
 
     private CompletionStage<TagHeader> saveMetadata(DataWriteRequest request, RequestState state) {
@@ -564,7 +794,7 @@ public class DataService {
     private StorageDefinition createStorageDef(RequestState state, String dataItem) {
 
         var storage = storageManager.getTenantStorage(state.tenant);
-        var layoutId = storage.defaultLayout();
+        var layoutId = storage.defaultLayout(storage.defaultLocation());
         var layout = LayoutSelector.newObjectLayout(layoutId);
 
         var mimeType = state.schema.getSchemaType() == SchemaType.STRUCT_SCHEMA ? STRUCT_STORAGE_FORMAT : storage.defaultFormat();
@@ -620,7 +850,8 @@ public class DataService {
                 ? STRUCT_STORAGE_FORMAT
                 : tenantStorage.defaultFormat();
 
-        // For the time being, data has one incarnation and a single storage copy
+        // New data items start with a single incarnation holding the primary copy
+        // Format copies are added to the incarnation later, by saveFormatCopy()
 
         var storageTimestamp = state.storageId.getObjectTimestamp();
         var incarnationIndex = 0;
@@ -704,37 +935,345 @@ public class DataService {
 
     private void loadAndEncode(
             RequestState state, Flow.Subscriber<ArrowBuf> contentStream,
-            ICodec codec, Map<String, String> codecOptions,
+            ICodec codec, ICompression compression,
+            Map<String, String> codecOptions, String mimeType,
             IDataContext dataCtx) {
 
+        var pipeline = pipelineReader(state, dataCtx);
+        var encoder = codec.getEncoder(dataCtx.arrowAllocator(), codecOptions);
+
+        pipeline.addStage(encoder);
+
+        if (compression != null)
+            pipeline.addStage(compression.getCompressor(dataCtx.arrowAllocator()));
+
+        pipeline.addSink(contentStream);
+
+        // After a successful download, check whether to store a copy in the format that was sent
+        pipeline.execute().thenRun(() -> checkFormatCopy(state, mimeType));
+    }
+
+    private CompletionStage<Void> resolveByteRange(RequestState state, ByteRange byteRange, IDataContext dataCtx) {
+
+        if (byteRange == null || state.formatCopy == null)
+            return CompletableFuture.completedFuture(null);
+
         var storage = storageManager
                 .getTenantStorage(state.tenant)
-                .getDataStorage(state.copy.getStorageKey());
+                .getDataStorage(state.formatCopy.getStorageKey());
 
-        var pipeline = storage.pipelineReader(state.copy, state.schema, dataCtx, state.offset, state.limit);
-        var encoder = codec.getEncoder(dataCtx.arrowAllocator(), codecOptions);
+        return storage.size(state.formatCopy, dataCtx)
+                .thenAccept(size -> state.range = byteRange.resolve(size));
+    }
+
+    private void loadFormatCopy(RequestState state, Flow.Subscriber<ArrowBuf> contentStream, IDataContext dataCtx) {
+
+        var storage = storageManager
+                .getTenantStorage(state.tenant)
+                .getDataStorage(state.formatCopy.getStorageKey());
+
+        // Send the stored bytes with no decoding or encoding, only fetch the requested range if there is one
+        var content = state.range != null && state.range.isPartial()
+                ? storage.reader(state.formatCopy, state.range.offset(), state.range.length(), dataCtx)
+                : storage.reader(state.formatCopy, dataCtx);
+
+        var pipeline = DataPipeline.forSource(content, dataCtx);
 
-        pipeline.addStage(encoder);
         pipeline.addSink(contentStream);
+        pipeline.execute();
+    }
+
+    private void checkFormatCopy(RequestState state, String mimeType) {
+
+        try {
+
+            if (!isFullRead(state))
+                return;
+
+            var tenantStorage = storageManager.getTenantStorage(state.tenant);
+            var tenantPolicy = tenantStorage.copyFormats().stream().anyMatch(format -> isSameFormat(format, mimeType));
+
+            var copyKey = String.format("%s/%s/%s/%s",
+                    state.tenant, state.storageId.getObjectId(),
+                    state.dataItem, mimeType);
+
+            if (copyTracker.recordDownload(copyKey, tenantPolicy)) {
+
+                // The copy is background work owned by the service, it outlives the request that triggered it
+                // Run it on a service event loop, and call the metadata service as the service itself
+
+                var copyExecutor = copyEventLoops.next();
+
+                copyExecutor.execute(() -> createFormatCopy(state, mimeType, copyExecutor)
+                        .whenComplete((result, error) -> copyTracker.copyFinished(copyKey)));
+            }
+        }
+        catch (Exception e) {
+            log.warn("Failed to check for format copy: {}", e.getMessage(), e);
+        }
+    }
+
+    private CompletionStage<Void> createFormatCopy(RequestState state, String mimeType, EventLoop copyExecutor) {
+
+        var allocatorName = state.requestMetadata.requestId() + "-copy";
+        var allocator = copyAllocator.newChildAllocator(allocatorName, 0, copyAllocator.getLimit());
+        var copyCtx = new DataContext(copyExecutor, copyExecutor, allocator, copyBudget);
+
+        var clientState = commonConcerns.prepareClientCall(Context.ROOT);
+
+        var storage = storageManager
+                .getTenantStorage(state.tenant)
+                .getDataStorage(state.copy.getStorageKey());
+
+        var copy = StorageCopy.newBuilder()
+                .setStorageKey(state.copy.getStorageKey())
+                .setStoragePath(formatCopyPath(state.copy, mimeType))
+                .setStorageFormat(mimeType)
+                .setCopyStatus(CopyStatus.COPY_AVAILABLE)
+                .setCopyTimestamp(MetadataCodec.encodeDatetime(Instant.now()))
+                .build();
+
+        log.info("Creating copy of [{}] in format [{}]", state.dataItem, copy.getStorageFormat());
+
+        // Copies are only requested for a different encoding, same encodings are sent from the stored copy
+        var signal = new CompletableFuture<Long>();
+        var pipeline = storage.pipelineReader(state.copy, state.schema, copyCtx);
+        pipeline = storage.pipelineWriter(copy, copyCtx, pipeline, signal);
 
         pipeline.execute();
+
+        // If the copy cannot be recorded in metadata, nothing will ever reference the stored content
+        // So remove it, rather than leaving an orphaned object in storage
+
+        return signal
+                .thenCompose(fileSize -> saveFormatCopy(state, copy, clientState, 1))
+                .<CompletionStage<Void>>handleAsync((saved, error) -> {
+
+                    if (error != null)
+                        log.warn("Failed to create copy of [{}] in format [{}]: {}",
+                                state.dataItem, copy.getStorageFormat(), error.getMessage(), error);
+                    else if (saved)
+                        log.info("Created copy of [{}] in format [{}]", state.dataItem, copy.getStorageFormat());
+                    else
+                        log.info("Copy of [{}] in format [{}] is no longer needed", state.dataItem, copy.getStorageFormat());
+
+                    if (error != null || !saved)
+                        return storage.delete(copy, copyCtx).exceptionally(deleteError -> {
+                            log.warn("Failed to remove unused copy [{}]: {}", copy.getStoragePath(), deleteError.getMessage(), deleteError);
+                            return null;
+                        });
+                    else
+                        return CompletableFuture.<Void>completedFuture(null);
+
+                }, copyExecutor)
+                .thenCompose(Function.identity())
+                .handleAsync((result, error) -> {
+
+                    try {
+                        allocator.close();
+                    }
+                    catch (Exception e) {
+                        log.warn("Memory was not released after creating copy: {}", e.getMessage(), e);
+                    }
+
+                    return null;
+
+                }, copyExecutor);
     }
 
-    private CompletionStage<RequestState> decodeAndSave(
-            RequestState state, Flow.Publisher<ArrowBuf> contentStream,
-            ICodec codec, Map<String, String> codecOptions,
+    private String formatCopyPath(StorageCopy primaryCopy, String mimeType) {
+
+        // Place the copy next to the primary copy, with a suffix and extension for the copy format
+
+        var primaryPath = primaryCopy.getStoragePath();
+        var primaryExtension = "." + codecManager.getDefaultFileExtension(primaryCopy.getStorageFormat());
+
+        var basePath = primaryPath.endsWith(primaryExtension)
+                ? primaryPath.substring(0, primaryPath.length() - primaryExtension.length())
+                : primaryPath;
+
+        return basePath + "-copy." + codecManager.getDefaultFileExtension(mimeType);
+    }
+
+    private CompletionStage<Boolean> saveFormatCopy(
+            RequestState state, StorageCopy copy,
+            GrpcClientConfig clientConfig, int attempt) {
+
+        // Add the new copy to the latest version of the storage definition
+        // The storage object may have been updated since the request read it, so always read the latest version
+        // Result is false if the copy is no longer needed, i.e. the incarnation is gone or already has a copy
+
+        var client = clientConfig.configureClient(metaClient);
+        var storageSelector = selectorForLatest(state.storageId);
+        var readReq = MetadataBuilders.requestForSelector(state.tenant, storageSelector);
+
+        return Futures.javaFuture(client.readObject(readReq)).thenCompose(storageTag -> {
+
+            var storageId = storageTag.getHeader();
+            var storage = storageTag.getDefinition().getStorage();
+            var storageItem = storage.getDataItemsOrThrow(state.dataItem);
+
+            if (state.incarnationIndex >= storageItem.getIncarnationsCount())
+                return CompletableFuture.completedFuture(false);
+
+            var incarnation = storageItem.getIncarnations(state.incarnationIndex);
+
+            if (incarnation.getIncarnationStatus() != IncarnationStatus.INCARNATION_AVAILABLE)
+                return CompletableFuture.completedFuture(false);
+
+            for (var existingCopy : incarnation.getCopiesList()) {
+
+                // An earlier attempt may have been saved, even if the response was lost
+                if (existingCopy.getStoragePath().equals(copy.getStoragePath()))
+                    return CompletableFuture.completedFuture(true);
+
+                if (existingCopy.getCopyStatus() == CopyStatus.COPY_AVAILABLE &&
+                    isSameFormat(existingCopy.getStorageFormat(), copy.getStorageFormat())) {
+
+                    return CompletableFuture.completedFuture(false);
+                }
+            }
+
+            var storageDef = storage.toBuilder()
+                    .putDataItems(state.dataItem, storageItem.toBuilder()
+                    .setIncarnations(state.incarnationIndex, incarnation.toBuilder().addCopies(copy))
+                    .build())
+                    .build();
+
+            var priorStorageId = selectorFor(storageId);
+            var storageReq = MetadataBuilders.buildCreateObjectReq(state.tenant, priorStorageId, storageDef, List.of());
+
+            var batchReq = MetadataWriteBatchRequest.newBuilder()
+                    .setTenant(state.tenant)
+                    .addUpdateObjects(storageReq)
+                    .build();
+
+            return Futures
+                    .javaFuture(client.writeBatch(batchReq))
+                    .<CompletionStage<Boolean>>handle((batchResp, error) -> {
+
+                        if (error == null)
+                            return CompletableFuture.completedFuture(true);
+
+                        // Another update landed between the read and the write, try again against the new version
+                        if (Status.fromThrowable(error).getCode() == Status.Code.ALREADY_EXISTS && attempt < FORMAT_COPY_SAVE_ATTEMPTS) {
+                            log.info("Storage for [{}] was updated while saving a copy, retrying", state.dataItem);
+                            return saveFormatCopy(state, copy, clientConfig, attempt + 1);
+                        }
+
+                        return CompletableFuture.<Boolean>failedFuture(error);
+                    })
+                    .thenCompose(Function.identity());
+        });
+    }
+
+    private CompletionStage<Void> loadArrow(
+            RequestState state, Function<DataPipeline, DataPipeline.SinkStage> arrowSink,
             IDataContext dataCtx) {
 
+        var pipeline = pipelineReader(state, dataCtx);
+
+        pipeline.addSink(arrowSink.apply(pipeline));
+
+        return pipeline.execute();
+    }
+
+    private DataPipeline pipelineReader(RequestState state, IDataContext dataCtx) {
+
+        var pipeline = batchCache.isEnabled()
+                ? cachedPipelineReader(state, dataCtx)
+                : storagePipelineReader(state, dataCtx, state.offset, state.limit);
+
+        // Aggregation is applied to the decoded data, after range selection and before encoding
+        if (state.aggregation != null)
+            pipeline.addStage(new AggregationStage(state.schema, state.aggregation, aggregationGroupLimit));
+
+        return pipeline;
+    }
+
+    private SchemaDefinition readSchema(RequestState state) {
+
+        // Schema of the data that will be sent back, which is different from the stored schema for aggregations
+        return state.aggregation != null
+                ? AggregationStage.aggregateSchema(state.schema, state.aggregation)
+                : state.schema;
+    }
+
+    private DataPipeline storagePipelineReader(RequestState state, IDataContext dataCtx, long offset, long limit) {
+
         var storage = storageManager
                 .getTenantStorage(state.tenant)
                 .getDataStorage(state.copy.getStorageKey());
 
+        return storage.pipelineReader(state.copy, state.schema, dataCtx, offset, limit);
+    }
+
+    private DataPipeline cachedPipelineReader(RequestState state, IDataContext dataCtx) {
+
+        // Cache entries hold the full decoded dataset, range selection is applied afterward
+
+        var cacheKey = String.format("%s/%s/%s/%s",
+                state.tenant, state.copy.getStorageKey(),
+                state.copy.getStoragePath(), state.copy.getStorageFormat());
+
+        var cacheEntry = batchCache.acquire(cacheKey);
+        DataPipeline pipeline;
+
+        if (cacheEntry != null) {
+
+            log.info("DATA CACHE: Reading cached data [{}]", cacheKey);
+
+            var source = new BatchCacheSource(batchCache, cacheEntry, dataCtx.arrowAllocator());
+            pipeline = DataPipeline.forSource(source, dataCtx);
+        }
+        else {
+
+            pipeline = storagePipelineReader(state, dataCtx, 0, 0);
+            pipeline.addStage(new BatchCacheStage(batchCache, cacheKey));
+        }
+
+        if (state.offset != 0 || state.limit != 0)
+            pipeline.addStage(new RangeSelector(state.offset, state.limit));
+
+        return pipeline;
+    }
+
+    private DataPipeline decodePipeline(
+            RequestState state, Flow.Publisher<ArrowBuf> contentStream,
+            ICodec codec, ICompression compression,
+            Map<String, String> codecOptions,
+            IDataContext dataCtx) {
+
         var pipeline = DataPipeline.forSource(contentStream, dataCtx);
         var decoder = codec.getDecoder(state.schema, dataCtx.arrowAllocator(), codecOptions);
+
+        if (compression != null)
+            pipeline.addStage(compression.getDecompressor(dataCtx.arrowAllocator()));
+
+        pipeline.addStage(decoder);
+
+        return pipeline;
+    }
+
+    private DataPipeline arrowPipeline(RequestState state, FlightDataSource arrowSource, IDataContext dataCtx) {
+
+        // Incoming batches must match the schema for the dataset, this is checked before any data is saved
+        arrowSource.requireSchema(SchemaMapping.tracToArrow(state.schema));
+
+        return DataPipeline.forSource(arrowSource, dataCtx);
+    }
+
+    private CompletionStage<RequestState> saveData(
+            RequestState state, DataPipeline pipeline,
+            IDataContext dataCtx) {
+
+        var storage = storageManager
+                .getTenantStorage(state.tenant)
+                .getDataStorage(state.copy.getStorageKey());
+
         var counter = new CounterStage();
         var signal = new CompletableFuture<Long>();
 
-        pipeline.addStage(decoder);
         pipeline.addStage(counter);
         pipeline = storage.pipelineWriter(state.copy, dataCtx, pipeline, signal);
 
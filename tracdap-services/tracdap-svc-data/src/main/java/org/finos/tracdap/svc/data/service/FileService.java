@@ -61,15 +61,18 @@ public class FileService {
 
     private final TenantStorageManager storageManager;
     private final InternalMetadataApiFutureStub metaApi;
+    private final MetadataCache metadataCache;
 
     private final Validator validator = new Validator();
 
     public FileService(
             TenantStorageManager storageManager,
-            InternalMetadataApiFutureStub metaApi) {
+            InternalMetadataApiFutureStub metaApi,
+            MetadataCache metadataCache) {
 
         this.storageManager = storageManager;
         this.metaApi = metaApi;
+        this.metadataCache = metadataCache;
     }
 
     public CompletionStage<TagHeader> createFile(
@@ -155,6 +158,9 @@ public class FileService {
 
                 .thenCompose(state -> loadMetadata(request.getTenant(), request.getSelector(), state))
 
+                // Check any requested range before the definition is sent, so range errors are reported up front
+                .thenApply(state -> { state.range = ByteRange.forRequest(request).resolve(state.file.getSize()); return state; })
+
                 .thenApply(state -> { definition.complete(state.file); return state; })
 
                 .thenApply(state -> readFileContent(state, dataCtx))
@@ -193,9 +199,8 @@ public class FileService {
     private CompletionStage<RequestState> loadMetadata(String tenant, TagSelector fileSelector, RequestState state) {
 
         var client = state.clientConfig.configureClient(metaApi);
-        var request = requestForSelector(tenant, fileSelector);
 
-        return Futures.javaFuture(client.readObject(request))
+        return metadataCache.readObject(client, tenant, fileSelector)
                 .thenAccept(tag -> {
                     state.fileId = tag.getHeader();
                     state.file = tag.getDefinition().getFile();
@@ -206,9 +211,8 @@ public class FileService {
     private CompletionStage<RequestState> loadStorageMetadata(String tenant, RequestState state) {
 
         var client = state.clientConfig.configureClient(metaApi);
-        var request = requestForSelector(tenant, state.file.getStorageId());
 
-        return Futures.javaFuture(client.readObject(request))
+        return metadataCache.readObject(client, tenant, state.file.getStorageId())
                 .thenApply(tag -> {
                     state.storageId = tag.getHeader();
                     state.storage = tag.getDefinition().getStorage();
@@ -347,6 +351,10 @@ public class FileService {
                 .getTenantStorage(state.tenant)
                 .getFileStorage(storageKey);
 
+        // Only the requested range is fetched from storage
+        if (state.range.isPartial())
+            return storage.reader(storagePath, state.range.offset(), state.range.length(), dataContext);
+
         return storage.reader(storagePath, dataContext);
     }
 
@@ -369,14 +377,14 @@ public class FileService {
                 state.fileId, selectorForLatest(state.storageId),
                 request.getName(), request.getMimeType());
 
-        var layoutId = storageManager.getTenantStorage(state.tenant).defaultLayout();
+        var layoutId = tenantStorage.defaultLayout(storageKey);
         var layout = LayoutSelector.newObjectLayout(layoutId);
         var layoutItem = LayoutItem.forFile(state.fileId, state.file);
 
         var storagePath = layout.newFilePath(layoutItem);
 
         state.storage = buildStorageDef(
-                StorageDefinition.newBuilder(),
+                StorageDefinition.newBuilder().setLayout(layoutId),
                 state.fileId, state.storageId, storageKey,
                 request.getMimeType(), storagePath);
 
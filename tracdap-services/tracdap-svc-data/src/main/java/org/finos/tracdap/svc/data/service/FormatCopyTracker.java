@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.svc.data.service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Decide when a dataset should be copied into a secondary storage format.
+ *
+ * <p>Downloads are counted for each data item and format. Once the count reaches the
+ * download threshold, a single caller is told to create the copy. Formats listed in the
+ * tenant copy policy are copied on the first download. Counts are held in memory for each
+ * service instance in a bounded LRU map, so an eviction or restart only delays the copy.</p>
+ */
+public class FormatCopyTracker {
+
+    private static final int MAX_TRACKED_ITEMS = 10000;
+
+    private final int downloadThreshold;
+    private final Map<String, Integer> downloads;
+    private final Set<String> inProgress;
+
+    public FormatCopyTracker(int downloadThreshold) {
+
+        this.downloadThreshold = downloadThreshold;
+
+        // Access-ordered map gives LRU eviction
+        this.downloads = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > MAX_TRACKED_ITEMS;
+            }
+        };
+
+        this.inProgress = new HashSet<>();
+    }
+
+    public boolean recordDownload(String copyKey, boolean tenantPolicy) {
+
+        var threshold = tenantPolicy ? 1 : downloadThreshold;
+
+        // Threshold of zero disables copying, unless the format is in the tenant policy
+        if (threshold <= 0)
+            return false;
+
+        synchronized (downloads) {
+
+            if (inProgress.contains(copyKey))
+                return false;
+
+            var count = downloads.merge(copyKey, 1, Integer::sum);
+
+            if (count < threshold)
+                return false;
+
+            downloads.remove(copyKey);
+            inProgress.add(copyKey);
+
+            return true;
+        }
+    }
+
+    public void copyFinished(String copyKey) {
+
+        synchronized (downloads) {
+            inProgress.remove(copyKey);
+        }
+    }
+}
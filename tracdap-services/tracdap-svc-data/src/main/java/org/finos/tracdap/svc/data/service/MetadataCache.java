@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.svc.data.service;
+
+import org.finos.tracdap.api.MetadataBatchResponse;
+import org.finos.tracdap.api.internal.InternalMetadataApiGrpc.InternalMetadataApiFutureStub;
+import org.finos.tracdap.common.async.Futures;
+import org.finos.tracdap.metadata.ObjectType;
+import org.finos.tracdap.metadata.Tag;
+import org.finos.tracdap.metadata.TagSelector;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+
+/**
+ * Bounded LRU cache for metadata objects selected at an explicit object version.
+ *
+ * <p>Object definitions are immutable once a version is created, so a selector with a fixed
+ * object version always resolves to the same definition. Tags are also immutable once created,
+ * so the tag criteria are part of the cache key and selectors for the latest tag are not cached.
+ * Selectors for the latest object version or as-of a point in time are always resolved remotely.</p>
+ */
+public class MetadataCache {
+
+    private static final Set<ObjectType> CACHEABLE_TYPES = Set.of(
+            ObjectType.DATA, ObjectType.SCHEMA,
+            ObjectType.STORAGE, ObjectType.FILE);
+
+    private final int maxEntries;
+    private final Map<String, Tag> entries;
+
+    public MetadataCache(int maxEntries) {
+
+        this.maxEntries = maxEntries;
+
+        // Access-ordered map gives LRU eviction
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tag> eldest) {
+                return size() > MetadataCache.this.maxEntries;
+            }
+        };
+    }
+
+    public CompletionStage<Tag> readObject(
+            InternalMetadataApiFutureStub client,
+            String tenant, TagSelector selector) {
+
+        var cached = lookup(tenant, selector);
+
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        var request = MetadataBuilders.requestForSelector(tenant, selector);
+
+        return Futures.javaFuture(client.readObject(request))
+                .thenApply(tag -> store(tenant, selector, tag));
+    }
+
+    public CompletionStage<MetadataBatchResponse> readBatch(
+            InternalMetadataApiFutureStub client,
+            String tenant, TagSelector... selectors) {
+
+        var tags = new Tag[selectors.length];
+        var missing = new ArrayList<Integer>(selectors.length);
+
+        for (var i = 0; i < selectors.length; i++) {
+
+            tags[i] = lookup(tenant, selectors[i]);
+
+            if (tags[i] == null)
+                missing.add(i);
+        }
+
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(batchResponse(tags));
+
+        // Only send the selectors that are not already cached
+        var remoteSelectors = missing.stream().map(i -> selectors[i]).toArray(TagSelector[]::new);
+        var request = MetadataBuilders.requestForBatch(tenant, remoteSelectors);
+
+        return Futures.javaFuture(client.readBatch(request)).thenApply(response -> {
+
+            for (var j = 0; j < missing.size(); j++) {
+                var i = missing.get(j);
+                tags[i] = store(tenant, selectors[i], response.getTag(j));
+            }
+
+            return batchResponse(tags);
+        });
+    }
+
+    private Tag lookup(String tenant, TagSelector selector) {
+
+        if (maxEntries <= 0 || !isCacheable(selector))
+            return null;
+
+        synchronized (entries) {
+            return entries.get(cacheKey(tenant, selector));
+        }
+    }
+
+    private Tag store(String tenant, TagSelector selector, Tag tag) {
+
+        if (maxEntries > 0 && isCacheable(selector)) {
+            synchronized (entries) {
+                entries.put(cacheKey(tenant, selector), tag);
+            }
+        }
+
+        return tag;
+    }
+
+    private static boolean isCacheable(TagSelector selector) {
+
+        // The latest tag can change when attributes are updated, so the tag criteria must also be fixed
+        return selector.getObjectCriteriaCase() == TagSelector.ObjectCriteriaCase.OBJECTVERSION &&
+                selector.getTagCriteriaCase() == TagSelector.TagCriteriaCase.TAGVERSION &&
+                CACHEABLE_TYPES.contains(selector.getObjectType());
+    }
+
+    private static String cacheKey(String tenant, TagSelector selector) {
+
+        return String.format("%s/%s/%s/%d/%d",
+                tenant, selector.getObjectType(),
+                selector.getObjectId(), selector.getObjectVersion(),
+                selector.getTagVersion());
+    }
+
+    private static MetadataBatchResponse batchResponse(Tag[] tags) {
+
+        return MetadataBatchResponse.newBuilder()
+                .addAllTag(Arrays.asList(tags))
+                .build();
+    }
+}
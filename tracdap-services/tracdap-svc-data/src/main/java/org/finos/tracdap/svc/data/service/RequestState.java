@@ -17,6 +17,7 @@
 
 package org.finos.tracdap.svc.data.service;
 
+import org.finos.tracdap.api.DataAggregation;
 import org.finos.tracdap.common.middleware.GrpcClientConfig;
 import org.finos.tracdap.common.grpc.RequestMetadata;
 import org.finos.tracdap.metadata.*;
@@ -49,8 +50,13 @@ class RequestState {
 
     long offset;
     long limit;
+    DataAggregation aggregation;
+    ByteRange range;
 
+    String dataItem;
+    int incarnationIndex;
     StorageCopy copy;
+    StorageCopy formatCopy;
 
     long fileSize;
     long dataRowCount;
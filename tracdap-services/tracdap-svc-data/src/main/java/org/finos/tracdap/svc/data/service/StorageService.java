@@ -21,6 +21,8 @@ import org.finos.tracdap.api.*;
 import org.finos.tracdap.common.data.IDataContext;
 import org.finos.tracdap.common.data.IExecutionContext;
 import org.finos.tracdap.common.metadata.MetadataCodec;
+import org.finos.tracdap.common.storage.CommonFileStorage;
+import org.finos.tracdap.common.storage.FileListing;
 
 import org.apache.arrow.memory.ArrowBuf;
 
@@ -89,6 +91,33 @@ public class StorageService {
                 .thenApply(ls -> StorageLsResponse.newBuilder().addAllStat(ls).build());
     }
 
+    public CompletionStage<StorageLsResponse>
+    listContents(StorageListRequest request, String pageToken, IExecutionContext context) {
+
+        var storage = storageManager
+                .getTenantStorage(request.getTenant())
+                .getFileStorage(request.getStorageKey());
+
+        var pageSize = request.hasPageSize()
+                ? request.getPageSize()
+                : CommonFileStorage.LS_PAGE_SIZE_DEFAULT;
+
+        return storage
+                .ls(request.getStoragePath(), request.getRecursive(), pageToken, pageSize, context)
+                .thenApply(StorageService::convertFileListing);
+    }
+
+    private static StorageLsResponse convertFileListing(FileListing listing) {
+
+        var response = StorageLsResponse.newBuilder()
+                .addAllStat(convertFileStatList(listing.entries));
+
+        if (listing.nextPageToken != null)
+            response.setNextPageToken(listing.nextPageToken);
+
+        return response.build();
+    }
+
     private static List<FileStat> convertFileStatList(List<org.finos.tracdap.common.storage.FileStat> fileStatList) {
 
         return fileStatList.stream()
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.svc.data.api;
+
+import org.finos.tracdap.api.DataReadRequest;
+import org.finos.tracdap.api.DataWriteRequest;
+import org.finos.tracdap.common.config.ConfigKeys;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.metadata.TagHeader;
+import org.finos.tracdap.svc.admin.TracAdminService;
+import org.finos.tracdap.svc.data.TracDataService;
+import org.finos.tracdap.svc.meta.TracMetadataService;
+import org.finos.tracdap.test.data.SampleData;
+import org.finos.tracdap.test.helpers.PlatformTest;
+
+import org.apache.arrow.flight.*;
+import org.apache.arrow.memory.RootAllocator;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.List;
+
+import static org.finos.tracdap.common.metadata.MetadataUtil.selectorFor;
+
+
+class DataFlightTest {
+
+    public static final String TRAC_CONFIG_UNIT = "config/trac-unit.yaml";
+    public static final String TRAC_TENANTS_UNIT = "config/trac-unit-tenants.yaml";
+    public static final String TEST_TENANT = "ACME_CORP";
+
+    private static final int TEST_ROWS = 1000;
+
+    @RegisterExtension
+    public static final PlatformTest platform = PlatformTest.forConfig(TRAC_CONFIG_UNIT, List.of(TRAC_TENANTS_UNIT))
+            .runDbDeploy(true)
+            .addTenant(TEST_TENANT)
+            .startService(TracMetadataService.class)
+            .startService(TracDataService.class)
+            .startService(TracAdminService.class)
+            .build();
+
+    private static RootAllocator allocator;
+    private static FlightClient flightClient;
+
+    @BeforeAll
+    static void setupClass() {
+
+        var dataConfig = platform.platformConfig().getServicesOrThrow(ConfigKeys.DATA_SERVICE_KEY);
+        var flightPort = Integer.parseInt(dataConfig.getPropertiesOrThrow(ConfigKeys.DATA_FLIGHT_PORT));
+
+        allocator = new RootAllocator();
+        flightClient = FlightClient.builder(allocator, Location.forGrpcInsecure("localhost", flightPort)).build();
+    }
+
+    @AfterAll
+    static void tearDownClass() throws Exception {
+
+        flightClient.close();
+        allocator.close();
+    }
+
+    @Test
+    void roundTrip_flight() throws Exception {
+
+        try (var original = SampleData.generateBasicData(allocator, TEST_ROWS)) {
+
+            var writeRequest = DataWriteRequest.newBuilder()
+                    .setTenant(TEST_TENANT)
+                    .setSchema(SampleData.BASIC_TABLE_SCHEMA)
+                    .build();
+
+            var header = flightPut(writeRequest, original);
+
+            var readRequest = DataReadRequest.newBuilder()
+                    .setTenant(TEST_TENANT)
+                    .setSelector(selectorFor(header))
+                    .build();
+
+            var ticket = new Ticket(readRequest.toByteArray());
+            var rowsRead = 0;
+
+            try (var stream = flightClient.getStream(ticket)) {
+
+                while (stream.next()) {
+
+                    var batch = stream.getRoot();
+                    var batchRows = batch.getRowCount();
+
+                    Assertions.assertEquals(original.getVsr().getSchema().getFields().size(), batch.getFieldVectors().size());
+
+                    for (var col = 0; col < batch.getFieldVectors().size(); col++) {
+
+                        var expectedVector = original.getVsr().getVector(col);
+                        var actualVector = batch.getVector(col);
+
+                        Assertions.assertEquals(expectedVector.getName(), actualVector.getName());
+
+                        // Dictionary-encoded fields hold indices, which may not match after a round trip
+                        if (expectedVector.getField().getDictionary() != null)
+                            continue;
+
+                        for (var row = 0; row < batchRows; row++)
+                            Assertions.assertEquals(expectedVector.getObject(rowsRead + row), actualVector.getObject(row));
+                    }
+
+                    rowsRead += batchRows;
+                }
+            }
+
+            Assertions.assertEquals(TEST_ROWS, rowsRead);
+        }
+    }
+
+    @Test
+    void put_schemaMismatch() throws Exception {
+
+        try (var original = SampleData.generateTestData(SampleData.ALT_TABLE_SCHEMA, allocator, 0, TEST_ROWS)) {
+
+            var writeRequest = DataWriteRequest.newBuilder()
+                    .setTenant(TEST_TENANT)
+                    .setSchema(SampleData.BASIC_TABLE_SCHEMA)
+                    .build();
+
+            // The incoming schema is checked before any data is saved, so the put is rejected
+            Assertions.assertThrows(FlightRuntimeException.class, () -> flightPut(writeRequest, original));
+        }
+    }
+
+    private TagHeader flightPut(DataWriteRequest writeRequest, ArrowVsrContext data) throws Exception {
+
+        var descriptor = FlightDescriptor.command(writeRequest.toByteArray());
+        var ackListener = new SyncPutListener();
+
+        var writer = flightClient.startPut(descriptor, data.getVsr(), data.getDictionaries(), ackListener);
+        writer.putNext();
+        writer.completed();
+
+        try (var ack = ackListener.read()) {
+
+            writer.getResult();
+
+            var metadata = ack.getApplicationMetadata();
+            var headerBytes = new byte[(int) metadata.readableBytes()];
+            metadata.getBytes(0, headerBytes);
+
+            return TagHeader.parseFrom(headerBytes);
+        }
+        finally {
+            ackListener.close();
+        }
+    }
+}
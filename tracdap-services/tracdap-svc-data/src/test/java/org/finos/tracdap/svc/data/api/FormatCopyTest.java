@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.svc.data.api;
+
+import org.finos.tracdap.api.*;
+import org.finos.tracdap.common.async.Futures;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.IExecutionContext;
+import org.finos.tracdap.metadata.*;
+import org.finos.tracdap.metadata.Tag;
+import org.finos.tracdap.svc.admin.TracAdminService;
+import org.finos.tracdap.svc.data.TracDataService;
+import org.finos.tracdap.svc.meta.TracMetadataService;
+import org.finos.tracdap.test.data.DataApiTestHelpers;
+import org.finos.tracdap.test.data.SampleData;
+import org.finos.tracdap.test.helpers.PlatformTest;
+
+import com.google.protobuf.ByteString;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.arrow.memory.RootAllocator;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.finos.tracdap.common.metadata.MetadataUtil.selectorFor;
+import static org.finos.tracdap.common.util.ResourceHelpers.loadResourceAsByteString;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.resultOf;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.waitFor;
+
+
+class FormatCopyTest {
+
+    // Format copies are created in the background after a download, if the format is in the tenant copy policy
+    // The test tenant config lists text/csv in storage.copy.formats, so the first CSV download creates a copy
+
+    public static final String TRAC_CONFIG_UNIT = "config/trac-unit.yaml";
+    public static final String TRAC_TENANTS_COPY = "config/trac-unit-tenants-copy.yaml";
+    public static final String TEST_TENANT = "ACME_CORP";
+    public static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final String COPY_FORMAT = "text/csv";
+
+    @RegisterExtension
+    public static final PlatformTest platform = PlatformTest.forConfig(TRAC_CONFIG_UNIT, List.of(TRAC_TENANTS_COPY))
+            .runDbDeploy(true)
+            .addTenant(TEST_TENANT)
+            .startService(TracMetadataService.class)
+            .startService(TracDataService.class)
+            .startService(TracAdminService.class)
+            .build();
+
+    private static EventLoopGroup elg;
+    private IExecutionContext execContext;
+    private TracMetadataApiGrpc.TracMetadataApiFutureStub metaClient;
+    private TracDataApiGrpc.TracDataApiStub dataClient;
+
+    @BeforeAll
+    static void setupClass() {
+        elg = new NioEventLoopGroup(2);
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        elg.shutdownGracefully();
+    }
+
+    @BeforeEach
+    void setup() {
+        execContext = new DataContext(elg.next(), new RootAllocator());
+        metaClient = platform.metaClientFuture();
+        dataClient = platform.dataClient();
+    }
+
+    @Test
+    void readTwice_secondReadFromCopy() throws Exception {
+
+        var createRequest = DataWriteRequest.newBuilder()
+                .setTenant(TEST_TENANT)
+                .setSchema(SampleData.BASIC_TABLE_SCHEMA)
+                .setFormat(COPY_FORMAT)
+                .setContent(loadResourceAsByteString(SampleData.BASIC_CSV_DATA_RESOURCE))
+                .build();
+
+        var createDataset = DataApiTestHelpers.clientStreaming(dataClient::createDataset, createRequest);
+        waitFor(TEST_TIMEOUT, createDataset);
+        var dataId = resultOf(createDataset);
+
+        // Primary copy is stored in the default format (ARROW_FILE), so the first read is encoded to CSV
+
+        var firstContent = readCsv(dataId);
+
+        // Copy is created after the first download completes, wait for it to be recorded in metadata
+
+        var formatCopy = waitForFormatCopy(dataId);
+
+        Assertions.assertEquals(CopyStatus.COPY_AVAILABLE, formatCopy.getCopyStatus());
+        Assertions.assertTrue(formatCopy.getStoragePath().endsWith("-copy.csv"));
+
+        var copyFile = platform.workingDir()
+                .resolve(PlatformTest.STORAGE_ROOT_DIR)
+                .resolve(formatCopy.getStoragePath());
+
+        Assertions.assertTrue(Files.exists(copyFile));
+        Assertions.assertEquals(firstContent, ByteString.copyFrom(Files.readAllBytes(copyFile)));
+
+        // Replace the stored copy with a truncated version (header and first row only)
+        // If the second read is served from the copy, it will return exactly these bytes
+
+        var firstContentText = firstContent.toString(StandardCharsets.UTF_8);
+        var headerEnd = firstContentText.indexOf('\n');
+        var firstRowEnd = firstContentText.indexOf('\n', headerEnd + 1);
+        var truncatedContent = firstContentText.substring(0, firstRowEnd + 1);
+
+        Files.write(copyFile, truncatedContent.getBytes(StandardCharsets.UTF_8));
+
+        var secondContent = readCsv(dataId);
+
+        Assertions.assertEquals(truncatedContent, secondContent.toString(StandardCharsets.UTF_8));
+    }
+
+    private ByteString readCsv(TagHeader dataId) throws Exception {
+
+        var readRequest = DataReadRequest.newBuilder()
+                .setTenant(TEST_TENANT)
+                .setSelector(selectorFor(dataId))
+                .setFormat(COPY_FORMAT)
+                .build();
+
+        var readDataset = DataApiTestHelpers.serverStreaming(dataClient::readDataset, readRequest, execContext);
+        waitFor(TEST_TIMEOUT, readDataset);
+        var responseList = resultOf(readDataset);
+
+        return responseList.stream().skip(1)
+                .map(DataReadResponse::getContent)
+                .reduce(ByteString.EMPTY, ByteString::concat);
+    }
+
+    private StorageCopy waitForFormatCopy(TagHeader dataId) throws Exception {
+
+        var dataTag = readObject(selectorFor(dataId));
+        var storageSelector = dataTag.getDefinition().getData().getStorageId().toBuilder()
+                .setLatestObject(true)
+                .build();
+
+        var deadline = Instant.now().plus(TEST_TIMEOUT);
+
+        while (Instant.now().isBefore(deadline)) {
+
+            var storageTag = readObject(storageSelector);
+            var storage = storageTag.getDefinition().getStorage();
+
+            for (var item : storage.getDataItemsMap().values())
+                for (var incarnation : item.getIncarnationsList())
+                    for (var copy : incarnation.getCopiesList())
+                        if (copy.getStorageFormat().equals(COPY_FORMAT))
+                            return copy;
+
+            Thread.sleep(100);
+        }
+
+        Assertions.fail("Format copy was not created");
+        return null;
+    }
+
+    private Tag readObject(TagSelector selector) throws Exception {
+
+        var request = MetadataReadRequest.newBuilder()
+                .setTenant(TEST_TENANT)
+                .setSelector(selector)
+                .build();
+
+        var response = Futures.javaFuture(metaClient.readObject(request));
+        waitFor(TEST_TIMEOUT, response);
+
+        return resultOf(response);
+    }
+}
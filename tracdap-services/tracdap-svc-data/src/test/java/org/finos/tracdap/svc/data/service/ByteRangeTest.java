@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.tracdap.svc.data.service;
+
+import org.finos.tracdap.common.exception.ERangeValidation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class ByteRangeTest {
+
+    @Test
+    void parseHttpRange_ok() {
+
+        var range = ByteRange.parseHttpRange("bytes=100-199").resolve(1000);
+
+        Assertions.assertTrue(range.isPartial());
+        Assertions.assertEquals(100, range.offset());
+        Assertions.assertEquals(100, range.length());
+        Assertions.assertEquals("bytes 100-199/1000", range.contentRange());
+    }
+
+    @Test
+    void parseHttpRange_openEnded() {
+
+        var range = ByteRange.parseHttpRange("bytes=900-").resolve(1000);
+
+        Assertions.assertEquals(900, range.offset());
+        Assertions.assertEquals(100, range.length());
+        Assertions.assertEquals("bytes 900-999/1000", range.contentRange());
+    }
+
+    @Test
+    void parseHttpRange_suffix() {
+
+        var range = ByteRange.parseHttpRange("bytes=-50").resolve(1000);
+
+        Assertions.assertEquals(950, range.offset());
+        Assertions.assertEquals(50, range.length());
+
+        // Suffix longer than the object is the whole object
+        var whole = ByteRange.parseHttpRange("bytes=-5000").resolve(1000);
+
+        Assertions.assertFalse(whole.isPartial());
+        Assertions.assertEquals(0, whole.offset());
+        Assertions.assertEquals(1000, whole.length());
+    }
+
+    @Test
+    void parseHttpRange_lastByteBeyondEnd() {
+
+        var range = ByteRange.parseHttpRange("bytes=500-5000").resolve(1000);
+
+        Assertions.assertEquals(500, range.offset());
+        Assertions.assertEquals(500, range.length());
+        Assertions.assertEquals("bytes 500-999/1000", range.contentRange());
+    }
+
+    @Test
+    void parseHttpRange_hugeLastByte() {
+
+        // Valid ranges, the last byte is clamped to the object size
+
+        var maxLong = ByteRange.parseHttpRange("bytes=100-9223372036854775807").resolve(1000);
+
+        Assertions.assertEquals(100, maxLong.offset());
+        Assertions.assertEquals(900, maxLong.length());
+        Assertions.assertEquals("bytes 100-999/1000", maxLong.contentRange());
+
+        var fromZero = ByteRange.parseHttpRange("bytes=0-9223372036854775807").resolve(1000);
+
+        Assertions.assertFalse(fromZero.isPartial());
+        Assertions.assertEquals(0, fromZero.offset());
+        Assertions.assertEquals(1000, fromZero.length());
+
+        var beyondLong = ByteRange.parseHttpRange("bytes=100-99999999999999999999").resolve(1000);
+
+        Assertions.assertEquals(100, beyondLong.offset());
+        Assertions.assertEquals(900, beyondLong.length());
+    }
+
+    @Test
+    void parseHttpRange_ignored() {
+
+        // Anything that cannot be handled is ignored, the full content is sent instead
+
+        Assertions.assertNull(ByteRange.parseHttpRange(null));
+        Assertions.assertNull(ByteRange.parseHttpRange(""));
+        Assertions.assertNull(ByteRange.parseHttpRange("bytes=-"));
+        Assertions.assertNull(ByteRange.parseHttpRange("bytes=200-100"));
+        Assertions.assertNull(ByteRange.parseHttpRange("bytes=0-10,20-30"));
+        Assertions.assertNull(ByteRange.parseHttpRange("items=0-10"));
+    }
+
+    @Test
+    void resolve_noRange() {
+
+        var range = ByteRange.of(null, null).resolve(1000);
+
+        Assertions.assertFalse(range.isPartial());
+        Assertions.assertEquals(0, range.offset());
+        Assertions.assertEquals(1000, range.length());
+    }
+
+    @Test
+    void resolve_hugeLength() {
+
+        // Lengths near the limit of a long must not overflow when added to the offset
+
+        var range = ByteRange.of(100L, Long.MAX_VALUE).resolve(1000);
+
+        Assertions.assertEquals(100, range.offset());
+        Assertions.assertEquals(900, range.length());
+
+        var almostMax = ByteRange.of(999L, Long.MAX_VALUE - 500).resolve(1000);
+
+        Assertions.assertEquals(999, almostMax.offset());
+        Assertions.assertEquals(1, almostMax.length());
+    }
+
+    @Test
+    void resolve_notSatisfiable() {
+
+        Assertions.assertThrows(ERangeValidation.class, () -> ByteRange.of(1000L, null).resolve(1000));
+        Assertions.assertThrows(ERangeValidation.class, () -> ByteRange.of(0L, 0L).resolve(1000));
+        Assertions.assertThrows(ERangeValidation.class, () -> ByteRange.of(null, 10L).resolve(0));
+    }
+}
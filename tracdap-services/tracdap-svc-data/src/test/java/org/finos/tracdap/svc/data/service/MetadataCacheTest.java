@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.svc.data.service;
+
+import org.finos.tracdap.api.MetadataBatchRequest;
+import org.finos.tracdap.api.MetadataBatchResponse;
+import org.finos.tracdap.api.MetadataReadRequest;
+import org.finos.tracdap.api.internal.InternalMetadataApiGrpc.InternalMetadataApiFutureStub;
+import org.finos.tracdap.metadata.ObjectDefinition;
+import org.finos.tracdap.metadata.ObjectType;
+import org.finos.tracdap.metadata.Tag;
+import org.finos.tracdap.metadata.TagHeader;
+
+import com.google.common.util.concurrent.Futures;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.UUID;
+
+import static org.finos.tracdap.common.metadata.MetadataUtil.selectorFor;
+import static org.finos.tracdap.common.metadata.MetadataUtil.selectorForLatest;
+import static org.finos.tracdap.test.concurrent.ConcurrentTestHelpers.resultOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+
+public class MetadataCacheTest {
+
+    private static final String TEST_TENANT = "ACME_CORP";
+
+    private InternalMetadataApiFutureStub client;
+
+    @BeforeEach
+    void setupClient() {
+
+        client = mock(InternalMetadataApiFutureStub.class);
+
+        // Echo back a tag for whichever object / version is requested
+        when(client.readObject(any(MetadataReadRequest.class))).thenAnswer(call -> {
+            var request = call.getArgument(0, MetadataReadRequest.class);
+            return Futures.immediateFuture(tagFor(request.getSelector().getObjectId(), request.getSelector().getObjectVersion()));
+        });
+
+        when(client.readBatch(any(MetadataBatchRequest.class))).thenAnswer(call -> {
+            var request = call.getArgument(0, MetadataBatchRequest.class);
+            var response = MetadataBatchResponse.newBuilder();
+            for (var selector : request.getSelectorList())
+                response.addTag(tagFor(selector.getObjectId(), selector.getObjectVersion()));
+            return Futures.immediateFuture(response.build());
+        });
+    }
+
+    @Test
+    void explicitVersionIsCached() throws Exception {
+
+        var cache = new MetadataCache(10);
+        var selector = selectorFor(headerFor(UUID.randomUUID().toString(), 1));
+
+        var tag1 = resultOf(cache.readObject(client, TEST_TENANT, selector));
+        var tag2 = resultOf(cache.readObject(client, TEST_TENANT, selector));
+
+        Assertions.assertEquals(tag1, tag2);
+        verify(client, times(1)).readObject(any(MetadataReadRequest.class));
+    }
+
+    @Test
+    void batchOnlyRequestsMissingSelectors() throws Exception {
+
+        var cache = new MetadataCache(10);
+        var selector1 = selectorFor(headerFor(UUID.randomUUID().toString(), 1));
+        var selector2 = selectorFor(headerFor(UUID.randomUUID().toString(), 1));
+
+        resultOf(cache.readObject(client, TEST_TENANT, selector1));
+
+        var batch = resultOf(cache.readBatch(client, TEST_TENANT, selector1, selector2));
+
+        Assertions.assertEquals(2, batch.getTagCount());
+        Assertions.assertEquals(selector1.getObjectId(), batch.getTag(0).getHeader().getObjectId());
+        Assertions.assertEquals(selector2.getObjectId(), batch.getTag(1).getHeader().getObjectId());
+
+        var batchRequest = ArgumentCaptor.forClass(MetadataBatchRequest.class);
+        verify(client, times(1)).readBatch(batchRequest.capture());
+
+        Assertions.assertEquals(1, batchRequest.getValue().getSelectorCount());
+        Assertions.assertEquals(selector2, batchRequest.getValue().getSelector(0));
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() throws Exception {
+
+        var cache = new MetadataCache(2);
+        var objectId = UUID.randomUUID().toString();
+
+        var v1 = selectorFor(headerFor(objectId, 1));
+        var v2 = selectorFor(headerFor(objectId, 2));
+        var v3 = selectorFor(headerFor(objectId, 3));
+
+        resultOf(cache.readObject(client, TEST_TENANT, v1));
+        resultOf(cache.readObject(client, TEST_TENANT, v2));
+        resultOf(cache.readObject(client, TEST_TENANT, v3));
+
+        verify(client, times(3)).readObject(any(MetadataReadRequest.class));
+
+        // v3 is still cached, v1 was evicted to make room for it
+        resultOf(cache.readObject(client, TEST_TENANT, v3));
+        verify(client, times(3)).readObject(any(MetadataReadRequest.class));
+
+        resultOf(cache.readObject(client, TEST_TENANT, v1));
+        verify(client, times(4)).readObject(any(MetadataReadRequest.class));
+    }
+
+    @Test
+    void latestIsNeverCached() throws Exception {
+
+        var cache = new MetadataCache(10);
+        var objectId = UUID.randomUUID().toString();
+        var latest = selectorForLatest(headerFor(objectId, 1));
+
+        // Latest resolves to v1, then an update creates v2
+
+        reset(client);
+        when(client.readObject(any(MetadataReadRequest.class)))
+                .thenReturn(Futures.immediateFuture(tagFor(objectId, 1)))
+                .thenReturn(Futures.immediateFuture(tagFor(objectId, 2)));
+
+        var before = resultOf(cache.readObject(client, TEST_TENANT, latest));
+        var after = resultOf(cache.readObject(client, TEST_TENANT, latest));
+
+        Assertions.assertEquals(1, before.getHeader().getObjectVersion());
+        Assertions.assertEquals(2, after.getHeader().getObjectVersion());
+        verify(client, times(2)).readObject(any(MetadataReadRequest.class));
+    }
+
+    @Test
+    void tagSelectorsAreSeparate() throws Exception {
+
+        var cache = new MetadataCache(10);
+        var objectId = UUID.randomUUID().toString();
+
+        // Tag v2 is the latest tag for object v1
+
+        reset(client);
+        when(client.readObject(any(MetadataReadRequest.class))).thenAnswer(call -> {
+            var selector = call.getArgument(0, MetadataReadRequest.class).getSelector();
+            var tagVersion = selector.getLatestTag() ? 2 : selector.getTagVersion();
+            return Futures.immediateFuture(tagFor(objectId, selector.getObjectVersion(), tagVersion));
+        });
+
+        var tagV1 = selectorFor(headerFor(objectId, 1, 1));
+        var tagV2 = selectorFor(headerFor(objectId, 1, 2));
+        var latestTag = selectorFor(headerFor(objectId, 1, 1), false, true);
+
+        Assertions.assertEquals(1, resultOf(cache.readObject(client, TEST_TENANT, tagV1)).getHeader().getTagVersion());
+        Assertions.assertEquals(2, resultOf(cache.readObject(client, TEST_TENANT, latestTag)).getHeader().getTagVersion());
+        Assertions.assertEquals(2, resultOf(cache.readObject(client, TEST_TENANT, tagV2)).getHeader().getTagVersion());
+        Assertions.assertEquals(1, resultOf(cache.readObject(client, TEST_TENANT, tagV1)).getHeader().getTagVersion());
+        Assertions.assertEquals(2, resultOf(cache.readObject(client, TEST_TENANT, latestTag)).getHeader().getTagVersion());
+
+        // Explicit tag versions are cached separately, the latest tag is always resolved remotely
+        verify(client, times(4)).readObject(any(MetadataReadRequest.class));
+    }
+
+    @Test
+    void tenantsAreSeparate() throws Exception {
+
+        var cache = new MetadataCache(10);
+        var selector = selectorFor(headerFor(UUID.randomUUID().toString(), 1));
+
+        resultOf(cache.readObject(client, TEST_TENANT, selector));
+        resultOf(cache.readObject(client, "OTHER_TENANT", selector));
+
+        verify(client, times(2)).readObject(any(MetadataReadRequest.class));
+    }
+
+    private static TagHeader headerFor(String objectId, int objectVersion) {
+
+        return headerFor(objectId, objectVersion, 1);
+    }
+
+    private static TagHeader headerFor(String objectId, int objectVersion, int tagVersion) {
+
+        return TagHeader.newBuilder()
+                .setObjectType(ObjectType.DATA)
+                .setObjectId(objectId)
+                .setObjectVersion(objectVersion)
+                .setTagVersion(tagVersion)
+                .build();
+    }
+
+    private static Tag tagFor(String objectId, int objectVersion) {
+
+        return tagFor(objectId, objectVersion, 1);
+    }
+
+    private static Tag tagFor(String objectId, int objectVersion, int tagVersion) {
+
+        return Tag.newBuilder()
+                .setHeader(headerFor(objectId, objectVersion, tagVersion))
+                .setDefinition(ObjectDefinition.newBuilder().setObjectType(ObjectType.DATA))
+                .build();
+    }
+}
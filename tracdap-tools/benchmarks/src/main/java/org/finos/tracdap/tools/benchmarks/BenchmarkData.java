@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.tools.benchmarks;
+
+import org.finos.tracdap.common.codec.ICodec;
+import org.finos.tracdap.common.codec.arrow.ArrowFileCodec;
+import org.finos.tracdap.common.codec.arrow.ArrowStreamCodec;
+import org.finos.tracdap.common.codec.csv.CsvCodec;
+import org.finos.tracdap.common.codec.json.JsonCodec;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.IDataContext;
+import org.finos.tracdap.common.data.util.Bytes;
+import org.finos.tracdap.common.exception.EUnexpected;
+import org.finos.tracdap.metadata.FieldSchema;
+import org.finos.tracdap.metadata.SchemaDefinition;
+import org.finos.tracdap.metadata.TableSchema;
+import org.finos.tracdap.test.data.SampleData;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+
+
+class BenchmarkData {
+
+    // Data shapes used across the benchmarks, generated from the sample data in tracdap-lib-test
+    // LONG is the basic 8-column test schema with many rows, WIDE repeats the same columns 10 times
+
+    static final String LONG = "LONG";
+    static final String WIDE = "WIDE";
+
+    static final int LONG_ROWS = 100000;
+    static final int WIDE_ROWS = 10000;
+    static final int WIDE_REPEAT = 10;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    static ArrowVsrContext generateData(String shape, BufferAllocator allocator) {
+
+        switch (shape) {
+
+            case LONG:
+                return SampleData.generateBasicData(allocator, LONG_ROWS);
+
+            case WIDE:
+                return SampleData.generateTestData(wideSchema(), allocator, 0, WIDE_ROWS);
+
+            default:
+                throw new EUnexpected();
+        }
+    }
+
+    static SchemaDefinition wideSchema() {
+
+        var basicFields = SampleData.BASIC_TABLE_SCHEMA.getTable().getFieldsList();
+        var wideTable = TableSchema.newBuilder();
+
+        for (var i = 0; i < WIDE_REPEAT; i++) {
+            for (var field : basicFields) {
+
+                var wideField = FieldSchema.newBuilder(field)
+                        .setFieldName(field.getFieldName() + "_" + i)
+                        .setFieldOrder(wideTable.getFieldsCount());
+
+                wideTable.addFields(wideField);
+            }
+        }
+
+        return SampleData.BASIC_TABLE_SCHEMA.toBuilder()
+                .setTable(wideTable)
+                .build();
+    }
+
+    static ICodec getCodec(String format) {
+
+        switch (format) {
+
+            case "CSV": return new CsvCodec();
+            case "JSON": return new JsonCodec();
+            case "ARROW_STREAM": return new ArrowStreamCodec();
+            case "ARROW_FILE": return new ArrowFileCodec();
+
+            default:
+                throw new EUnexpected();
+        }
+    }
+
+    static List<byte[]> encode(ArrowVsrContext data, ICodec codec, IDataContext ctx) {
+
+        // Encode once up front, to provide input for the decode benchmarks
+
+        var chunks = new ArrayList<byte[]>();
+        var collector = new ByteCounter(chunks);
+
+        var pipeline = DataPipeline.forSource(new SingleBatchDataSource(data), ctx);
+        pipeline.addStage(codec.getEncoder(ctx.arrowAllocator(), Map.of()));
+        pipeline.addSink(collector);
+
+        runPipeline(pipeline);
+
+        return rechunk(chunks);
+    }
+
+    static List<ArrowBuf> copyToBuffers(List<byte[]> chunks, BufferAllocator allocator) {
+
+        return chunks.stream()
+                .map(chunk -> Bytes.copyToBuffer(chunk, allocator))
+                .collect(Collectors.toList());
+    }
+
+    static void runPipeline(DataPipeline pipeline) {
+
+        waitFor(pipeline.execute());
+    }
+
+    static <T> T waitFor(CompletionStage<T> result) {
+
+        try {
+            return result.toCompletableFuture().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EUnexpected(e);
+        }
+        catch (ExecutionException e) {
+            throw new EUnexpected(e.getCause());
+        }
+    }
+
+    private static List<byte[]> rechunk(List<byte[]> chunks) {
+
+        // Encoders produce chunks of varying size, use a fixed size so decode runs are comparable
+
+        var totalSize = chunks.stream().mapToInt(chunk -> chunk.length).sum();
+        var content = new byte[totalSize];
+        var offset = 0;
+
+        for (var chunk : chunks) {
+            System.arraycopy(chunk, 0, content, offset, chunk.length);
+            offset += chunk.length;
+        }
+
+        var result = new ArrayList<byte[]>();
+
+        for (var start = 0; start < totalSize; start += CHUNK_SIZE) {
+            var end = Math.min(start + CHUNK_SIZE, totalSize);
+            var chunk = new byte[end - start];
+            System.arraycopy(content, start, chunk, 0, chunk.length);
+            result.add(chunk);
+        }
+
+        return result;
+    }
+
+    static class ByteCounter implements Flow.Subscriber<ArrowBuf> {
+
+        // Count bytes at the end of a pipeline, optionally keeping a copy of the content
+
+        private final List<byte[]> content;
+        private long bytes;
+
+        ByteCounter() {
+            this(null);
+        }
+
+        ByteCounter(List<byte[]> content) {
+            this.content = content;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ArrowBuf chunk) {
+
+            try (chunk) {
+
+                bytes += chunk.readableBytes();
+
+                if (content != null)
+                    content.add(Bytes.copyFromBuffer(chunk));
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            // Errors are reported through the pipeline
+        }
+
+        @Override
+        public void onComplete() {
+            // Completion is reported through the pipeline
+        }
+    }
+}
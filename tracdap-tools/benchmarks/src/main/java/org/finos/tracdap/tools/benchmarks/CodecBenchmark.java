@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.tools.benchmarks;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.codec.ICodec;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.test.data.SingleBatchDataSink;
+import org.finos.tracdap.test.data.SingleBatchDataSource;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Encode and decode throughput for each codec, on long and wide datasets.
+ *
+ * <p>Each invocation runs one full pipeline over the dataset.
+ * The bytes and rows counters are reported as rates alongside the score,
+ * giving bytes/s and rows/s for each codec.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"CSV", "JSON", "ARROW_STREAM", "ARROW_FILE"})
+    public String format;
+
+    @Param({BenchmarkData.LONG, BenchmarkData.WIDE})
+    public String shape;
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+    private DataContext ctx;
+
+    private ICodec codec;
+    private ArrowVsrContext data;
+    private List<byte[]> encoded;
+    private long encodedSize;
+    private int rowCount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        allocator = new RootAllocator();
+        eventLoop = new DefaultEventExecutor();
+        ctx = new DataContext(eventLoop, allocator);
+
+        codec = BenchmarkData.getCodec(format);
+        data = BenchmarkData.generateData(shape, allocator);
+        rowCount = data.getVsr().getRowCount();
+
+        encoded = BenchmarkData.encode(data, codec, ctx);
+        encodedSize = encoded.stream().mapToLong(chunk -> chunk.length).sum();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+
+        data.close();
+        eventLoop.shutdownGracefully().await();
+        allocator.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public long bytes;
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void encode(Throughput throughput) {
+
+        data.setLoaded();
+
+        var sink = new BenchmarkData.ByteCounter();
+        var pipeline = DataPipeline.forSource(new SingleBatchDataSource(data), ctx);
+        pipeline.addStage(codec.getEncoder(allocator, Map.of()));
+        pipeline.addSink(sink);
+
+        BenchmarkData.runPipeline(pipeline);
+
+        throughput.bytes += sink.bytes();
+        throughput.rows += rowCount;
+    }
+
+    @Benchmark
+    public void decode(Throughput throughput) {
+
+        // Copying the input into buffers is part of the measurement, it is small next to the decode
+        var source = Flows.publish(BenchmarkData.copyToBuffers(encoded, allocator));
+
+        var pipeline = DataPipeline.forSource(source, ctx);
+        pipeline.addStage(codec.getDecoder(data.getSchema(), allocator, Map.of()));
+
+        var sink = new SingleBatchDataSink(pipeline);
+        pipeline.addSink(sink);
+
+        BenchmarkData.runPipeline(pipeline);
+
+        throughput.bytes += encodedSize;
+        throughput.rows += sink.getRowCount();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.tools.benchmarks;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.storage.IStorageManager;
+import org.finos.tracdap.common.storage.local.LocalFileStorage;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+/**
+ * Read and write throughput for local file storage.
+ *
+ * <p>Each invocation reads or writes one whole file. The bytes counter is reported
+ * as a rate alongside the score, giving bytes/s for each file size.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalStorageBenchmark {
+
+    private static final String STORAGE_KEY = "BENCHMARK_STORAGE";
+    private static final String READ_PATH = "read_benchmark.dat";
+    private static final String WRITE_PATH = "write_benchmark.dat";
+
+    @Param({"1048576", "16777216"})
+    public int fileSize;
+
+    private Path storageDir;
+    private LocalFileStorage storage;
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+    private DataContext ctx;
+
+    private List<byte[]> content;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        storageDir = Files.createTempDirectory("trac_benchmark_");
+
+        var storageProps = new Properties();
+        storageProps.put(IStorageManager.PROP_STORAGE_KEY, STORAGE_KEY);
+        storageProps.put(LocalFileStorage.CONFIG_ROOT_PATH, storageDir.toString());
+        storage = new LocalFileStorage(STORAGE_KEY, storageProps);
+
+        allocator = new RootAllocator();
+        eventLoop = new DefaultEventExecutor();
+        ctx = new DataContext(eventLoop, allocator);
+
+        var random = new Random();
+        var nChunks = (fileSize + BenchmarkData.CHUNK_SIZE - 1) / BenchmarkData.CHUNK_SIZE;
+
+        content = IntStream.range(0, nChunks)
+                .mapToObj(i -> randomBytes(random, Math.min(BenchmarkData.CHUNK_SIZE, fileSize - i * BenchmarkData.CHUNK_SIZE)))
+                .collect(Collectors.toList());
+
+        writeFile(READ_PATH);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+
+        storage.close();
+        eventLoop.shutdownGracefully().await();
+        allocator.close();
+
+        try (var files = Files.walk(storageDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(LocalStorageBenchmark::deleteQuietly);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void removeWrittenFile() throws Exception {
+
+        // Invocations take milliseconds, so per-invocation clean up does not distort the timings
+        Files.deleteIfExists(storageDir.resolve(WRITE_PATH));
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public void read(Throughput throughput) {
+
+        var reader = storage.reader(READ_PATH, ctx);
+        var result = Flows.fold(reader, (total, chunk) -> {
+
+            try (chunk) {
+                return total + chunk.readableBytes();
+            }
+
+        }, 0L);
+
+        throughput.bytes += BenchmarkData.waitFor(result);
+    }
+
+    @Benchmark
+    public void write(Throughput throughput) {
+
+        throughput.bytes += writeFile(WRITE_PATH);
+    }
+
+    private long writeFile(String storagePath) {
+
+        var signal = new CompletableFuture<Long>();
+        var writer = storage.writer(storagePath, signal, ctx);
+
+        Flows.publish(BenchmarkData.copyToBuffers(content, allocator)).subscribe(writer);
+
+        return BenchmarkData.waitFor(signal);
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+
+        var bytes = new byte[size];
+        random.nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private static void deleteQuietly(Path path) {
+
+        try {
+            Files.delete(path);
+        }
+        catch (IOException e) {
+            // Best effort clean up of the temp dir
+        }
+    }
+}
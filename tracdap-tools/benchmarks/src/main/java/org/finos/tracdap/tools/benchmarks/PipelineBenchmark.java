@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Fintech Open Source Foundation (FINOS) under one or
+ * more contributor license agreements. See the NOTICE file distributed
+ * with this work for additional information regarding copyright ownership.
+ * FINOS licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.tracdap.tools.benchmarks;
+
+import org.finos.tracdap.common.async.Flows;
+import org.finos.tracdap.common.data.ArrowVsrContext;
+import org.finos.tracdap.common.data.DataContext;
+import org.finos.tracdap.common.data.DataPipeline;
+import org.finos.tracdap.common.data.pipeline.BaseDataProducer;
+import org.finos.tracdap.common.data.pipeline.BaseDataSink;
+import org.finos.tracdap.common.data.pipeline.CounterStage;
+import org.finos.tracdap.test.data.SampleData;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+/**
+ * Overhead of the data pipeline framework, per batch and per chunk.
+ *
+ * <p>Batches and chunks are kept small, so the score is dominated by the cost of
+ * moving data between stages rather than processing it. Scores are reported per
+ * batch or chunk (not per pipeline), as average time.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    private static final int N_BATCHES = 1000;
+    private static final int N_CHUNKS = 1000;
+    private static final int BATCH_ROWS = 10;
+    private static final int CHUNK_SIZE = 4096;
+
+    @Param({"1", "4"})
+    public int nStages;
+
+    private BufferAllocator allocator;
+    private DefaultEventExecutor eventLoop;
+    private DataContext ctx;
+
+    private ArrowVsrContext batch;
+    private List<byte[]> chunks;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        allocator = new RootAllocator();
+        eventLoop = new DefaultEventExecutor();
+        ctx = new DataContext(eventLoop, allocator);
+
+        batch = SampleData.generateBasicData(allocator, BATCH_ROWS);
+
+        chunks = IntStream.range(0, N_CHUNKS)
+                .mapToObj(i -> new byte[CHUNK_SIZE])
+                .collect(Collectors.toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+
+        batch.close();
+        eventLoop.shutdownGracefully().await();
+        allocator.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N_BATCHES)
+    public long batchOverhead() {
+
+        // Arrow batches passed through a chain of pass-through stages
+
+        var pipeline = DataPipeline.forSource(new RepeatBatchSource(batch, N_BATCHES), ctx);
+
+        for (var i = 0; i < nStages; i++)
+            pipeline.addStage(new CounterStage());
+
+        var sink = new CountingSink(pipeline);
+        pipeline.addSink(sink);
+
+        BenchmarkData.runPipeline(pipeline);
+
+        return sink.rowCount;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N_CHUNKS)
+    public long chunkOverhead() {
+
+        // Byte chunks from a reactive source, through the buffering stage to a reactive sink
+        // The number of stages does not apply, there is no pass-through stage for byte streams
+
+        var source = Flows.publish(BenchmarkData.copyToBuffers(chunks, allocator));
+        var sink = new BenchmarkData.ByteCounter();
+
+        var pipeline = DataPipeline.forSource(source, ctx);
+        pipeline.addSink(sink);
+
+        BenchmarkData.runPipeline(pipeline);
+
+        return sink.bytes();
+    }
+
+    private static class RepeatBatchSource
+            extends BaseDataProducer<DataPipeline.ArrowApi>
+            implements DataPipeline.SourceStage {
+
+        private final ArrowVsrContext batch;
+        private int remaining;
+        private boolean started;
+
+        RepeatBatchSource(ArrowVsrContext batch, int nBatches) {
+            super(DataPipeline.ArrowApi.class);
+            this.batch = batch;
+            this.remaining = nBatches;
+        }
+
+        @Override
+        public void connect() {
+            // no-op
+        }
+
+        @Override
+        public void pump() {
+
+            if (isDone())
+                return;
+
+            if (!started) {
+                consumer().onStart(batch);
+                started = true;
+            }
+
+            while (remaining > 0 && consumerReady()) {
+                batch.setLoaded();
+                consumer().onBatch();
+                remaining--;
+            }
+
+            if (remaining == 0) {
+                markAsDone();
+                consumer().onComplete();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            markAsDone();
+        }
+
+        @Override
+        public void close() {
+            // no-op, the batch is owned by the benchmark
+        }
+    }
+
+    private static class CountingSink
+            extends BaseDataSink<DataPipeline.ArrowApi>
+            implements DataPipeline.ArrowApi {
+
+        private ArrowVsrContext batch;
+        private long rowCount;
+
+        CountingSink(DataPipeline pipeline) {
+            super(pipeline);
+        }
+
+        @Override
+        public DataPipeline.ArrowApi dataInterface() {
+            return this;
+        }
+
+        @Override
+        public void connect() {
+            // no-op
+        }
+
+        @Override
+        public void terminate(Throwable error) {
+            // no-op
+        }
+
+        @Override
+        public void pump() {
+            // no-op, immediate stage
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void onStart(ArrowVsrContext batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onBatch() {
+            rowCount += batch.getVsr().getRowCount();
+            batch.setUnloaded();
+        }
+
+        @Override
+        public void onComplete() {
+            markAsDone();
+            reportComplete();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            markAsDone();
+            reportRegularError(error);
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
+}